@@ -1,85 +1,123 @@
-package utopia.arc.generics;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-
-import utopia.arc.resource.Phase;
-import utopia.flow.generics.BasicDataType;
-import utopia.flow.generics.Conversion;
-import utopia.flow.generics.ConversionReliability;
-import utopia.flow.generics.DataType;
-import utopia.flow.generics.Model;
-import utopia.flow.generics.Value;
-import utopia.flow.generics.ValueList;
-import utopia.flow.generics.ValueParser;
-import utopia.flow.generics.Variable;
-
-/**
- * This parser is able to parse data types introduced in the Arc project
- * @author Mikko Hilpinen
- * @since 14.5.2016
- */
-public class ArcDataTypeParser implements ValueParser
-{
-	// ATTRIBUTES	----------------
-	
-	private static ArcDataTypeParser instance = null;
-	private List<Conversion> conversions = new ArrayList<>();
-	
-	
-	// CONSTRUCTOR	----------------
-	
-	private ArcDataTypeParser()
-	{
-		// Adds supported conversions
-		// Perfect cast from phase to model and nothing else
-		this.conversions.add(new Conversion(ArcDataType.PHASE, BasicDataType.MODEL, 
-				ConversionReliability.DATA_LOSS));
-	}
-	
-	/**
-	 * @return The singular parser instance
-	 */
-	public static ArcDataTypeParser getInstance()
-	{
-		if (instance == null)
-			instance = new ArcDataTypeParser();
-		return instance;
-	}
-	
-	
-	// IMPLEMENTED METHODS	-------
-
-	@Override
-	public Value cast(Value value, DataType to) throws ValueParseException
-	{	
-		// Can only cast from PHASE into a model. Other conversions aren't supported
-		// (except  object to string provided by the basic parser)
-		if (value.getType().equals(ArcDataType.PHASE) && to.equals(BasicDataType.MODEL))
-		{
-			Phase phase = ArcDataType.valueToPhase(value);
-			Model<Variable> model = Model.createBasicModel();
-			
-			for (DataType resourceType : phase.getResourceTypes())
-			{
-				ValueList bankNameList = new ValueList(BasicDataType.STRING);
-				for (String bankName : phase.getActiveBankNames(resourceType))
-				{
-					bankNameList.add(Value.String(bankName));
-				}
-				model.addAttribute(resourceType.getName(), Value.List(bankNameList), true);
-			}
-			
-			return Value.Model(model);
-		}
-		
-		throw new ValueParseException(value, to);
-	}
-
-	@Override
-	public Collection<? extends Conversion> getConversions()
-	{
-		return this.conversions;
-	}
-}
+package utopia.arc.generics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import utopia.arc.resource.Blob;
+import utopia.arc.resource.Phase;
+import utopia.arc.resource.ResourceReference;
+import utopia.flow.generics.BasicDataType;
+import utopia.flow.generics.Conversion;
+import utopia.flow.generics.ConversionReliability;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Model;
+import utopia.flow.generics.Value;
+import utopia.flow.generics.ValueList;
+import utopia.flow.generics.ValueParser;
+import utopia.flow.generics.Variable;
+
+/**
+ * This parser is able to parse data types introduced in the Arc project
+ * @author Mikko Hilpinen
+ * @since 14.5.2016
+ */
+public class ArcDataTypeParser implements ValueParser
+{
+	// ATTRIBUTES	----------------
+	
+	private static ArcDataTypeParser instance = null;
+	private List<Conversion> conversions = new ArrayList<>();
+	
+	
+	// CONSTRUCTOR	----------------
+	
+	private ArcDataTypeParser()
+	{
+		// Adds supported conversions
+		// Cast from phase to model and nothing else
+		this.conversions.add(new Conversion(ArcDataType.PHASE, BasicDataType.MODEL, 
+				ConversionReliability.DATA_LOSS));
+		// Blobs can be cast to a model that describes the blob's location (but not its data)
+		this.conversions.add(new Conversion(ArcDataType.BLOB, BasicDataType.MODEL, 
+				ConversionReliability.DATA_LOSS));
+		// References are written as strings. Not every string is a valid reference, though.
+		this.conversions.add(new Conversion(ArcDataType.REFERENCE, BasicDataType.STRING, 
+				ConversionReliability.PERFECT));
+		this.conversions.add(new Conversion(BasicDataType.STRING, ArcDataType.REFERENCE, 
+				ConversionReliability.DANGEROUS));
+	}
+	
+	/**
+	 * @return The singular parser instance
+	 */
+	public static ArcDataTypeParser getInstance()
+	{
+		if (instance == null)
+			instance = new ArcDataTypeParser();
+		return instance;
+	}
+	
+	
+	// IMPLEMENTED METHODS	-------
+
+	@Override
+	public Value cast(Value value, DataType to) throws ValueParseException
+	{	
+		// Can only cast from PHASE or BLOB into a model and between REFERENCE and STRING. 
+		// Other conversions aren't supported (except object to string provided by the 
+		// basic parser)
+		if (value.getType().equals(ArcDataType.PHASE) && to.equals(BasicDataType.MODEL))
+		{
+			Phase phase = ArcDataType.valueToPhase(value);
+			Model<Variable> model = Model.createBasicModel();
+			
+			for (DataType resourceType : phase.getResourceTypes())
+			{
+				ValueList bankNameList = new ValueList(BasicDataType.STRING);
+				for (String bankName : phase.getActiveBankNames(resourceType))
+				{
+					bankNameList.add(Value.String(bankName));
+				}
+				model.addAttribute(resourceType.getName(), Value.List(bankNameList), true);
+			}
+			
+			return Value.Model(model);
+		}
+		else if (value.getType().equals(ArcDataType.BLOB) && to.equals(BasicDataType.MODEL))
+		{
+			Blob blob = ArcDataType.valueToBlob(value);
+			Model<Variable> model = Model.createBasicModel();
+			
+			if (blob.isFileBased())
+			{
+				model.addAttribute("file", Value.String(blob.getFile().toString()), true);
+				model.addAttribute("offset", new Value(blob.getOffset(), BasicDataType.LONG), true);
+			}
+			model.addAttribute("length", new Value(blob.length(), BasicDataType.INTEGER), true);
+			
+			return Value.Model(model);
+		}
+		else if (value.getType().equals(ArcDataType.REFERENCE) && to.equals(BasicDataType.STRING))
+			return Value.String(String.valueOf(value.getObjectValue()));
+		else if (value.getType().equals(BasicDataType.STRING) && to.equals(ArcDataType.REFERENCE))
+		{
+			try
+			{
+				return ArcDataType.Reference(ResourceReference.parse((String) value.getObjectValue()));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new ValueParseException(value, to, e);
+			}
+		}
+		
+		throw new ValueParseException(value, to);
+	}
+
+	@Override
+	public Collection<? extends Conversion> getConversions()
+	{
+		return this.conversions;
+	}
+}
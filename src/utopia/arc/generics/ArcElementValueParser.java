@@ -1,72 +1,134 @@
-package utopia.arc.generics;
-
-import utopia.arc.resource.Phase;
-import utopia.flow.generics.DataType;
-import utopia.flow.generics.DataTypes;
-import utopia.flow.generics.Value;
-import utopia.flow.io.ElementValueParser;
-import utopia.flow.structure.Element;
-import utopia.flow.structure.TreeNode;
-
-/**
- * This class handles the exceptions in value parsing when it comes to Arc specific data types
- * @author Mikko Hilpinen
- * @since 14.5.2016
- */
-public class ArcElementValueParser implements ElementValueParser
-{
-	@Override
-	public DataType[] getParsedTypes()
-	{
-		return new DataType[]{ArcDataType.PHASE};
-	}
-
-	@Override
-	public TreeNode<Element> writeValue(Value value) throws ElementValueParsingFailedException
-	{
-		if (value.getType().equals(ArcDataType.PHASE))
-		{
-			Phase phase = ArcDataType.valueToPhase(value);
-			
-			// Phases are written in 3 layer elements (name / data type / bank name)
-			TreeNode<Element> root = new TreeNode<>(new Element(phase.getName()));
-			for (DataType resourceType : phase.getResourceTypes())
-			{
-				TreeNode<Element> typeElement = new TreeNode<>(
-						new Element(resourceType.getName()), root);
-				for (String bankName : phase.getActiveBankNames(resourceType))
-				{
-					typeElement.addChild(new TreeNode<>(new Element(bankName)));
-				}
-			}
-			
-			return root;
-		}
-		
-		throw new ElementValueParsingFailedException("Unsupported data type " + 
-				value.getType().getName());
-	}
-
-	@Override
-	public Value readValue(TreeNode<Element> element, DataType targetType)
-			throws ElementValueParsingFailedException
-	{
-		if (targetType.equals(ArcDataType.PHASE))
-		{
-			Phase phase = new Phase(element.getContent().getName());
-			for (TreeNode<Element> typeElement : element.getChildren())
-			{
-				DataType resourceType = DataTypes.parseType(typeElement.getContent().getName());
-				for (TreeNode<Element> bankElement : typeElement.getChildren())
-				{
-					phase.addActiveBank(resourceType, bankElement.getContent().getName());
-				}
-			}
-			
-			return ArcDataType.Phase(phase);
-		}
-		
-		throw new ElementValueParsingFailedException("Unsupported target type " + targetType.getName());
-	}
-
-}
+package utopia.arc.generics;
+
+import java.nio.file.Paths;
+
+import utopia.arc.resource.Blob;
+import utopia.arc.resource.Phase;
+import utopia.arc.resource.ResourceReference;
+import utopia.flow.generics.BasicDataType;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.DataTypes;
+import utopia.flow.generics.Value;
+import utopia.flow.io.ElementValueParser;
+import utopia.flow.structure.Element;
+import utopia.flow.structure.TreeNode;
+
+/**
+ * This class handles the exceptions in value parsing when it comes to Arc specific data types
+ * @author Mikko Hilpinen
+ * @since 14.5.2016
+ */
+public class ArcElementValueParser implements ElementValueParser
+{
+	@Override
+	public DataType[] getParsedTypes()
+	{
+		return new DataType[]{ArcDataType.PHASE, ArcDataType.BLOB, ArcDataType.REFERENCE};
+	}
+
+	@Override
+	public TreeNode<Element> writeValue(Value value) throws ElementValueParsingFailedException
+	{
+		if (value.getType().equals(ArcDataType.PHASE))
+		{
+			Phase phase = ArcDataType.valueToPhase(value);
+			
+			// Phases are written in 3 layer elements (name / data type / bank name)
+			TreeNode<Element> root = new TreeNode<>(new Element(phase.getName()));
+			for (DataType resourceType : phase.getResourceTypes())
+			{
+				TreeNode<Element> typeElement = new TreeNode<>(
+						new Element(resourceType.getName()), root);
+				for (String bankName : phase.getActiveBankNames(resourceType))
+				{
+					typeElement.addChild(new TreeNode<>(new Element(bankName)));
+				}
+			}
+			
+			return root;
+		}
+		else if (value.getType().equals(ArcDataType.BLOB))
+		{
+			Blob blob = ArcDataType.valueToBlob(value);
+			// Only the blob's location is written. The data must be stored in a file already.
+			if (!blob.isFileBased())
+				throw new ElementValueParsingFailedException(
+						"Blob data must be stored in a file before the blob can be written");
+			
+			TreeNode<Element> root = new TreeNode<>(new Element("blob"));
+			root.addChild(new TreeNode<>(new Element("file", 
+					Value.String(blob.getFile().toString()))));
+			root.addChild(new TreeNode<>(new Element("offset", 
+					new Value(blob.getOffset(), BasicDataType.LONG))));
+			root.addChild(new TreeNode<>(new Element("length", 
+					new Value(blob.length(), BasicDataType.INTEGER))));
+			
+			return root;
+		}
+		else if (value.getType().equals(ArcDataType.REFERENCE))
+		{
+			// References are written as simple "bank:resource" strings
+			return new TreeNode<>(new Element("reference", 
+					Value.String(ArcDataType.valueToReference(value).toString())));
+		}
+		
+		throw new ElementValueParsingFailedException("Unsupported data type " + 
+				value.getType().getName());
+	}
+
+	@Override
+	public Value readValue(TreeNode<Element> element, DataType targetType)
+			throws ElementValueParsingFailedException
+	{
+		if (targetType.equals(ArcDataType.PHASE))
+		{
+			Phase phase = new Phase(element.getContent().getName());
+			for (TreeNode<Element> typeElement : element.getChildren())
+			{
+				DataType resourceType = DataTypes.parseType(typeElement.getContent().getName());
+				for (TreeNode<Element> bankElement : typeElement.getChildren())
+				{
+					phase.addActiveBank(resourceType, bankElement.getContent().getName());
+				}
+			}
+			
+			return ArcDataType.Phase(phase);
+		}
+		else if (targetType.equals(ArcDataType.BLOB))
+		{
+			String file = null;
+			long offset = 0;
+			int length = 0;
+			for (TreeNode<Element> propertyElement : element.getChildren())
+			{
+				Element property = propertyElement.getContent();
+				if (property.getName().equalsIgnoreCase("file"))
+					file = (String) property.getContent().parseTo(BasicDataType.STRING);
+				else if (property.getName().equalsIgnoreCase("offset"))
+					offset = (Long) property.getContent().parseTo(BasicDataType.LONG);
+				else if (property.getName().equalsIgnoreCase("length"))
+					length = (Integer) property.getContent().parseTo(BasicDataType.INTEGER);
+			}
+			
+			if (file == null)
+				throw new ElementValueParsingFailedException("Blob element doesn't specify a file");
+			return ArcDataType.Blob(new Blob(Paths.get(file), offset, length));
+		}
+		else if (targetType.equals(ArcDataType.REFERENCE))
+		{
+			Value content = element.getContent().getContent();
+			try
+			{
+				return ArcDataType.Reference(ResourceReference.parse(
+						(String) content.parseTo(BasicDataType.STRING)));
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new ElementValueParsingFailedException(e.getMessage(), e);
+			}
+		}
+		
+		throw new ElementValueParsingFailedException("Unsupported target type " + targetType.getName());
+	}
+
+}
@@ -0,0 +1,234 @@
+package utopia.arc.generics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import utopia.arc.resource.Blob;
+import utopia.flow.generics.BasicDataType;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.DataTypes;
+import utopia.flow.generics.Value;
+import utopia.flow.generics.Variable;
+
+/**
+ * This static class writes values and variables into a compact binary form and reads them 
+ * back. Unlike xml, the binary form can be read without any element or string parsing for 
+ * the basic data types.
+ * @author Mikko Hilpinen
+ * @since 16.5.2016
+ */
+public class BinaryValueCodec
+{
+	// ATTRIBUTES	---------------
+	
+	private static final byte TAG_NULL = 0;
+	private static final byte TAG_STRING = 1;
+	private static final byte TAG_INTEGER = 2;
+	private static final byte TAG_LONG = 3;
+	private static final byte TAG_DOUBLE = 4;
+	private static final byte TAG_BOOLEAN = 5;
+	// Tag 6 was used for java-serialised values, which are no longer read
+	private static final byte TAG_SERIALIZED = 6;
+	private static final byte TAG_TEXT = 7;
+	private static final byte TAG_BLOB = 8;
+	
+	
+	// CONSTRUCTOR	---------------
+	
+	private BinaryValueCodec()
+	{
+		// Static interface
+	}
+	
+	
+	// OTHER METHODS	-----------
+	
+	/**
+	 * Writes a set of variables
+	 * @param variables The variables that are written
+	 * @param output The output the variables are written into
+	 * @throws IOException If the writing failed
+	 */
+	public static void writeVariables(Collection<? extends Variable> variables, DataOutput output) 
+			throws IOException
+	{
+		output.writeInt(variables.size());
+		for (Variable var : variables)
+		{
+			writeVariable(var, output);
+		}
+	}
+	
+	/**
+	 * Reads a set of variables written with {@link #writeVariables(Collection, DataOutput)}
+	 * @param input The input the variables are read from
+	 * @return The variables that were read
+	 * @throws IOException If the read failed
+	 */
+	public static List<Variable> readVariables(DataInput input) throws IOException
+	{
+		int size = input.readInt();
+		if (size < 0)
+			throw new IOException("Invalid variable count " + size);
+		List<Variable> variables = new ArrayList<>(size);
+		for (int i = 0; i < size; i++)
+		{
+			variables.add(readVariable(input));
+		}
+		
+		return variables;
+	}
+	
+	/**
+	 * Writes a single variable (name and value)
+	 * @param variable The variable that is written
+	 * @param output The output the variable is written into
+	 * @throws IOException If the writing failed
+	 */
+	public static void writeVariable(Variable variable, DataOutput output) throws IOException
+	{
+		writeString(variable.getName(), output);
+		writeValue(variable.getValue(), output);
+	}
+	
+	/**
+	 * Reads a single variable written with {@link #writeVariable(Variable, DataOutput)}
+	 * @param input The input the variable is read from
+	 * @return The variable that was read
+	 * @throws IOException If the read failed
+	 */
+	public static Variable readVariable(DataInput input) throws IOException
+	{
+		String name = readString(input);
+		return new Variable(name, readValue(input));
+	}
+	
+	/**
+	 * Writes a single value. The basic data types are written in their binary form while 
+	 * other types are written as text. Blobs are written with their data, so the read blob 
+	 * doesn't depend on the file the original blob was read from.
+	 * @param value The value that is written
+	 * @param output The output the value is written into
+	 * @throws IOException If the writing failed
+	 */
+	public static void writeValue(Value value, DataOutput output) throws IOException
+	{
+		DataType type = value.getType();
+		Object object = value.parseTo(type);
+		
+		if (object == null)
+		{
+			output.writeByte(TAG_NULL);
+			writeString(type.getName(), output);
+		}
+		else if (type.equals(BasicDataType.STRING))
+		{
+			output.writeByte(TAG_STRING);
+			writeString((String) object, output);
+		}
+		else if (type.equals(BasicDataType.INTEGER))
+		{
+			output.writeByte(TAG_INTEGER);
+			output.writeInt((Integer) object);
+		}
+		else if (type.equals(BasicDataType.LONG))
+		{
+			output.writeByte(TAG_LONG);
+			output.writeLong((Long) object);
+		}
+		else if (type.equals(BasicDataType.DOUBLE))
+		{
+			output.writeByte(TAG_DOUBLE);
+			output.writeDouble((Double) object);
+		}
+		else if (type.equals(BasicDataType.BOOLEAN))
+		{
+			output.writeByte(TAG_BOOLEAN);
+			output.writeBoolean((Boolean) object);
+		}
+		else if (type.equals(ArcDataType.BLOB))
+		{
+			output.writeByte(TAG_BLOB);
+			writeBytes(((Blob) object).toByteArray(), output);
+		}
+		else
+		{
+			// Other types are written in their string form and parsed back when read
+			output.writeByte(TAG_TEXT);
+			writeString(type.getName(), output);
+			writeString((String) value.parseTo(BasicDataType.STRING), output);
+		}
+	}
+	
+	/**
+	 * Reads a single value written with {@link #writeValue(Value, DataOutput)}
+	 * @param input The input the value is read from
+	 * @return The value that was read
+	 * @throws IOException If the read failed
+	 */
+	public static Value readValue(DataInput input) throws IOException
+	{
+		byte tag = input.readByte();
+		switch (tag)
+		{
+			case TAG_NULL: return new Value(null, DataTypes.parseType(readString(input)));
+			case TAG_STRING: return Value.String(readString(input));
+			case TAG_INTEGER: return new Value(input.readInt(), BasicDataType.INTEGER);
+			case TAG_LONG: return new Value(input.readLong(), BasicDataType.LONG);
+			case TAG_DOUBLE: return new Value(input.readDouble(), BasicDataType.DOUBLE);
+			case TAG_BOOLEAN: return new Value(input.readBoolean(), BasicDataType.BOOLEAN);
+			case TAG_SERIALIZED: throw new IOException("Serialised values are no longer supported");
+			case TAG_TEXT:
+			{
+				DataType type = DataTypes.parseType(readString(input));
+				return new Value(Value.String(readString(input)).parseTo(type), type);
+			}
+			case TAG_BLOB: return ArcDataType.Blob(new Blob(readBytes(input)));
+			default: throw new IOException("Unknown value tag " + tag);
+		}
+	}
+	
+	/**
+	 * Writes a string in UTF-8. Unlike {@link DataOutput#writeUTF(String)}, there is no 
+	 * limit to the length of the string.
+	 * @param s The string that is written
+	 * @param output The output the string is written into
+	 * @throws IOException If the writing failed
+	 */
+	public static void writeString(String s, DataOutput output) throws IOException
+	{
+		writeBytes(s.getBytes(StandardCharsets.UTF_8), output);
+	}
+	
+	/**
+	 * Reads a string written with {@link #writeString(String, DataOutput)}
+	 * @param input The input the string is read from
+	 * @return The string that was read
+	 * @throws IOException If the read failed
+	 */
+	public static String readString(DataInput input) throws IOException
+	{
+		return new String(readBytes(input), StandardCharsets.UTF_8);
+	}
+	
+	private static void writeBytes(byte[] bytes, DataOutput output) throws IOException
+	{
+		output.writeInt(bytes.length);
+		output.write(bytes);
+	}
+	
+	private static byte[] readBytes(DataInput input) throws IOException
+	{
+		int length = input.readInt();
+		if (length < 0)
+			throw new IOException("Invalid data length " + length);
+		byte[] bytes = new byte[length];
+		input.readFully(bytes);
+		return bytes;
+	}
+}
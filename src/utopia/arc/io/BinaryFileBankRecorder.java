@@ -0,0 +1,176 @@
+package utopia.arc.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.arc.resource.VersionedBankRecorder;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+import utopia.flow.io.FileUtils;
+
+/**
+ * This recorder stores bank data in a compact binary format, one file per bank. The format 
+ * is much faster to read than xml, which makes it suitable for caching banks that are 
+ * edited in xml.
+ * @author Mikko Hilpinen
+ * @since 16.5.2016
+ * @see BinaryValueCodec
+ */
+public class BinaryFileBankRecorder implements VersionedBankRecorder
+{
+	// ATTRIBUTES	------------------
+	
+	private static final int MAGIC = 0x41524342; // "ARCB"
+	private static final String FILE_TYPE = "bin";
+	
+	private Path bankDirectory;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new bank recorder
+	 * @param bankDirectory The directory that contains all bank data (stored in separate 
+	 * directories for each resource type)
+	 */
+	public BinaryFileBankRecorder(Path bankDirectory)
+	{
+		this.bankDirectory = bankDirectory;
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public void writeBank(String bankName, DataType bankType,
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		writeBank(bankName, bankType, contents, System.currentTimeMillis());
+	}
+
+	@Override
+	public Collection<Variable> readBank(String bankName, DataType bankType) 
+			throws RecordingFailedException
+	{
+		File targetFile = getTargetFile(bankName, bankType);
+		if (!targetFile.exists())
+			return new ArrayList<>();
+		
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(targetFile))))
+		{
+			readVersion(input);
+			return BinaryValueCodec.readVariables(input);
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read bank data", e);
+		}
+	}
+
+	@Override
+	public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
+	{
+		Path resourcePath = this.bankDirectory.resolve(resourceType.getName());
+		File resourceDirectory = resourcePath.toFile();
+		
+		List<String> bankNames = new ArrayList<>();
+		if (resourceDirectory.exists() && resourceDirectory.isDirectory())
+		{
+			String[] bankFileNames = FileUtils.findFileNamesIn(resourceDirectory, FILE_TYPE);
+			if (bankFileNames == null)
+				throw new RecordingFailedException("Couldn't read file names under " + resourcePath);
+			for (String fileName : bankFileNames)
+			{
+				bankNames.add(fileName.substring(0, fileName.lastIndexOf('.')));
+			}
+		}
+		
+		return bankNames;
+	}
+
+	@Override
+	public long getBankVersion(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		File targetFile = getTargetFile(bankName, bankType);
+		if (!targetFile.exists())
+			return 0;
+		
+		try (DataInputStream input = new DataInputStream(new FileInputStream(targetFile)))
+		{
+			return readVersion(input);
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read bank version", e);
+		}
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Writes the bank contents, marking them with a specific version. This is useful when the 
+	 * contents are a copy of another recorder's data.
+	 * @param bankName The name of the written bank
+	 * @param bankType The type of the bank's contents
+	 * @param contents The contents that need to be written
+	 * @param version The version the data is marked with
+	 * @throws RecordingFailedException If the writing failed
+	 */
+	public void writeBank(String bankName, DataType bankType, 
+			Collection<? extends Variable> contents, long version) throws RecordingFailedException
+	{
+		File targetFile = getTargetFile(bankName, bankType);
+		File targetDirectory = targetFile.getParentFile();
+		if (targetDirectory != null && !targetDirectory.exists())
+			targetDirectory.mkdirs();
+		
+		// The data is first written to a temporary file so that a failed write never 
+		// leaves a partial bank behind
+		File tempFile = new File(targetFile.getPath() + ".tmp");
+		try
+		{
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tempFile))))
+			{
+				output.writeInt(MAGIC);
+				output.writeLong(version);
+				BinaryValueCodec.writeVariables(contents, output);
+			}
+			Files.move(tempFile.toPath(), targetFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			tempFile.delete();
+			throw new RecordingFailedException("Failed to save the bank data to file", e);
+		}
+	}
+	
+	private static long readVersion(DataInputStream input) throws IOException
+	{
+		if (input.readInt() != MAGIC)
+			throw new IOException("Not a binary bank file");
+		return input.readLong();
+	}
+	
+	private File getTargetFile(String bankName, DataType bankType)
+	{
+		return this.bankDirectory.resolve(Paths.get(bankType.getName(), 
+				bankName + "." + FILE_TYPE)).toFile();
+	}
+}
@@ -0,0 +1,321 @@
+package utopia.arc.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.arc.resource.BankChunkIndex;
+import utopia.arc.resource.ChunkedBankRecorder;
+import utopia.arc.resource.VersionedBankRecorder;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * This recorder stores each bank in multiple xml files (chunks), so that large banks can 
+ * be read one chunk at a time. Each bank has its own directory, which contains the chunk 
+ * files and an index that tells which chunk each resource is stored in.
+ * @author Mikko Hilpinen
+ * @since 22.5.2016
+ */
+public class ChunkedXmlFileBankRecorder implements ChunkedBankRecorder, VersionedBankRecorder
+{
+	// ATTRIBUTES	------------------
+	
+	private static final String INDEX_FILE_NAME = "chunks.index";
+	
+	private Path bankDirectory;
+	private int chunkSize;
+	private ChunkGrouping grouping;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new recorder that groups the resources into chunks by their name hashes
+	 * @param bankDirectory The directory that contains all bank data
+	 * @param chunkSize The preferred amount of resources in a single chunk. Used when a 
+	 * whole bank is written and when a bank's chunks have grown too large.
+	 */
+	public ChunkedXmlFileBankRecorder(Path bankDirectory, int chunkSize)
+	{
+		this(bankDirectory, chunkSize, null);
+	}
+	
+	/**
+	 * Creates a new recorder
+	 * @param bankDirectory The directory that contains all bank data
+	 * @param chunkSize The preferred amount of resources in a single chunk. Used when a 
+	 * whole bank is written and when a bank's chunks have grown too large.
+	 * @param grouping The grouping that determines the chunk of each resource. Null if 
+	 * the resources should be grouped by their name hashes.
+	 */
+	public ChunkedXmlFileBankRecorder(Path bankDirectory, int chunkSize, ChunkGrouping grouping)
+	{
+		this.bankDirectory = bankDirectory;
+		this.chunkSize = Math.max(1, chunkSize);
+		this.grouping = grouping;
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+
+	@Override
+	public void writeBank(String bankName, DataType bankType,
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		// Splits the contents into chunks
+		int chunkCount = Math.max(1, (contents.size() + this.chunkSize - 1) / this.chunkSize);
+		BankChunkIndex index = new BankChunkIndex(chunkCount);
+		Map<Integer, List<Variable>> chunks = new HashMap<>();
+		for (int i = 0; i < chunkCount; i++)
+		{
+			chunks.put(i, new ArrayList<>());
+		}
+		for (Variable var : contents)
+		{
+			int chunk = getChunkFor(var.getName(), chunkCount);
+			index.add(var.getName(), chunk);
+			chunks.get(chunk).add(var);
+		}
+		
+		writeChunks(bankName, bankType, index, chunks);
+		
+		// Removes the chunks that are no longer used. This is done only after the new index 
+		// is in place, so that the old index never refers to missing chunks.
+		File[] chunkFiles = getBankDirectory(bankName, bankType).listFiles();
+		if (chunkFiles != null)
+		{
+			for (File chunkFile : chunkFiles)
+			{
+				String fileName = chunkFile.getName();
+				if (fileName.startsWith("chunk") && fileName.endsWith(".xml"))
+				{
+					try
+					{
+						int chunk = Integer.parseInt(fileName.substring(5, fileName.length() - 4));
+						if (chunk >= chunkCount)
+							chunkFile.delete();
+					}
+					catch (NumberFormatException e)
+					{
+						// Not a chunk file
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public Collection<Variable> readBank(String bankName, DataType bankType)
+			throws RecordingFailedException
+	{
+		BankChunkIndex index = readChunkIndex(bankName, bankType);
+		List<Variable> contents = new ArrayList<>(index.size());
+		for (int i = 0; i < index.getChunkCount(); i++)
+		{
+			contents.addAll(readChunk(bankName, bankType, i));
+		}
+		
+		return contents;
+	}
+
+	@Override
+	public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
+	{
+		File resourceDirectory = this.bankDirectory.resolve(resourceType.getName()).toFile();
+		
+		List<String> bankNames = new ArrayList<>();
+		File[] bankDirectories = resourceDirectory.listFiles();
+		if (bankDirectories != null)
+		{
+			for (File directory : bankDirectories)
+			{
+				if (new File(directory, INDEX_FILE_NAME).exists())
+					bankNames.add(directory.getName());
+			}
+		}
+		
+		return bankNames;
+	}
+	
+	@Override
+	public long getBankVersion(String bankName, DataType bankType) 
+			throws RecordingFailedException
+	{
+		// The index is written last, so its version works as the bank version
+		return XmlFileBankRecorder.getFileVersion(getIndexFile(bankName, bankType));
+	}
+
+	@Override
+	public BankChunkIndex readChunkIndex(String bankName, DataType bankType)
+			throws RecordingFailedException
+	{
+		File indexFile = getIndexFile(bankName, bankType);
+		if (!indexFile.exists())
+			return new BankChunkIndex(1);
+		
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(indexFile))))
+		{
+			int chunkCount = input.readInt();
+			BankChunkIndex index = new BankChunkIndex(chunkCount);
+			for (int chunk = 0; chunk < chunkCount; chunk++)
+			{
+				int resourceCount = input.readInt();
+				for (int i = 0; i < resourceCount; i++)
+				{
+					index.add(BinaryValueCodec.readString(input), chunk);
+				}
+			}
+			
+			return index;
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read the chunk index of bank " + 
+					bankName, e);
+		}
+	}
+
+	@Override
+	public Collection<Variable> readChunk(String bankName, DataType bankType, int chunk)
+			throws RecordingFailedException
+	{
+		File chunkFile = getChunkFile(bankName, bankType, chunk);
+		if (!chunkFile.exists())
+			return new ArrayList<>();
+		
+		return XmlFileBankRecorder.readBankFile(chunkFile, bankType);
+	}
+
+	@Override
+	public void writeChunks(String bankName, DataType bankType, BankChunkIndex index,
+			Map<Integer, ? extends Collection<? extends Variable>> chunks) 
+			throws RecordingFailedException
+	{
+		// The chunks are first written into temporary files, which replace the chunk files 
+		// once all of them have been written
+		List<File[]> replacements = new ArrayList<>();
+		try
+		{
+			for (Integer chunk : chunks.keySet())
+			{
+				File chunkFile = getChunkFile(bankName, bankType, chunk);
+				File tempFile = new File(chunkFile.getPath() + ".tmp");
+				replacements.add(new File[] {tempFile, chunkFile});
+				XmlFileBankRecorder.writeBankFile(tempFile, "chunk", chunks.get(chunk));
+			}
+			
+			for (File[] replacement : replacements)
+			{
+				Files.move(replacement[0].toPath(), replacement[1].toPath(), 
+						StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		catch (RecordingFailedException | IOException e)
+		{
+			for (File[] replacement : replacements)
+			{
+				replacement[0].delete();
+			}
+			throw new RecordingFailedException("Failed to write the chunks of bank " + 
+					bankName, e);
+		}
+		
+		// The index is written last, once all of the chunks are in place
+		File indexFile = getIndexFile(bankName, bankType);
+		File tempFile = new File(indexFile.getPath() + ".tmp");
+		try
+		{
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(tempFile))))
+			{
+				output.writeInt(index.getChunkCount());
+				for (int chunk = 0; chunk < index.getChunkCount(); chunk++)
+				{
+					List<String> resourceNames = index.getResourceNames(chunk);
+					output.writeInt(resourceNames.size());
+					for (String resourceName : resourceNames)
+					{
+						BinaryValueCodec.writeString(resourceName, output);
+					}
+				}
+			}
+			Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			tempFile.delete();
+			throw new RecordingFailedException("Failed to write the chunk index of bank " + 
+					bankName, e);
+		}
+	}
+
+	@Override
+	public int getChunkSize()
+	{
+		return this.chunkSize;
+	}
+	
+	@Override
+	public int getChunkFor(String resourceName, int chunkCount)
+	{
+		if (this.grouping != null)
+			return this.grouping.getChunk(resourceName, chunkCount);
+		
+		// By default, each chunk covers an equal range of name hashes
+		long hash = resourceName.toLowerCase().hashCode() & 0xFFFFFFFFL;
+		return (int) ((hash * chunkCount) >>> 32);
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	private File getBankDirectory(String bankName, DataType bankType)
+	{
+		return this.bankDirectory.resolve(bankType.getName()).resolve(bankName).toFile();
+	}
+	
+	private File getIndexFile(String bankName, DataType bankType)
+	{
+		return new File(getBankDirectory(bankName, bankType), INDEX_FILE_NAME);
+	}
+	
+	private File getChunkFile(String bankName, DataType bankType, int chunk)
+	{
+		return new File(getBankDirectory(bankName, bankType), "chunk" + chunk + ".xml");
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	/**
+	 * Chunk groupings determine which chunk each resource is stored in
+	 * @author Mikko Hilpinen
+	 * @since 22.5.2016
+	 */
+	public static interface ChunkGrouping
+	{
+		/**
+		 * Determines the chunk of a resource
+		 * @param resourceName The name of the resource
+		 * @param chunkCount The amount of chunks in the bank
+		 * @return The index of the chunk the resource is stored in [0, chunkCount[
+		 */
+		public int getChunk(String resourceName, int chunkCount);
+	}
+}
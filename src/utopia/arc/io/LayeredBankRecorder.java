@@ -0,0 +1,193 @@
+package utopia.arc.io;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utopia.arc.generics.ArcDataType;
+import utopia.arc.resource.VersionedBankRecorder;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * This recorder chains multiple storage tiers together. The source recorder (usually an 
+ * {@link XmlFileBankRecorder}) is the source of truth, while a binary file cache and an 
+ * in-memory cache are used for reading the bank data quickly. When a faster tier is missing 
+ * or out of date, it is compiled from the slower tier. The tiers are kept consistent by 
+ * comparing the source data version. All writes go through to the source. Blob banks are 
+ * not stored in the binary cache since their data is already kept in separate blob files.
+ * @author Mikko Hilpinen
+ * @since 16.5.2016
+ */
+public class LayeredBankRecorder implements VersionedBankRecorder
+{
+	// ATTRIBUTES	------------------
+	
+	private VersionedBankRecorder source;
+	private BinaryFileBankRecorder cache;
+	private Map<String, CachedBank> memory = null;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new layered recorder
+	 * @param source The recorder that holds the original bank data
+	 * @param cache The recorder that holds the compiled copies of the source data
+	 * @param useMemoryCache Should the bank data also be cached in memory. The memory cache 
+	 * makes repeated reads of the same bank very fast but keeps a copy of each read bank 
+	 * in memory.
+	 */
+	public LayeredBankRecorder(VersionedBankRecorder source, BinaryFileBankRecorder cache, 
+			boolean useMemoryCache)
+	{
+		this.source = source;
+		this.cache = cache;
+		if (useMemoryCache)
+			this.memory = new ConcurrentHashMap<>();
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+
+	@Override
+	public void writeBank(String bankName, DataType bankType,
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		// The contents are copied first so that every tier receives the same data, even if 
+		// the caller keeps modifying the original variables
+		List<Variable> written = CachedBank.copy(contents);
+		
+		// Writes to the source first, then updates the faster tiers to match the new version
+		this.source.writeBank(bankName, bankType, written);
+		long version = this.source.getBankVersion(bankName, bankType);
+		
+		if (usesBinaryCache(bankType))
+			this.cache.writeBank(bankName, bankType, written, version);
+		if (this.memory != null)
+			this.memory.put(getKey(bankName, bankType), new CachedBank(version, written));
+	}
+
+	@Override
+	public Collection<Variable> readBank(String bankName, DataType bankType) 
+			throws RecordingFailedException
+	{
+		long version = this.source.getBankVersion(bankName, bankType);
+		
+		// Checks the memory cache first
+		String key = getKey(bankName, bankType);
+		if (this.memory != null)
+		{
+			CachedBank cached = this.memory.get(key);
+			if (cached != null && cached.version == version)
+				return cached.copyContents();
+		}
+		
+		// Then the binary cache. If that is out of date or can't be read, it is compiled 
+		// from the source.
+		Collection<Variable> contents = null;
+		boolean useCache = version != 0 && usesBinaryCache(bankType);
+		if (useCache)
+		{
+			try
+			{
+				if (this.cache.getBankVersion(bankName, bankType) == version)
+					contents = this.cache.readBank(bankName, bankType);
+			}
+			catch (RecordingFailedException e)
+			{
+				// The cache is simply recompiled
+			}
+		}
+		if (contents == null)
+		{
+			contents = this.source.readBank(bankName, bankType);
+			if (useCache)
+				this.cache.writeBank(bankName, bankType, contents, version);
+		}
+		
+		if (this.memory != null)
+		{
+			CachedBank cached = new CachedBank(version, contents);
+			this.memory.put(key, cached);
+			return cached.copyContents();
+		}
+		else
+			return contents;
+	}
+
+	@Override
+	public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
+	{
+		return this.source.readBankNames(resourceType);
+	}
+
+	@Override
+	public long getBankVersion(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		return this.source.getBankVersion(bankName, bankType);
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Clears the in-memory cache. The binary cache is kept intact.
+	 */
+	public void clearMemoryCache()
+	{
+		if (this.memory != null)
+			this.memory.clear();
+	}
+	
+	private static boolean usesBinaryCache(DataType bankType)
+	{
+		return !bankType.equals(ArcDataType.BLOB);
+	}
+	
+	private static String getKey(String bankName, DataType bankType)
+	{
+		return bankType.getName() + "/" + bankName.toLowerCase();
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	private static class CachedBank
+	{
+		// ATTRIBUTES	--------------
+		
+		private final long version;
+		private final List<Variable> contents;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public CachedBank(long version, Collection<? extends Variable> contents)
+		{
+			this.version = version;
+			this.contents = copy(contents);
+		}
+		
+		
+		// OTHER METHODS	----------
+		
+		public List<Variable> copyContents()
+		{
+			// The variables are copied since the banks may modify them
+			return copy(this.contents);
+		}
+		
+		private static List<Variable> copy(Collection<? extends Variable> variables)
+		{
+			List<Variable> copy = new ArrayList<>(variables.size());
+			for (Variable var : variables)
+			{
+				copy.add(new Variable(var.getName(), var.getValue()));
+			}
+			return copy;
+		}
+	}
+}
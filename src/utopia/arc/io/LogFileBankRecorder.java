@@ -0,0 +1,514 @@
+package utopia.arc.io;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.zip.CRC32;
+
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.arc.resource.IncrementalBankRecorder;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+import utopia.flow.io.FileUtils;
+
+/**
+ * This recorder stores each bank as a checkpoint file and a log of the changes made after 
+ * the checkpoint. Saving changes only appends them to the log, which makes frequent small 
+ * saves cheap. Each log record carries a checksum, and the log is read up to the first 
+ * record that is incomplete or damaged. Once the log grows large enough compared to the 
+ * checkpoint, the two are compacted into a new checkpoint.
+ * @author Mikko Hilpinen
+ * @since 28.5.2016
+ * @see BinaryValueCodec
+ */
+public class LogFileBankRecorder implements IncrementalBankRecorder
+{
+	// ATTRIBUTES	------------------
+	
+	private static final int CHECKPOINT_MAGIC = 0x4152434b; // "ARCK"
+	private static final int LOG_MAGIC = 0x4152434c; // "ARCL"
+	private static final String CHECKPOINT_FILE_TYPE = "checkpoint";
+	private static final String LOG_FILE_TYPE = "log";
+	private static final long MIN_COMPACTION_SIZE = 64 * 1024;
+	private static final int HEADER_LENGTH = 12;
+	private static final int RECORD_HEADER_LENGTH = 8;
+	
+	private Path bankDirectory;
+	private double compactionRatio = 1;
+	private Executor compactionExecutor = null;
+	private Set<File> pendingCompactions = new HashSet<>();
+	private RecordingFailedException compactionFailure = null;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new bank recorder
+	 * @param bankDirectory The directory that contains all bank data (stored in separate 
+	 * directories for each resource type)
+	 */
+	public LogFileBankRecorder(Path bankDirectory)
+	{
+		this.bankDirectory = bankDirectory;
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+
+	@Override
+	public synchronized void writeBank(String bankName, DataType bankType, 
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		File checkpointFile = getTargetFile(bankName, bankType, CHECKPOINT_FILE_TYPE);
+		File targetDirectory = checkpointFile.getParentFile();
+		if (targetDirectory != null && !targetDirectory.exists())
+			targetDirectory.mkdirs();
+		
+		// Each checkpoint has a new generation. Logs written for older generations are ignored, 
+		// so the new checkpoint stays valid even if the old log couldn't be deleted.
+		long generation = readGeneration(checkpointFile, CHECKPOINT_MAGIC) + 1;
+		File tempFile = new File(checkpointFile.getPath() + ".tmp");
+		writeCheckpoint(tempFile, generation, contents);
+		moveCheckpoint(tempFile, checkpointFile);
+		
+		getTargetFile(bankName, bankType, LOG_FILE_TYPE).delete();
+	}
+	
+	@Override
+	public synchronized void writeChanges(String bankName, DataType bankType, 
+			Collection<? extends Variable> changed, Collection<String> removed) 
+			throws RecordingFailedException
+	{
+		throwCompactionFailure();
+		if (changed.isEmpty() && removed.isEmpty())
+			return;
+		
+		File checkpointFile = getTargetFile(bankName, bankType, CHECKPOINT_FILE_TYPE);
+		File logFile = getTargetFile(bankName, bankType, LOG_FILE_TYPE);
+		File targetDirectory = logFile.getParentFile();
+		if (targetDirectory != null && !targetDirectory.exists())
+			targetDirectory.mkdirs();
+		
+		try
+		{
+			// Each save is written as a single record prefixed with its length and checksum, 
+			// so that a partially written or damaged record can be recognised and ignored
+			ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+			DataOutputStream record = new DataOutputStream(buffer);
+			BinaryValueCodec.writeVariables(changed, record);
+			record.writeInt(removed.size());
+			for (String resourceName : removed)
+			{
+				BinaryValueCodec.writeString(resourceName, record);
+			}
+			record.flush();
+			
+			// A new log is started if there is none for the current checkpoint
+			long generation = readGeneration(checkpointFile, CHECKPOINT_MAGIC);
+			boolean append = readGeneration(logFile, LOG_MAGIC) == generation;
+			try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+					new FileOutputStream(logFile, append))))
+			{
+				if (!append)
+				{
+					output.writeInt(LOG_MAGIC);
+					output.writeLong(generation);
+				}
+				CRC32 checksum = new CRC32();
+				checksum.update(buffer.toByteArray());
+				output.writeInt(buffer.size());
+				output.writeInt((int) checksum.getValue());
+				buffer.writeTo(output);
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to save the bank changes", e);
+		}
+		
+		if (logFile.length() > Math.max(MIN_COMPACTION_SIZE, 
+				(long) (checkpointFile.length() * this.compactionRatio)))
+			scheduleCompaction(bankName, bankType, logFile);
+	}
+
+	@Override
+	public synchronized Collection<Variable> readBank(String bankName, DataType bankType) 
+			throws RecordingFailedException
+	{
+		File checkpointFile = getTargetFile(bankName, bankType, CHECKPOINT_FILE_TYPE);
+		File logFile = getTargetFile(bankName, bankType, LOG_FILE_TYPE);
+		
+		Map<String, Variable> contents = new LinkedHashMap<>();
+		long generation = readCheckpoint(checkpointFile, contents);
+		
+		// Replays the changes made after the checkpoint
+		if (logFile.exists() && readGeneration(logFile, LOG_MAGIC) == generation)
+		{
+			long validLength = replayLog(logFile, contents, HEADER_LENGTH);
+			
+			// A partially written or damaged record is cut off so that new records can be 
+			// appended after the valid ones
+			if (logFile.length() > validLength)
+			{
+				try (FileChannel channel = FileChannel.open(logFile.toPath(), 
+						StandardOpenOption.WRITE))
+				{
+					channel.truncate(validLength);
+				}
+				catch (IOException e)
+				{
+					throw new RecordingFailedException("Failed to repair bank log", e);
+				}
+			}
+		}
+		
+		return new ArrayList<>(contents.values());
+	}
+
+	@Override
+	public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
+	{
+		Path resourcePath = this.bankDirectory.resolve(resourceType.getName());
+		File resourceDirectory = resourcePath.toFile();
+		
+		// Banks that haven't been compacted yet may only have a log
+		Set<String> bankNames = new HashSet<>();
+		if (resourceDirectory.exists() && resourceDirectory.isDirectory())
+		{
+			for (String fileType : new String[] {CHECKPOINT_FILE_TYPE, LOG_FILE_TYPE})
+			{
+				String[] bankFileNames = FileUtils.findFileNamesIn(resourceDirectory, fileType);
+				if (bankFileNames == null)
+					throw new RecordingFailedException("Couldn't read file names under " + resourcePath);
+				for (String fileName : bankFileNames)
+				{
+					bankNames.add(fileName.substring(0, fileName.lastIndexOf('.')));
+				}
+			}
+		}
+		
+		return new ArrayList<>(bankNames);
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Changes how large the log may grow before it is compacted
+	 * @param ratio The maximum size of the log compared to the checkpoint size (default 1). 
+	 * Logs smaller than 64 kB are never compacted.
+	 */
+	public void setCompactionRatio(double ratio)
+	{
+		this.compactionRatio = ratio;
+	}
+	
+	/**
+	 * Makes the recorder compact the logs in the background. If a background compaction 
+	 * fails, the failure is thrown from the next {@link #writeChanges(String, DataType, 
+	 * Collection, Collection)} or {@link #compact(String, DataType)} call. The log stays 
+	 * valid, so the compaction is simply tried again later.
+	 * @param executor The executor that performs the compaction. Null if the compaction 
+	 * should be done during the save that grows the log too large (default).
+	 */
+	public void setCompactionExecutor(Executor executor)
+	{
+		this.compactionExecutor = executor;
+	}
+	
+	/**
+	 * Writes a bank's log into a new checkpoint. The new checkpoint is written while the 
+	 * bank may still be read and saved, and only the final file swap blocks the recorder.
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @throws RecordingFailedException If the compaction failed or if a background 
+	 * compaction had failed earlier
+	 */
+	public void compact(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		throwCompactionFailure();
+		compactLog(bankName, bankType);
+	}
+	
+	private void compactLog(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		File checkpointFile = getTargetFile(bankName, bankType, CHECKPOINT_FILE_TYPE);
+		File logFile = getTargetFile(bankName, bankType, LOG_FILE_TYPE);
+		long generation;
+		synchronized (this)
+		{
+			this.pendingCompactions.remove(logFile);
+			generation = readGeneration(checkpointFile, CHECKPOINT_MAGIC);
+		}
+		
+		// The checkpoint and the log are read and the new checkpoint is written outside the 
+		// lock. The records appended meanwhile are left for the swap.
+		Map<String, Variable> contents = new LinkedHashMap<>();
+		if (readCheckpoint(checkpointFile, contents) != generation)
+			return;
+		long compactedLength = HEADER_LENGTH;
+		if (logFile.exists() && readGeneration(logFile, LOG_MAGIC) == generation)
+			compactedLength = replayLog(logFile, contents, HEADER_LENGTH);
+		
+		File tempFile;
+		try
+		{
+			File targetDirectory = checkpointFile.getParentFile();
+			targetDirectory.mkdirs();
+			tempFile = Files.createTempFile(targetDirectory.toPath(), bankName, 
+					".compact").toFile();
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to create a file for the compaction", e);
+		}
+		writeCheckpoint(tempFile, generation + 1, contents.values());
+		
+		synchronized (this)
+		{
+			// If the bank was rewritten meanwhile, the compacted data is out of date
+			if (readGeneration(checkpointFile, CHECKPOINT_MAGIC) != generation)
+			{
+				tempFile.delete();
+				return;
+			}
+			
+			// The changes saved during the compaction are added to the new checkpoint
+			if (logFile.exists() && readGeneration(logFile, LOG_MAGIC) == generation && 
+					logFile.length() > compactedLength)
+			{
+				replayLog(logFile, contents, compactedLength);
+				writeCheckpoint(tempFile, generation + 1, contents.values());
+			}
+			
+			moveCheckpoint(tempFile, checkpointFile);
+			logFile.delete();
+		}
+	}
+	
+	private synchronized void throwCompactionFailure() throws RecordingFailedException
+	{
+		// A failed background compaction is reported only once
+		RecordingFailedException failure = this.compactionFailure;
+		this.compactionFailure = null;
+		if (failure != null)
+			throw failure;
+	}
+	
+	private void scheduleCompaction(final String bankName, final DataType bankType, 
+			File logFile) throws RecordingFailedException
+	{
+		if (this.compactionExecutor == null)
+			compactLog(bankName, bankType);
+		else if (this.pendingCompactions.add(logFile))
+		{
+			this.compactionExecutor.execute(new Runnable()
+			{
+				@Override
+				public void run()
+				{
+					try
+					{
+						compactLog(bankName, bankType);
+					}
+					catch (RecordingFailedException e)
+					{
+						// The failure is thrown from the next write, while the log stays valid
+						synchronized (LogFileBankRecorder.this)
+						{
+							LogFileBankRecorder.this.compactionFailure = 
+									new RecordingFailedException("Failed to compact bank " + 
+									bankName, e);
+						}
+					}
+				}
+			});
+		}
+	}
+	
+	private static long readCheckpoint(File checkpointFile, Map<String, Variable> contents) 
+			throws RecordingFailedException
+	{
+		if (!checkpointFile.exists())
+			return 0;
+		
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(checkpointFile))))
+		{
+			long generation = readHeader(input, CHECKPOINT_MAGIC);
+			for (Variable var : BinaryValueCodec.readVariables(input))
+			{
+				contents.put(var.getName().toLowerCase(), var);
+			}
+			return generation;
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read bank checkpoint", e);
+		}
+	}
+	
+	private static void writeCheckpoint(File file, long generation, 
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file))))
+		{
+			output.writeInt(CHECKPOINT_MAGIC);
+			output.writeLong(generation);
+			BinaryValueCodec.writeVariables(contents, output);
+		}
+		catch (IOException e)
+		{
+			file.delete();
+			throw new RecordingFailedException("Failed to save the bank checkpoint", e);
+		}
+	}
+	
+	private static void moveCheckpoint(File tempFile, File checkpointFile) 
+			throws RecordingFailedException
+	{
+		try
+		{
+			Files.move(tempFile.toPath(), checkpointFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			tempFile.delete();
+			throw new RecordingFailedException("Failed to save the bank checkpoint", e);
+		}
+	}
+	
+	private static long replayLog(File logFile, Map<String, Variable> contents, long start) 
+			throws RecordingFailedException
+	{
+		// Only the records present when the read starts are replayed
+		long fileLength = logFile.length();
+		long validLength = start;
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(logFile))))
+		{
+			readHeader(input, LOG_MAGIC);
+			long skipped = HEADER_LENGTH;
+			while (skipped < start)
+			{
+				long skippedNow = input.skip(start - skipped);
+				if (skippedNow <= 0)
+					throw new EOFException();
+				skipped += skippedNow;
+			}
+			while (validLength + RECORD_HEADER_LENGTH <= fileLength)
+			{
+				// A record with an impossible length or a wrong checksum marks the point 
+				// where the log was cut off
+				int length = input.readInt();
+				int expectedChecksum = input.readInt();
+				if (length <= 0 || length > fileLength - validLength - RECORD_HEADER_LENGTH)
+					break;
+				byte[] record = new byte[length];
+				input.readFully(record);
+				CRC32 checksum = new CRC32();
+				checksum.update(record);
+				if ((int) checksum.getValue() != expectedChecksum)
+					break;
+				
+				// The record is applied only if it can be read in full
+				List<Variable> changed;
+				List<String> removed;
+				try
+				{
+					DataInputStream recordInput = new DataInputStream(
+							new ByteArrayInputStream(record));
+					changed = BinaryValueCodec.readVariables(recordInput);
+					int removedCount = recordInput.readInt();
+					if (removedCount < 0)
+						break;
+					removed = new ArrayList<>();
+					for (int i = 0; i < removedCount; i++)
+					{
+						removed.add(BinaryValueCodec.readString(recordInput));
+					}
+				}
+				catch (IOException | RuntimeException e)
+				{
+					break;
+				}
+				
+				for (Variable var : changed)
+				{
+					contents.put(var.getName().toLowerCase(), var);
+				}
+				for (String resourceName : removed)
+				{
+					contents.remove(resourceName.toLowerCase());
+				}
+				validLength += RECORD_HEADER_LENGTH + length;
+			}
+		}
+		catch (EOFException e)
+		{
+			// The log ends in the middle of a record
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read bank log", e);
+		}
+		
+		return validLength;
+	}
+	
+	private static long readGeneration(File file, int magic) throws RecordingFailedException
+	{
+		if (!file.exists())
+			return magic == CHECKPOINT_MAGIC ? 0 : -1;
+		
+		try (DataInputStream input = new DataInputStream(new FileInputStream(file)))
+		{
+			return readHeader(input, magic);
+		}
+		catch (EOFException e)
+		{
+			// A log without a complete header is treated as if it didn't exist
+			return -1;
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read bank file header", e);
+		}
+	}
+	
+	private static long readHeader(DataInputStream input, int magic) throws IOException
+	{
+		if (input.readInt() != magic)
+			throw new IOException("Not a bank log or checkpoint file");
+		return input.readLong();
+	}
+	
+	private File getTargetFile(String bankName, DataType bankType, String fileType)
+	{
+		return this.bankDirectory.resolve(Paths.get(bankType.getName(), 
+				bankName + "." + fileType)).toFile();
+	}
+}
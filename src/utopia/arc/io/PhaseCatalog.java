@@ -0,0 +1,461 @@
+package utopia.arc.io;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.arc.resource.Phase;
+import utopia.arc.resource.PhaseSource;
+import utopia.flow.generics.DataTypes;
+
+/**
+ * A phase catalog indexes a phase file written with 
+ * {@link PhaseRecorder#writePhasesWithXml(Collection, File, boolean)} in a single streaming 
+ * pass. The phases themselves are parsed only when they are requested, starting from their 
+ * position in the file.
+ * @author Mikko Hilpinen
+ * @since 21.5.2016
+ */
+public class PhaseCatalog implements PhaseSource
+{
+	// ATTRIBUTES	------------------
+	
+	// The depths of the elements in a phase file: phases / list / element / phase / type / bank
+	private static final int ELEMENT_DEPTH = 3;
+	private static final int PHASE_DEPTH = 4;
+	
+	private File file;
+	private Map<String, PhaseEntry> index = new LinkedHashMap<>();
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new catalog by indexing the phases in a file
+	 * @param file The phase file
+	 * @throws RecordingFailedException If the file couldn't be read
+	 */
+	public PhaseCatalog(File file) throws RecordingFailedException
+	{
+		this.file = file;
+		
+		// The element boundaries are found from the raw bytes, so that the byte position 
+		// of each phase is known exactly
+		try (ByteScanner scanner = new ByteScanner(new BufferedInputStream(
+				new FileInputStream(file))))
+		{
+			int depth = 0;
+			long elementOffset = -1;
+			int b;
+			while ((b = scanner.read()) >= 0)
+			{
+				if (b != '<')
+					continue;
+				
+				long tagOffset = scanner.getPosition() - 1;
+				int next = scanner.readRequired();
+				// Declarations and processing instructions
+				if (next == '?')
+					scanner.skipPast("?>");
+				// Comments, character data and the document type
+				else if (next == '!')
+					scanner.skipDeclaration();
+				else if (next == '/')
+				{
+					scanner.skipPast(">");
+					depth --;
+				}
+				else
+				{
+					depth ++;
+					String elementName = scanner.readName(next);
+					if (depth == ELEMENT_DEPTH)
+						elementOffset = tagOffset;
+					else if (depth == PHASE_DEPTH)
+						this.index.put(elementName.toLowerCase(), 
+								new PhaseEntry(elementName, elementOffset));
+					
+					if (scanner.skipTag())
+						depth --;
+				}
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to index phases in " + file, e);
+		}
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public Collection<String> getPhaseNames()
+	{
+		Collection<String> names = new ArrayList<>(this.index.size());
+		for (PhaseEntry entry : this.index.values())
+		{
+			names.add(entry.name);
+		}
+		return names;
+	}
+	
+	@Override
+	public boolean containsPhase(String phaseName)
+	{
+		return this.index.containsKey(phaseName.toLowerCase());
+	}
+	
+	@Override
+	public Phase readPhase(String phaseName) throws RecordingFailedException
+	{
+		PhaseEntry entry = this.index.get(phaseName.toLowerCase());
+		if (entry == null)
+			return null;
+		
+		try
+		{
+			// Parses the phase starting from the indexed position. If the file has changed 
+			// since it was indexed, the whole file is scanned instead.
+			Phase phase = null;
+			try
+			{
+				phase = readPhaseAt(entry.offset);
+			}
+			catch (XMLStreamException e)
+			{
+				// The phase is searched from the whole file
+			}
+			if (phase == null || !phase.getName().equalsIgnoreCase(phaseName))
+				phase = findPhase(phaseName);
+			return phase;
+		}
+		catch (IOException | XMLStreamException e)
+		{
+			throw new RecordingFailedException("Failed to read phase " + phaseName, e);
+		}
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	private Phase readPhaseAt(long offset) throws IOException, XMLStreamException
+	{
+		if (offset < 0)
+			return null;
+		
+		try (FileChannel channel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ))
+		{
+			if (offset >= channel.size())
+				return null;
+			channel.position(offset);
+			
+			// The channel is now at the phase's list element, which is parsed as a document 
+			// of its own
+			Reader reader = new InputStreamReader(new BufferedInputStream(
+					Channels.newInputStream(channel)), StandardCharsets.UTF_8);
+			XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+			try
+			{
+				return parsePhase(xml, PHASE_DEPTH - ELEMENT_DEPTH + 1);
+			}
+			finally
+			{
+				xml.close();
+			}
+		}
+	}
+	
+	private Phase findPhase(String phaseName) throws IOException, XMLStreamException
+	{
+		try (Reader reader = openReader())
+		{
+			XMLStreamReader xml = XMLInputFactory.newInstance().createXMLStreamReader(reader);
+			try
+			{
+				int depth = 0;
+				while (xml.hasNext())
+				{
+					int event = xml.next();
+					if (event == XMLStreamConstants.START_ELEMENT)
+					{
+						depth ++;
+						if (depth == PHASE_DEPTH && xml.getLocalName().equalsIgnoreCase(phaseName))
+							return readPhaseContents(xml, new Phase(xml.getLocalName()));
+					}
+					else if (event == XMLStreamConstants.END_ELEMENT)
+						depth --;
+				}
+				
+				return null;
+			}
+			finally
+			{
+				xml.close();
+			}
+		}
+	}
+	
+	private static Phase parsePhase(XMLStreamReader xml, int phaseDepth) throws XMLStreamException
+	{
+		// Finds the next phase element at the provided depth
+		int depth = 0;
+		while (xml.hasNext())
+		{
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				depth ++;
+				if (depth == phaseDepth)
+					return readPhaseContents(xml, new Phase(xml.getLocalName()));
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+				depth --;
+		}
+		
+		return null;
+	}
+	
+	private static Phase readPhaseContents(XMLStreamReader xml, Phase phase)
+			throws XMLStreamException
+	{
+		// The phase element contains the type elements, which contain the bank elements. 
+		// Stops at the end of the phase element.
+		String resourceTypeName = null;
+		int depth = 0;
+		while (xml.hasNext())
+		{
+			int event = xml.next();
+			if (event == XMLStreamConstants.START_ELEMENT)
+			{
+				depth ++;
+				if (depth == 1)
+					resourceTypeName = xml.getLocalName();
+				else if (depth == 2)
+					phase.addActiveBank(DataTypes.parseType(resourceTypeName), xml.getLocalName());
+			}
+			else if (event == XMLStreamConstants.END_ELEMENT)
+			{
+				if (depth == 0)
+					break;
+				depth --;
+			}
+		}
+		
+		return phase;
+	}
+	
+	private Reader openReader() throws IOException
+	{
+		return new InputStreamReader(new FileInputStream(this.file), StandardCharsets.UTF_8);
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	private static class PhaseEntry
+	{
+		// ATTRIBUTES	--------------
+		
+		private final String name;
+		private final long offset;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public PhaseEntry(String name, long offset)
+		{
+			this.name = name;
+			this.offset = offset;
+		}
+	}
+	
+	/**
+	 * This scanner reads the markup of an xml file byte by byte, keeping track of the 
+	 * position. Only the parts needed for finding the elements are interpreted.
+	 * @author Mikko Hilpinen
+	 * @since 21.5.2016
+	 */
+	private static class ByteScanner implements AutoCloseable
+	{
+		// ATTRIBUTES	--------------
+		
+		private final InputStream input;
+		private long position = 0;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public ByteScanner(InputStream input)
+		{
+			this.input = input;
+		}
+		
+		
+		// IMPLEMENTED METHODS	------
+		
+		@Override
+		public void close() throws IOException
+		{
+			this.input.close();
+		}
+		
+		
+		// ACCESSORS	--------------
+		
+		/**
+		 * @return The position of the next byte in the file
+		 */
+		public long getPosition()
+		{
+			return this.position;
+		}
+		
+		
+		// OTHER METHODS	----------
+		
+		/**
+		 * @return The next byte. -1 at the end of the file.
+		 * @throws IOException If the read failed
+		 */
+		public int read() throws IOException
+		{
+			int b = this.input.read();
+			if (b >= 0)
+				this.position ++;
+			return b;
+		}
+		
+		/**
+		 * @return The next byte
+		 * @throws IOException If the read failed or if the file ended
+		 */
+		public int readRequired() throws IOException
+		{
+			int b = read();
+			if (b < 0)
+				throw new EOFException("The file ends in the middle of a tag");
+			return b;
+		}
+		
+		/**
+		 * Skips the bytes up to and including the terminator
+		 * @param terminator The ascii sequence that ends the skipped part
+		 * @throws IOException If the read failed or if the file ended
+		 */
+		public void skipPast(String terminator) throws IOException
+		{
+			int matched = 0;
+			while (matched < terminator.length())
+			{
+				int b = readRequired();
+				if (b == terminator.charAt(matched))
+					matched ++;
+				else
+					matched = b == terminator.charAt(0) ? 1 : 0;
+			}
+		}
+		
+		/**
+		 * Skips a comment, a character data section or a document type declaration. The 
+		 * "<!" has already been read.
+		 * @throws IOException If the read failed or if the file ended
+		 */
+		public void skipDeclaration() throws IOException
+		{
+			int b = readRequired();
+			if (b == '-')
+			{
+				readRequired();
+				skipPast("-->");
+			}
+			else if (b == '[')
+				skipPast("]]>");
+			else
+			{
+				// The document type may contain an internal subset in brackets
+				int bracketDepth = 0;
+				while (b != '>' || bracketDepth > 0)
+				{
+					if (b == '[')
+						bracketDepth ++;
+					else if (b == ']')
+						bracketDepth --;
+					b = readRequired();
+				}
+			}
+		}
+		
+		/**
+		 * Reads the name of an element
+		 * @param first The first byte of the name, which has already been read
+		 * @return The element name. The byte after the name is left unread.
+		 * @throws IOException If the read failed or if the file ended
+		 */
+		public String readName(int first) throws IOException
+		{
+			ByteArrayOutputStream name = new ByteArrayOutputStream();
+			int b = first;
+			while (true)
+			{
+				name.write(b);
+				this.input.mark(1);
+				b = this.input.read();
+				if (b < 0 || b == '>' || b == '/' || Character.isWhitespace(b))
+				{
+					this.input.reset();
+					break;
+				}
+				this.position ++;
+			}
+			
+			return new String(name.toByteArray(), StandardCharsets.UTF_8);
+		}
+		
+		/**
+		 * Skips the rest of a start tag, including its attributes
+		 * @return Whether the tag was self-closing
+		 * @throws IOException If the read failed or if the file ended
+		 */
+		public boolean skipTag() throws IOException
+		{
+			int previous = 0;
+			while (true)
+			{
+				int b = readRequired();
+				if (b == '>')
+					return previous == '/';
+				// '>' may appear within attribute values
+				else if (b == '"' || b == '\'')
+				{
+					int quote = b;
+					while (readRequired() != quote)
+					{
+						// Skips the value
+					}
+				}
+				previous = b;
+			}
+		}
+	}
+}
@@ -0,0 +1,553 @@
+package utopia.arc.io;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import utopia.arc.generics.ArcDataType;
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.arc.resource.Bank;
+import utopia.arc.resource.BankBank;
+import utopia.arc.resource.Phase;
+import utopia.arc.resource.PhaseSource;
+import utopia.arc.resource.ResourceManager;
+import utopia.arc.resource.VersionedBankRecorder;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.DataTypes;
+import utopia.flow.generics.Variable;
+
+/**
+ * A resource snapshot stores a resource manager's phases, its bank catalog and the contents 
+ * of selected banks into a single file. Opening a snapshot only copies the file into an 
+ * off-heap buffer and indexes it, so a new process can introduce its phases and banks without parsing the 
+ * phase file or listing the bank directories. The snapshot is used as a recorder tier in 
+ * front of the source recorder: a bank is read from the snapshot only while its source 
+ * version matches the one recorded in the snapshot. Otherwise, and for banks not in the 
+ * snapshot, the source is used. The data types used in the snapshot need to be introduced 
+ * before it is opened.
+ * @author Mikko Hilpinen
+ * @since 7.6.2016
+ */
+public class ResourceSnapshot implements VersionedBankRecorder, PhaseSource
+{
+	// ATTRIBUTES	------------------
+	
+	private static final int MAGIC = 0x41524357; // "ARCW"
+	private static final int END_MAGIC = 0x57435241;
+	private static final int FORMAT_VERSION = 1;
+	
+	private VersionedBankRecorder source;
+	private ByteBuffer data;
+	private long creationTime;
+	private Map<String, Integer> phaseOffsets = new LinkedHashMap<>();
+	private Map<String, List<String>> catalog = new HashMap<>();
+	private Map<String, BankEntry> banks = new HashMap<>();
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Opens a snapshot. The file is copied into an off-heap buffer and checked to be 
+	 * complete. The file is not kept open or mapped, so the snapshot may be rewritten while 
+	 * it is in use. The bank contents are parsed only when the banks are read.
+	 * @param file The snapshot file
+	 * @param source The recorder that holds the original bank data
+	 * @throws RecordingFailedException If the file couldn't be read or if it isn't a 
+	 * complete snapshot
+	 * @see #write(Path, ResourceManager, VersionedBankRecorder, Collection)
+	 */
+	public ResourceSnapshot(Path file, VersionedBankRecorder source) throws RecordingFailedException
+	{
+		this.source = source;
+		
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ))
+		{
+			long size = channel.size();
+			if (size > Integer.MAX_VALUE)
+				throw new RecordingFailedException("The snapshot " + file + " is too large");
+			this.data = ByteBuffer.allocateDirect((int) size);
+			while (this.data.hasRemaining())
+			{
+				if (channel.read(this.data) < 0)
+					throw new RecordingFailedException("The snapshot " + file + " is incomplete");
+			}
+			this.data.flip();
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read the snapshot " + file, e);
+		}
+		
+		try
+		{
+			// The position of the view tells the offset of each indexed block
+			ByteBuffer view = this.data.duplicate();
+			DataInputStream input = new DataInputStream(new BufferInputStream(view));
+			if (input.readInt() != MAGIC || input.readInt() != FORMAT_VERSION)
+				throw new RecordingFailedException(file + " is not a supported snapshot");
+			this.creationTime = input.readLong();
+			
+			// The phases are indexed here but parsed only when requested
+			int phaseCount = input.readInt();
+			for (int i = 0; i < phaseCount; i++)
+			{
+				String phaseName = BinaryValueCodec.readString(input);
+				int length = input.readInt();
+				this.phaseOffsets.put(phaseName.toLowerCase(), view.position());
+				skip(input, length);
+			}
+			
+			int typeCount = input.readInt();
+			for (int i = 0; i < typeCount; i++)
+			{
+				String typeName = BinaryValueCodec.readString(input);
+				int bankCount = input.readInt();
+				List<String> bankNames = new ArrayList<>(bankCount);
+				for (int j = 0; j < bankCount; j++)
+				{
+					bankNames.add(BinaryValueCodec.readString(input));
+				}
+				this.catalog.put(typeName.toLowerCase(), bankNames);
+			}
+			
+			// Only the bank headers are read. The contents are skipped.
+			int bankCount = input.readInt();
+			for (int i = 0; i < bankCount; i++)
+			{
+				String typeName = BinaryValueCodec.readString(input);
+				String bankName = BinaryValueCodec.readString(input);
+				long version = input.readLong();
+				int length = input.readInt();
+				this.banks.put(getKey(bankName, typeName), new BankEntry(version, 
+						view.position(), length));
+				skip(input, length);
+			}
+			
+			// A snapshot that was cut short doesn't end with the end marker
+			if (input.readInt() != END_MAGIC || view.hasRemaining())
+				throw new RecordingFailedException("The snapshot " + file + " is incomplete");
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			throw new RecordingFailedException("The snapshot " + file + " is corrupted", e);
+		}
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public void writeBank(String bankName, DataType bankType, 
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		// The written data is newer than the snapshot's copy
+		this.source.writeBank(bankName, bankType, contents);
+		synchronized (this.banks)
+		{
+			this.banks.remove(getKey(bankName, bankType.getName()));
+		}
+		List<String> bankNames = this.catalog.get(bankType.getName().toLowerCase());
+		if (bankNames != null)
+		{
+			synchronized (bankNames)
+			{
+				if (!containsIgnoreCase(bankNames, bankName))
+					bankNames.add(bankName);
+			}
+		}
+	}
+	
+	@Override
+	public Collection<Variable> readBank(String bankName, DataType bankType)
+			throws RecordingFailedException
+	{
+		BankEntry entry;
+		synchronized (this.banks)
+		{
+			entry = this.banks.get(getKey(bankName, bankType.getName()));
+		}
+		
+		// The snapshot's copy is used only if the source hasn't changed since
+		if (entry != null && entry.version == this.source.getBankVersion(bankName, bankType))
+		{
+			try
+			{
+				return BinaryValueCodec.readVariables(openInput(entry.offset, entry.length));
+			}
+			catch (IOException | IllegalArgumentException e)
+			{
+				throw new RecordingFailedException("Failed to read bank " + bankName + 
+						" from the snapshot", e);
+			}
+		}
+		
+		return this.source.readBank(bankName, bankType);
+	}
+	
+	@Override
+	public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
+	{
+		List<String> bankNames = this.catalog.get(resourceType.getName().toLowerCase());
+		if (bankNames == null)
+			return this.source.readBankNames(resourceType);
+		
+		synchronized (bankNames)
+		{
+			return new ArrayList<>(bankNames);
+		}
+	}
+	
+	@Override
+	public long getBankVersion(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		return this.source.getBankVersion(bankName, bankType);
+	}
+	
+	@Override
+	public Collection<String> getPhaseNames()
+	{
+		List<String> names = new ArrayList<>(this.phaseOffsets.size());
+		for (int offset : this.phaseOffsets.values())
+		{
+			try
+			{
+				names.add(BinaryValueCodec.readString(openInput(offset, -1)));
+			}
+			catch (IOException e)
+			{
+				// The phase names were checked when the snapshot was opened
+			}
+		}
+		return names;
+	}
+	
+	@Override
+	public boolean containsPhase(String phaseName)
+	{
+		return this.phaseOffsets.containsKey(phaseName.toLowerCase());
+	}
+	
+	@Override
+	public Phase readPhase(String phaseName) throws RecordingFailedException
+	{
+		Integer offset = this.phaseOffsets.get(phaseName.toLowerCase());
+		if (offset == null)
+			return null;
+		
+		try
+		{
+			DataInputStream input = openInput(offset, -1);
+			Phase phase = new Phase(BinaryValueCodec.readString(input));
+			int typeCount = input.readInt();
+			for (int i = 0; i < typeCount; i++)
+			{
+				DataType resourceType = DataTypes.parseType(BinaryValueCodec.readString(input));
+				int bankCount = input.readInt();
+				for (int j = 0; j < bankCount; j++)
+				{
+					phase.addActiveBank(resourceType, BinaryValueCodec.readString(input));
+				}
+			}
+			return phase;
+		}
+		catch (IOException | IllegalArgumentException e)
+		{
+			throw new RecordingFailedException("Failed to read phase " + phaseName + 
+					" from the snapshot", e);
+		}
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return When the snapshot was written, in milliseconds since the epoch
+	 */
+	public long getCreationTime()
+	{
+		return this.creationTime;
+	}
+	
+	/**
+	 * @return The names of the resource types in the snapshot's bank catalog
+	 */
+	public Collection<String> getResourceTypeNames()
+	{
+		return new ArrayList<>(this.catalog.keySet());
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Checks whether the snapshot holds an up to date copy of a bank's contents
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @return Whether the bank would be read from the snapshot
+	 * @throws RecordingFailedException If the bank's source version couldn't be read
+	 */
+	public boolean isUpToDate(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		BankEntry entry;
+		synchronized (this.banks)
+		{
+			entry = this.banks.get(getKey(bankName, bankType.getName()));
+		}
+		return entry != null && entry.version == this.source.getBankVersion(bankName, bankType);
+	}
+	
+	/**
+	 * Writes a snapshot of a resource manager. The phases known by the manager and the 
+	 * names of all of its banks are written, along with the contents of the provided banks. 
+	 * The bank contents are read from the source, so that they match the recorded source 
+	 * versions. Chunked banks, blob banks, banks without a source version and banks written 
+	 * while the snapshot is being created are left out. Blob data stays in the source's blob 
+	 * files. The file is replaced only once the snapshot 
+	 * has been fully written.
+	 * @param file The file the snapshot is written into
+	 * @param manager The manager whose phases and banks are written
+	 * @param source The recorder the banks are read from
+	 * @param banks The banks whose contents are written
+	 * @throws RecordingFailedException If the snapshot couldn't be written
+	 */
+	public static void write(Path file, ResourceManager manager, VersionedBankRecorder source, 
+			Collection<? extends Bank<?>> banks) throws RecordingFailedException
+	{
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile.toFile()))))
+		{
+			output.writeInt(MAGIC);
+			output.writeInt(FORMAT_VERSION);
+			output.writeLong(System.currentTimeMillis());
+			
+			// Phases are written with their lengths, so that they can be skipped when indexing
+			List<Phase> phases = manager.getPhases();
+			output.writeInt(phases.size());
+			for (Phase phase : phases)
+			{
+				BinaryValueCodec.writeString(phase.getName(), output);
+				writeBlock(phaseToBytes(phase), output);
+			}
+			
+			List<BankBank<?>> bankBanks = manager.getBanks();
+			output.writeInt(bankBanks.size());
+			for (BankBank<?> bankBank : bankBanks)
+			{
+				BinaryValueCodec.writeString(bankBank.getContentType().getName(), output);
+				List<? extends Bank<?>> catalogBanks = bankBank.getBanks();
+				output.writeInt(catalogBanks.size());
+				for (Bank<?> bank : catalogBanks)
+				{
+					BinaryValueCodec.writeString(bank.getName(), output);
+				}
+			}
+			
+			// Only the banks that can be validated against their source are written. The 
+			// contents are read from the source, since the banks in memory may have been 
+			// read before the current version was written. A bank that changes while it is 
+			// being read is left out.
+			List<Bank<?>> writtenBanks = new ArrayList<>();
+			List<Long> versions = new ArrayList<>();
+			List<byte[]> contents = new ArrayList<>();
+			Set<String> keys = new HashSet<>();
+			for (Bank<?> bank : banks)
+			{
+				if (bank.isChunked() || bank.getContentType().equals(ArcDataType.BLOB) || 
+						!keys.add(getKey(bank.getName(), bank.getContentType().getName())))
+					continue;
+				long version = source.getBankVersion(bank.getName(), bank.getContentType());
+				if (version == 0)
+					continue;
+				
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+				DataOutputStream bankOutput = new DataOutputStream(bytes);
+				BinaryValueCodec.writeVariables(source.readBank(bank.getName(), 
+						bank.getContentType()), bankOutput);
+				bankOutput.close();
+				
+				if (version == source.getBankVersion(bank.getName(), bank.getContentType()))
+				{
+					writtenBanks.add(bank);
+					versions.add(version);
+					contents.add(bytes.toByteArray());
+				}
+			}
+			
+			output.writeInt(writtenBanks.size());
+			for (int i = 0; i < writtenBanks.size(); i++)
+			{
+				Bank<?> bank = writtenBanks.get(i);
+				BinaryValueCodec.writeString(bank.getContentType().getName(), output);
+				BinaryValueCodec.writeString(bank.getName(), output);
+				output.writeLong(versions.get(i));
+				writeBlock(contents.get(i), output);
+			}
+			
+			output.writeInt(END_MAGIC);
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to write the snapshot " + file, e);
+		}
+		
+		try
+		{
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to replace the snapshot " + file, e);
+		}
+	}
+	
+	private static byte[] phaseToBytes(Phase phase) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		BinaryValueCodec.writeString(phase.getName(), output);
+		output.writeInt(phase.getResourceTypes().size());
+		for (DataType resourceType : phase.getResourceTypes())
+		{
+			BinaryValueCodec.writeString(resourceType.getName(), output);
+			Set<String> bankNames = phase.getActiveBankNames(resourceType);
+			output.writeInt(bankNames.size());
+			for (String bankName : bankNames)
+			{
+				BinaryValueCodec.writeString(bankName, output);
+			}
+		}
+		output.close();
+		
+		return bytes.toByteArray();
+	}
+	
+	private static void writeBlock(byte[] block, DataOutputStream output) throws IOException
+	{
+		output.writeInt(block.length);
+		output.write(block);
+	}
+	
+	private DataInputStream openInput(int offset, int length)
+	{
+		// Each reader uses its own view of the mapped data
+		ByteBuffer view = this.data.duplicate();
+		view.position(offset);
+		if (length >= 0)
+			view.limit(offset + length);
+		return new DataInputStream(new BufferInputStream(view));
+	}
+	
+	private static void skip(DataInputStream input, int length) throws IOException
+	{
+		if (input.skipBytes(length) != length)
+			throw new IOException("Unexpected end of the snapshot");
+	}
+	
+	private static String getKey(String bankName, String typeName)
+	{
+		return typeName.toLowerCase() + "/" + bankName.toLowerCase();
+	}
+	
+	private static boolean containsIgnoreCase(List<String> names, String name)
+	{
+		for (String existing : names)
+		{
+			if (existing.equalsIgnoreCase(name))
+				return true;
+		}
+		return false;
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	private static class BankEntry
+	{
+		// ATTRIBUTES	--------------
+		
+		private final long version;
+		private final int offset, length;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public BankEntry(long version, int offset, int length)
+		{
+			this.version = version;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+	
+	private static class BufferInputStream extends InputStream
+	{
+		// ATTRIBUTES	--------------
+		
+		private final ByteBuffer buffer;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public BufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+		
+		
+		// IMPLEMENTED METHODS	------
+		
+		@Override
+		public int read()
+		{
+			if (!this.buffer.hasRemaining())
+				return -1;
+			return this.buffer.get() & 0xFF;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (len == 0)
+				return 0;
+			if (!this.buffer.hasRemaining())
+				return -1;
+			
+			int count = Math.min(len, this.buffer.remaining());
+			this.buffer.get(b, off, count);
+			return count;
+		}
+		
+		@Override
+		public long skip(long n)
+		{
+			int count = (int) Math.max(0, Math.min(n, this.buffer.remaining()));
+			this.buffer.position(this.buffer.position() + count);
+			return count;
+		}
+		
+		@Override
+		public int available()
+		{
+			return this.buffer.remaining();
+		}
+	}
+}
@@ -0,0 +1,282 @@
+package utopia.arc.io;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.arc.resource.Phase;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.DataTypes;
+
+/**
+ * This reader reads the events of a trace written with a {@link TraceRecorder}, one at a 
+ * time. The data types used in the trace need to be introduced before the trace is read.
+ * @author Mikko Hilpinen
+ * @since 3.6.2016
+ */
+public class TraceReader implements Closeable
+{
+	// ATTRIBUTES	------------------
+	
+	private DataInputStream input;
+	private long time = 0;
+	private List<String> names = new ArrayList<>();
+	private Map<String, Phase> phases = new HashMap<>();
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Opens a trace for reading
+	 * @param traceFile The file that contains the trace
+	 * @throws IOException If the file couldn't be opened or if it isn't a trace file
+	 */
+	public TraceReader(Path traceFile) throws IOException
+	{
+		this.input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(traceFile.toFile())));
+		if (this.input.readInt() != TraceRecorder.MAGIC)
+		{
+			this.input.close();
+			throw new IOException(traceFile + " is not a trace file");
+		}
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public void close() throws IOException
+	{
+		this.input.close();
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Reads the next event from the trace
+	 * @return The next event in the trace. Null if there are no more events. A trace that 
+	 * was cut in the middle of an event ends at the last complete event.
+	 * @throws IOException If the trace couldn't be read
+	 */
+	public TraceEvent next() throws IOException
+	{
+		try
+		{
+			while (true)
+			{
+				int tag = this.input.read();
+				switch (tag)
+				{
+					case -1: return null;
+					case TraceRecorder.TAG_NAME:
+						this.names.add(BinaryValueCodec.readString(this.input));
+						break;
+					case TraceRecorder.TAG_PHASE: readPhase(); break;
+					case TraceRecorder.TAG_TRANSITION:
+					{
+						this.time += readVarLong();
+						long duration = readVarLong();
+						int phaseCount = (int) readVarLong();
+						List<Phase> activePhases = new ArrayList<>(phaseCount);
+						for (int i = 0; i < phaseCount; i++)
+						{
+							activePhases.add(this.phases.get(readName()));
+						}
+						return new TraceEvent(EventType.TRANSITION, this.time, duration, 
+								activePhases, null, null, null);
+					}
+					case TraceRecorder.TAG_LOAD:
+					{
+						this.time += readVarLong();
+						DataType resourceType = DataTypes.parseType(readName());
+						String bankName = readName();
+						return new TraceEvent(EventType.LOAD, this.time, readVarLong(), null, 
+								resourceType, bankName, null);
+					}
+					case TraceRecorder.TAG_REQUEST:
+					{
+						this.time += readVarLong();
+						DataType resourceType = DataTypes.parseType(readName());
+						String bankName = readName();
+						return new TraceEvent(EventType.REQUEST, this.time, 0, null, 
+								resourceType, bankName, readName());
+					}
+					default: throw new IOException("Unknown trace record " + tag);
+				}
+			}
+		}
+		catch (EOFException e)
+		{
+			// The recording was interrupted in the middle of a record
+			return null;
+		}
+	}
+	
+	private void readPhase() throws IOException
+	{
+		// Each record replaces the previous version of the phase
+		Phase phase = new Phase(readName());
+		int typeCount = (int) readVarLong();
+		for (int i = 0; i < typeCount; i++)
+		{
+			DataType resourceType = DataTypes.parseType(readName());
+			int bankCount = (int) readVarLong();
+			for (int j = 0; j < bankCount; j++)
+			{
+				phase.addActiveBank(resourceType, readName());
+			}
+		}
+		
+		this.phases.put(phase.getName(), phase);
+	}
+	
+	private String readName() throws IOException
+	{
+		int index = (int) readVarLong();
+		if (index < 0 || index >= this.names.size())
+			throw new IOException("Unknown name index " + index);
+		return this.names.get(index);
+	}
+	
+	private long readVarLong() throws IOException
+	{
+		long value = 0;
+		int shift = 0;
+		while (true)
+		{
+			byte b = this.input.readByte();
+			value |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return value;
+			shift += 7;
+			if (shift > 63)
+				throw new IOException("Malformed number in the trace");
+		}
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	/**
+	 * These are the different kinds of events recorded in a trace
+	 * @author Mikko Hilpinen
+	 * @since 3.6.2016
+	 */
+	public static enum EventType
+	{
+		/**
+		 * The active phases changed
+		 */
+		TRANSITION, 
+		/**
+		 * A bank was initialised
+		 */
+		LOAD, 
+		/**
+		 * A resource was requested from a bank
+		 */
+		REQUEST;
+	}
+	
+	/**
+	 * A single event read from a trace. Only the properties that apply to the event's type 
+	 * are defined.
+	 * @author Mikko Hilpinen
+	 * @since 3.6.2016
+	 */
+	public static class TraceEvent
+	{
+		// ATTRIBUTES	--------------
+		
+		private final EventType type;
+		private final long time, duration;
+		private final List<Phase> phases;
+		private final DataType resourceType;
+		private final String bankName, resourceName;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		private TraceEvent(EventType type, long time, long duration, List<Phase> phases, 
+				DataType resourceType, String bankName, String resourceName)
+		{
+			this.type = type;
+			this.time = time;
+			this.duration = duration;
+			this.phases = phases;
+			this.resourceType = resourceType;
+			this.bankName = bankName;
+			this.resourceName = resourceName;
+		}
+		
+		
+		// ACCESSORS	--------------
+		
+		/**
+		 * @return The kind of the event
+		 */
+		public EventType getType()
+		{
+			return this.type;
+		}
+		
+		/**
+		 * @return When the event happened, in nanoseconds since the start of the trace
+		 */
+		public long getTime()
+		{
+			return this.time;
+		}
+		
+		/**
+		 * @return How long the transition or the load took, in nanoseconds
+		 */
+		public long getDuration()
+		{
+			return this.duration;
+		}
+		
+		/**
+		 * @return The phases that were active after the transition
+		 */
+		public List<Phase> getPhases()
+		{
+			return this.phases;
+		}
+		
+		/**
+		 * @return The type of the loaded or requested bank
+		 */
+		public DataType getResourceType()
+		{
+			return this.resourceType;
+		}
+		
+		/**
+		 * @return The name of the loaded or requested bank
+		 */
+		public String getBankName()
+		{
+			return this.bankName;
+		}
+		
+		/**
+		 * @return The name of the requested resource
+		 */
+		public String getResourceName()
+		{
+			return this.resourceName;
+		}
+	}
+}
@@ -0,0 +1,249 @@
+package utopia.arc.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.arc.resource.Phase;
+import utopia.arc.resource.ResourceTracer;
+import utopia.flow.generics.DataType;
+
+/**
+ * This tracer writes a compact binary trace of the phase transitions, bank loads and 
+ * resource requests into a file. Each name is written only once and later referred to 
+ * by its index. The phases are written along with their active banks, so that the trace 
+ * can be replayed without the original phase data.
+ * @author Mikko Hilpinen
+ * @since 3.6.2016
+ * @see TraceReader
+ * @see TraceReplayer
+ */
+public class TraceRecorder implements ResourceTracer, Closeable
+{
+	// ATTRIBUTES	------------------
+	
+	static final int MAGIC = 0x41524354; // "ARCT"
+	static final byte TAG_NAME = 0;
+	static final byte TAG_PHASE = 1;
+	static final byte TAG_TRANSITION = 2;
+	static final byte TAG_LOAD = 3;
+	static final byte TAG_REQUEST = 4;
+	
+	private DataOutputStream output;
+	private long lastTime;
+	private Map<String, Integer> names = new HashMap<>();
+	private Map<String, Integer> phaseVersions = new HashMap<>();
+	private IOException failure = null;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new recorder. The trace starts immediately.
+	 * @param traceFile The file the trace is written into. An existing file is replaced.
+	 * @throws IOException If the file couldn't be opened
+	 */
+	public TraceRecorder(Path traceFile) throws IOException
+	{
+		this.output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(traceFile.toFile())));
+		this.output.writeInt(MAGIC);
+		this.lastTime = System.nanoTime();
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public synchronized void onPhaseTransition(List<Phase> phases, long durationNanos)
+	{
+		if (!isRecording())
+			return;
+		
+		try
+		{
+			// Phases are written again whenever they have changed
+			for (Phase phase : phases)
+			{
+				Integer version = this.phaseVersions.get(phase.getName());
+				if (version == null || version != phase.getVersion())
+					writePhase(phase);
+			}
+			
+			writeEventStart(TAG_TRANSITION);
+			writeVarLong(durationNanos);
+			writeVarLong(phases.size());
+			for (Phase phase : phases)
+			{
+				writeVarLong(getNameIndex(phase.getName()));
+			}
+		}
+		catch (IOException e)
+		{
+			this.failure = e;
+		}
+	}
+	
+	@Override
+	public synchronized void onBankLoaded(DataType resourceType, String bankName, 
+			long durationNanos)
+	{
+		if (!isRecording())
+			return;
+		
+		try
+		{
+			int typeIndex = getNameIndex(resourceType.getName());
+			int bankIndex = getNameIndex(bankName);
+			writeEventStart(TAG_LOAD);
+			writeVarLong(typeIndex);
+			writeVarLong(bankIndex);
+			writeVarLong(durationNanos);
+		}
+		catch (IOException e)
+		{
+			this.failure = e;
+		}
+	}
+	
+	@Override
+	public synchronized void onResourceRequested(DataType resourceType, String bankName, 
+			String resourceName)
+	{
+		if (!isRecording())
+			return;
+		
+		try
+		{
+			int typeIndex = getNameIndex(resourceType.getName());
+			int bankIndex = getNameIndex(bankName);
+			int resourceIndex = getNameIndex(resourceName);
+			writeEventStart(TAG_REQUEST);
+			writeVarLong(typeIndex);
+			writeVarLong(bankIndex);
+			writeVarLong(resourceIndex);
+		}
+		catch (IOException e)
+		{
+			this.failure = e;
+		}
+	}
+	
+	/**
+	 * Ends the trace and closes the file. Events received after this are ignored.
+	 * @throws IOException If the trace couldn't be written or closed
+	 */
+	@Override
+	public synchronized void close() throws IOException
+	{
+		if (this.output == null)
+			return;
+		
+		try
+		{
+			this.output.close();
+		}
+		finally
+		{
+			this.output = null;
+		}
+		
+		if (this.failure != null)
+			throw this.failure;
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return Whether the recorder is still writing the trace. The recording stops when 
+	 * the recorder is closed or when writing the trace fails.
+	 */
+	public synchronized boolean isRecording()
+	{
+		return this.output != null && this.failure == null;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	private void writePhase(Phase phase) throws IOException
+	{
+		// The names are written before the phase record itself
+		int phaseIndex = getNameIndex(phase.getName());
+		Set<DataType> resourceTypes = phase.getResourceTypes();
+		int[][] bankIndices = new int[resourceTypes.size()][];
+		int[] typeIndices = new int[resourceTypes.size()];
+		int i = 0;
+		for (DataType resourceType : resourceTypes)
+		{
+			typeIndices[i] = getNameIndex(resourceType.getName());
+			Set<String> bankNames = phase.getActiveBankNames(resourceType);
+			bankIndices[i] = new int[bankNames.size()];
+			int j = 0;
+			for (String bankName : bankNames)
+			{
+				bankIndices[i][j ++] = getNameIndex(bankName);
+			}
+			i ++;
+		}
+		
+		this.output.writeByte(TAG_PHASE);
+		writeVarLong(phaseIndex);
+		writeVarLong(typeIndices.length);
+		for (i = 0; i < typeIndices.length; i++)
+		{
+			writeVarLong(typeIndices[i]);
+			writeVarLong(bankIndices[i].length);
+			for (int bankIndex : bankIndices[i])
+			{
+				writeVarLong(bankIndex);
+			}
+		}
+		
+		this.phaseVersions.put(phase.getName(), phase.getVersion());
+	}
+	
+	private void writeEventStart(byte tag) throws IOException
+	{
+		// Event times are written as differences to the previous event
+		long time = System.nanoTime();
+		this.output.writeByte(tag);
+		writeVarLong(Math.max(0, time - this.lastTime));
+		this.lastTime = time;
+	}
+	
+	private int getNameIndex(String name) throws IOException
+	{
+		Integer index = this.names.get(name);
+		if (index == null)
+		{
+			index = this.names.size();
+			this.names.put(name, index);
+			this.output.writeByte(TAG_NAME);
+			BinaryValueCodec.writeString(name, this.output);
+		}
+		
+		return index;
+	}
+	
+	private void writeVarLong(long value) throws IOException
+	{
+		// 7 bits are written at a time. The highest bit tells whether more bytes follow.
+		long remaining = value;
+		while ((remaining & ~0x7FL) != 0)
+		{
+			this.output.writeByte((int) ((remaining & 0x7F) | 0x80));
+			remaining >>>= 7;
+		}
+		this.output.writeByte((int) remaining);
+	}
+}
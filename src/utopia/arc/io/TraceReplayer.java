@@ -0,0 +1,553 @@
+package utopia.arc.io;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import utopia.arc.generics.ArcDataType;
+import utopia.arc.io.TraceReader.TraceEvent;
+import utopia.arc.resource.Bank;
+import utopia.arc.resource.Bank.ResourceLoadFailedException;
+import utopia.arc.resource.BankBank;
+import utopia.arc.resource.BankRecorder;
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.arc.resource.Phase;
+import utopia.arc.resource.ResourceManager;
+import utopia.arc.resource.ResourceManager.BudgetPolicy;
+import utopia.arc.resource.ResourceManager.PhaseTransition;
+import utopia.arc.resource.ResourceTracer;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Model.NoSuchAttributeException;
+
+/**
+ * This class replays a trace written with a {@link TraceRecorder} against a set of banks. 
+ * The same trace can be replayed with different recorders, retention settings and load 
+ * parallelism to see how they would perform under a realistic load. The replay measures 
+ * the latency of each phase transition and bank load, as well as the peak heap usage.
+ * @author Mikko Hilpinen
+ * @since 3.6.2016
+ */
+public class TraceReplayer
+{
+	// ATTRIBUTES	------------------
+	
+	private static final int HEAP_SAMPLE_INTERVAL = 1000;
+	
+	private BankRecorder recorder;
+	private int loadThreads = 0;
+	private boolean compressInactive = false;
+	private long memoryBudget = -1;
+	private boolean realTime = false;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new replayer
+	 * @param recorder The recorder the banks are read with during the replay
+	 */
+	public TraceReplayer(BankRecorder recorder)
+	{
+		this.recorder = recorder;
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @param loadThreads The amount of threads the banks are loaded with. 0 if the banks 
+	 * should be loaded synchronously during the transitions (default).
+	 * @see ResourceManager#setLoadExecutor(java.util.concurrent.Executor)
+	 */
+	public void setLoadThreads(int loadThreads)
+	{
+		this.loadThreads = loadThreads;
+	}
+	
+	/**
+	 * @param compress Should the inactive banks be compressed (default false)
+	 * @see ResourceManager#setCompressInactiveBanks(boolean)
+	 */
+	public void setCompressInactiveBanks(boolean compress)
+	{
+		this.compressInactive = compress;
+	}
+	
+	/**
+	 * @param maxBytes The memory budget used for each resource type. The retained inactive 
+	 * banks are evicted when the budget is exceeded. Negative if no budget should be 
+	 * used (default).
+	 * @see ResourceManager#setMemoryBudget(DataType, long, BudgetPolicy)
+	 */
+	public void setMemoryBudget(long maxBytes)
+	{
+		this.memoryBudget = maxBytes;
+	}
+	
+	/**
+	 * @param realTime Should the replay wait between the events as long as was waited when 
+	 * the trace was recorded (true) or replay the events as fast as possible (false, default)
+	 */
+	public void setRealTime(boolean realTime)
+	{
+		this.realTime = realTime;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Replays a trace. The recorded bank loads are not replayed as such, since the banks 
+	 * are loaded as part of the replayed transitions. When the banks are loaded in the 
+	 * background, each transition waits for its loads to complete before the following 
+	 * events are replayed. Failed bank loads are counted in the report and the replay 
+	 * continues.
+	 * @param traceFile The file that contains the trace
+	 * @return A report of the replay
+	 * @throws IOException If the trace couldn't be read
+	 * @throws RecordingFailedException If the bank names couldn't be read
+	 * @throws InterruptedException If the thread was interrupted during a real time replay
+	 */
+	public ReplayReport replay(Path traceFile) throws IOException, RecordingFailedException, 
+			InterruptedException
+	{
+		final ReplayReport report = new ReplayReport();
+		ResourceManager manager = new ResourceManager();
+		Map<DataType, BankBank<Object>> banks = new HashMap<>();
+		ExecutorService executor = null;
+		
+		manager.setCompressInactiveBanks(this.compressInactive);
+		if (this.loadThreads > 0)
+		{
+			executor = Executors.newFixedThreadPool(this.loadThreads);
+			manager.setLoadExecutor(executor);
+		}
+		manager.setTracer(new ResourceTracer()
+		{
+			@Override
+			public void onResourceRequested(DataType resourceType, String bankName, 
+					String resourceName)
+			{
+				// Requests are counted by the replay itself
+			}
+			
+			@Override
+			public void onPhaseTransition(List<Phase> phases, long durationNanos)
+			{
+				// Transitions are timed by the replay itself
+			}
+			
+			@Override
+			public void onBankLoaded(DataType resourceType, String bankName, long durationNanos)
+			{
+				report.addLoad(durationNanos);
+			}
+		});
+		
+		MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+		List<Phase> currentPhases = new ArrayList<>();
+		long startTime = System.nanoTime();
+		int eventCount = 0;
+		
+		try (TraceReader reader = new TraceReader(traceFile))
+		{
+			TraceEvent event;
+			while ((event = reader.next()) != null)
+			{
+				if (this.realTime)
+				{
+					long wait = event.getTime() - (System.nanoTime() - startTime);
+					if (wait > 0)
+						Thread.sleep(wait / 1000000, (int) (wait % 1000000));
+				}
+				
+				switch (event.getType())
+				{
+					case TRANSITION:
+						// The banks used in the phases are created as they are encountered
+						for (Phase phase : event.getPhases())
+						{
+							for (DataType resourceType : phase.getResourceTypes())
+							{
+								BankBank<Object> bankBank = getBankBank(manager, banks, 
+										resourceType);
+								for (String bankName : phase.getActiveBankNames(resourceType))
+								{
+									if (!bankBank.containsBankWithName(bankName))
+										bankBank.put(bankName);
+								}
+							}
+						}
+						
+						// The transition is complete once its banks have been loaded, like in 
+						// the traced program
+						long transitionStarted = System.nanoTime();
+						try
+						{
+							switchPhases(manager, currentPhases, event.getPhases());
+							currentPhases = event.getPhases();
+							if (executor != null)
+								manager.getLoadCompletion().join();
+						}
+						catch (RecordingFailedException | CompletionException e)
+						{
+							report.failedTransitions ++;
+						}
+						report.addTransition(System.nanoTime() - transitionStarted);
+						report.sampleHeap(memory.getHeapMemoryUsage().getUsed());
+						break;
+					case REQUEST:
+						BankBank<Object> bankBank = banks.get(event.getResourceType());
+						Bank<Object> bank = bankBank == null ? null : 
+								bankBank.get(event.getBankName());
+						if (bank == null)
+							report.missingResources ++;
+						else
+						{
+							try
+							{
+								bank.get(event.getResourceName());
+								report.requests ++;
+							}
+							catch (NoSuchAttributeException e)
+							{
+								report.missingResources ++;
+							}
+							catch (ResourceLoadFailedException e)
+							{
+								report.failedRequests ++;
+							}
+						}
+						break;
+					case LOAD: break;
+				}
+				
+				eventCount ++;
+				if (eventCount % HEAP_SAMPLE_INTERVAL == 0)
+					report.sampleHeap(memory.getHeapMemoryUsage().getUsed());
+			}
+		}
+		finally
+		{
+			if (executor != null)
+				executor.shutdownNow();
+		}
+		
+		report.duration = System.nanoTime() - startTime;
+		report.sampleHeap(memory.getHeapMemoryUsage().getUsed());
+		return report;
+	}
+	
+	private BankBank<Object> getBankBank(ResourceManager manager, 
+			Map<DataType, BankBank<Object>> banks, DataType resourceType) 
+			throws RecordingFailedException
+	{
+		BankBank<Object> bankBank = banks.get(resourceType);
+		if (bankBank == null)
+		{
+			bankBank = new BankBank<>(resourceType, this.recorder, false);
+			banks.put(resourceType, bankBank);
+			manager.introduceBank(bankBank);
+			if (this.memoryBudget >= 0)
+				manager.setMemoryBudget(resourceType, this.memoryBudget, BudgetPolicy.EVICT);
+		}
+		
+		return bankBank;
+	}
+	
+	private static void switchPhases(ResourceManager manager, List<Phase> oldPhases, 
+			List<Phase> newPhases) throws RecordingFailedException
+	{
+		// The phases are matched by name, since each phase definition in the trace is a 
+		// separate object. The changes are committed together, like in the traced program.
+		List<String> newNames = getNames(newPhases);
+		List<String> oldNames = getNames(oldPhases);
+		PhaseTransition transition = manager.beginTransition();
+		
+		for (Phase phase : oldPhases)
+		{
+			if (!newNames.contains(phase.getName()))
+				transition.endPhase(phase);
+		}
+		for (int i = 0; i < newPhases.size(); i++)
+		{
+			int oldIndex = oldNames.indexOf(newNames.get(i));
+			if (oldIndex < 0)
+				transition.startPhase(newPhases.get(i), false);
+			else if (oldPhases.get(oldIndex) != newPhases.get(i))
+				transition.switchPhase(oldPhases.get(oldIndex), newPhases.get(i));
+		}
+		
+		transition.commit();
+	}
+	
+	private static List<String> getNames(List<Phase> phases)
+	{
+		List<String> names = new ArrayList<>(phases.size());
+		for (Phase phase : phases)
+		{
+			names.add(phase.getName());
+		}
+		return names;
+	}
+	
+	/**
+	 * Replays a trace and prints the report. The arguments are the trace file, the bank 
+	 * directory and optionally any of the following: recorder=xml|binary|log, threads=n, 
+	 * compress, budget=bytes, realtime
+	 * @param args The replay arguments
+	 */
+	public static void main(String[] args)
+	{
+		if (args.length < 2)
+		{
+			System.err.println("Usage: TraceReplayer <trace file> <bank directory> " + 
+					"[recorder=xml|binary|log] [threads=n] [compress] [budget=bytes] [realtime]");
+			return;
+		}
+		
+		try
+		{
+			ArcDataType.initialise();
+			
+			Path bankDirectory = Paths.get(args[1]);
+			BankRecorder recorder = new XmlFileBankRecorder(bankDirectory);
+			int threads = 0;
+			boolean compress = false;
+			long budget = -1;
+			boolean realTime = false;
+			
+			for (String arg : Arrays.asList(args).subList(2, args.length))
+			{
+				if (arg.equalsIgnoreCase("recorder=binary"))
+					recorder = new BinaryFileBankRecorder(bankDirectory);
+				else if (arg.equalsIgnoreCase("recorder=log"))
+					recorder = new LogFileBankRecorder(bankDirectory);
+				else if (arg.equalsIgnoreCase("recorder=xml"))
+					recorder = new XmlFileBankRecorder(bankDirectory);
+				else if (arg.toLowerCase().startsWith("threads="))
+					threads = Integer.parseInt(arg.substring(8));
+				else if (arg.equalsIgnoreCase("compress"))
+					compress = true;
+				else if (arg.toLowerCase().startsWith("budget="))
+					budget = Long.parseLong(arg.substring(7));
+				else if (arg.equalsIgnoreCase("realtime"))
+					realTime = true;
+				else
+					System.err.println("Unknown argument " + arg);
+			}
+			
+			TraceReplayer replayer = new TraceReplayer(recorder);
+			replayer.setLoadThreads(threads);
+			replayer.setCompressInactiveBanks(compress);
+			replayer.setMemoryBudget(budget);
+			replayer.setRealTime(realTime);
+			
+			System.out.println(replayer.replay(Paths.get(args[0])));
+		}
+		catch (Exception e)
+		{
+			System.err.println("Replay failed");
+			e.printStackTrace();
+		}
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	/**
+	 * A replay report contains the measurements made during a replay
+	 * @author Mikko Hilpinen
+	 * @since 3.6.2016
+	 */
+	public static class ReplayReport
+	{
+		// ATTRIBUTES	--------------
+		
+		private List<Long> transitionTimes = new ArrayList<>();
+		private List<Long> loadTimes = Collections.synchronizedList(new ArrayList<Long>());
+		private long peakHeap = 0;
+		private long duration = 0;
+		private int requests = 0;
+		private int missingResources = 0;
+		private int failedTransitions = 0;
+		private int failedRequests = 0;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		private ReplayReport()
+		{
+			// Filled during the replay
+		}
+		
+		
+		// IMPLEMENTED METHODS	------
+		
+		@Override
+		public String toString()
+		{
+			StringBuilder s = new StringBuilder();
+			s.append("Replayed ").append(getTransitionCount()).append(" transitions, ");
+			s.append(getLoadCount()).append(" bank loads and ").append(this.requests);
+			s.append(" resource requests (").append(this.missingResources).append(" missing) in ");
+			s.append(this.duration / 1000000).append(" ms");
+			s.append("\nFailed transitions: ").append(this.failedTransitions);
+			s.append(", failed requests: ").append(this.failedRequests);
+			s.append("\nTransition latency (ms): ").append(describePercentiles(this.transitionTimes));
+			s.append("\nLoad latency (ms): ").append(describePercentiles(getLoadTimes()));
+			s.append("\nPeak heap: ").append(this.peakHeap / 1024).append(" kB");
+			return s.toString();
+		}
+		
+		
+		// ACCESSORS	--------------
+		
+		/**
+		 * @return The amount of replayed phase transitions
+		 */
+		public int getTransitionCount()
+		{
+			return this.transitionTimes.size();
+		}
+		
+		/**
+		 * @return The amount of banks loaded during the replay
+		 */
+		public int getLoadCount()
+		{
+			return this.loadTimes.size();
+		}
+		
+		/**
+		 * @return The amount of resources successfully requested during the replay
+		 */
+		public int getRequestCount()
+		{
+			return this.requests;
+		}
+		
+		/**
+		 * @return The amount of requested resources that couldn't be found during the replay
+		 */
+		public int getMissingResourceCount()
+		{
+			return this.missingResources;
+		}
+		
+		/**
+		 * @return The amount of transitions whose banks couldn't be loaded
+		 */
+		public int getFailedTransitionCount()
+		{
+			return this.failedTransitions;
+		}
+		
+		/**
+		 * @return The amount of requests that failed because the bank couldn't be loaded
+		 */
+		public int getFailedRequestCount()
+		{
+			return this.failedRequests;
+		}
+		
+		/**
+		 * @return The highest sampled heap usage during the replay, in bytes
+		 */
+		public long getPeakHeap()
+		{
+			return this.peakHeap;
+		}
+		
+		/**
+		 * @return How long the replay took, in nanoseconds
+		 */
+		public long getDuration()
+		{
+			return this.duration;
+		}
+		
+		
+		// OTHER METHODS	----------
+		
+		/**
+		 * Finds a percentile of the transition latencies
+		 * @param percentile The percentile [0, 100]
+		 * @return The transition latency at the percentile, in nanoseconds. 0 if no 
+		 * transitions were replayed.
+		 */
+		public long getTransitionLatency(double percentile)
+		{
+			return getPercentile(sorted(this.transitionTimes), percentile);
+		}
+		
+		/**
+		 * Finds a percentile of the bank load latencies
+		 * @param percentile The percentile [0, 100]
+		 * @return The load latency at the percentile, in nanoseconds. 0 if no banks were loaded.
+		 */
+		public long getLoadLatency(double percentile)
+		{
+			return getPercentile(sorted(getLoadTimes()), percentile);
+		}
+		
+		private void addTransition(long durationNanos)
+		{
+			this.transitionTimes.add(durationNanos);
+		}
+		
+		private void addLoad(long durationNanos)
+		{
+			this.loadTimes.add(durationNanos);
+		}
+		
+		private void sampleHeap(long usedBytes)
+		{
+			if (usedBytes > this.peakHeap)
+				this.peakHeap = usedBytes;
+		}
+		
+		private List<Long> getLoadTimes()
+		{
+			synchronized (this.loadTimes)
+			{
+				return new ArrayList<>(this.loadTimes);
+			}
+		}
+		
+		private static String describePercentiles(List<Long> times)
+		{
+			List<Long> sorted = sorted(times);
+			return String.format("p50 %.2f, p90 %.2f, p99 %.2f, max %.2f", 
+					getPercentile(sorted, 50) / 1000000.0, getPercentile(sorted, 90) / 1000000.0, 
+					getPercentile(sorted, 99) / 1000000.0, getPercentile(sorted, 100) / 1000000.0);
+		}
+		
+		private static List<Long> sorted(List<Long> times)
+		{
+			List<Long> sorted = new ArrayList<>(times);
+			Collections.sort(sorted);
+			return sorted;
+		}
+		
+		private static long getPercentile(List<Long> sorted, double percentile)
+		{
+			if (sorted.isEmpty())
+				return 0;
+			// Uses the nearest rank method
+			int rank = (int) Math.ceil(percentile / 100 * sorted.size());
+			return sorted.get(Math.min(sorted.size() - 1, Math.max(0, rank - 1)));
+		}
+	}
+}
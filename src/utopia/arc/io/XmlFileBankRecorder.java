@@ -1,165 +1,762 @@
-package utopia.arc.io;
-
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.List;
-
-import javax.xml.stream.XMLStreamException;
-
-import utopia.arc.resource.BankRecorder;
-import utopia.flow.generics.DataType;
-import utopia.flow.generics.Variable;
-import utopia.flow.io.FileUtils;
-import utopia.flow.io.XmlElementReader;
-import utopia.flow.io.XmlElementReader.ElementParseException;
-import utopia.flow.io.XmlElementReader.EndOfStreamReachedException;
-import utopia.flow.io.XmlElementWriter;
-import utopia.flow.structure.Element;
-import utopia.flow.structure.TreeNode;
-
-/**
- * This class keeps track of a bank's data in a single xml file
- * @author Mikko Hilpinen
- * @since 8.5.2016
- */
-public class XmlFileBankRecorder implements BankRecorder
-{
-	// ATTRIBUTES	------------------
-	
-	private Path bankDirectory;
-	
-	
-	// CONSTRUCTOR	------------------
-	
-	/**
-	 * Creates a new bank recorder which uses the provided file to store bank data
-	 * @param bankDirectory The directory that contains all bank data (which then is stored 
-	 * in multiple separate directories and files)
-	 */
-	public XmlFileBankRecorder(Path bankDirectory)
-	{
-		this.bankDirectory = bankDirectory;
-	}
-	
-	
-	// IMPLEMENTED METHODS	----------
-
-	@Override
-	public void writeBank(String bankName, DataType bankType, 
-			Collection<? extends Variable> contents) throws RecordingFailedException
-	{
-		// Determines the target file based on the bank content type and bank name
-		File targetFile = getTargetFile(bankName, bankType);
-		
-		// Tries to generate the directories for the target file
-		File targetDirectory = targetFile.getParentFile();
-		if (targetDirectory != null && !targetDirectory.exists())
-			targetDirectory.mkdirs();
-		
-		// Parses the content into elements first
-		TreeNode<Element> root = new TreeNode<>(new Element(bankName));
-		for (Variable var : contents)
-		{
-			root.addChild(new TreeNode<>(new Element(var.getName(), var.getValue())));
-		}
-		
-		// Writes the element data to the file
-		try
-		{
-			XmlElementWriter.writeElementIntoFile(root, targetFile, true);
-		}
-		catch (IOException | XMLStreamException e)
-		{
-			throw new RecordingFailedException("Failed to save the bank data to file", e);
-		}
-	}
-
-	@Override
-	public Collection<Variable> readBank(String bankName, DataType bankType) throws RecordingFailedException
-	{
-		// Parses the target file
-		File targetFile = getTargetFile(bankName, bankType);
-		
-		// If there is no file, there is no data
-		if (!targetFile.exists())
-			return new ArrayList<>();
-		
-		// Reads the bank data from the file
-		Collection<Variable> data = new ArrayList<>();
-		InputStream stream = null;
-		XmlElementReader reader = null;
-		try
-		{
-			stream = new FileInputStream(targetFile);
-			reader = new XmlElementReader(stream, true);
-			
-			// Reads each element under the root element
-			reader.skipToNextElement();
-			while (reader.hasNext())
-			{
-				Element resourceElement = reader.toNextSibling();
-				data.add(new Variable(resourceElement.getName(), resourceElement.getContent()));
-			}
-		}
-		catch (EndOfStreamReachedException e)
-		{
-			// Ignored
-		}
-		catch (FileNotFoundException | XMLStreamException | ElementParseException e)
-		{
-			throw new RecordingFailedException("Failed to read bank data", e);
-		}
-		finally
-		{
-			if (reader != null)
-				reader.closeQuietly();
-			if (stream != null)
-			{
-				try
-				{
-					stream.close();
-				}
-				catch (IOException e)
-				{
-					// Ignored
-				}
-			}
-		}
-		
-		return data;
-	}
-	
-	@Override
-	public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
-	{
-		Path resourcePath = this.bankDirectory.resolve(resourceType.getName());
-		File resourceDirectory = resourcePath.toFile();
-		
-		List<String> bankNames = new ArrayList<>();
-		if (resourceDirectory.exists() && resourceDirectory.isDirectory())
-		{
-			String[] bankFileNames = FileUtils.findFileNamesIn(resourceDirectory, "xml");
-			if (bankFileNames == null)
-				throw new RecordingFailedException("Couldn't read file names under " + resourcePath);
-			for (String fileName : bankFileNames)
-			{
-				bankNames.add(fileName.substring(0, fileName.lastIndexOf('.')));
-			}
-		}
-		
-		return bankNames;
-	}
-	
-	private File getTargetFile(String bankName, DataType bankType)
-	{
-		return this.bankDirectory.resolve(Paths.get(bankType.getName(), 
-				bankName + ".xml")).toFile();
-	}
-}
+package utopia.arc.io;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.xml.stream.XMLStreamException;
+
+import utopia.arc.generics.ArcDataType;
+import utopia.arc.resource.BatchBankRecorder;
+import utopia.arc.resource.Blob;
+import utopia.arc.resource.StreamingBankRecorder;
+import utopia.arc.resource.VersionedBankRecorder;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Value;
+import utopia.flow.generics.Variable;
+import utopia.flow.io.FileUtils;
+import utopia.flow.io.XmlElementReader;
+import utopia.flow.io.XmlElementReader.ElementParseException;
+import utopia.flow.io.XmlElementReader.EndOfStreamReachedException;
+import utopia.flow.io.XmlElementWriter;
+import utopia.flow.structure.Element;
+import utopia.flow.structure.TreeNode;
+
+/**
+ * This class keeps track of a bank's data in a single xml file. The data of blob banks is 
+ * stored in a separate .blob file next to the xml file. Each write creates a new blob file, 
+ * so that the blobs read earlier keep pointing to valid data. When multiple banks are 
+ * written at once, they are first written into temporary files and then committed together 
+ * using a manifest file. An interrupted commit is completed the next time the recorder 
+ * is used.
+ * @author Mikko Hilpinen
+ * @since 8.5.2016
+ */
+public class XmlFileBankRecorder implements VersionedBankRecorder, StreamingBankRecorder, 
+		BatchBankRecorder
+{
+	// ATTRIBUTES	------------------
+	
+	private static final String BLOB_FILE_TYPE = "blob";
+	private static final String MANIFEST_FILE_NAME = "commit.manifest";
+	// The blob files read or written in this process are kept until they are released
+	private static final Set<File> USED_BLOB_FILES = ConcurrentHashMap.newKeySet();
+	
+	private Path bankDirectory;
+	private Executor writeExecutor = null;
+	private volatile boolean commitChecked = false;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new bank recorder which uses the provided file to store bank data
+	 * @param bankDirectory The directory that contains all bank data (which then is stored 
+	 * in multiple separate directories and files)
+	 */
+	public XmlFileBankRecorder(Path bankDirectory)
+	{
+		this.bankDirectory = bankDirectory;
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+
+	@Override
+	public void writeBank(String bankName, DataType bankType, 
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		completeInterruptedCommit();
+		
+		// Determines the target file based on the bank content type and bank name
+		File targetFile = getTargetFile(bankName, bankType);
+		File tempFile = getTempFile(targetFile);
+		
+		// Blob data is stored in a separate file and only referenced in the xml. The new 
+		// blob file only takes effect once the xml file has been replaced.
+		Collection<? extends Variable> writtenContents = contents;
+		File blobFile = null;
+		try
+		{
+			if (bankType.equals(ArcDataType.BLOB))
+			{
+				blobFile = createBlobFile(bankName, bankType);
+				writtenContents = writeBlobData(blobFile, contents);
+			}
+			
+			writeBankFile(tempFile, bankName, writtenContents);
+			moveFile(tempFile, targetFile);
+		}
+		catch (RecordingFailedException e)
+		{
+			tempFile.delete();
+			if (blobFile != null)
+			{
+				blobFile.delete();
+				USED_BLOB_FILES.remove(blobFile.getAbsoluteFile());
+			}
+			throw e;
+		}
+		
+		if (blobFile != null)
+			deleteUnusedBlobFiles(bankName, bankType);
+	}
+	
+	@Override
+	public void writeBanks(Collection<? extends BankData> banks) throws RecordingFailedException
+	{
+		completeInterruptedCommit();
+		
+		// The banks are first written into temporary files, possibly in parallel. Each 
+		// written file is paired with the file it will replace.
+		final List<File[]> replacements = Collections.synchronizedList(new ArrayList<File[]>());
+		final List<File> blobFiles = Collections.synchronizedList(new ArrayList<File>());
+		// Once a write fails, the writes that haven't started yet are skipped
+		final AtomicBoolean failed = new AtomicBoolean(false);
+		Throwable failure = null;
+		
+		List<FutureTask<Void>> writes = new ArrayList<>();
+		for (final BankData bank : banks)
+		{
+			FutureTask<Void> write = new FutureTask<>(new Callable<Void>()
+			{
+				@Override
+				public Void call() throws RecordingFailedException
+				{
+					if (!failed.get())
+						writeTempFiles(bank, replacements, blobFiles);
+					return null;
+				}
+			});
+			writes.add(write);
+			
+			if (this.writeExecutor == null)
+				write.run();
+			else
+			{
+				try
+				{
+					this.writeExecutor.execute(write);
+				}
+				catch (RejectedExecutionException e)
+				{
+					writes.remove(write);
+					failed.set(true);
+					failure = e;
+					break;
+				}
+			}
+		}
+		
+		// Every write is waited for, so that no temporary file is written after the 
+		// failed writes have been cleaned up
+		boolean interrupted = false;
+		for (FutureTask<Void> write : writes)
+		{
+			while (true)
+			{
+				try
+				{
+					write.get();
+					break;
+				}
+				catch (InterruptedException e)
+				{
+					interrupted = true;
+					failed.set(true);
+					if (failure == null)
+						failure = e;
+				}
+				catch (ExecutionException e)
+				{
+					failed.set(true);
+					if (failure == null)
+						failure = e.getCause();
+					break;
+				}
+			}
+		}
+		if (interrupted)
+			Thread.currentThread().interrupt();
+		
+		if (failure != null)
+		{
+			// Nothing is committed if any of the writes fails
+			for (File[] replacement : replacements)
+			{
+				replacement[0].delete();
+			}
+			deleteBlobFiles(blobFiles);
+			
+			if (failure instanceof RecordingFailedException)
+				throw (RecordingFailedException) failure;
+			throw new RecordingFailedException("Failed to save the bank data", failure);
+		}
+		
+		// Once all of the data has been written, the files are replaced
+		commit(replacements, blobFiles);
+		
+		for (BankData bank : banks)
+		{
+			if (bank.getBankType().equals(ArcDataType.BLOB))
+				deleteUnusedBlobFiles(bank.getBankName(), bank.getBankType());
+		}
+	}
+
+	@Override
+	public Collection<Variable> readBank(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		completeInterruptedCommit();
+		
+		// Parses the target file
+		File targetFile = getTargetFile(bankName, bankType);
+		
+		// If there is no file, there is no data
+		if (!targetFile.exists())
+			return new ArrayList<>();
+		
+		List<Variable> data = readBankFile(targetFile, bankType);
+		if (bankType.equals(ArcDataType.BLOB))
+			markBlobFilesUsed(data);
+		return data;
+	}
+	
+	@Override
+	public void readBank(String bankName, DataType bankType, ResourceHandler handler)
+			throws RecordingFailedException
+	{
+		completeInterruptedCommit();
+		File targetFile = getTargetFile(bankName, bankType);
+		if (!targetFile.exists())
+			return;
+		
+		if (bankType.equals(ArcDataType.BLOB))
+		{
+			// The blob files are marked used before the resources are handed forward
+			final ResourceHandler targetHandler = handler;
+			readBankFile(targetFile, bankType, new ResourceHandler()
+			{
+				@Override
+				public boolean onResourceRead(Variable resource)
+				{
+					markBlobFilesUsed(Collections.singleton(resource));
+					return targetHandler.onResourceRead(resource);
+				}
+			});
+		}
+		else
+			readBankFile(targetFile, bankType, handler);
+	}
+	
+	@Override
+	public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
+	{
+		completeInterruptedCommit();
+		Path resourcePath = this.bankDirectory.resolve(resourceType.getName());
+		File resourceDirectory = resourcePath.toFile();
+		
+		List<String> bankNames = new ArrayList<>();
+		if (resourceDirectory.exists() && resourceDirectory.isDirectory())
+		{
+			String[] bankFileNames = FileUtils.findFileNamesIn(resourceDirectory, "xml");
+			if (bankFileNames == null)
+				throw new RecordingFailedException("Couldn't read file names under " + resourcePath);
+			for (String fileName : bankFileNames)
+			{
+				bankNames.add(fileName.substring(0, fileName.lastIndexOf('.')));
+			}
+		}
+		
+		return bankNames;
+	}
+	
+	@Override
+	public long getBankVersion(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		completeInterruptedCommit();
+		return getFileVersion(getTargetFile(bankName, bankType));
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Makes the recorder write the banks in parallel when multiple banks are saved at once
+	 * @param executor The executor that writes the banks. Null if the banks should be 
+	 * written one after another in the saving thread (default).
+	 * @see #writeBanks(Collection)
+	 */
+	public void setWriteExecutor(Executor executor)
+	{
+		this.writeExecutor = executor;
+	}
+	
+	/**
+	 * Deletes the old blob files of a bank. Each write creates a new blob file, while the 
+	 * files read or written earlier in this process are kept, so that the blobs using them 
+	 * stay readable. The blobs read before the bank was last written can't be read after 
+	 * this call, unless their data has been read already.
+	 * @param bankName The name of the bank
+	 * @throws RecordingFailedException If the bank's files couldn't be found
+	 */
+	public void releaseBlobFiles(String bankName) throws RecordingFailedException
+	{
+		completeInterruptedCommit();
+		
+		// The files referenced by the current xml file are still in use
+		Set<File> currentFiles = new HashSet<>();
+		File targetFile = getTargetFile(bankName, ArcDataType.BLOB);
+		if (targetFile.exists())
+		{
+			for (Variable var : readBankFile(targetFile, ArcDataType.BLOB))
+			{
+				Blob blob = ArcDataType.valueToBlob(var.getValue());
+				if (blob.isFileBased())
+					currentFiles.add(blob.getFile().toFile().getAbsoluteFile());
+			}
+		}
+		
+		for (File blobFile : findBlobFiles(bankName, ArcDataType.BLOB))
+		{
+			if (!currentFiles.contains(blobFile.getAbsoluteFile()))
+				USED_BLOB_FILES.remove(blobFile.getAbsoluteFile());
+		}
+		deleteUnusedBlobFiles(bankName, ArcDataType.BLOB);
+	}
+	
+	/**
+	 * Writes bank contents into an xml file
+	 * @param targetFile The file the contents are written into
+	 * @param rootName The name of the root element
+	 * @param contents The written contents
+	 * @throws RecordingFailedException If the writing failed
+	 */
+	static void writeBankFile(File targetFile, String rootName, 
+			Collection<? extends Variable> contents) throws RecordingFailedException
+	{
+		// Tries to generate the directories for the target file
+		File targetDirectory = targetFile.getParentFile();
+		if (targetDirectory != null && !targetDirectory.exists())
+			targetDirectory.mkdirs();
+		
+		// Parses the content into elements first
+		TreeNode<Element> root = new TreeNode<>(new Element(rootName));
+		for (Variable var : contents)
+		{
+			root.addChild(new TreeNode<>(new Element(var.getName(), var.getValue())));
+		}
+		
+		// Writes the element data to the file
+		try
+		{
+			XmlElementWriter.writeElementIntoFile(root, targetFile, true);
+		}
+		catch (IOException | XMLStreamException e)
+		{
+			throw new RecordingFailedException("Failed to save the bank data to file", e);
+		}
+	}
+	
+	/**
+	 * Reads bank contents from an xml file
+	 * @param targetFile The file the contents are read from
+	 * @param bankType The type of the bank's contents
+	 * @return The contents read from the file
+	 * @throws RecordingFailedException If the read failed
+	 */
+	static List<Variable> readBankFile(File targetFile, DataType bankType) 
+			throws RecordingFailedException
+	{
+		final List<Variable> data = new ArrayList<>();
+		readBankFile(targetFile, bankType, new ResourceHandler()
+		{
+			@Override
+			public boolean onResourceRead(Variable resource)
+			{
+				data.add(resource);
+				return true;
+			}
+		});
+		
+		return data;
+	}
+	
+	/**
+	 * Reads bank contents from an xml file, one resource at a time
+	 * @param targetFile The file the contents are read from
+	 * @param bankType The type of the bank's contents
+	 * @param handler The handler that receives each resource as soon as it is read. The 
+	 * reading stops between elements if the handler doesn't want to continue.
+	 * @throws RecordingFailedException If the read failed
+	 */
+	static void readBankFile(File targetFile, DataType bankType, ResourceHandler handler) 
+			throws RecordingFailedException
+	{
+		// Reads the bank data from the file
+		InputStream stream = null;
+		XmlElementReader reader = null;
+		try
+		{
+			stream = new FileInputStream(targetFile);
+			reader = new XmlElementReader(stream, true);
+			
+			// Reads each element under the root element
+			reader.skipToNextElement();
+			while (reader.hasNext())
+			{
+				Element resourceElement = reader.toNextSibling();
+				Value content = resourceElement.getContent();
+				// Blob files are located relative to the bank file
+				if (bankType.equals(ArcDataType.BLOB))
+					content = ArcDataType.Blob(ArcDataType.valueToBlob(content).resolveAgainst(
+							targetFile.getParentFile().toPath()));
+				if (!handler.onResourceRead(new Variable(resourceElement.getName(), content)))
+					break;
+			}
+		}
+		catch (EndOfStreamReachedException e)
+		{
+			// Ignored
+		}
+		catch (FileNotFoundException | XMLStreamException | ElementParseException e)
+		{
+			throw new RecordingFailedException("Failed to read bank data", e);
+		}
+		finally
+		{
+			if (reader != null)
+				reader.closeQuietly();
+			if (stream != null)
+			{
+				try
+				{
+					stream.close();
+				}
+				catch (IOException e)
+				{
+					// Ignored
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Finds the version of a file's contents
+	 * @param file The file
+	 * @return The version of the file. 0 for non-existing files.
+	 * @throws RecordingFailedException If the file attributes couldn't be read
+	 */
+	static long getFileVersion(File file) throws RecordingFailedException
+	{
+		if (!file.exists())
+			return 0;
+		
+		// The modification time alone may be too coarse to separate quick writes, so it is 
+		// combined with the file length
+		try
+		{
+			BasicFileAttributes attributes = Files.readAttributes(file.toPath(), 
+					BasicFileAttributes.class);
+			long version = 31 * attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS) + 
+					attributes.size();
+			return version == 0 ? 1 : version;
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to read the version of " + file, e);
+		}
+	}
+	
+	private void writeTempFiles(BankData bank, List<File[]> replacements, List<File> blobFiles) 
+			throws RecordingFailedException
+	{
+		File targetFile = getTargetFile(bank.getBankName(), bank.getBankType());
+		File tempFile = getTempFile(targetFile);
+		
+		// The blob file has a new name, so it doesn't need to replace anything
+		Collection<? extends Variable> writtenContents = bank.getContents();
+		if (bank.getBankType().equals(ArcDataType.BLOB))
+		{
+			File blobFile = createBlobFile(bank.getBankName(), bank.getBankType());
+			blobFiles.add(blobFile);
+			writtenContents = writeBlobData(blobFile, writtenContents);
+		}
+		
+		replacements.add(new File[] {tempFile, targetFile});
+		writeBankFile(tempFile, bank.getBankName(), writtenContents);
+	}
+	
+	private synchronized void commit(List<File[]> replacements, List<File> blobFiles) 
+			throws RecordingFailedException
+	{
+		// The manifest makes sure the replacements can be completed even if they are 
+		// interrupted. The paths are relative to the bank directory, so that the commit can 
+		// be completed from any working directory.
+		Path directory = this.bankDirectory.toAbsolutePath();
+		File manifestFile = this.bankDirectory.resolve(MANIFEST_FILE_NAME).toFile();
+		File tempManifest = getTempFile(manifestFile);
+		List<String> manifestLines = new ArrayList<>();
+		for (File[] replacement : replacements)
+		{
+			manifestLines.add(directory.relativize(replacement[0].toPath().toAbsolutePath()) + 
+					"\t" + directory.relativize(replacement[1].toPath().toAbsolutePath()));
+		}
+		try
+		{
+			this.bankDirectory.toFile().mkdirs();
+			Files.write(tempManifest.toPath(), manifestLines, StandardCharsets.UTF_8);
+			moveFile(tempManifest, manifestFile);
+		}
+		catch (IOException | RecordingFailedException e)
+		{
+			tempManifest.delete();
+			for (File[] replacement : replacements)
+			{
+				replacement[0].delete();
+			}
+			deleteBlobFiles(blobFiles);
+			throw new RecordingFailedException("Failed to commit the bank data", e);
+		}
+		
+		this.commitChecked = false;
+		completeInterruptedCommit();
+	}
+	
+	private void completeInterruptedCommit() throws RecordingFailedException
+	{
+		if (this.commitChecked)
+			return;
+		
+		// The recovery is synchronised with the commits, so that it never runs while the 
+		// files of a commit are being moved
+		synchronized (this)
+		{
+			if (!this.commitChecked)
+				completeManifest();
+		}
+	}
+	
+	private void completeManifest() throws RecordingFailedException
+	{
+		// If there is a manifest, the commit was interrupted and the remaining files 
+		// need to be moved in place
+		Path directory = this.bankDirectory.toAbsolutePath();
+		File manifestFile = this.bankDirectory.resolve(MANIFEST_FILE_NAME).toFile();
+		if (manifestFile.exists())
+		{
+			try
+			{
+				for (String line : Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8))
+				{
+					int separatorIndex = line.indexOf('\t');
+					if (separatorIndex < 0)
+						continue;
+					File tempFile = directory.resolve(line.substring(0, separatorIndex)).toFile();
+					if (tempFile.exists())
+						moveFile(tempFile, directory.resolve(
+								line.substring(separatorIndex + 1)).toFile());
+				}
+			}
+			catch (IOException e)
+			{
+				throw new RecordingFailedException("Failed to complete an interrupted commit", e);
+			}
+			manifestFile.delete();
+		}
+		
+		this.commitChecked = true;
+	}
+	
+	private static void moveFile(File from, File to) throws RecordingFailedException
+	{
+		try
+		{
+			Files.move(from.toPath(), to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to replace " + to, e);
+		}
+	}
+	
+	private static File getTempFile(File file)
+	{
+		return new File(file.getPath() + ".tmp");
+	}
+	
+	private List<Variable> writeBlobData(File blobFile, Collection<? extends Variable> contents) 
+			throws RecordingFailedException
+	{
+		// Writes the blob data one after another and references the data with offsets. 
+		// The previous blob files are left as they are, so the blobs read from them stay valid.
+		List<Variable> references = new ArrayList<>();
+		try (FileChannel output = FileChannel.open(blobFile.toPath(), StandardOpenOption.WRITE))
+		{
+			long offset = 0;
+			for (Variable var : contents)
+			{
+				Blob blob = ArcDataType.valueToBlob(var.getValue());
+				blob.transferTo(output);
+				
+				references.add(new Variable(var.getName(), ArcDataType.Blob(
+						new Blob(Paths.get(blobFile.getName()), offset, blob.length()))));
+				offset += blob.length();
+			}
+		}
+		catch (IOException e)
+		{
+			blobFile.delete();
+			USED_BLOB_FILES.remove(blobFile.getAbsoluteFile());
+			throw new RecordingFailedException("Failed to save the blob data to file", e);
+		}
+		
+		return references;
+	}
+	
+	private File createBlobFile(String bankName, DataType bankType) throws RecordingFailedException
+	{
+		// Each blob file is named after the bank and a generation number
+		File directory = getTargetFile(bankName, bankType).getParentFile();
+		directory.mkdirs();
+		long generation = 1;
+		for (File blobFile : findBlobFiles(bankName, bankType))
+		{
+			generation = Math.max(generation, getBlobGeneration(bankName, blobFile) + 1);
+		}
+		
+		try
+		{
+			while (true)
+			{
+				File blobFile = new File(directory, bankName + "." + generation + "." + 
+						BLOB_FILE_TYPE);
+				// The file is reserved before anyone else can use the name
+				if (blobFile.createNewFile())
+				{
+					USED_BLOB_FILES.add(blobFile.getAbsoluteFile());
+					return blobFile;
+				}
+				generation ++;
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to create a blob file for " + bankName, e);
+		}
+	}
+	
+	private List<File> findBlobFiles(String bankName, DataType bankType)
+	{
+		List<File> blobFiles = new ArrayList<>();
+		File directory = getTargetFile(bankName, bankType).getParentFile();
+		File[] files = directory.listFiles();
+		if (files == null)
+			return blobFiles;
+		
+		for (File file : files)
+		{
+			if (getBlobGeneration(bankName, file) >= 0)
+				blobFiles.add(file);
+		}
+		return blobFiles;
+	}
+	
+	private static long getBlobGeneration(String bankName, File file)
+	{
+		// The blob files are named <bank>.blob (generation 0) or <bank>.<generation>.blob
+		String fileName = file.getName();
+		String suffix = "." + BLOB_FILE_TYPE;
+		if (!fileName.regionMatches(true, 0, bankName + ".", 0, bankName.length() + 1) || 
+				!fileName.toLowerCase().endsWith(suffix))
+			return -1;
+		if (fileName.length() == bankName.length() + suffix.length())
+			return 0;
+		
+		String generation = fileName.substring(bankName.length() + 1, 
+				fileName.length() - suffix.length());
+		if (generation.isEmpty() || generation.length() > 18)
+			return -1;
+		for (int i = 0; i < generation.length(); i++)
+		{
+			if (!Character.isDigit(generation.charAt(i)))
+				return -1;
+		}
+		
+		// Another bank's blob file may look like a generation of this bank. For example, 
+		// bank "a.1" with a file "a.1.blob".
+		File otherBankFile = new File(file.getParentFile(), fileName.substring(0, 
+				fileName.length() - suffix.length()) + ".xml");
+		if (otherBankFile.exists())
+			return -1;
+		
+		return Long.parseLong(generation);
+	}
+	
+	private void markBlobFilesUsed(Collection<? extends Variable> blobs)
+	{
+		for (Variable var : blobs)
+		{
+			Blob blob = ArcDataType.valueToBlob(var.getValue());
+			if (blob.isFileBased())
+				USED_BLOB_FILES.add(blob.getFile().toFile().getAbsoluteFile());
+		}
+	}
+	
+	private void deleteUnusedBlobFiles(String bankName, DataType bankType)
+	{
+		// The files that are still referenced by blobs in use are left in place. Files that 
+		// can't be deleted are tried again on the next write.
+		for (File blobFile : findBlobFiles(bankName, bankType))
+		{
+			if (!USED_BLOB_FILES.contains(blobFile.getAbsoluteFile()))
+				blobFile.delete();
+		}
+	}
+	
+	private void deleteBlobFiles(List<File> blobFiles)
+	{
+		synchronized (blobFiles)
+		{
+			for (File blobFile : blobFiles)
+			{
+				blobFile.delete();
+				USED_BLOB_FILES.remove(blobFile.getAbsoluteFile());
+			}
+		}
+	}
+	
+	private File getTargetFile(String bankName, DataType bankType)
+	{
+		return getTargetFile(bankName, bankType, "xml");
+	}
+	
+	private File getTargetFile(String bankName, DataType bankType, String fileType)
+	{
+		return this.bankDirectory.resolve(Paths.get(bankType.getName(), 
+				bankName + "." + fileType)).toFile();
+	}
+}
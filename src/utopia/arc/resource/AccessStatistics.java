@@ -0,0 +1,322 @@
+package utopia.arc.resource;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ThreadLocalRandom;
+
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.flow.generics.DataType;
+
+/**
+ * Access statistics count how often each resource is requested during each phase. Only a 
+ * sample of the requests is counted, so keeping the statistics is cheap. The statistics 
+ * can be saved and read on the next run, where they are used for preparing the most used 
+ * resources first when banks are initialised.
+ * @author Mikko Hilpinen
+ * @since 4.6.2016
+ * @see ResourceManager#setAccessStatistics(AccessStatistics)
+ * @see Bank#setWarmupOrder(List)
+ */
+public class AccessStatistics implements ResourceTracer
+{
+	// ATTRIBUTES	------------------
+	
+	private static final int MAGIC = 0x41524353; // "ARCS"
+	
+	private final int sampleInterval;
+	private int hotSetSize = 64;
+	// Phase name -> bank key -> resource name -> weighted request count
+	private Map<String, Map<String, Map<String, Long>>> counts = new HashMap<>();
+	// Bank key -> names of the active phases that use the bank
+	private volatile Map<String, List<String>> activeBankPhases = new HashMap<>();
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new empty set of statistics
+	 * @param sampleInterval On average, how many requests there are per each counted 
+	 * request. 1 if every request should be counted.
+	 */
+	public AccessStatistics(int sampleInterval)
+	{
+		this.sampleInterval = Math.max(1, sampleInterval);
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public void onPhaseTransition(List<Phase> phases, long durationNanos)
+	{
+		// The phases using each bank are found once per transition, so that the requests 
+		// only need a single lookup
+		Map<String, List<String>> bankPhases = new HashMap<>();
+		for (Phase phase : phases)
+		{
+			String phaseKey = phase.getName().toLowerCase();
+			for (DataType resourceType : phase.getResourceTypes())
+			{
+				for (String bankName : phase.getActiveBankNames(resourceType))
+				{
+					String bankKey = getBankKey(resourceType, bankName);
+					List<String> phaseKeys = bankPhases.get(bankKey);
+					if (phaseKeys == null)
+					{
+						phaseKeys = new ArrayList<>();
+						bankPhases.put(bankKey, phaseKeys);
+					}
+					if (!phaseKeys.contains(phaseKey))
+						phaseKeys.add(phaseKey);
+				}
+			}
+		}
+		this.activeBankPhases = bankPhases;
+	}
+	
+	@Override
+	public void onBankLoaded(DataType resourceType, String bankName, long durationNanos)
+	{
+		// Loads are not counted
+	}
+	
+	@Override
+	public void onResourceRequested(DataType resourceType, String bankName, String resourceName)
+	{
+		// Each counted request stands for the requests that were skipped
+		if (this.sampleInterval > 1 && 
+				ThreadLocalRandom.current().nextInt(this.sampleInterval) != 0)
+			return;
+		
+		// The request is counted for each active phase that uses the bank
+		String bankKey = getBankKey(resourceType, bankName);
+		List<String> phaseKeys = this.activeBankPhases.get(bankKey);
+		if (phaseKeys == null)
+			return;
+		String resourceKey = resourceName.toLowerCase();
+		for (String phaseKey : phaseKeys)
+		{
+			addCount(phaseKey, bankKey, resourceKey, this.sampleInterval);
+		}
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return The maximum amount of resources returned as the hot set of a bank
+	 */
+	public int getHotSetSize()
+	{
+		return this.hotSetSize;
+	}
+	
+	/**
+	 * @param hotSetSize The maximum amount of resources returned as the hot set of a bank 
+	 * (default 64)
+	 */
+	public void setHotSetSize(int hotSetSize)
+	{
+		this.hotSetSize = hotSetSize;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Finds the most requested resources of a bank
+	 * @param phases The phases whose statistics are used
+	 * @param resourceType The type of the bank's contents
+	 * @param bankName The name of the bank
+	 * @return The names of the bank's most requested resources in lower case, the most 
+	 * requested first. At most {@link #getHotSetSize()} names are returned.
+	 */
+	public synchronized List<String> getHotResources(Collection<? extends Phase> phases, 
+			DataType resourceType, String bankName)
+	{
+		// Combines the counts of each phase
+		String bankKey = getBankKey(resourceType, bankName);
+		final Map<String, Long> combined = new HashMap<>();
+		for (Phase phase : phases)
+		{
+			Map<String, Map<String, Long>> phaseCounts = this.counts.get(
+					phase.getName().toLowerCase());
+			Map<String, Long> bankCounts = phaseCounts == null ? null : phaseCounts.get(bankKey);
+			if (bankCounts != null)
+			{
+				for (Entry<String, Long> entry : bankCounts.entrySet())
+				{
+					Long previous = combined.get(entry.getKey());
+					combined.put(entry.getKey(), previous == null ? entry.getValue() : 
+							previous + entry.getValue());
+				}
+			}
+		}
+		
+		List<String> names = new ArrayList<>(combined.keySet());
+		Collections.sort(names, new Comparator<String>()
+		{
+			@Override
+			public int compare(String a, String b)
+			{
+				return Long.compare(combined.get(b), combined.get(a));
+			}
+		});
+		
+		if (names.size() > this.hotSetSize)
+			return new ArrayList<>(names.subList(0, this.hotSetSize));
+		return names;
+	}
+	
+	/**
+	 * Finds the estimated amount of times a resource was requested during a phase
+	 * @param phaseName The name of the phase
+	 * @param resourceType The type of the bank's contents
+	 * @param bankName The name of the bank
+	 * @param resourceName The name of the resource
+	 * @return The estimated request count
+	 */
+	public synchronized long getRequestCount(String phaseName, DataType resourceType, 
+			String bankName, String resourceName)
+	{
+		Map<String, Map<String, Long>> phaseCounts = this.counts.get(phaseName.toLowerCase());
+		Map<String, Long> bankCounts = phaseCounts == null ? null : 
+				phaseCounts.get(getBankKey(resourceType, bankName));
+		Long count = bankCounts == null ? null : bankCounts.get(resourceName.toLowerCase());
+		return count == null ? 0 : count;
+	}
+	
+	/**
+	 * Halves each count, so that the old requests don't weigh as much as the new ones. 
+	 * The counts that reach zero are removed.
+	 */
+	public synchronized void decay()
+	{
+		for (Map<String, Map<String, Long>> phaseCounts : this.counts.values())
+		{
+			for (Map<String, Long> bankCounts : phaseCounts.values())
+			{
+				for (Entry<String, Long> entry : bankCounts.entrySet())
+				{
+					entry.setValue(entry.getValue() / 2);
+				}
+				bankCounts.values().removeAll(Collections.singleton(0L));
+			}
+		}
+	}
+	
+	/**
+	 * Removes all of the counts
+	 */
+	public synchronized void clear()
+	{
+		this.counts.clear();
+	}
+	
+	/**
+	 * Writes the statistics into a file. The file is replaced only once the statistics have 
+	 * been fully written.
+	 * @param file The file the statistics are written into
+	 * @throws IOException If the writing failed
+	 */
+	public synchronized void write(Path file) throws IOException
+	{
+		Path tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+		try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(tempFile.toFile()))))
+		{
+			output.writeInt(MAGIC);
+			output.writeInt(this.counts.size());
+			for (Entry<String, Map<String, Map<String, Long>>> phase : this.counts.entrySet())
+			{
+				BinaryValueCodec.writeString(phase.getKey(), output);
+				output.writeInt(phase.getValue().size());
+				for (Entry<String, Map<String, Long>> bank : phase.getValue().entrySet())
+				{
+					BinaryValueCodec.writeString(bank.getKey(), output);
+					output.writeInt(bank.getValue().size());
+					for (Entry<String, Long> resource : bank.getValue().entrySet())
+					{
+						BinaryValueCodec.writeString(resource.getKey(), output);
+						output.writeLong(resource.getValue());
+					}
+				}
+			}
+		}
+		
+		Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+	}
+	
+	/**
+	 * Reads statistics from a file and adds them to these statistics
+	 * @param file The file the statistics are read from
+	 * @throws IOException If the reading failed
+	 */
+	public synchronized void read(Path file) throws IOException
+	{
+		try (DataInputStream input = new DataInputStream(new BufferedInputStream(
+				new FileInputStream(file.toFile()))))
+		{
+			if (input.readInt() != MAGIC)
+				throw new IOException(file + " doesn't contain access statistics");
+			
+			int phaseCount = input.readInt();
+			for (int i = 0; i < phaseCount; i++)
+			{
+				String phaseName = BinaryValueCodec.readString(input);
+				int bankCount = input.readInt();
+				for (int j = 0; j < bankCount; j++)
+				{
+					String bankKey = BinaryValueCodec.readString(input);
+					int resourceCount = input.readInt();
+					for (int k = 0; k < resourceCount; k++)
+					{
+						String resourceName = BinaryValueCodec.readString(input);
+						addCount(phaseName, bankKey, resourceName, input.readLong());
+					}
+				}
+			}
+		}
+	}
+	
+	private synchronized void addCount(String phaseKey, String bankKey, String resourceKey, 
+			long amount)
+	{
+		Map<String, Map<String, Long>> phaseCounts = this.counts.get(phaseKey);
+		if (phaseCounts == null)
+		{
+			phaseCounts = new HashMap<>();
+			this.counts.put(phaseKey, phaseCounts);
+		}
+		Map<String, Long> bankCounts = phaseCounts.get(bankKey);
+		if (bankCounts == null)
+		{
+			bankCounts = new HashMap<>();
+			phaseCounts.put(bankKey, bankCounts);
+		}
+		
+		Long previous = bankCounts.get(resourceKey);
+		bankCounts.put(resourceKey, previous == null ? amount : previous + amount);
+	}
+	
+	private static String getBankKey(DataType resourceType, String bankName)
+	{
+		return (resourceType.getName() + "/" + bankName).toLowerCase();
+	}
+}
@@ -0,0 +1,210 @@
+package utopia.arc.resource;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+import utopia.flow.generics.DataType;
+
+/**
+ * This class contains the flight recorder events emitted by the resource manager and the 
+ * banks. The events show up in the same recording as the garbage collection and I/O events, 
+ * so that the work done by the banks can be told apart from other work. The events are 
+ * only committed when they are enabled in the recording.
+ * @author Mikko Hilpinen
+ * @since 5.6.2016
+ */
+final class ArcEvents
+{
+	// CONSTRUCTOR	------------------
+	
+	private ArcEvents()
+	{
+		// Static interface
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Starts timing a recorder operation
+	 * @return The event that is committed once the operation has finished
+	 */
+	static RecorderOperationEvent beginRecorderOperation()
+	{
+		RecorderOperationEvent event = new RecorderOperationEvent();
+		event.begin();
+		return event;
+	}
+	
+	/**
+	 * Finishes a recorder operation, committing the event if it is enabled
+	 * @param event The event returned by {@link #beginRecorderOperation()}
+	 * @param recorder The recorder that performed the operation
+	 * @param operation The name of the operation
+	 * @param bankName The name of the bank. Null for batch operations.
+	 * @param resourceType The type of the bank's contents. Null for batch operations.
+	 * @param bankCount The amount of banks that were read or written
+	 * @param resourceCount The amount of resources that were read or written
+	 */
+	static void endRecorderOperation(RecorderOperationEvent event, BankRecorder recorder, 
+			String operation, String bankName, DataType resourceType, int bankCount, 
+			int resourceCount)
+	{
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.recorder = recorder.getClass();
+			event.operation = operation;
+			event.bankName = bankName;
+			event.resourceType = resourceType == null ? null : resourceType.getName();
+			event.bankCount = bankCount;
+			event.resourceCount = resourceCount;
+			event.commit();
+		}
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	/**
+	 * This event is emitted when the resource manager changes its active phases
+	 * @author Mikko Hilpinen
+	 * @since 5.6.2016
+	 */
+	@Name("utopia.arc.PhaseTransition")
+	@Label("Phase Transition")
+	@Category("Utopia Arc")
+	@Description("The active phases of a resource manager changed")
+	static final class PhaseTransitionEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+		
+		@Label("Phase")
+		@Description("The phase that was started, switched to or ended")
+		String phaseName;
+		
+		@Label("Active Phases")
+		String activePhases;
+		
+		@Label("Activated Banks")
+		int activatedBanks;
+		
+		@Label("Deactivated Banks")
+		int deactivatedBanks;
+	}
+	
+	/**
+	 * This event is emitted when a bank is initialised
+	 * @author Mikko Hilpinen
+	 * @since 5.6.2016
+	 */
+	@Name("utopia.arc.BankLoad")
+	@Label("Bank Load")
+	@Category("Utopia Arc")
+	@Description("A bank was initialised")
+	static final class BankLoadEvent extends Event
+	{
+		@Label("Bank")
+		String bankName;
+		
+		@Label("Resource Type")
+		String resourceType;
+		
+		@Label("Source")
+		@Description("Where the contents were read from")
+		String source;
+		
+		@Label("Resource Count")
+		int resourceCount;
+		
+		@Label("Estimated Size")
+		@DataAmount
+		long estimatedBytes;
+	}
+	
+	/**
+	 * This event is emitted when a bank is uninitialised
+	 * @author Mikko Hilpinen
+	 * @since 5.6.2016
+	 */
+	@Name("utopia.arc.BankUnload")
+	@Label("Bank Unload")
+	@Category("Utopia Arc")
+	@Description("A bank was uninitialised or its compressed contents were dropped")
+	static final class BankUnloadEvent extends Event
+	{
+		@Label("Bank")
+		String bankName;
+		
+		@Label("Resource Type")
+		String resourceType;
+		
+		@Label("Released Size")
+		@DataAmount
+		long releasedBytes;
+	}
+	
+	/**
+	 * This event is emitted when a bank is saved
+	 * @author Mikko Hilpinen
+	 * @since 5.6.2016
+	 */
+	@Name("utopia.arc.BankSave")
+	@Label("Bank Save")
+	@Category("Utopia Arc")
+	@Description("A bank's contents were written")
+	static final class BankSaveEvent extends Event
+	{
+		@Label("Bank")
+		String bankName;
+		
+		@Label("Resource Type")
+		String resourceType;
+		
+		@Label("Mode")
+		@Description("Whether the whole bank, some of its chunks or only its changes were written")
+		String mode;
+		
+		@Label("Resource Count")
+		int resourceCount;
+		
+		@Label("Removed Count")
+		int removedCount;
+	}
+	
+	/**
+	 * This event is emitted around the read and write operations of a bank recorder
+	 * @author Mikko Hilpinen
+	 * @since 5.6.2016
+	 */
+	@Name("utopia.arc.RecorderOperation")
+	@Label("Recorder Operation")
+	@Category({"Utopia Arc", "Recorder"})
+	@Description("A bank recorder read or wrote bank data")
+	static final class RecorderOperationEvent extends Event
+	{
+		@Label("Recorder")
+		Class<?> recorder;
+		
+		@Label("Operation")
+		String operation;
+		
+		@Label("Bank")
+		@Description("The bank that was read or written. Empty for batch writes.")
+		String bankName;
+		
+		@Label("Resource Type")
+		String resourceType;
+		
+		@Label("Bank Count")
+		int bankCount;
+		
+		@Label("Resource Count")
+		int resourceCount;
+	}
+}
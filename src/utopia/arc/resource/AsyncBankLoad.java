@@ -0,0 +1,258 @@
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import utopia.flow.generics.Variable;
+
+/**
+ * This class keeps track of the state of a single asynchronous bank load. The loading thread 
+ * offers the resources as they are read, while the bank's own thread drains them into the 
+ * bank. Futures waiting for specific resources are completed as soon as the resources arrive.
+ * @author Mikko Hilpinen
+ * @since 24.5.2016
+ * @param <ResourceType> The type of resource loaded
+ */
+class AsyncBankLoad<ResourceType>
+{
+	// ATTRIBUTES	------------------
+	
+	private final String bankName;
+	private final Map<String, LoadedResource<ResourceType>> arrived = new ConcurrentHashMap<>();
+	private final Map<String, CompletableFuture<ResourceType>> waiting = new ConcurrentHashMap<>();
+	private final CompletableFuture<Void> completion = new CompletableFuture<>();
+	private final Set<String> overridden = new HashSet<>();
+	
+	private volatile boolean done = false;
+	private volatile Throwable failure = null;
+	private volatile boolean abandoned = false;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new load
+	 * @param bankName The name of the loaded bank
+	 */
+	public AsyncBankLoad(String bankName)
+	{
+		this.bankName = bankName;
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return A future that completes once the whole bank has been read
+	 */
+	public CompletableFuture<Void> getCompletion()
+	{
+		return this.completion;
+	}
+	
+	/**
+	 * @return Whether the loading thread has finished (successfully or not)
+	 */
+	public boolean isDone()
+	{
+		return this.done;
+	}
+	
+	/**
+	 * @return The reason the load failed. Null if the load hasn't failed (yet).
+	 */
+	public Throwable getFailure()
+	{
+		return this.failure;
+	}
+	
+	/**
+	 * @return Whether the load has been abandoned
+	 */
+	public boolean isAbandoned()
+	{
+		return this.abandoned;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Offers a new resource. Called from the loading thread.
+	 * @param var The resource variable
+	 * @param resource The resource value, already converted to the bank's type
+	 */
+	public void offer(Variable var, ResourceType resource)
+	{
+		if (this.abandoned)
+			return;
+		
+		String key = var.getName().toLowerCase();
+		this.arrived.put(key, new LoadedResource<>(var, resource));
+		CompletableFuture<ResourceType> future = this.waiting.get(key);
+		if (future != null)
+			future.complete(resource);
+	}
+	
+	/**
+	 * Marks the load finished. Called from the loading thread. The futures still waiting 
+	 * for resources are completed exceptionally.
+	 * @param failure The reason the load failed. Null if the load succeeded.
+	 */
+	public void finish(Throwable failure)
+	{
+		this.failure = failure;
+		this.done = true;
+		
+		for (String key : this.waiting.keySet())
+		{
+			failIfWaiting(key);
+		}
+		
+		if (failure == null)
+			this.completion.complete(null);
+		else
+			this.completion.completeExceptionally(failure);
+	}
+	
+	/**
+	 * Abandons the load. The resources read afterwards are discarded and the futures still 
+	 * waiting for resources are cancelled.
+	 */
+	public void abandon()
+	{
+		this.abandoned = true;
+		this.arrived.clear();
+		for (CompletableFuture<ResourceType> future : this.waiting.values())
+		{
+			future.cancel(false);
+		}
+		this.completion.cancel(false);
+	}
+	
+	/**
+	 * Takes the resources that have arrived since the last call. Called from the bank's thread.
+	 * @return The resources that have arrived. Resources that have been overridden in the 
+	 * bank during the load are not included.
+	 */
+	public List<LoadedResource<ResourceType>> drain()
+	{
+		List<LoadedResource<ResourceType>> resources = new ArrayList<>();
+		Iterator<Map.Entry<String, LoadedResource<ResourceType>>> iterator = 
+				this.arrived.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			Map.Entry<String, LoadedResource<ResourceType>> entry = iterator.next();
+			iterator.remove();
+			if (!this.overridden.contains(entry.getKey()))
+				resources.add(entry.getValue());
+		}
+		
+		return resources;
+	}
+	
+	/**
+	 * Marks a resource overridden, so that the loaded version won't replace it. Called from 
+	 * the bank's thread.
+	 * @param resourceName The name of the resource that was set in the bank during the load
+	 */
+	public void override(String resourceName)
+	{
+		String key = resourceName.toLowerCase();
+		this.overridden.add(key);
+		this.arrived.remove(key);
+	}
+	
+	/**
+	 * Creates a future that completes once the resource has been loaded
+	 * @param resourceName The name of the resource
+	 * @return A future for the resource. The future completes exceptionally if the resource 
+	 * is not in the bank.
+	 */
+	public CompletableFuture<ResourceType> await(String resourceName)
+	{
+		String key = resourceName.toLowerCase();
+		CompletableFuture<ResourceType> future = this.waiting.computeIfAbsent(key, 
+				k -> new CompletableFuture<>());
+		
+		// The resource may have arrived before the future was registered
+		LoadedResource<ResourceType> loaded = this.arrived.get(key);
+		if (loaded != null)
+			future.complete(loaded.getResource());
+		else if (this.done)
+			failIfWaiting(key);
+		
+		return future;
+	}
+	
+	private void failIfWaiting(String key)
+	{
+		CompletableFuture<ResourceType> future = this.waiting.get(key);
+		if (future != null && !future.isDone())
+		{
+			Throwable failure = this.failure;
+			if (failure == null)
+				failure = new NoSuchElementException("Bank " + this.bankName + 
+						" doesn't contain resource " + key);
+			future.completeExceptionally(failure);
+		}
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	/**
+	 * A loaded resource holds both the read variable and the resource converted from it, 
+	 * so that the conversion is done on the loading thread
+	 * @author Mikko Hilpinen
+	 * @since 27.5.2016
+	 * @param <ResourceType> The type of resource
+	 */
+	public static class LoadedResource<ResourceType>
+	{
+		// ATTRIBUTES	--------------
+		
+		private final Variable variable;
+		private final ResourceType resource;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		/**
+		 * Creates a new loaded resource
+		 * @param variable The variable that was read
+		 * @param resource The resource converted from the variable
+		 */
+		public LoadedResource(Variable variable, ResourceType resource)
+		{
+			this.variable = variable;
+			this.resource = resource;
+		}
+		
+		
+		// ACCESSORS	--------------
+		
+		/**
+		 * @return The variable that was read
+		 */
+		public Variable getVariable()
+		{
+			return this.variable;
+		}
+		
+		/**
+		 * @return The resource converted from the variable
+		 */
+		public ResourceType getResource()
+		{
+			return this.resource;
+		}
+	}
+}
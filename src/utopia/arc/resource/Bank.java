@@ -1,159 +1,1973 @@
-package utopia.arc.resource;
-
-import java.util.ArrayList;
-import java.util.List;
-
-import utopia.arc.resource.BankRecorder.RecordingFailedException;
-import utopia.flow.generics.DataType;
-import utopia.flow.generics.Model;
-import utopia.flow.generics.SingleTypeVariableParser;
-import utopia.flow.generics.Value;
-import utopia.flow.generics.Variable;
-
-/**
- * Banks contain resources of a type. Banks can be initialised and cleared at will. They are 
- * saved and loaded when necessary.
- * @author Mikko Hilpinen
- * @since 7.5.2016
- * @param <ResourceType> The type of resource held by this bank must reflect the bank's 
- * used data type!
- */
-public class Bank<ResourceType> extends Model<Variable>
-{
-	// ATTRIBUTES	----------------------
-	
-	private String name;
-	private DataType type;
-	private BankRecorder recorder;
-	private boolean initialised = false;
-	
-	
-	// CONSTRUCTOR	----------------------
-	
-	/**
-	 * Creates a new bank
-	 * @param name The name of the bank
-	 * @param contentType The type of content held by this bank. Must match the object class 
-	 * associated with this bank.
-	 * @param recorder The object used for writing and reading the bank data
-	 */
-	public Bank(String name, DataType contentType, BankRecorder recorder)
-	{
-		super(SingleTypeVariableParser.createBasicSingleTypeVariableParser(contentType));
-		
-		this.name = name;
-		this.type = contentType;
-		this.recorder = recorder;
-	}
-	
-	/**
-	 * Copies another bank
-	 * @param other Another bank
-	 */
-	public Bank(Bank<ResourceType> other)
-	{
-		super(other);
-		this.type = other.type;
-		this.recorder = other.recorder;
-	}
-	
-	
-	// ACCESSORS	----------------------
-	
-	/**
-	 * @return The name of the bank
-	 */
-	public String getName()
-	{
-		return this.name;
-	}
-	
-	/**
-	 * @return The data type of the bank's contents
-	 */
-	public DataType getContentType()
-	{
-		return this.type;
-	}
-	
-	
-	// OTHER METHODS	------------------
-	
-	/**
-	 * Fetches a resource from the bank
-	 * @param resourceName The name of the requested resource
-	 * @return The resource with the provided name or null if there was no such resource.
-	 * @throws NoSuchAttributeException If the bank didn't contain a resource with the provided name
-	 */
-	public ResourceType get(String resourceName) throws NoSuchAttributeException
-	{
-		return attributeToResource(getAttribute(resourceName));
-	}
-	
-	/**
-	 * @return This bank's contents
-	 */
-	public List<ResourceType> listContents()
-	{
-		List<ResourceType> list = new ArrayList<>();
-		for (Variable var : getAttributes())
-		{
-			list.add(attributeToResource(var));
-		}
-		
-		return list;
-	}
-	
-	/**
-	 * Adds a new resource to the bank
-	 * @param resourceName The name of the resource
-	 * @param resource The resource
-	 */
-	public void put(String resourceName, ResourceType resource)
-	{
-		addAttribute(resourceName, new Value(resource, getContentType()), true);
-	}
-	
-	/**
-	 * Saves the bank's current state
-	 * @throws RecordingFailedException If bank writing failed
-	 */
-	public void save() throws RecordingFailedException
-	{
-		this.recorder.writeBank(getName(), getContentType(), getAttributes());
-	}
-	
-	/**
-	 * Initialises the bank, reading its data
-	 * @throws RecordingFailedException If the bank read failed
-	 */
-	public void initialise() throws RecordingFailedException
-	{
-		if (!this.initialised)
-		{
-			this.initialised = true;
-			addAttributes(this.recorder.readBank(getName(), getContentType()), true);
-		}
-	}
-	
-	/**
-	 * Clears the bank. The data may be restored by calling {@link #initialise()}
-	 */
-	public void uninitialise()
-	{
-		if (this.initialised)
-		{
-			this.initialised = false;
-			for (Variable attribute : getAttributes())
-			{
-				removeAttribute(attribute);
-			}
-		}
-	}
-	
-	@SuppressWarnings("unchecked")
-	private ResourceType attributeToResource(Variable attribute)
-	{
-		return (ResourceType) attribute.getObjectValue(getContentType());
-	}
-}
+package utopia.arc.resource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import utopia.arc.generics.BinaryValueCodec;
+import utopia.arc.resource.ArcEvents.BankLoadEvent;
+import utopia.arc.resource.ArcEvents.BankSaveEvent;
+import utopia.arc.resource.ArcEvents.BankUnloadEvent;
+import utopia.arc.resource.ArcEvents.RecorderOperationEvent;
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.arc.resource.StreamingBankRecorder.ResourceHandler;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Model;
+import utopia.flow.generics.SingleTypeVariableParser;
+import utopia.flow.generics.Value;
+import utopia.flow.generics.Variable;
+
+/**
+ * Banks contain resources of a type. Banks can be initialised and cleared at will. They are 
+ * saved and loaded when necessary.
+ * @author Mikko Hilpinen
+ * @since 7.5.2016
+ * @param <ResourceType> The type of resource held by this bank must reflect the bank's 
+ * used data type!
+ */
+public class Bank<ResourceType> extends Model<Variable>
+{
+	// ATTRIBUTES	----------------------
+	
+	private String name;
+	private DataType type;
+	private BankRecorder recorder;
+	private boolean initialised = false;
+	private long residentSize = 0;
+	private long lastResidentSize = 0;
+	private int offHeapThreshold = -1;
+	private OffHeapStore offHeap = null;
+	
+	private BankChunkStore chunks = null;
+	private NavigableSet<String> nameIndex = null;
+	
+	private final BankLoadState<ResourceType> loadState = new BankLoadState<>();
+	private List<BankLoadListener> loadListeners = new CopyOnWriteArrayList<>();
+	private int holdCount = 0;
+	
+	private BankPool pool = null;
+	private Map<String, Variable> shared = null;
+	private Set<String> sharedOverrides = new HashSet<>();
+	
+	private Map<String, ResourceType> converted = new HashMap<>();
+	private boolean eagerConversion = false;
+	
+	private List<Bank<ResourceType>> fallbacks = new ArrayList<>();
+	private Set<String> inheritedNames = new HashSet<>();
+	
+	private List<ResourceIndexListener> indexListeners = new ArrayList<>();
+	private int generation = 0;
+	
+	private volatile FrozenBankView<ResourceType> frozen = null;
+	private final HeapResources heap = new HeapResources();
+	private volatile List<ResourceStore<ResourceType>> stores;
+	private boolean readOnly = false;
+	private byte[] compressed = null;
+	private volatile ResourceTracer tracer = null;
+	private List<String> warmupOrder = new ArrayList<>();
+	
+	private Set<String> changedNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	private Set<String> removedNames = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+	
+	
+	// CONSTRUCTOR	----------------------
+	
+	/**
+	 * Creates a new bank
+	 * @param name The name of the bank
+	 * @param contentType The type of content held by this bank. Must match the object class 
+	 * associated with this bank.
+	 * @param recorder The object used for writing and reading the bank data
+	 */
+	public Bank(String name, DataType contentType, BankRecorder recorder)
+	{
+		super(SingleTypeVariableParser.createBasicSingleTypeVariableParser(contentType));
+		
+		this.name = name;
+		this.type = contentType;
+		this.recorder = recorder;
+		updateStores();
+	}
+	
+	/**
+	 * Copies another bank. The copy uses the same recorder and settings as the other bank. 
+	 * If the other bank is initialised, its current contents and unsaved changes are copied 
+	 * to the copy's own storage, including the resources that are stored off-heap, shared 
+	 * through a pool or frozen. The resources themselves are not copied, so both banks 
+	 * refer to the same resource instances. Chunked banks and banks that are still being 
+	 * loaded are copied uninitialised, since their contents are read when needed. 
+	 * Compressed banks share their compressed contents with the copy. The copy is frozen if 
+	 * the other bank is frozen or read-only. The holds, listeners and tracer are not copied.
+	 * @param other Another bank
+	 */
+	public Bank(Bank<ResourceType> other)
+	{
+		super(SingleTypeVariableParser.createBasicSingleTypeVariableParser(other.type));
+		
+		this.name = other.name;
+		this.type = other.type;
+		this.recorder = other.recorder;
+		this.eagerConversion = other.eagerConversion;
+		this.readOnly = other.readOnly;
+		this.pool = other.pool;
+		this.fallbacks = new ArrayList<>(other.fallbacks);
+		this.warmupOrder = new ArrayList<>(other.warmupOrder);
+		this.offHeapThreshold = other.offHeapThreshold;
+		if (this.offHeapThreshold >= 0)
+			this.offHeap = new OffHeapStore();
+		if (other.nameIndex != null)
+			this.nameIndex = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		updateStores();
+		
+		// Compressed contents are never modified, so they can be shared
+		other.updateLoad();
+		if (other.compressed != null)
+		{
+			this.compressed = other.compressed;
+			this.residentSize = other.residentSize;
+		}
+		else if (other.initialised && other.chunks == null && !other.loadState.isLoading())
+		{
+			this.initialised = true;
+			// The variables are copied so that changing one bank doesn't affect the other
+			for (Variable var : other.getContents())
+			{
+				addLoadedResource(new Variable(var.getName(), var.getValue()), 
+						other.attributeToResource(var));
+			}
+			this.inheritedNames.addAll(other.inheritedNames);
+			this.changedNames.addAll(other.changedNames);
+			this.removedNames.addAll(other.removedNames);
+			
+			if (other.frozen != null || this.readOnly)
+				freeze();
+		}
+	}
+	
+	
+	// ACCESSORS	----------------------
+	
+	/**
+	 * @return The name of the bank
+	 */
+	public String getName()
+	{
+		return this.name;
+	}
+	
+	/**
+	 * @return The data type of the bank's contents
+	 */
+	public DataType getContentType()
+	{
+		return this.type;
+	}
+	
+	/**
+	 * @return Whether the bank has been initialised
+	 */
+	public boolean isInitialised()
+	{
+		return this.initialised;
+	}
+	
+	/**
+	 * @return The estimated amount of memory held by the bank's current contents, in bytes
+	 * @see ResourceSizes
+	 */
+	public long getResidentSize()
+	{
+		updateLoad();
+		return this.residentSize;
+	}
+	
+	/**
+	 * @return The amount of memory the bank holds outside the java heap, in bytes
+	 * @see #setOffHeapThreshold(int)
+	 */
+	public long getOffHeapSize()
+	{
+		if (this.offHeap == null)
+			return 0;
+		else
+			return this.offHeap.getSize();
+	}
+	
+	/**
+	 * Changes the way large resources are stored. Large string and byte array resources may 
+	 * be stored outside the java heap, where they don't affect garbage collection. The 
+	 * resources are copied back to the heap when they are requested with {@link #get(String)}, 
+	 * or they may be viewed without copying using {@link #getText(String)} and 
+	 * {@link #getData(String)}. The change affects the resources stored after this call.
+	 * @param threshold The minimum size of a resource (in bytes, 2 bytes per character) 
+	 * before it is stored outside the heap. Negative if all resources should be stored 
+	 * in the heap (default).
+	 */
+	public void setOffHeapThreshold(int threshold)
+	{
+		this.offHeapThreshold = threshold;
+		if (threshold >= 0 && this.offHeap == null)
+		{
+			this.offHeap = new OffHeapStore();
+			updateStores();
+		}
+	}
+	
+	/**
+	 * Changes when the resources are converted to the bank's type. The converted resources 
+	 * are cached, so that each resource is converted only once. By default, the conversion 
+	 * is done when a resource is first requested. With eager conversion, the resources are 
+	 * converted while the bank is being loaded, which for asynchronous loads happens on the 
+	 * loading thread. This way fetching a resource never needs to parse it.
+	 * @param eager Should the resources be converted as soon as they are loaded
+	 * @see #initialiseAsync(Executor)
+	 */
+	public void setEagerConversion(boolean eager)
+	{
+		this.eagerConversion = eager;
+	}
+	
+	/**
+	 * @return The banks this bank falls back to, in order of preference. The list is a copy.
+	 * @see #setFallbacks(List)
+	 */
+	public List<Bank<ResourceType>> getFallbacks()
+	{
+		return new ArrayList<>(this.fallbacks);
+	}
+	
+	/**
+	 * Makes this bank a variant of other banks. When the bank is initialised, the resources 
+	 * missing from this bank are copied from the fallback banks (and their fallbacks), so 
+	 * that each lookup is resolved with a single search. The inherited resources are not 
+	 * saved as part of this bank unless they are replaced. Later changes in the fallback 
+	 * banks are seen the next time this bank is initialised. Chunked banks don't support 
+	 * fallbacks.
+	 * @param fallbacks The banks this bank falls back to, in order of preference
+	 * @see BankBank#declareVariant(String, String...)
+	 */
+	public void setFallbacks(List<? extends Bank<ResourceType>> fallbacks)
+	{
+		this.fallbacks = new ArrayList<>(fallbacks);
+	}
+	
+	/**
+	 * Makes the bank share its contents with the other banks in the pool. The banks that 
+	 * are read with the same recorder and have the same name and type will then only be read 
+	 * once. Resources put to this bank are kept separate from the shared contents and are 
+	 * not seen by the other banks. Chunked banks don't use the pool. The change takes effect 
+	 * the next time the bank is initialised.
+	 * @param pool The pool the contents are shared through. Null if the bank should read 
+	 * its own contents (default).
+	 * @see BankPool#getInstance()
+	 */
+	public void setPool(BankPool pool)
+	{
+		this.pool = pool;
+	}
+	
+	/**
+	 * Sets the resources that are prepared first when the bank is initialised. When the 
+	 * whole bank is read at once, these resources are stored and converted before the 
+	 * others. Chunked banks read the chunks containing these resources right away instead 
+	 * of waiting for them to be requested. Banks loaded in the background read their 
+	 * resources in the recorded order.
+	 * @param resourceNames The names of the resources that are prepared first, the most 
+	 * important first
+	 * @see AccessStatistics#getHotResources(Collection, DataType, String)
+	 */
+	public void setWarmupOrder(List<String> resourceNames)
+	{
+		this.warmupOrder = new ArrayList<>(resourceNames);
+	}
+	
+	/**
+	 * Sets the tracer that is informed of the bank's loads and resource requests
+	 * @param tracer The tracer that is informed. Null if the bank shouldn't be traced (default).
+	 */
+	public void setTracer(ResourceTracer tracer)
+	{
+		this.tracer = tracer;
+	}
+	
+	/**
+	 * @return The estimated amount of memory the bank holds once initialised, in bytes. For 
+	 * uninitialised banks, this is based on the last time the bank was initialised. If the 
+	 * bank hasn't been initialised yet, the size is unknown and only the current contents 
+	 * are counted.
+	 */
+	public long getEstimatedSize()
+	{
+		updateLoad();
+		if (this.initialised)
+			return this.residentSize;
+		else
+			return Math.max(this.residentSize, this.lastResidentSize);
+	}
+	
+	/**
+	 * @return The number of holders currently keeping the bank initialised. Each active 
+	 * phase using the bank counts as a single holder.
+	 * @see #acquire()
+	 */
+	public int getHoldCount()
+	{
+		return this.holdCount;
+	}
+	
+	/**
+	 * @return Whether the bank has been modified since it was last saved. Only the changes 
+	 * made through {@link #put(String, Object)} and {@link #remove(String)} are tracked, 
+	 * not those made through the model methods, like addAttribute.
+	 */
+	public boolean hasUnsavedChanges()
+	{
+		return !this.changedNames.isEmpty() || !this.removedNames.isEmpty() || 
+				(this.chunks != null && this.chunks.hasChanges());
+	}
+	
+	/**
+	 * @return Whether the bank's contents are retained in compressed form
+	 * @see #compress()
+	 */
+	public boolean isCompressed()
+	{
+		return this.compressed != null;
+	}
+	
+	/**
+	 * @return Whether the bank has been frozen
+	 * @see #freeze()
+	 */
+	public boolean isFrozen()
+	{
+		return this.frozen != null;
+	}
+	
+	/**
+	 * Changes whether the bank is frozen each time it is initialised. Read-only banks can't 
+	 * be modified but have the fastest possible lookups.
+	 * @param readOnly Should the bank be frozen once its contents have been loaded
+	 * @see #freeze()
+	 */
+	public void setReadOnly(boolean readOnly)
+	{
+		this.readOnly = readOnly;
+		if (readOnly && this.initialised && !this.loadState.isLoading())
+			freeze();
+	}
+	
+	/**
+	 * @return Whether the bank is frozen whenever it is initialised
+	 * @see #setReadOnly(boolean)
+	 */
+	public boolean isReadOnly()
+	{
+		return this.readOnly;
+	}
+	
+	/**
+	 * @return Whether the bank is still being loaded in the background
+	 * @see #initialiseAsync(Executor)
+	 */
+	public boolean isLoading()
+	{
+		updateLoad();
+		return this.loadState.isLoading();
+	}
+	
+	
+	// OTHER METHODS	------------------
+	
+	/**
+	 * Fetches a resource from the bank
+	 * @param resourceName The name of the requested resource
+	 * @return The resource with the provided name or null if there was no such resource.
+	 * @throws NoSuchAttributeException If the bank didn't contain a resource with the provided name
+	 * @throws ResourceLoadFailedException If the bank is chunked and the resource's chunk 
+	 * couldn't be read or if the bank's background load failed
+	 */
+	public ResourceType get(String resourceName) throws NoSuchAttributeException
+	{
+		ResourceTracer tracer = this.tracer;
+		if (tracer != null)
+			tracer.onResourceRequested(getContentType(), getName(), resourceName);
+		
+		return getResource(resourceName);
+	}
+	
+	private ResourceType getResource(String resourceName) throws NoSuchAttributeException
+	{
+		// Frozen banks are only read, so they can be used from any thread. Their only store 
+		// is the frozen table.
+		if (this.frozen == null)
+		{
+			checkLoad();
+			if (this.chunks != null)
+				loadChunkOf(resourceName);
+		}
+		
+		// The last store doesn't need to be checked separately
+		List<ResourceStore<ResourceType>> stores = this.stores;
+		int last = stores.size() - 1;
+		for (int i = 0; i < last; i++)
+		{
+			ResourceStore<ResourceType> store = stores.get(i);
+			if (store.contains(resourceName))
+				return store.get(resourceName);
+		}
+		return stores.get(last).get(resourceName);
+	}
+	
+	/**
+	 * Fetches a text resource from the bank without copying resources stored outside 
+	 * the heap
+	 * @param resourceName The name of the requested resource
+	 * @return The text of the resource
+	 * @throws NoSuchAttributeException If the bank didn't contain a resource with the provided name
+	 * @see #setOffHeapThreshold(int)
+	 */
+	public CharSequence getText(String resourceName) throws NoSuchAttributeException
+	{
+		checkLoad();
+		if (this.chunks != null)
+			loadChunkOf(resourceName);
+		if (this.offHeap != null)
+		{
+			CharSequence text = this.offHeap.getText(resourceName);
+			if (text != null)
+				return text;
+		}
+		
+		return String.valueOf(get(resourceName));
+	}
+	
+	/**
+	 * Fetches the data of a binary resource without copying resources stored outside 
+	 * the heap
+	 * @param resourceName The name of the requested resource
+	 * @return A read-only view to the resource data or null if the resource is not binary
+	 * @throws NoSuchAttributeException If the bank didn't contain a resource with the provided name
+	 * @throws IOException If the resource is a {@link Blob} and its data couldn't be read
+	 * @see #setOffHeapThreshold(int)
+	 */
+	public ByteBuffer getData(String resourceName) throws NoSuchAttributeException, IOException
+	{
+		checkLoad();
+		if (this.chunks != null)
+			loadChunkOf(resourceName);
+		if (this.offHeap != null)
+		{
+			ByteBuffer data = this.offHeap.getData(resourceName);
+			if (data != null)
+				return data;
+		}
+		
+		Object resource = get(resourceName);
+		if (resource instanceof byte[])
+			return ByteBuffer.wrap((byte[]) resource).asReadOnlyBuffer();
+		else if (resource instanceof Blob)
+			return ((Blob) resource).getData();
+		else
+			return null;
+	}
+	
+	/**
+	 * @return This bank's contents. If the bank is chunked, all of its chunks are loaded.
+	 */
+	public List<ResourceType> listContents()
+	{
+		if (this.frozen != null)
+			return this.frozen.getResources();
+		
+		checkLoad();
+		if (this.chunks != null)
+			addLoadedContents(this.chunks.loadAll());
+		
+		List<ResourceType> list = new ArrayList<>();
+		for (Variable var : getContents())
+		{
+			list.add(attributeToResource(var));
+		}
+		
+		return list;
+	}
+	
+	/**
+	 * Enables or disables the sorted index of resource names. The index makes prefix, range 
+	 * and pattern queries fast. Without the index, each query scans the whole bank.
+	 * @param enabled Should the name index be kept
+	 * @see #getWithPrefix(String)
+	 * @see #getInRange(String, String)
+	 * @see #getMatching(String)
+	 */
+	public void setNameIndexEnabled(boolean enabled)
+	{
+		if (enabled && this.nameIndex == null)
+		{
+			this.nameIndex = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+			this.nameIndex.addAll(getResourceNames());
+		}
+		else if (!enabled)
+			this.nameIndex = null;
+	}
+	
+	/**
+	 * @return Whether the bank keeps a sorted index of its resource names
+	 */
+	public boolean isNameIndexEnabled()
+	{
+		return this.nameIndex != null;
+	}
+	
+	/**
+	 * Finds the resources whose names start with the provided prefix (case-insensitive)
+	 * @param prefix The prefix of the resource names
+	 * @return A lazy, read-only view to the resources. The resources are read from the bank 
+	 * only when accessed. If the bank uses a name index, the view reflects later changes 
+	 * in the bank.
+	 */
+	public Map<String, ResourceType> getWithPrefix(String prefix)
+	{
+		return new ResourceView<>(this, getNamesWithPrefix(prefix));
+	}
+	
+	/**
+	 * Finds the resources whose names are within a range (case-insensitive)
+	 * @param from The first name in the range (inclusive)
+	 * @param to The last name in the range (exclusive)
+	 * @return A lazy, read-only view to the resources. The resources are read from the bank 
+	 * only when accessed. If the bank uses a name index, the view reflects later changes 
+	 * in the bank.
+	 */
+	public Map<String, ResourceType> getInRange(String from, String to)
+	{
+		return new ResourceView<>(this, Collections.unmodifiableNavigableSet(
+				getSortedNames().subSet(from, true, to, false)));
+	}
+	
+	/**
+	 * Finds the resources whose names match a glob pattern (case-insensitive). '*' matches 
+	 * any amount of characters and '?' matches a single character. For example, 
+	 * "enemy.goblin.*".
+	 * @param glob The pattern the resource names must match
+	 * @return A lazy, read-only view to the resources. The resources are read from the bank 
+	 * only when accessed. If the bank uses a name index, the view reflects later changes 
+	 * in the bank.
+	 */
+	public Map<String, ResourceType> getMatching(String glob)
+	{
+		// Only the names starting with the literal part of the pattern need to be checked
+		return new ResourceView<>(this, new ResourceView.MatchingNames(
+				getNamesWithPrefix(ResourceView.getGlobPrefix(glob)), 
+				ResourceView.globToPattern(glob)));
+	}
+	
+	/**
+	 * Adds a new resource to the bank
+	 * @param resourceName The name of the resource
+	 * @param resource The resource
+	 */
+	public void put(String resourceName, ResourceType resource)
+	{
+		checkNotFrozen();
+		
+		// Resources set during a load are not replaced by the loaded versions
+		updateLoad();
+		this.loadState.override(resourceName);
+		if (this.shared != null)
+			this.sharedOverrides.add(resourceName.toLowerCase());
+		this.converted.remove(resourceName.toLowerCase());
+		this.changedNames.add(resourceName);
+		this.removedNames.remove(resourceName);
+		this.inheritedNames.remove(resourceName.toLowerCase());
+		
+		// In chunked banks, the chunk must be loaded before it can be modified
+		if (this.chunks != null)
+			addLoadedContents(this.chunks.prepareChange(resourceName));
+		
+		if (this.nameIndex != null)
+			this.nameIndex.add(resourceName);
+		
+		long sizeChange = estimateEntrySize(resource);
+		try
+		{
+			if (this.offHeap != null && this.offHeap.remove(resourceName))
+				sizeChange -= ResourceSizes.ENTRY_OVERHEAD;
+			else
+			{
+				Variable previous = getAttribute(resourceName);
+				sizeChange -= estimateEntrySize(attributeToResource(previous));
+				if (shouldStoreOffHeap(resource))
+					removeAttribute(previous);
+			}
+		}
+		catch (NoSuchAttributeException e)
+		{
+			// A new resource, nothing is replaced
+		}
+		
+		if (shouldStoreOffHeap(resource))
+			this.offHeap.put(resourceName, resource);
+		else
+		{
+			addAttribute(resourceName, new Value(resource, getContentType()), true);
+			this.converted.put(resourceName.toLowerCase(), resource);
+		}
+		this.residentSize += sizeChange;
+		this.generation ++;
+		informResourceAdded(resourceName);
+	}
+	
+	/**
+	 * Removes a resource from the bank
+	 * @param resourceName The name of the removed resource
+	 * @return Whether the bank contained the resource
+	 */
+	public boolean remove(String resourceName)
+	{
+		checkNotFrozen();
+		
+		updateLoad();
+		this.loadState.override(resourceName);
+		
+		boolean removed = false;
+		if (this.chunks != null && this.chunks.contains(resourceName))
+		{
+			addLoadedContents(this.chunks.prepareChange(resourceName));
+			this.chunks.remove(resourceName);
+			if (this.nameIndex != null)
+				this.nameIndex.remove(resourceName);
+			removed = true;
+		}
+		
+		// Shared resources are hidden instead of removed
+		String key = resourceName.toLowerCase();
+		if (this.shared != null && this.sharedOverrides.add(key) && this.shared.containsKey(key))
+			removed = true;
+		if (removeResource(resourceName))
+			removed = true;
+		
+		if (removed)
+		{
+			this.generation ++;
+			for (ResourceIndexListener listener : new ArrayList<>(this.indexListeners))
+			{
+				listener.onResourceRemoved(this, resourceName);
+			}
+			this.inheritedNames.remove(key);
+			this.changedNames.remove(resourceName);
+			this.removedNames.add(resourceName);
+		}
+		return removed;
+	}
+	
+	/**
+	 * Saves the bank's current state. If the bank uses an incremental recorder, only the 
+	 * changes made since the last save are written.
+	 * @throws RecordingFailedException If bank writing failed
+	 * @see IncrementalBankRecorder
+	 */
+	public void save() throws RecordingFailedException
+	{
+		updateLoad();
+		
+		BankSaveEvent event = new BankSaveEvent();
+		event.begin();
+		RecorderOperationEvent write = ArcEvents.beginRecorderOperation();
+		int removedCount = this.removedNames.size();
+		int writtenCount;
+		
+		if (this.recorder instanceof IncrementalBankRecorder && this.chunks == null)
+		{
+			List<Variable> changed = new ArrayList<>();
+			for (String resourceName : this.changedNames)
+			{
+				changed.add(getStoredAttribute(resourceName));
+			}
+			
+			((IncrementalBankRecorder) this.recorder).writeChanges(getName(), getContentType(), 
+					changed, new ArrayList<>(this.removedNames));
+			event.mode = "changes";
+			writtenCount = changed.size();
+		}
+		// Chunks that have grown too large are split by writing the whole bank again
+		else if (this.chunks != null && this.chunks.needsSplitting())
+		{
+			addLoadedContents(this.chunks.loadAll());
+			Collection<Variable> contents = getOwnContents();
+			this.chunks.rewrite(contents);
+			event.mode = "full";
+			writtenCount = contents.size();
+		}
+		// Chunked banks only write the chunks that have been modified
+		else if (this.chunks != null)
+		{
+			Map<Integer, List<Variable>> chunks = new HashMap<>();
+			for (int chunk : this.chunks.getChangedChunks())
+			{
+				List<Variable> chunkContents = new ArrayList<>();
+				for (String resourceName : this.chunks.getResourceNames(chunk))
+				{
+					chunkContents.add(getStoredAttribute(resourceName));
+				}
+				chunks.put(chunk, chunkContents);
+			}
+			
+			this.chunks.writeChanges(chunks);
+			event.mode = "chunks";
+			writtenCount = 0;
+			for (List<Variable> chunkContents : chunks.values())
+			{
+				writtenCount += chunkContents.size();
+			}
+		}
+		else
+		{
+			Collection<Variable> contents = getOwnContents();
+			this.recorder.writeBank(getName(), getContentType(), contents);
+			event.mode = "full";
+			writtenCount = contents.size();
+		}
+		
+		ArcEvents.endRecorderOperation(write, this.recorder, "write", getName(), getContentType(), 
+				1, writtenCount);
+		this.changedNames.clear();
+		this.removedNames.clear();
+		
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.bankName = getName();
+			event.resourceType = getContentType().getName();
+			event.resourceCount = writtenCount;
+			event.removedCount = removedCount;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * @return The recorder used for reading and writing the bank's data
+	 */
+	BankRecorder getRecorder()
+	{
+		return this.recorder;
+	}
+	
+	/**
+	 * @return The current contents of the bank, as they would be saved. The resources 
+	 * inherited from the fallback banks are not included. Chunked banks only include the 
+	 * chunks that have been loaded.
+	 */
+	public Collection<Variable> getSavedContents()
+	{
+		updateLoad();
+		return getOwnContents();
+	}
+	
+	/**
+	 * Fetches a resource without informing the tracer. The returned instance is the same 
+	 * that {@link #get(String)} returns.
+	 * @param resourceName The name of the resource
+	 * @return The resource
+	 * @throws NoSuchAttributeException If the bank doesn't contain the resource
+	 */
+	ResourceType getUntraced(String resourceName) throws NoSuchAttributeException
+	{
+		return getResource(resourceName);
+	}
+	
+	/**
+	 * Converts all of the bank's resources without informing the tracer. The returned 
+	 * instances are cached, so they are the same that {@link #get(String)} returns. If the 
+	 * bank is chunked, all of its chunks are loaded.
+	 * @return The bank's resources
+	 */
+	List<ResourceType> listResources()
+	{
+		List<ResourceType> resources = new ArrayList<>();
+		for (String resourceName : new ArrayList<>(getSortedNames()))
+		{
+			resources.add(getResource(resourceName));
+		}
+		return resources;
+	}
+	
+	/**
+	 * Checks whether the bank contains a resource without loading it
+	 * @param resourceName The name of the resource
+	 * @return Whether the bank contains a resource with the provided name
+	 */
+	boolean containsResource(String resourceName)
+	{
+		if (this.chunks != null && this.chunks.contains(resourceName))
+			return true;
+		for (ResourceStore<ResourceType> store : this.stores)
+		{
+			if (store.contains(resourceName))
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The generation of the bank's contents. The generation changes each time a 
+	 * resource is replaced or removed and when the bank is uninitialised.
+	 */
+	int getGeneration()
+	{
+		return this.generation;
+	}
+	
+	/**
+	 * Adds a listener that is informed when resources are added to or removed from the bank
+	 * @param listener The listener
+	 */
+	void addIndexListener(ResourceIndexListener listener)
+	{
+		this.indexListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a previously added index listener
+	 * @param listener The listener
+	 */
+	void removeIndexListener(ResourceIndexListener listener)
+	{
+		this.indexListeners.remove(listener);
+	}
+	
+	/**
+	 * Marks the bank's current state saved. Called after the bank has been saved as part 
+	 * of a larger set.
+	 */
+	void markSaved()
+	{
+		this.changedNames.clear();
+		this.removedNames.clear();
+	}
+	
+	/**
+	 * Initialises the bank, reading its data. If the bank is already being loaded in the 
+	 * background, waits until the load completes.
+	 * @throws RecordingFailedException If the bank read failed
+	 */
+	public void initialise() throws RecordingFailedException
+	{
+		if (this.loadState.isLoading())
+			waitForLoad();
+		else if (!this.initialised)
+		{
+			this.loadState.reset();
+			this.initialised = true;
+			try
+			{
+				readInitialContents();
+			}
+			catch (RecordingFailedException | RuntimeException e)
+			{
+				// A failed read leaves the bank uninitialised, so that it may be initialised again. 
+				// The holds are kept, since the holders still need the bank.
+				unload();
+				throw e;
+			}
+		}
+	}
+	
+	private void readInitialContents() throws RecordingFailedException
+	{
+		long started = System.nanoTime();
+		BankLoadEvent event = new BankLoadEvent();
+		event.begin();
+		
+		// Compressed contents are restored without using the recorder
+		boolean restored = this.compressed != null;
+		if (restored)
+		{
+			restoreCompressed();
+			event.source = "compressed";
+		}
+		// Chunked banks only read their index at this point. The chunks are read when needed.
+		else if (this.recorder instanceof ChunkedBankRecorder)
+		{
+			this.chunks = new BankChunkStore((ChunkedBankRecorder) this.recorder, getName(), 
+					getContentType());
+			event.source = "chunk index";
+			if (this.nameIndex != null)
+				this.nameIndex.addAll(this.chunks.getResourceNames());
+			for (String resourceName : this.chunks.getResourceNames())
+			{
+				informResourceAdded(resourceName);
+			}
+		}
+		// Pooled banks use the shared contents, which are read only once
+		else if (this.pool != null)
+		{
+			this.shared = this.pool.acquire(this.recorder, getName(), getContentType());
+			updateStores();
+			event.source = "pool";
+			for (Variable var : this.shared.values())
+			{
+				if (this.nameIndex != null)
+					this.nameIndex.add(var.getName());
+				informResourceAdded(var.getName());
+			}
+		}
+		else
+		{
+			RecorderOperationEvent read = ArcEvents.beginRecorderOperation();
+			Collection<Variable> data = this.recorder.readBank(getName(), getContentType());
+			ArcEvents.endRecorderOperation(read, this.recorder, "read", getName(), 
+					getContentType(), 1, data.size());
+			event.source = "recorder";
+			
+			data = orderForWarmup(data);
+			addLoadedContents(data);
+			
+			if (!this.loadListeners.isEmpty())
+			{
+				for (Variable var : data)
+				{
+					informResourceLoaded(var.getName(), attributeToResource(var));
+				}
+				for (BankLoadListener listener : this.loadListeners)
+				{
+					listener.onLoadCompleted(this);
+				}
+			}
+		}
+		
+		if (!restored && this.chunks == null && !this.fallbacks.isEmpty())
+			mergeFallbacks();
+		if (this.readOnly)
+			freeze();
+		else
+			warmUp();
+		
+		ResourceTracer tracer = this.tracer;
+		if (tracer != null)
+			tracer.onBankLoaded(getContentType(), getName(), System.nanoTime() - started);
+		
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.bankName = getName();
+			event.resourceType = getContentType().getName();
+			event.resourceCount = getResourceNames().size();
+			event.estimatedBytes = this.residentSize;
+			event.commit();
+		}
+	}
+	
+	/**
+	 * Freezes the bank's current contents into an immutable table. Each lookup in a frozen 
+	 * bank checks a single slot of the table, found using a perfect hash over the resource 
+	 * names. Frozen banks can't be modified and they may be read from multiple threads 
+	 * without synchronisation. All of the bank's resources, including the chunks that haven't 
+	 * been loaded and resources stored off-heap, are placed into the table. The bank is 
+	 * unfrozen when it is uninitialised.
+	 * @throws ResourceLoadFailedException If some of the resources couldn't be loaded
+	 * @throws IllegalStateException If the bank hasn't been initialised
+	 * @see #setReadOnly(boolean)
+	 */
+	public void freeze() throws ResourceLoadFailedException, IllegalStateException
+	{
+		if (this.frozen != null)
+			return;
+		
+		// An ongoing load is finished first
+		if (this.loadState.isLoading())
+		{
+			try
+			{
+				initialise();
+			}
+			catch (RecordingFailedException e)
+			{
+				throw new ResourceLoadFailedException("Failed to load bank " + getName(), e);
+			}
+		}
+		// The contents of an uninitialised bank are not known, so it can't be frozen
+		if (!this.initialised)
+			throw new IllegalStateException("Bank " + getName() + 
+					" must be initialised before it can be frozen");
+		
+		Map<String, String> names = new LinkedHashMap<>();
+		for (String resourceName : getResourceNames())
+		{
+			names.put(resourceName.toLowerCase(), resourceName);
+		}
+		List<String> tableNames = new ArrayList<>(names.values());
+		List<ResourceType> resources = new ArrayList<>(tableNames.size());
+		// The resources are only moved to the table, so they are not traced as requests
+		for (String resourceName : tableNames)
+		{
+			resources.add(getResource(resourceName));
+		}
+		FrozenBankView<ResourceType> table = new FrozenBankView<>(this, tableNames, resources);
+		
+		// The mutable storage is not needed anymore
+		for (Variable attribute : getAttributes())
+		{
+			removeAttribute(attribute);
+		}
+		if (this.offHeap != null)
+			this.offHeap.release();
+		if (this.shared != null)
+		{
+			BankPool.getInstance().release(this.recorder, getName(), getContentType());
+			this.shared = null;
+			this.sharedOverrides.clear();
+		}
+		this.converted.clear();
+		this.chunks = null;
+		
+		// The stores are replaced first, so that the threads that see the bank frozen also 
+		// see the table
+		this.stores = Collections.<ResourceStore<ResourceType>>singletonList(table);
+		this.frozen = table;
+	}
+	
+	/**
+	 * Acquires a hold on the bank, initialising it if necessary. The bank stays initialised 
+	 * until each hold has been released.
+	 * @throws RecordingFailedException If the bank couldn't be initialised
+	 * @see #release()
+	 */
+	public void acquire() throws RecordingFailedException
+	{
+		initialise();
+		this.holdCount ++;
+	}
+	
+	/**
+	 * Acquires a hold on the bank, initialising it in the background if necessary
+	 * @param executor The executor that performs the load
+	 * @return A future that completes once the bank has been loaded
+	 * @see #initialiseAsync(Executor)
+	 * @see #release()
+	 */
+	public CompletableFuture<Void> acquireAsync(Executor executor)
+	{
+		this.holdCount ++;
+		return initialiseAsync(executor);
+	}
+	
+	/**
+	 * Releases a hold on the bank. The bank is uninitialised once no one holds it anymore.
+	 * @return Whether the bank was uninitialised
+	 * @see #acquire()
+	 */
+	public boolean release()
+	{
+		return release(false);
+	}
+	
+	/**
+	 * Releases a hold on the bank. The bank is uninitialised once no one holds it anymore.
+	 * @param compress Should the bank's contents be kept in compressed form once the bank 
+	 * is uninitialised
+	 * @return Whether the bank was uninitialised
+	 * @see #acquire()
+	 * @see #compress()
+	 */
+	public boolean release(boolean compress)
+	{
+		if (this.holdCount == 0)
+			return false;
+		
+		this.holdCount --;
+		if (this.holdCount == 0)
+		{
+			if (!compress || !compress())
+				uninitialise();
+			return true;
+		}
+		else
+			return false;
+	}
+	
+	/**
+	 * Uninitialises the bank, but keeps its contents in memory in compressed form. The next 
+	 * time the bank is initialised, the contents are decompressed instead of being read from 
+	 * the recorder. Calling {@link #uninitialise()} on a compressed bank discards the 
+	 * compressed contents. Only fully loaded banks without unsaved changes may be compressed. 
+	 * Chunked and pooled banks can't be compressed.
+	 * @return Whether the bank was compressed
+	 * @see #isCompressed()
+	 */
+	public boolean compress()
+	{
+		if (!this.initialised || this.loadState.isLoading() || this.chunks != null || 
+				this.shared != null || hasUnsavedChanges())
+			return false;
+		
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (DataOutputStream output = new DataOutputStream(new DeflaterOutputStream(buffer)))
+		{
+			BinaryValueCodec.writeVariables(getContents(), output);
+			output.writeInt(this.inheritedNames.size());
+			for (String resourceName : this.inheritedNames)
+			{
+				BinaryValueCodec.writeString(resourceName, output);
+			}
+		}
+		catch (IOException e)
+		{
+			// Banks that can't be serialised are simply not compressed
+			return false;
+		}
+		
+		uninitialise();
+		this.compressed = buffer.toByteArray();
+		this.residentSize = this.compressed.length;
+		return true;
+	}
+	
+	/**
+	 * Initialises the bank in the background. The resources become available one by one as 
+	 * they are read. {@link #get(String)} only returns the resources that have already been 
+	 * loaded, while {@link #getAsync(String)} waits for the resource to arrive. The 
+	 * loaded resources are moved into the bank on the thread that uses the bank, so the 
+	 * bank itself doesn't need to be thread safe. Chunked banks only read their index, 
+	 * which is done immediately. Pooled banks, banks with fallbacks and compressed banks are 
+	 * also initialised immediately. If the load fails, the bank is left uninitialised and the 
+	 * failure is thrown from the following requests until the bank is initialised again.
+	 * @param executor The executor that performs the load
+	 * @return A future that completes once all of the bank's resources have been read
+	 * @see #addLoadListener(BankLoadListener)
+	 */
+	public CompletableFuture<Void> initialiseAsync(Executor executor)
+	{
+		// A finished load is processed first, so that a failed load is started again
+		updateLoad();
+		if (this.loadState.isLoading())
+			return this.loadState.getCompletion();
+		
+		CompletableFuture<Void> completion = new CompletableFuture<>();
+		if (this.initialised || this.recorder instanceof ChunkedBankRecorder || 
+				this.pool != null || !this.fallbacks.isEmpty() || this.compressed != null)
+		{
+			try
+			{
+				initialise();
+				completion.complete(null);
+			}
+			catch (RecordingFailedException e)
+			{
+				completion.completeExceptionally(e);
+			}
+			return completion;
+		}
+		
+		this.initialised = true;
+		final AsyncBankLoad<ResourceType> load = this.loadState.start(getName());
+		executor.execute(new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				readContents(load);
+			}
+		});
+		
+		return load.getCompletion();
+	}
+	
+	/**
+	 * Fetches a resource from the bank, waiting for it to be loaded if necessary
+	 * @param resourceName The name of the requested resource
+	 * @return A future that completes once the resource is available. The future completes 
+	 * exceptionally if the bank doesn't contain the resource or if the load fails.
+	 * @see #initialiseAsync(Executor)
+	 */
+	public CompletableFuture<ResourceType> getAsync(String resourceName)
+	{
+		CompletableFuture<ResourceType> future = new CompletableFuture<>();
+		try
+		{
+			future.complete(get(resourceName));
+			return future;
+		}
+		catch (NoSuchAttributeException | ResourceLoadFailedException e)
+		{
+			if (!this.loadState.isLoading())
+			{
+				future.completeExceptionally(e);
+				return future;
+			}
+		}
+		
+		return this.loadState.await(resourceName);
+	}
+	
+	/**
+	 * Adds a new listener that will be informed about resource loading
+	 * @param listener The listener
+	 */
+	public void addLoadListener(BankLoadListener listener)
+	{
+		this.loadListeners.add(listener);
+	}
+	
+	/**
+	 * Removes a listener from the informed listeners
+	 * @param listener The listener
+	 */
+	public void removeLoadListener(BankLoadListener listener)
+	{
+		this.loadListeners.remove(listener);
+	}
+	
+	/**
+	 * @return Whether the bank's contents are divided into chunks that are loaded separately
+	 * @see ChunkedBankRecorder
+	 */
+	public boolean isChunked()
+	{
+		return this.chunks != null;
+	}
+	
+	/**
+	 * Clears a single chunk's resources from memory. The chunk is loaded again when one of 
+	 * its resources is requested. Chunks with unsaved changes are not dropped.
+	 * @param chunk The index of the chunk
+	 * @return Whether the chunk was dropped
+	 */
+	public boolean dropChunk(int chunk)
+	{
+		if (this.chunks == null || !this.chunks.drop(chunk))
+			return false;
+		
+		for (String resourceName : this.chunks.getResourceNames(chunk))
+		{
+			removeResource(resourceName);
+		}
+		return true;
+	}
+	
+	/**
+	 * Clears the chunks that haven't been used in a while. Chunks with unsaved changes are 
+	 * not dropped.
+	 * @param maxIdleMillis The maximum time a chunk may stay unused, in milliseconds
+	 * @return The amount of chunks dropped
+	 */
+	public int dropIdleChunks(long maxIdleMillis)
+	{
+		if (this.chunks == null)
+			return 0;
+		
+		int dropped = 0;
+		for (int chunk : this.chunks.getIdleChunks(maxIdleMillis))
+		{
+			if (dropChunk(chunk))
+				dropped ++;
+		}
+		return dropped;
+	}
+	
+	/**
+	 * Clears the bank. The data may be restored by calling {@link #initialise()}. Any holds 
+	 * on the bank are discarded as well, so the bank is not kept initialised on their behalf 
+	 * anymore.
+	 * @see #acquire()
+	 */
+	public void uninitialise()
+	{
+		this.holdCount = 0;
+		unload();
+	}
+	
+	private void unload()
+	{
+		BankUnloadEvent event = new BankUnloadEvent();
+		event.begin();
+		long releasedSize = this.residentSize;
+		this.loadState.reset();
+		
+		if (this.compressed != null)
+		{
+			this.compressed = null;
+			this.residentSize = 0;
+		}
+		else if (this.initialised)
+		{
+			this.initialised = false;
+			if (this.shared != null)
+			{
+				BankPool.getInstance().release(this.recorder, getName(), getContentType());
+				this.shared = null;
+				this.sharedOverrides.clear();
+			}
+			for (Variable attribute : getAttributes())
+			{
+				removeAttribute(attribute);
+			}
+			if (this.offHeap != null)
+				this.offHeap.release();
+			this.converted.clear();
+			this.frozen = null;
+			updateStores();
+			this.inheritedNames.clear();
+			this.changedNames.clear();
+			this.removedNames.clear();
+			this.chunks = null;
+			if (this.nameIndex != null)
+				this.nameIndex.clear();
+			this.lastResidentSize = this.residentSize;
+			this.residentSize = 0;
+			this.generation ++;
+			
+			for (ResourceIndexListener listener : new ArrayList<>(this.indexListeners))
+			{
+				listener.onBankCleared(this);
+			}
+		}
+		else
+			return;
+		
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.bankName = getName();
+			event.resourceType = getContentType().getName();
+			event.releasedBytes = releasedSize;
+			event.commit();
+		}
+	}
+	
+	private Collection<Variable> orderForWarmup(Collection<Variable> data)
+	{
+		if (this.warmupOrder.isEmpty())
+			return data;
+		
+		// The resources in the warmup order are moved to the front, keeping their order
+		Map<String, Integer> priorities = new HashMap<>();
+		for (int i = 0; i < this.warmupOrder.size(); i++)
+		{
+			priorities.put(this.warmupOrder.get(i).toLowerCase(), i);
+		}
+		
+		Variable[] first = new Variable[this.warmupOrder.size()];
+		List<Variable> ordered = new ArrayList<>(data.size());
+		List<Variable> rest = new ArrayList<>(data.size());
+		for (Variable var : data)
+		{
+			Integer priority = priorities.get(var.getName().toLowerCase());
+			if (priority == null || first[priority] != null)
+				rest.add(var);
+			else
+				first[priority] = var;
+		}
+		for (Variable var : first)
+		{
+			if (var != null)
+				ordered.add(var);
+		}
+		ordered.addAll(rest);
+		
+		return ordered;
+	}
+	
+	private void warmUp()
+	{
+		// Converts the hot resources (and reads their chunks) ahead of the first request. 
+		// Off-heap resources are not kept in the heap, so they are left as they are.
+		for (String resourceName : this.warmupOrder)
+		{
+			if (!containsResource(resourceName) || 
+					(this.offHeap != null && this.offHeap.contains(resourceName)))
+				continue;
+			
+			try
+			{
+				getResource(resourceName);
+			}
+			catch (NoSuchAttributeException e)
+			{
+				// Resources that have disappeared are skipped
+			}
+		}
+	}
+	
+	private void restoreCompressed() throws RecordingFailedException
+	{
+		byte[] data = this.compressed;
+		this.compressed = null;
+		this.residentSize = 0;
+		
+		try (DataInputStream input = new DataInputStream(new InflaterInputStream(
+				new ByteArrayInputStream(data))))
+		{
+			addLoadedContents(BinaryValueCodec.readVariables(input));
+			int inheritedCount = input.readInt();
+			for (int i = 0; i < inheritedCount; i++)
+			{
+				this.inheritedNames.add(BinaryValueCodec.readString(input));
+			}
+		}
+		catch (IOException e)
+		{
+			throw new RecordingFailedException("Failed to restore the compressed bank contents", e);
+		}
+	}
+	
+	private void addLoadedContents(Collection<Variable> data)
+	{
+		for (Variable var : data)
+		{
+			addLoadedResource(var, attributeToResource(var));
+		}
+	}
+	
+	private void addLoadedResource(Variable var, ResourceType resource)
+	{
+		if (shouldStoreOffHeap(resource))
+			this.offHeap.put(var.getName(), resource);
+		else
+		{
+			addAttribute(var, true);
+			if (this.eagerConversion)
+				this.converted.put(var.getName().toLowerCase(), resource);
+		}
+		this.residentSize += estimateEntrySize(resource);
+		if (this.nameIndex != null)
+			this.nameIndex.add(var.getName());
+		informResourceAdded(var.getName());
+	}
+	
+	private void readContents(final AsyncBankLoad<ResourceType> load)
+	{
+		// Called from the loading thread. Only the load object is modified here.
+		final int[] readCount = new int[1];
+		ResourceHandler handler = new ResourceHandler()
+		{
+			@Override
+			public boolean onResourceRead(Variable resource)
+			{
+				// Abandoned loads stop reading at the next resource
+				if (load.isAbandoned())
+					return false;
+				
+				ResourceType value = attributeToResource(resource);
+				load.offer(resource, value);
+				readCount[0] ++;
+				informResourceLoaded(resource.getName(), value);
+				return true;
+			}
+		};
+		
+		// Loads that were abandoned before they got to start don't read anything
+		if (load.isAbandoned())
+		{
+			load.finish(null);
+			return;
+		}
+		long started = System.nanoTime();
+		RecorderOperationEvent read = ArcEvents.beginRecorderOperation();
+		
+		try
+		{
+			if (this.recorder instanceof StreamingBankRecorder)
+				((StreamingBankRecorder) this.recorder).readBank(getName(), getContentType(), handler);
+			else
+			{
+				for (Variable resource : this.recorder.readBank(getName(), getContentType()))
+				{
+					if (!handler.onResourceRead(resource))
+						break;
+				}
+			}
+			ArcEvents.endRecorderOperation(read, this.recorder, "stream", getName(), 
+					getContentType(), 1, readCount[0]);
+		}
+		catch (RecordingFailedException | RuntimeException e)
+		{
+			load.finish(e);
+			if (load.isAbandoned())
+				return;
+			for (BankLoadListener listener : this.loadListeners)
+			{
+				listener.onLoadFailed(this, e);
+			}
+			return;
+		}
+		
+		load.finish(null);
+		if (!load.isAbandoned())
+		{
+			ResourceTracer tracer = this.tracer;
+			if (tracer != null)
+				tracer.onBankLoaded(getContentType(), getName(), System.nanoTime() - started);
+			for (BankLoadListener listener : this.loadListeners)
+			{
+				listener.onLoadCompleted(this);
+			}
+		}
+	}
+	
+	private void updateLoad()
+	{
+		if (this.loadState.isLoading())
+		{
+			// Once the loader has finished, the final drain collects all remaining resources
+			boolean done = this.loadState.isDone();
+			// The resources were already converted on the loading thread
+			for (AsyncBankLoad.LoadedResource<ResourceType> loaded : this.loadState.drain())
+			{
+				addLoadedResource(loaded.getVariable(), loaded.getResource());
+			}
+			if (done)
+			{
+				// A failed load leaves the bank uninitialised, so that the load can be retried. 
+				// The failure is reported when the contents are requested.
+				Throwable failure = this.loadState.finish();
+				if (failure != null)
+				{
+					unload();
+					this.loadState.fail(failure);
+				}
+				else if (this.readOnly)
+					freeze();
+			}
+		}
+	}
+	
+	private void checkLoad() throws ResourceLoadFailedException
+	{
+		updateLoad();
+		this.loadState.check(getName());
+	}
+	
+	private void checkNotFrozen() throws UnsupportedOperationException
+	{
+		if (this.frozen != null)
+			throw new UnsupportedOperationException("Bank " + getName() + " is frozen and can't be modified");
+	}
+	
+	private void waitForLoad() throws RecordingFailedException
+	{
+		this.loadState.join();
+		updateLoad();
+		
+		// The failure is thrown to the caller, who may then try again
+		this.loadState.throwFailure(getName());
+	}
+	
+	private void informResourceAdded(String resourceName)
+	{
+		for (int i = 0; i < this.indexListeners.size(); i++)
+		{
+			this.indexListeners.get(i).onResourceAdded(this, resourceName);
+		}
+	}
+	
+	private void informResourceLoaded(String resourceName, ResourceType resource)
+	{
+		for (BankLoadListener listener : this.loadListeners)
+		{
+			listener.onResourceLoaded(this, resourceName, resource);
+		}
+	}
+	
+	private boolean removeResource(String resourceName)
+	{
+		this.converted.remove(resourceName.toLowerCase());
+		// The names in chunked banks stay indexed even when their chunk is dropped
+		if (this.nameIndex != null && this.chunks == null)
+			this.nameIndex.remove(resourceName);
+		
+		if (this.offHeap != null && this.offHeap.remove(resourceName))
+		{
+			this.residentSize -= ResourceSizes.ENTRY_OVERHEAD;
+			return true;
+		}
+		
+		try
+		{
+			Variable attribute = getAttribute(resourceName);
+			this.residentSize -= estimateEntrySize(attributeToResource(attribute));
+			removeAttribute(attribute);
+			return true;
+		}
+		catch (NoSuchAttributeException e)
+		{
+			// Already removed
+			return false;
+		}
+	}
+	
+	/**
+	 * @return The names of all resources in the bank, including the ones in chunks that 
+	 * haven't been loaded yet
+	 */
+	List<String> getResourceNames()
+	{
+		if (this.frozen != null)
+			return this.frozen.getNames();
+		
+		updateLoad();
+		List<String> names = new ArrayList<>();
+		if (this.chunks != null)
+			names.addAll(this.chunks.getResourceNames());
+		for (ResourceStore<ResourceType> store : this.stores)
+		{
+			names.addAll(store.getNames());
+		}
+		
+		return names;
+	}
+	
+	private NavigableSet<String> getSortedNames()
+	{
+		if (this.nameIndex != null)
+			return this.nameIndex;
+		
+		// Without an index, the names need to be collected and sorted each time
+		NavigableSet<String> names = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+		names.addAll(getResourceNames());
+		return names;
+	}
+	
+	private NavigableSet<String> getNamesWithPrefix(String prefix)
+	{
+		return Collections.unmodifiableNavigableSet(getSortedNames().subSet(prefix, true, 
+				prefix + Character.MAX_VALUE, false));
+	}
+	
+	private void loadChunkOf(String resourceName)
+	{
+		addLoadedContents(this.chunks.loadChunkOf(resourceName));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private ResourceType attributeToResource(Variable attribute)
+	{
+		return (ResourceType) attribute.getObjectValue(getContentType());
+	}
+	
+	private long estimateEntrySize(Object resource)
+	{
+		// Off-heap resources only hold an entry in the heap
+		if (shouldStoreOffHeap(resource))
+			return ResourceSizes.ENTRY_OVERHEAD;
+		else
+			return ResourceSizes.getInstance().estimateEntrySize(getContentType(), resource);
+	}
+	
+	private boolean shouldStoreOffHeap(Object resource)
+	{
+		return this.offHeapThreshold >= 0 && OffHeapStore.canStore(resource) && 
+				OffHeapStore.getStoredSize(resource) >= this.offHeapThreshold;
+	}
+	
+	private Collection<Variable> getContents()
+	{
+		List<ResourceStore<ResourceType>> stores = this.stores;
+		if (stores.size() == 1)
+			return stores.get(0).getContents();
+		
+		Collection<Variable> contents = new ArrayList<>();
+		for (ResourceStore<ResourceType> store : stores)
+		{
+			contents.addAll(store.getContents());
+		}
+		return contents;
+	}
+	
+	private Variable getStoredAttribute(String resourceName) throws NoSuchAttributeException
+	{
+		// Reads the stored value without informing the tracer, since nothing is requested
+		for (ResourceStore<ResourceType> store : this.stores)
+		{
+			Variable attribute = store.getVariable(resourceName);
+			if (attribute != null)
+				return attribute;
+		}
+		throw new NoSuchAttributeException(resourceName, this);
+	}
+	
+	private void updateStores()
+	{
+		// Frozen banks only use their table. Otherwise the resources stored off-heap and 
+		// shared through a pool are checked before the heap.
+		if (this.frozen != null)
+		{
+			this.stores = Collections.<ResourceStore<ResourceType>>singletonList(this.frozen);
+			return;
+		}
+		
+		List<ResourceStore<ResourceType>> stores = new ArrayList<>(3);
+		if (this.offHeap != null)
+			stores.add(new OffHeapResources());
+		if (this.shared != null)
+			stores.add(new SharedResources());
+		stores.add(this.heap);
+		this.stores = stores;
+	}
+	
+	private Collection<Variable> getOwnContents()
+	{
+		// Inherited resources belong to the fallback banks
+		if (this.inheritedNames.isEmpty())
+			return getContents();
+		
+		List<Variable> contents = new ArrayList<>();
+		for (Variable var : getContents())
+		{
+			if (!this.inheritedNames.contains(var.getName().toLowerCase()))
+				contents.add(var);
+		}
+		return contents;
+	}
+	
+	private void mergeFallbacks() throws RecordingFailedException
+	{
+		Set<String> names = new HashSet<>();
+		for (String resourceName : getResourceNames())
+		{
+			names.add(resourceName.toLowerCase());
+		}
+		
+		// Goes through the whole fallback chain in order of preference. Initialised 
+		// fallbacks already contain their own fallbacks' resources.
+		List<Bank<ResourceType>> chain = new ArrayList<>(this.fallbacks);
+		Set<Bank<?>> visited = Collections.newSetFromMap(new IdentityHashMap<Bank<?>, Boolean>());
+		visited.add(this);
+		for (int i = 0; i < chain.size(); i++)
+		{
+			Bank<ResourceType> fallback = chain.get(i);
+			if (!visited.add(fallback))
+				continue;
+			
+			Collection<Variable> contents;
+			if (fallback.isInitialised() && !fallback.isLoading() && !fallback.isChunked())
+				contents = fallback.getContents();
+			else
+			{
+				RecorderOperationEvent read = ArcEvents.beginRecorderOperation();
+				contents = fallback.recorder.readBank(fallback.getName(), getContentType());
+				ArcEvents.endRecorderOperation(read, fallback.recorder, "read", fallback.getName(), 
+						getContentType(), 1, contents.size());
+				chain.addAll(i + 1, fallback.fallbacks);
+			}
+			
+			for (Variable var : contents)
+			{
+				String key = var.getName().toLowerCase();
+				if (names.add(key))
+				{
+					addLoadedResource(var, attributeToResource(var));
+					this.inheritedNames.add(key);
+				}
+			}
+		}
+	}
+	
+	private List<Variable> getSharedContents()
+	{
+		// Only includes the shared resources that haven't been replaced in this bank
+		List<Variable> contents = new ArrayList<>();
+		for (Map.Entry<String, Variable> entry : this.shared.entrySet())
+		{
+			if (!this.sharedOverrides.contains(entry.getKey()))
+				contents.add(entry.getValue());
+		}
+		return contents;
+	}
+	
+	
+	// NESTED CLASSES	------------------
+	
+	/**
+	 * These exceptions are thrown when a resource needs to be read on demand and the 
+	 * reading fails
+	 * @author Mikko Hilpinen
+	 * @since 22.5.2016
+	 */
+	public static class ResourceLoadFailedException extends RuntimeException
+	{
+		private static final long serialVersionUID = 8411733925386925120L;
+
+		/**
+		 * Creates a new exception
+		 * @param message The message sent along with the exception
+		 * @param cause The cause of the exception
+		 */
+		public ResourceLoadFailedException(String message, Throwable cause)
+		{
+			super(message, cause);
+		}
+	}
+	
+	private class HeapResources implements ResourceStore<ResourceType>
+	{
+		@Override
+		public boolean contains(String resourceName)
+		{
+			return getVariable(resourceName) != null;
+		}
+		
+		@Override
+		public ResourceType get(String resourceName) throws NoSuchAttributeException
+		{
+			// Each resource is converted only once
+			String key = resourceName.toLowerCase();
+			ResourceType resource = Bank.this.converted.get(key);
+			if (resource == null)
+			{
+				resource = attributeToResource(getAttribute(resourceName));
+				Bank.this.converted.put(key, resource);
+			}
+			return resource;
+		}
+		
+		@Override
+		public Variable getVariable(String resourceName)
+		{
+			try
+			{
+				return getAttribute(resourceName);
+			}
+			catch (NoSuchAttributeException e)
+			{
+				return null;
+			}
+		}
+		
+		@Override
+		public Collection<String> getNames()
+		{
+			List<String> names = new ArrayList<>();
+			for (Variable var : getAttributes())
+			{
+				names.add(var.getName());
+			}
+			return names;
+		}
+		
+		@Override
+		public Collection<Variable> getContents()
+		{
+			return getAttributes();
+		}
+	}
+	
+	private class OffHeapResources implements ResourceStore<ResourceType>
+	{
+		@Override
+		public boolean contains(String resourceName)
+		{
+			return !Bank.this.offHeap.isEmpty() && Bank.this.offHeap.contains(resourceName);
+		}
+		
+		@SuppressWarnings("unchecked")
+		@Override
+		public ResourceType get(String resourceName) throws NoSuchAttributeException
+		{
+			Object resource = Bank.this.offHeap.get(resourceName);
+			if (resource == null)
+				throw new NoSuchAttributeException(resourceName, Bank.this);
+			return (ResourceType) resource;
+		}
+		
+		@Override
+		public Variable getVariable(String resourceName)
+		{
+			Object resource = Bank.this.offHeap.get(resourceName);
+			if (resource == null)
+				return null;
+			return new Variable(resourceName, new Value(resource, getContentType()));
+		}
+		
+		@Override
+		public Collection<String> getNames()
+		{
+			return Bank.this.offHeap.getNames();
+		}
+		
+		@Override
+		public Collection<Variable> getContents()
+		{
+			List<Variable> contents = new ArrayList<>();
+			for (String resourceName : Bank.this.offHeap.getNames())
+			{
+				contents.add(getVariable(resourceName));
+			}
+			return contents;
+		}
+	}
+	
+	private class SharedResources implements ResourceStore<ResourceType>
+	{
+		@Override
+		public boolean contains(String resourceName)
+		{
+			return getVariable(resourceName) != null;
+		}
+		
+		@Override
+		public ResourceType get(String resourceName) throws NoSuchAttributeException
+		{
+			// The converted resources are cached per bank, like those in the heap
+			String key = resourceName.toLowerCase();
+			ResourceType resource = Bank.this.converted.get(key);
+			if (resource == null)
+			{
+				Variable attribute = getVariable(resourceName);
+				if (attribute == null)
+					throw new NoSuchAttributeException(resourceName, Bank.this);
+				resource = attributeToResource(attribute);
+				Bank.this.converted.put(key, resource);
+			}
+			return resource;
+		}
+		
+		@Override
+		public Variable getVariable(String resourceName)
+		{
+			// Shared contents are used unless the resource has been replaced in this bank
+			String key = resourceName.toLowerCase();
+			if (Bank.this.sharedOverrides.contains(key))
+				return null;
+			return Bank.this.shared.get(key);
+		}
+		
+		@Override
+		public Collection<String> getNames()
+		{
+			List<String> names = new ArrayList<>();
+			for (Variable var : getSharedContents())
+			{
+				names.add(var.getName());
+			}
+			return names;
+		}
+		
+		@Override
+		public Collection<Variable> getContents()
+		{
+			return getSharedContents();
+		}
+	}
+}
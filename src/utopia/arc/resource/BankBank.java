@@ -1,206 +1,431 @@
-package utopia.arc.resource;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import utopia.arc.resource.BankRecorder.RecordingFailedException;
-import utopia.flow.generics.DataType;
-
-/**
- * This class contains multiple banks of a single type
- * @author Mikko Hilpinen
- * @since 9.5.2016
- * @param <ResourceType> The type of resource held within the banks
- */
-public class BankBank<ResourceType>
-{
-	// ATTRIBUTES	---------------
-	
-	private Map<String, Bank<ResourceType>> banks = new HashMap<>();
-	private DataType type;
-	private BankRecorder recorder;
-	
-	
-	// CONSTRUCTOR	---------------
-	
-	/**
-	 * Creates a new bank bank
-	 * @param contentType The type of content in the banks. Must match the bank's class type
-	 * @param recorder The recorder used for reading and writing bank data
-	 * @param generateBanks Should the banks be generated as well by using the recorder to read 
-	 * the bank names
-	 * @throws RecordingFailedException If, when trying to generate the banks, the operation 
-	 * fails for some reason
-	 */
-	public BankBank(DataType contentType, BankRecorder recorder, boolean generateBanks) 
-			throws RecordingFailedException
-	{
-		this.type = contentType;
-		this.recorder = recorder;
-		
-		if (generateBanks)
-		{
-			for (String bankName : this.recorder.readBankNames(contentType))
-			{
-				put(bankName);
-			}
-		}
-	}
-	
-	
-	// ACCESSORS	---------------
-	
-	/**
-	 * @return The type of content inside the banks
-	 */
-	public DataType getContentType()
-	{
-		return this.type;
-	}
-	
-	
-	// OTHER METHODS	-----------
-	
-	/**
-	 * Checks whether the bank bank contains a bank with the provided name (case-insensitive)
-	 * @param bankName The name of the bank
-	 * @return Does the bank bank contain a bank with the provided name
-	 */
-	public boolean containsBankWithName(String bankName)
-	{
-		return this.banks.containsKey(bankName.toLowerCase());
-	}
-	
-	/**
-	 * Adds a new bank to the bank bank
-	 * @param bank The bank that is added
-	 */
-	public void put(Bank<ResourceType> bank)
-	{
-		this.banks.put(bank.getName().toLowerCase(), bank);
-	}
-	
-	/**
-	 * Adds a new bank to the bank bank
-	 * @param bankName The name of the new bank
-	 * @return The bank that was added
-	 */
-	public Bank<ResourceType> put(String bankName)
-	{	
-		Bank<ResourceType> bank = new Bank<>(bankName, getContentType(), this.recorder);
-		put(bank);
-		return bank;
-	}
-	
-	/**
-	 * Adds multiple banks to the bank bank (in case they don't exist there yet)
-	 * @param bankNames The names of the new banks
-	 */
-	public void generateBanks(String... bankNames)
-	{
-		for (String bankName : bankNames)
-		{
-			if (!containsBankWithName(bankName))
-				put(bankName);
-		}
-	}
-	
-	/**
-	 * Adds multiple banks to the bank bank (in case they don't exist there yet)
-	 * @param bankNames The names of the new banks
-	 */
-	public void generateBanks(Collection<String> bankNames)
-	{
-		generateBanks(bankNames.toArray(new String[0]));
-	}
-	
-	/**
-	 * Adds a new resource to one of the banks inside this bank bank
-	 * @param bankName The name of the target bank. If no bank exists with this name, one is 
-	 * created
-	 * @param resourceName The name of the resource inside the bank
-	 * @param resource The resource put to the bank
-	 */
-	public void put(String bankName, String resourceName, ResourceType resource)
-	{
-		Bank<ResourceType> bank = get(bankName);
-		// If there is no bank, creates one
-		if (bank == null)
-			bank = put(bankName);
-		
-		bank.put(resourceName, resource);
-	}
-	
-	/**
-	 * Finds a bank from the bank bank
-	 * @param bankName The name of the bank
-	 * @return The bank from this bank bank or null if no such bank existed
-	 */
-	public Bank<ResourceType> get(String bankName)
-	{
-		return this.banks.get(bankName.toLowerCase());
-	}
-	
-	/**
-	 * Finds a resource from one of the banks inside this bank bank
-	 * @param bankName The name of the bank
-	 * @param resourceName The name of the resource in the bank
-	 * @return The resource from the bank or null if the bank didn't exist or it didn't contain 
-	 * the resource
-	 */
-	public ResourceType get(String bankName, String resourceName)
-	{
-		Bank<ResourceType> bank = get(bankName);
-		if (bank == null)
-			return null;
-		else
-			return bank.get(resourceName);
-	}
-	
-	/**
-	 * @return The banks in this bank bank. The list is a copy and changes made to it 
-	 * won't affect the bank.
-	 */
-	public List<Bank<ResourceType>> getBanks()
-	{
-		return new ArrayList<>(this.banks.values());
-	}
-	
-	/**
-	 * Saves the banks in this bank
-	 * @throws RecordingFailedException If the bank writing failed
-	 */
-	public void save() throws RecordingFailedException
-	{
-		for (Bank<?> bank : getBanks())
-		{
-			bank.save();
-		}
-	}
-	
-	/**
-	 * Initialises the contents of each bank in this collection
-	 * @throws RecordingFailedException If initialisation failed at some point
-	 */
-	public void initialiseAll() throws RecordingFailedException
-	{
-		for (Bank<?> bank : getBanks())
-		{
-			bank.initialise();
-		}
-	}
-	
-	/**
-	 * Uninitialises all banks in this collection
-	 */
-	public void unInitialiseAll()
-	{
-		for (Bank<?> bank : getBanks())
-		{
-			bank.uninitialise();
-		}
-	}
-}
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.flow.generics.DataType;
+
+/**
+ * This class contains multiple banks of a single type
+ * @author Mikko Hilpinen
+ * @since 9.5.2016
+ * @param <ResourceType> The type of resource held within the banks
+ */
+public class BankBank<ResourceType>
+{
+	// ATTRIBUTES	---------------
+	
+	private Map<String, Bank<ResourceType>> banks = new HashMap<>();
+	private DataType type;
+	private BankRecorder recorder;
+	private boolean nameIndexEnabled = false;
+	private BankPool pool = null;
+	private ResourceTracer tracer = null;
+	
+	
+	// CONSTRUCTOR	---------------
+	
+	/**
+	 * Creates a new bank bank
+	 * @param contentType The type of content in the banks. Must match the bank's class type
+	 * @param recorder The recorder used for reading and writing bank data
+	 * @param generateBanks Should the banks be generated as well by using the recorder to read 
+	 * the bank names
+	 * @throws RecordingFailedException If, when trying to generate the banks, the operation 
+	 * fails for some reason
+	 */
+	public BankBank(DataType contentType, BankRecorder recorder, boolean generateBanks) 
+			throws RecordingFailedException
+	{
+		this.type = contentType;
+		this.recorder = recorder;
+		
+		if (generateBanks)
+		{
+			for (String bankName : this.recorder.readBankNames(contentType))
+			{
+				put(bankName);
+			}
+		}
+	}
+	
+	
+	// ACCESSORS	---------------
+	
+	/**
+	 * @return The type of content inside the banks
+	 */
+	public DataType getContentType()
+	{
+		return this.type;
+	}
+	
+	
+	// OTHER METHODS	-----------
+	
+	/**
+	 * Checks whether the bank bank contains a bank with the provided name (case-insensitive)
+	 * @param bankName The name of the bank
+	 * @return Does the bank bank contain a bank with the provided name
+	 */
+	public boolean containsBankWithName(String bankName)
+	{
+		return this.banks.containsKey(bankName.toLowerCase());
+	}
+	
+	/**
+	 * Adds a new bank to the bank bank
+	 * @param bank The bank that is added
+	 */
+	public void put(Bank<ResourceType> bank)
+	{
+		if (this.nameIndexEnabled)
+			bank.setNameIndexEnabled(true);
+		if (this.pool != null)
+			bank.setPool(this.pool);
+		if (this.tracer != null)
+			bank.setTracer(this.tracer);
+		this.banks.put(bank.getName().toLowerCase(), bank);
+	}
+	
+	/**
+	 * Adds a new bank to the bank bank
+	 * @param bankName The name of the new bank
+	 * @return The bank that was added
+	 */
+	public Bank<ResourceType> put(String bankName)
+	{	
+		Bank<ResourceType> bank = new Bank<>(bankName, getContentType(), this.recorder);
+		put(bank);
+		return bank;
+	}
+	
+	/**
+	 * Adds multiple banks to the bank bank (in case they don't exist there yet)
+	 * @param bankNames The names of the new banks
+	 */
+	public void generateBanks(String... bankNames)
+	{
+		for (String bankName : bankNames)
+		{
+			if (!containsBankWithName(bankName))
+				put(bankName);
+		}
+	}
+	
+	/**
+	 * Adds multiple banks to the bank bank (in case they don't exist there yet)
+	 * @param bankNames The names of the new banks
+	 */
+	public void generateBanks(Collection<String> bankNames)
+	{
+		generateBanks(bankNames.toArray(new String[0]));
+	}
+	
+	/**
+	 * Adds a new resource to one of the banks inside this bank bank
+	 * @param bankName The name of the target bank. If no bank exists with this name, one is 
+	 * created
+	 * @param resourceName The name of the resource inside the bank
+	 * @param resource The resource put to the bank
+	 */
+	public void put(String bankName, String resourceName, ResourceType resource)
+	{
+		Bank<ResourceType> bank = get(bankName);
+		// If there is no bank, creates one
+		if (bank == null)
+			bank = put(bankName);
+		
+		bank.put(resourceName, resource);
+	}
+	
+	/**
+	 * Finds a bank from the bank bank
+	 * @param bankName The name of the bank
+	 * @return The bank from this bank bank or null if no such bank existed
+	 */
+	public Bank<ResourceType> get(String bankName)
+	{
+		return this.banks.get(bankName.toLowerCase());
+	}
+	
+	/**
+	 * Finds a resource from one of the banks inside this bank bank
+	 * @param bankName The name of the bank
+	 * @param resourceName The name of the resource in the bank
+	 * @return The resource from the bank or null if the bank didn't exist or it didn't contain 
+	 * the resource
+	 */
+	public ResourceType get(String bankName, String resourceName)
+	{
+		Bank<ResourceType> bank = get(bankName);
+		if (bank == null)
+			return null;
+		else
+			return bank.get(resourceName);
+	}
+	
+	/**
+	 * @return The banks in this bank bank. The list is a copy and changes made to it 
+	 * won't affect the bank.
+	 */
+	public List<Bank<ResourceType>> getBanks()
+	{
+		return new ArrayList<>(this.banks.values());
+	}
+	
+	/**
+	 * Enables or disables the sorted name index in each bank in this bank bank, including 
+	 * the banks added later
+	 * @param enabled Should the banks keep a sorted index of their resource names
+	 * @see Bank#setNameIndexEnabled(boolean)
+	 */
+	public void setNameIndexEnabled(boolean enabled)
+	{
+		this.nameIndexEnabled = enabled;
+		for (Bank<?> bank : getBanks())
+		{
+			bank.setNameIndexEnabled(enabled);
+		}
+	}
+	
+	/**
+	 * Makes each bank in this bank bank, including the banks added later, share their 
+	 * contents through a bank pool. This way multiple resource managers may use the same 
+	 * banks without reading them multiple times.
+	 * @param pool The pool the bank contents are shared through. Null if each bank should 
+	 * read its own contents.
+	 * @see Bank#setPool(BankPool)
+	 */
+	public void setPool(BankPool pool)
+	{
+		this.pool = pool;
+		for (Bank<?> bank : getBanks())
+		{
+			bank.setPool(pool);
+		}
+	}
+	
+	/**
+	 * Sets the tracer that is informed of the loads and resource requests of each bank in 
+	 * this bank bank, including the banks added later
+	 * @param tracer The tracer that is informed. Null if the banks shouldn't be traced.
+	 * @see Bank#setTracer(ResourceTracer)
+	 */
+	public void setTracer(ResourceTracer tracer)
+	{
+		this.tracer = tracer;
+		for (Bank<?> bank : getBanks())
+		{
+			bank.setTracer(tracer);
+		}
+	}
+	
+	/**
+	 * Finds the resources whose names start with the provided prefix (case-insensitive) 
+	 * from all of the initialised banks
+	 * @param prefix The prefix of the resource names
+	 * @return A lazy iterable over the matching resources. The resources are read from the 
+	 * banks only when iterated.
+	 * @see Bank#getWithPrefix(String)
+	 */
+	public Iterable<Entry<String, ResourceType>> getWithPrefix(final String prefix)
+	{
+		return new Iterable<Entry<String, ResourceType>>()
+		{
+			@Override
+			public Iterator<Entry<String, ResourceType>> iterator()
+			{
+				return new BankViewIterator<ResourceType>(getBanks())
+				{
+					@Override
+					protected Map<String, ResourceType> getView(Bank<ResourceType> bank)
+					{
+						return bank.getWithPrefix(prefix);
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Finds the resources whose names match a glob pattern (case-insensitive) from all of 
+	 * the initialised banks
+	 * @param glob The pattern the resource names must match. '*' matches any amount of 
+	 * characters and '?' matches a single character.
+	 * @return A lazy iterable over the matching resources. The resources are read from the 
+	 * banks only when iterated.
+	 * @see Bank#getMatching(String)
+	 */
+	public Iterable<Entry<String, ResourceType>> getMatching(final String glob)
+	{
+		return new Iterable<Entry<String, ResourceType>>()
+		{
+			@Override
+			public Iterator<Entry<String, ResourceType>> iterator()
+			{
+				return new BankViewIterator<ResourceType>(getBanks())
+				{
+					@Override
+					protected Map<String, ResourceType> getView(Bank<ResourceType> bank)
+					{
+						return bank.getMatching(glob);
+					}
+				};
+			}
+		};
+	}
+	
+	/**
+	 * Declares a bank a variant of other banks in this bank bank. For example, a Finnish 
+	 * string bank may fall back to the English one. Each missing bank is created. The 
+	 * fallbacks are merged into the variant when the variant is initialised, so each lookup 
+	 * is resolved with a single search.
+	 * @param bankName The name of the variant bank
+	 * @param fallbackBankNames The names of the banks the variant falls back to, in order 
+	 * of preference
+	 * @return The variant bank
+	 * @see Bank#setFallbacks(List)
+	 */
+	public Bank<ResourceType> declareVariant(String bankName, String... fallbackBankNames)
+	{
+		List<Bank<ResourceType>> fallbacks = new ArrayList<>();
+		for (String fallbackName : fallbackBankNames)
+		{
+			Bank<ResourceType> fallback = get(fallbackName);
+			if (fallback == null)
+				fallback = put(fallbackName);
+			fallbacks.add(fallback);
+		}
+		
+		Bank<ResourceType> bank = get(bankName);
+		if (bank == null)
+			bank = put(bankName);
+		bank.setFallbacks(fallbacks);
+		return bank;
+	}
+	
+	/**
+	 * Acquires a lease on a bank, initialising it if necessary. The bank stays initialised 
+	 * until each lease has been released.
+	 * @param bankName The name of the bank
+	 * @return The acquired bank or null if there was no such bank
+	 * @throws RecordingFailedException If the bank couldn't be initialised
+	 * @see Bank#acquire()
+	 * @see #release(String)
+	 */
+	public Bank<ResourceType> acquire(String bankName) throws RecordingFailedException
+	{
+		Bank<ResourceType> bank = get(bankName);
+		if (bank != null)
+			bank.acquire();
+		return bank;
+	}
+	
+	/**
+	 * Releases a lease on a bank. The bank is uninitialised once all of its leases have been 
+	 * released.
+	 * @param bankName The name of the bank
+	 * @see Bank#release()
+	 */
+	public void release(String bankName)
+	{
+		Bank<ResourceType> bank = get(bankName);
+		if (bank != null)
+			bank.release();
+	}
+	
+	/**
+	 * Saves the banks in this bank
+	 * @throws RecordingFailedException If the bank writing failed
+	 */
+	public void save() throws RecordingFailedException
+	{
+		for (Bank<?> bank : getBanks())
+		{
+			bank.save();
+		}
+	}
+	
+	/**
+	 * Initialises the contents of each bank in this collection
+	 * @throws RecordingFailedException If initialisation failed at some point
+	 */
+	public void initialiseAll() throws RecordingFailedException
+	{
+		for (Bank<?> bank : getBanks())
+		{
+			bank.initialise();
+		}
+	}
+	
+	/**
+	 * Uninitialises all banks in this collection. The holds on the banks are discarded as well.
+	 * @see Bank#uninitialise()
+	 */
+	public void unInitialiseAll()
+	{
+		for (Bank<?> bank : getBanks())
+		{
+			bank.uninitialise();
+		}
+	}
+	
+	
+	// NESTED CLASSES	-----------
+	
+	private static abstract class BankViewIterator<ResourceType> implements 
+			Iterator<Entry<String, ResourceType>>
+	{
+		// ATTRIBUTES	-----------
+		
+		private Iterator<Bank<ResourceType>> banks;
+		private Iterator<Entry<String, ResourceType>> current = null;
+		
+		
+		// CONSTRUCTOR	-----------
+		
+		public BankViewIterator(List<Bank<ResourceType>> banks)
+		{
+			this.banks = banks.iterator();
+		}
+		
+		
+		// ABSTRACT	---------------
+		
+		protected abstract Map<String, ResourceType> getView(Bank<ResourceType> bank);
+		
+		
+		// IMPLEMENTED METHODS	---
+		
+		@Override
+		public boolean hasNext()
+		{
+			// Moves on to the next initialised bank's view when the current one runs out
+			while (this.current == null || !this.current.hasNext())
+			{
+				if (!this.banks.hasNext())
+					return false;
+				Bank<ResourceType> bank = this.banks.next();
+				if (bank.isInitialised())
+					this.current = getView(bank).entrySet().iterator();
+			}
+			return true;
+		}
+
+		@Override
+		public Entry<String, ResourceType> next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException();
+			return this.current.next();
+		}
+	}
+}
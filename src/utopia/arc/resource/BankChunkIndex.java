@@ -0,0 +1,143 @@
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A chunk index tells which chunk each resource of a chunked bank is stored in
+ * @author Mikko Hilpinen
+ * @since 22.5.2016
+ * @see ChunkedBankRecorder
+ */
+public class BankChunkIndex
+{
+	// ATTRIBUTES	------------------
+	
+	private Map<String, Integer> chunks = new HashMap<>();
+	private List<List<String>> resourceNames;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new empty index
+	 * @param chunkCount The amount of chunks in the bank
+	 */
+	public BankChunkIndex(int chunkCount)
+	{
+		this.resourceNames = new ArrayList<>(chunkCount);
+		for (int i = 0; i < chunkCount; i++)
+		{
+			this.resourceNames.add(new ArrayList<>());
+		}
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return The amount of chunks in the bank
+	 */
+	public int getChunkCount()
+	{
+		return this.resourceNames.size();
+	}
+	
+	/**
+	 * @return The amount of resources in the bank
+	 */
+	public int size()
+	{
+		return this.chunks.size();
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Finds the chunk that contains a resource
+	 * @param resourceName The name of the resource (case-insensitive)
+	 * @return The index of the chunk containing the resource. -1 if the resource isn't in 
+	 * the bank.
+	 */
+	public int getChunk(String resourceName)
+	{
+		Integer chunk = this.chunks.get(resourceName.toLowerCase());
+		if (chunk == null)
+			return -1;
+		else
+			return chunk;
+	}
+	
+	/**
+	 * Finds the amount of resources in a chunk
+	 * @param chunk The index of the chunk
+	 * @return The amount of resources stored in the chunk
+	 */
+	public int getResourceCount(int chunk)
+	{
+		return this.resourceNames.get(chunk).size();
+	}
+	
+	/**
+	 * Finds the names of the resources in a chunk
+	 * @param chunk The index of the chunk
+	 * @return The names of the resources stored in the chunk. The list is a copy.
+	 */
+	public List<String> getResourceNames(int chunk)
+	{
+		return new ArrayList<>(this.resourceNames.get(chunk));
+	}
+	
+	/**
+	 * @return The names of all resources in the bank
+	 */
+	public List<String> getResourceNames()
+	{
+		List<String> names = new ArrayList<>(size());
+		for (List<String> chunkNames : this.resourceNames)
+		{
+			names.addAll(chunkNames);
+		}
+		return names;
+	}
+	
+	/**
+	 * Adds a resource to the index. If the resource was already indexed, does nothing.
+	 * @param resourceName The name of the resource
+	 * @param chunk The index of the chunk the resource is stored in
+	 */
+	public void add(String resourceName, int chunk)
+	{
+		String key = resourceName.toLowerCase();
+		if (!this.chunks.containsKey(key))
+		{
+			this.chunks.put(key, chunk);
+			this.resourceNames.get(chunk).add(resourceName);
+		}
+	}
+	
+	/**
+	 * Removes a resource from the index
+	 * @param resourceName The name of the resource (case-insensitive)
+	 * @return The index of the chunk the resource was stored in. -1 if the resource wasn't 
+	 * indexed.
+	 */
+	public int remove(String resourceName)
+	{
+		Integer chunk = this.chunks.remove(resourceName.toLowerCase());
+		if (chunk == null)
+			return -1;
+		
+		Iterator<String> names = this.resourceNames.get(chunk).iterator();
+		while (names.hasNext())
+		{
+			if (names.next().equalsIgnoreCase(resourceName))
+				names.remove();
+		}
+		return chunk;
+	}
+}
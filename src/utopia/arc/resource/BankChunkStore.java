@@ -0,0 +1,305 @@
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import utopia.arc.resource.ArcEvents.RecorderOperationEvent;
+import utopia.arc.resource.Bank.ResourceLoadFailedException;
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * A chunk store keeps track of the chunks of a chunked bank: which resources each chunk 
+ * contains, which chunks have been loaded, when they were last used and which of them have 
+ * unsaved changes. The store reads and writes the chunks, while the resources themselves 
+ * are kept in the bank.
+ * @author Mikko Hilpinen
+ * @since 22.5.2016
+ * @see ChunkedBankRecorder
+ */
+class BankChunkStore
+{
+	// ATTRIBUTES	------------------
+	
+	private final ChunkedBankRecorder recorder;
+	private final String bankName;
+	private final DataType bankType;
+	
+	private BankChunkIndex index;
+	private boolean[] loaded;
+	private long[] accessTimes;
+	private Set<Integer> changed = new HashSet<>();
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new store by reading a bank's chunk index. None of the chunks are loaded yet.
+	 * @param recorder The recorder the chunks are read with
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @throws RecordingFailedException If the index couldn't be read
+	 */
+	public BankChunkStore(ChunkedBankRecorder recorder, String bankName, DataType bankType)
+			throws RecordingFailedException
+	{
+		this.recorder = recorder;
+		this.bankName = bankName;
+		this.bankType = bankType;
+		
+		readIndex();
+		this.accessTimes = new long[this.loaded.length];
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return The amount of chunks in the bank
+	 */
+	public int getChunkCount()
+	{
+		return this.loaded.length;
+	}
+	
+	/**
+	 * @return Whether some of the chunks have unsaved changes
+	 */
+	public boolean hasChanges()
+	{
+		return !this.changed.isEmpty();
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * @return The amount of resources in the bank, including the chunks that haven't been 
+	 * loaded
+	 */
+	public int size()
+	{
+		return this.index.size();
+	}
+	
+	/**
+	 * @return The names of all resources in the bank
+	 */
+	public List<String> getResourceNames()
+	{
+		return this.index.getResourceNames();
+	}
+	
+	/**
+	 * @param chunk The index of a chunk
+	 * @return The names of the resources in the chunk
+	 */
+	public List<String> getResourceNames(int chunk)
+	{
+		return this.index.getResourceNames(chunk);
+	}
+	
+	/**
+	 * @param resourceName The name of a resource
+	 * @return Whether the bank contains the resource, whether its chunk is loaded or not
+	 */
+	public boolean contains(String resourceName)
+	{
+		return this.index.getChunk(resourceName) >= 0;
+	}
+	
+	/**
+	 * Reads a chunk, unless it has been loaded already
+	 * @param chunk The index of the chunk
+	 * @return The resources read from the chunk. Empty if the chunk was loaded already.
+	 * @throws ResourceLoadFailedException If the chunk couldn't be read
+	 */
+	public Collection<Variable> load(int chunk) throws ResourceLoadFailedException
+	{
+		this.accessTimes[chunk] = System.currentTimeMillis();
+		if (this.loaded[chunk])
+			return Collections.emptyList();
+		
+		try
+		{
+			RecorderOperationEvent read = ArcEvents.beginRecorderOperation();
+			Collection<Variable> data = this.recorder.readChunk(this.bankName, this.bankType, chunk);
+			ArcEvents.endRecorderOperation(read, this.recorder, "read chunk", this.bankName, 
+					this.bankType, 1, data.size());
+			this.loaded[chunk] = true;
+			return data;
+		}
+		catch (RecordingFailedException e)
+		{
+			throw new ResourceLoadFailedException("Failed to read chunk " + chunk + 
+					" of bank " + this.bankName, e);
+		}
+	}
+	
+	/**
+	 * Reads the chunk that contains a resource, unless it has been loaded already
+	 * @param resourceName The name of the resource
+	 * @return The resources read from the chunk. Empty if the chunk was loaded already or 
+	 * if the bank doesn't contain the resource.
+	 * @throws ResourceLoadFailedException If the chunk couldn't be read
+	 */
+	public Collection<Variable> loadChunkOf(String resourceName) throws ResourceLoadFailedException
+	{
+		int chunk = this.index.getChunk(resourceName);
+		if (chunk < 0)
+			return Collections.emptyList();
+		else
+			return load(chunk);
+	}
+	
+	/**
+	 * Reads all of the chunks that haven't been loaded yet
+	 * @return The resources read from the chunks
+	 * @throws ResourceLoadFailedException If a chunk couldn't be read
+	 */
+	public Collection<Variable> loadAll() throws ResourceLoadFailedException
+	{
+		List<Variable> data = new ArrayList<>();
+		for (int chunk = 0; chunk < this.loaded.length; chunk++)
+		{
+			data.addAll(load(chunk));
+		}
+		return data;
+	}
+	
+	/**
+	 * Prepares a resource to be modified. New resources are assigned to a chunk. The 
+	 * resource's chunk is loaded and marked changed.
+	 * @param resourceName The name of the resource that is modified
+	 * @return The resources read from the chunk. Empty if the chunk was loaded already.
+	 * @throws ResourceLoadFailedException If the chunk couldn't be read
+	 */
+	public Collection<Variable> prepareChange(String resourceName) throws ResourceLoadFailedException
+	{
+		int chunk = this.index.getChunk(resourceName);
+		if (chunk < 0)
+		{
+			chunk = this.recorder.getChunkFor(resourceName, this.loaded.length);
+			this.index.add(resourceName, chunk);
+		}
+		
+		Collection<Variable> data = load(chunk);
+		this.changed.add(chunk);
+		return data;
+	}
+	
+	/**
+	 * Removes a resource from the chunk index. The resource's chunk should be prepared 
+	 * for the change first.
+	 * @param resourceName The name of the removed resource
+	 * @see #prepareChange(String)
+	 */
+	public void remove(String resourceName)
+	{
+		this.index.remove(resourceName);
+	}
+	
+	/**
+	 * Marks a chunk unloaded, so that it will be read again when it is needed. Chunks with 
+	 * unsaved changes are not dropped.
+	 * @param chunk The index of the chunk
+	 * @return Whether the chunk was dropped. The bank should then clear the chunk's 
+	 * resources from memory.
+	 */
+	public boolean drop(int chunk)
+	{
+		if (!this.loaded[chunk] || this.changed.contains(chunk))
+			return false;
+		
+		this.loaded[chunk] = false;
+		return true;
+	}
+	
+	/**
+	 * Finds the chunks that haven't been used in a while
+	 * @param maxIdleMillis The maximum time a chunk may stay unused, in milliseconds
+	 * @return The indices of the loaded chunks that have been idle longer than that
+	 */
+	public List<Integer> getIdleChunks(long maxIdleMillis)
+	{
+		long threshold = System.currentTimeMillis() - maxIdleMillis;
+		List<Integer> chunks = new ArrayList<>();
+		for (int chunk = 0; chunk < this.loaded.length; chunk++)
+		{
+			if (this.loaded[chunk] && this.accessTimes[chunk] < threshold)
+				chunks.add(chunk);
+		}
+		return chunks;
+	}
+	
+	/**
+	 * @return The indices of the chunks that have unsaved changes
+	 */
+	public Set<Integer> getChangedChunks()
+	{
+		return Collections.unmodifiableSet(this.changed);
+	}
+	
+	/**
+	 * Checks whether the changed chunks have grown so large that the bank should be split 
+	 * into more chunks
+	 * @return Whether a changed chunk holds more than twice the preferred amount of resources
+	 * @see ChunkedBankRecorder#getChunkSize()
+	 */
+	public boolean needsSplitting()
+	{
+		int maxSize = this.recorder.getChunkSize() * 2;
+		for (int chunk : this.changed)
+		{
+			if (this.index.getResourceCount(chunk) > maxSize)
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Writes the changed chunks
+	 * @param chunks The contents of each changed chunk
+	 * @throws RecordingFailedException If the chunks couldn't be written
+	 * @see #getChangedChunks()
+	 */
+	public void writeChanges(Map<Integer, List<Variable>> chunks) throws RecordingFailedException
+	{
+		this.recorder.writeChunks(this.bankName, this.bankType, this.index, chunks);
+		this.changed.clear();
+	}
+	
+	/**
+	 * Writes the whole bank again, which divides it into new chunks. All of the bank's 
+	 * resources must be in memory, since they all stay loaded.
+	 * @param contents All of the bank's resources
+	 * @throws RecordingFailedException If the bank couldn't be written or if the new index 
+	 * couldn't be read
+	 */
+	public void rewrite(Collection<Variable> contents) throws RecordingFailedException
+	{
+		this.recorder.writeBank(this.bankName, this.bankType, contents);
+		
+		readIndex();
+		this.accessTimes = new long[this.loaded.length];
+		Arrays.fill(this.loaded, true);
+		Arrays.fill(this.accessTimes, System.currentTimeMillis());
+		this.changed.clear();
+	}
+	
+	private void readIndex() throws RecordingFailedException
+	{
+		RecorderOperationEvent read = ArcEvents.beginRecorderOperation();
+		this.index = this.recorder.readChunkIndex(this.bankName, this.bankType);
+		ArcEvents.endRecorderOperation(read, this.recorder, "read index", this.bankName, 
+				this.bankType, 1, this.index.size());
+		this.loaded = new boolean[this.index.getChunkCount()];
+	}
+}
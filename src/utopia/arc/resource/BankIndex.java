@@ -0,0 +1,101 @@
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import utopia.flow.generics.DataType;
+
+/**
+ * A bank index gives each known bank a dense integer id so that sets of banks can be 
+ * handled as bit sets. The banks are identified by their content type and 
+ * (case-insensitive) name, so the bank objects themselves don't need to exist yet.
+ * @author Mikko Hilpinen
+ * @since 17.5.2016
+ */
+class BankIndex
+{
+	// ATTRIBUTES	-----------------
+	
+	private Map<DataType, Map<String, Integer>> ids = new HashMap<>();
+	private List<DataType> types = new ArrayList<>();
+	private List<String> bankNames = new ArrayList<>();
+	
+	
+	// OTHER METHODS	-------------
+	
+	/**
+	 * @return The amount of banks indexed so far. The ids range from 0 to size - 1.
+	 */
+	public int size()
+	{
+		return this.bankNames.size();
+	}
+	
+	/**
+	 * Finds the id of a bank, indexing the bank if necessary
+	 * @param type The content type of the bank
+	 * @param bankName The name of the bank (case-insensitive)
+	 * @return The bank's id
+	 */
+	public int getId(DataType type, String bankName)
+	{
+		Map<String, Integer> typeIds = this.ids.get(type);
+		if (typeIds == null)
+		{
+			typeIds = new HashMap<>();
+			this.ids.put(type, typeIds);
+		}
+		
+		String key = bankName.toLowerCase();
+		Integer id = typeIds.get(key);
+		if (id == null)
+		{
+			id = size();
+			typeIds.put(key, id);
+			this.types.add(type);
+			this.bankNames.add(bankName);
+		}
+		
+		return id;
+	}
+	
+	/**
+	 * @param id A bank id
+	 * @return The content type of the bank with the provided id
+	 */
+	public DataType getType(int id)
+	{
+		return this.types.get(id);
+	}
+	
+	/**
+	 * @param id A bank id
+	 * @return The name of the bank with the provided id
+	 */
+	public String getBankName(int id)
+	{
+		return this.bankNames.get(id);
+	}
+	
+	/**
+	 * Compiles the phase into a set of bank ids
+	 * @param phase A phase
+	 * @return The ids of the banks that are active during the phase
+	 */
+	public BitSet compile(Phase phase)
+	{
+		BitSet banks = new BitSet(size());
+		for (DataType type : phase.getResourceTypes())
+		{
+			for (String bankName : phase.getActiveBankNames(type))
+			{
+				banks.set(getId(type, bankName));
+			}
+		}
+		
+		return banks;
+	}
+}
@@ -0,0 +1,32 @@
+package utopia.arc.resource;
+
+/**
+ * Bank load listeners are informed as resources are loaded into a bank. When a bank is 
+ * initialised asynchronously, the listeners are called from the loading thread.
+ * @author Mikko Hilpinen
+ * @since 24.5.2016
+ * @see Bank#initialiseAsync(java.util.concurrent.Executor)
+ */
+public interface BankLoadListener
+{
+	/**
+	 * This method is called each time a resource is loaded
+	 * @param bank The bank that is being loaded
+	 * @param resourceName The name of the loaded resource
+	 * @param resource The loaded resource
+	 */
+	public void onResourceLoaded(Bank<?> bank, String resourceName, Object resource);
+	
+	/**
+	 * This method is called once all of the bank's resources have been loaded
+	 * @param bank The bank that was loaded
+	 */
+	public void onLoadCompleted(Bank<?> bank);
+	
+	/**
+	 * This method is called if the bank loading fails
+	 * @param bank The bank that was being loaded
+	 * @param cause The cause of the failure
+	 */
+	public void onLoadFailed(Bank<?> bank, Throwable cause);
+}
@@ -0,0 +1,189 @@
+package utopia.arc.resource;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import utopia.arc.resource.AsyncBankLoad.LoadedResource;
+import utopia.arc.resource.Bank.ResourceLoadFailedException;
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+
+/**
+ * A load state keeps track of a bank's background load and of the failure of its latest 
+ * load. A failed load leaves the bank uninitialised, but the failure is kept, so that the 
+ * following requests can report it. The failure is forgotten once the bank is initialised 
+ * or uninitialised again.
+ * @author Mikko Hilpinen
+ * @since 24.5.2016
+ * @param <ResourceType> The type of resources loaded into the bank
+ * @see Bank#initialiseAsync(java.util.concurrent.Executor)
+ */
+class BankLoadState<ResourceType>
+{
+	// ATTRIBUTES	------------------
+	
+	private AsyncBankLoad<ResourceType> load = null;
+	private Throwable failure = null;
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return Whether the bank is being loaded in the background. The load stays ongoing 
+	 * until it has been finished, even if the loader has already stopped.
+	 * @see #finish()
+	 */
+	public boolean isLoading()
+	{
+		return this.load != null;
+	}
+	
+	/**
+	 * @return Whether the loader has stopped, so that the load may be finished
+	 */
+	public boolean isDone()
+	{
+		return this.load != null && this.load.isDone();
+	}
+	
+	/**
+	 * @return A future that completes once the ongoing load has been read
+	 */
+	public CompletableFuture<Void> getCompletion()
+	{
+		return this.load.getCompletion();
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Starts a new load. The failure of the previous load is forgotten.
+	 * @param bankName The name of the loaded bank
+	 * @return The load the loader should fill
+	 */
+	public AsyncBankLoad<ResourceType> start(String bankName)
+	{
+		this.failure = null;
+		this.load = new AsyncBankLoad<>(bankName);
+		return this.load;
+	}
+	
+	/**
+	 * Collects the resources that have been loaded since the last call. When the loader 
+	 * has stopped, all of the remaining resources are collected.
+	 * @return The loaded resources. Empty if there is no ongoing load.
+	 */
+	public List<LoadedResource<ResourceType>> drain()
+	{
+		if (this.load == null)
+			return Collections.emptyList();
+		else
+			return this.load.drain();
+	}
+	
+	/**
+	 * Ends a load once its loader has stopped and its resources have been drained
+	 * @return The reason the load failed. Null if the load succeeded.
+	 * @see #isDone()
+	 */
+	public Throwable finish()
+	{
+		Throwable failure = this.load.getFailure();
+		this.load = null;
+		return failure;
+	}
+	
+	/**
+	 * Records the failure of a load, so that it is reported when the bank is used
+	 * @param failure The reason the load failed
+	 * @see #check(String)
+	 */
+	public void fail(Throwable failure)
+	{
+		this.failure = failure;
+	}
+	
+	/**
+	 * Abandons the ongoing load and forgets the failure of the previous load
+	 */
+	public void reset()
+	{
+		this.failure = null;
+		if (this.load != null)
+		{
+			this.load.abandon();
+			this.load = null;
+		}
+	}
+	
+	/**
+	 * Makes sure the resources loaded earlier may still be replaced by the bank's user
+	 * @param resourceName The name of a resource that was set while loading
+	 */
+	public void override(String resourceName)
+	{
+		if (this.load != null)
+			this.load.override(resourceName);
+	}
+	
+	/**
+	 * Waits for a resource to be loaded
+	 * @param resourceName The name of the resource
+	 * @return A future that completes once the resource has been loaded, or completes 
+	 * exceptionally if the load ends without it
+	 */
+	public CompletableFuture<ResourceType> await(String resourceName)
+	{
+		return this.load.await(resourceName);
+	}
+	
+	/**
+	 * Waits until the loader has stopped. The failure is not thrown, since it is read 
+	 * once the load has been finished.
+	 */
+	public void join()
+	{
+		try
+		{
+			this.load.getCompletion().join();
+		}
+		catch (CompletionException e)
+		{
+			// The failure is read from the load itself
+		}
+	}
+	
+	/**
+	 * Checks that the latest load didn't fail
+	 * @param bankName The name of the loaded bank
+	 * @throws ResourceLoadFailedException If the latest load failed
+	 */
+	public void check(String bankName) throws ResourceLoadFailedException
+	{
+		if (this.failure != null)
+			throw new ResourceLoadFailedException("Failed to load bank " + bankName, 
+					this.failure);
+	}
+	
+	/**
+	 * Throws the failure of the latest load to a caller that waited for the load. The 
+	 * failure is then forgotten, so that the caller may try again.
+	 * @param bankName The name of the loaded bank
+	 * @throws RecordingFailedException If the bank data couldn't be read
+	 * @throws ResourceLoadFailedException If the load failed for another reason
+	 */
+	public void throwFailure(String bankName) throws RecordingFailedException, 
+			ResourceLoadFailedException
+	{
+		Throwable failure = this.failure;
+		if (failure != null)
+		{
+			this.failure = null;
+			if (failure instanceof RecordingFailedException)
+				throw (RecordingFailedException) failure;
+			throw new ResourceLoadFailedException("Failed to load bank " + bankName, failure);
+		}
+	}
+}
@@ -0,0 +1,209 @@
+package utopia.arc.resource;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import utopia.arc.resource.ArcEvents.RecorderOperationEvent;
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * The bank pool shares bank contents between multiple banks in the same process. Each 
+ * shared bank is read only once and released when the last bank using it is uninitialised. 
+ * The shared contents are never modified. Banks that use the pool keep their own changes 
+ * separate (copy-on-write). The pool is thread safe.
+ * @author Mikko Hilpinen
+ * @since 26.5.2016
+ * @see Bank#setPool(BankPool)
+ */
+public class BankPool
+{
+	// ATTRIBUTES	------------------
+	
+	private static BankPool instance = null;
+	
+	private Map<PoolKey, SharedBank> banks = new HashMap<>();
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	private BankPool()
+	{
+		// Singleton constructor
+	}
+	
+	/**
+	 * @return The singular bank pool instance
+	 */
+	public static synchronized BankPool getInstance()
+	{
+		if (instance == null)
+			instance = new BankPool();
+		return instance;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * @return The number of banks currently shared in the pool
+	 */
+	public synchronized int getSharedBankCount()
+	{
+		return this.banks.size();
+	}
+	
+	/**
+	 * Checks how many banks are currently using shared contents
+	 * @param recorder The recorder the contents are read with
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @return The number of banks using the contents
+	 */
+	public synchronized int getReferenceCount(BankRecorder recorder, String bankName, DataType bankType)
+	{
+		SharedBank bank = this.banks.get(new PoolKey(recorder, bankName, bankType));
+		if (bank == null)
+			return 0;
+		else
+			return bank.references;
+	}
+	
+	/**
+	 * Acquires shared bank contents, reading them if no other bank is using them at this time
+	 * @param recorder The recorder the contents are read with
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @return The shared contents. Resource names (lower case) are mapped to resources. 
+	 * The map must not be modified.
+	 * @throws RecordingFailedException If the contents couldn't be read
+	 */
+	Map<String, Variable> acquire(BankRecorder recorder, String bankName, DataType bankType) 
+			throws RecordingFailedException
+	{
+		PoolKey key = new PoolKey(recorder, bankName, bankType);
+		SharedBank bank;
+		synchronized (this)
+		{
+			bank = this.banks.get(key);
+			if (bank == null)
+			{
+				bank = new SharedBank();
+				this.banks.put(key, bank);
+			}
+			bank.references ++;
+		}
+		
+		// The contents are read outside the pool lock so that other banks can be acquired 
+		// at the same time
+		try
+		{
+			return bank.getContents(recorder, bankName, bankType);
+		}
+		catch (RecordingFailedException | RuntimeException e)
+		{
+			release(key);
+			throw e;
+		}
+	}
+	
+	/**
+	 * Releases shared bank contents. Once no bank uses the contents, they are removed 
+	 * from the pool.
+	 * @param recorder The recorder the contents were read with
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 */
+	void release(BankRecorder recorder, String bankName, DataType bankType)
+	{
+		release(new PoolKey(recorder, bankName, bankType));
+	}
+	
+	private synchronized void release(PoolKey key)
+	{
+		SharedBank bank = this.banks.get(key);
+		if (bank != null)
+		{
+			bank.references --;
+			if (bank.references <= 0)
+				this.banks.remove(key);
+		}
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	private static class SharedBank
+	{
+		// ATTRIBUTES	--------------
+		
+		private int references = 0;
+		private Map<String, Variable> contents = null;
+		
+		
+		// OTHER METHODS	----------
+		
+		public synchronized Map<String, Variable> getContents(BankRecorder recorder, 
+				String bankName, DataType bankType) throws RecordingFailedException
+		{
+			if (this.contents == null)
+			{
+				RecorderOperationEvent read = ArcEvents.beginRecorderOperation();
+				Collection<Variable> data = recorder.readBank(bankName, bankType);
+				ArcEvents.endRecorderOperation(read, recorder, "read", bankName, bankType, 1, 
+						data.size());
+				Map<String, Variable> contents = new HashMap<>();
+				for (Variable var : data)
+				{
+					contents.put(var.getName().toLowerCase(), var);
+				}
+				this.contents = Collections.unmodifiableMap(contents);
+			}
+			
+			return this.contents;
+		}
+	}
+	
+	private static class PoolKey
+	{
+		// ATTRIBUTES	--------------
+		
+		private final BankRecorder recorder;
+		private final String bankName;
+		private final DataType bankType;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public PoolKey(BankRecorder recorder, String bankName, DataType bankType)
+		{
+			this.recorder = recorder;
+			this.bankName = bankName.toLowerCase();
+			this.bankType = bankType;
+		}
+		
+		
+		// IMPLEMENTED METHODS	------
+		
+		@Override
+		public int hashCode()
+		{
+			return 31 * (31 * System.identityHashCode(this.recorder) + 
+					this.bankName.hashCode()) + this.bankType.hashCode();
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (!(obj instanceof PoolKey))
+				return false;
+			
+			PoolKey other = (PoolKey) obj;
+			return this.recorder == other.recorder && this.bankName.equals(other.bankName) && 
+					this.bankType.equals(other.bankType);
+		}
+	}
+}
@@ -0,0 +1,84 @@
+package utopia.arc.resource;
+
+import java.util.Collection;
+
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * Batch bank recorders can write multiple banks at once so that either all or none of 
+ * them are updated
+ * @author Mikko Hilpinen
+ * @since 29.5.2016
+ * @see ResourceManager#saveBanks()
+ */
+public interface BatchBankRecorder extends BankRecorder
+{
+	/**
+	 * Writes multiple banks as a single set. If the writing fails, the previously recorded 
+	 * data of each bank should remain.
+	 * @param banks The data of the written banks
+	 * @throws RecordingFailedException If the writing failed
+	 */
+	public void writeBanks(Collection<? extends BankData> banks) throws RecordingFailedException;
+	
+	
+	// NESTED CLASSES	-----------------
+	
+	/**
+	 * Bank data contains the contents of a single bank that is written
+	 * @author Mikko Hilpinen
+	 * @since 29.5.2016
+	 */
+	public static class BankData
+	{
+		// ATTRIBUTES	-----------------
+		
+		private final String bankName;
+		private final DataType bankType;
+		private final Collection<? extends Variable> contents;
+		
+		
+		// CONSTRUCTOR	-----------------
+		
+		/**
+		 * Creates new bank data
+		 * @param bankName The name of the bank
+		 * @param bankType The type of the bank's contents
+		 * @param contents The contents of the bank
+		 */
+		public BankData(String bankName, DataType bankType, Collection<? extends Variable> contents)
+		{
+			this.bankName = bankName;
+			this.bankType = bankType;
+			this.contents = contents;
+		}
+		
+		
+		// ACCESSORS	-----------------
+		
+		/**
+		 * @return The name of the bank
+		 */
+		public String getBankName()
+		{
+			return this.bankName;
+		}
+		
+		/**
+		 * @return The type of the bank's contents
+		 */
+		public DataType getBankType()
+		{
+			return this.bankType;
+		}
+		
+		/**
+		 * @return The contents of the bank
+		 */
+		public Collection<? extends Variable> getContents()
+		{
+			return this.contents;
+		}
+	}
+}
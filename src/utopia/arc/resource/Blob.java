@@ -0,0 +1,217 @@
+package utopia.arc.resource;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Blobs are binary resources. A blob's data is either held in memory or stored in a file, 
+ * in which case the data is read outside the heap the first time it is requested. The file 
+ * is not kept open or mapped, so the recorder may write new blob files while the blobs 
+ * are in use.
+ * @author Mikko Hilpinen
+ * @since 20.5.2016
+ * @see utopia.arc.generics.ArcDataType#BLOB
+ */
+public class Blob implements Serializable
+{
+	// ATTRIBUTES	------------------
+	
+	private static final long serialVersionUID = 3264052938415530871L;
+	
+	private final String file;
+	private final long offset;
+	private final int length;
+	private final byte[] data;
+	private transient volatile ByteBuffer buffer = null;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new blob that holds its data in memory
+	 * @param data The data of the blob
+	 */
+	public Blob(byte[] data)
+	{
+		this.file = null;
+		this.offset = 0;
+		this.length = data.length;
+		this.data = data;
+	}
+	
+	/**
+	 * Creates a new blob that reads its data from a file
+	 * @param file The file that contains the blob data
+	 * @param offset The position of the blob data in the file
+	 * @param length The length of the blob data in bytes
+	 */
+	public Blob(Path file, long offset, int length)
+	{
+		this.file = file.toString();
+		this.offset = offset;
+		this.length = length;
+		this.data = null;
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public String toString()
+	{
+		if (isFileBased())
+			return "Blob(" + this.file + " [" + this.offset + ", " + this.length + "])";
+		else
+			return "Blob(" + this.length + " bytes)";
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return The file that contains the blob data. Null if the blob isn't stored in a file.
+	 */
+	public Path getFile()
+	{
+		if (this.file == null)
+			return null;
+		else
+			return Paths.get(this.file);
+	}
+	
+	/**
+	 * @return The position of the blob data in the file
+	 */
+	public long getOffset()
+	{
+		return this.offset;
+	}
+	
+	/**
+	 * @return The length of the blob data in bytes
+	 */
+	public int length()
+	{
+		return this.length;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * @return Whether the blob data is stored in a file
+	 */
+	public boolean isFileBased()
+	{
+		return this.file != null;
+	}
+	
+	/**
+	 * @return Whether the blob data has been read to memory
+	 */
+	public boolean isLoaded()
+	{
+		return !isFileBased() || this.buffer != null;
+	}
+	
+	/**
+	 * Finds the blob's data. File based blobs are read on the first call.
+	 * @return A read-only view to the blob's data
+	 * @throws IOException If the blob file couldn't be read
+	 */
+	public ByteBuffer getData() throws IOException
+	{
+		if (!isFileBased())
+			return ByteBuffer.wrap(this.data).asReadOnlyBuffer();
+		
+		ByteBuffer loaded = this.buffer;
+		if (loaded == null)
+		{
+			synchronized (this)
+			{
+				loaded = this.buffer;
+				if (loaded == null)
+				{
+					// The data is kept outside the heap, like a mapping would be, but the 
+					// file is closed right away
+					loaded = ByteBuffer.allocateDirect(this.length);
+					try (FileChannel channel = FileChannel.open(getFile(), StandardOpenOption.READ))
+					{
+						while (loaded.hasRemaining())
+						{
+							if (channel.read(loaded, this.offset + loaded.position()) < 0)
+								throw new IOException("Blob data in " + this.file + " ends early");
+						}
+					}
+					loaded.flip();
+					this.buffer = loaded;
+				}
+			}
+		}
+		
+		return loaded.asReadOnlyBuffer();
+	}
+	
+	/**
+	 * Writes the blob's data into a channel. Data that hasn't been read yet is copied 
+	 * straight from the blob file without keeping it in memory.
+	 * @param target The channel the data is written into
+	 * @throws IOException If the data couldn't be read or written
+	 */
+	public void transferTo(WritableByteChannel target) throws IOException
+	{
+		if (isLoaded())
+		{
+			ByteBuffer data = getData();
+			while (data.hasRemaining())
+			{
+				target.write(data);
+			}
+			return;
+		}
+		
+		try (FileChannel channel = FileChannel.open(getFile(), StandardOpenOption.READ))
+		{
+			long transferred = 0;
+			while (transferred < this.length)
+			{
+				long count = channel.transferTo(this.offset + transferred, 
+						this.length - transferred, target);
+				if (count <= 0)
+					throw new IOException("Blob data in " + this.file + " ends early");
+				transferred += count;
+			}
+		}
+	}
+	
+	/**
+	 * @return A copy of the blob's data
+	 * @throws IOException If the blob file couldn't be read
+	 */
+	public byte[] toByteArray() throws IOException
+	{
+		byte[] bytes = new byte[this.length];
+		getData().get(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Resolves the blob file against a directory. Used when the blob file is referenced 
+	 * relative to a bank's location.
+	 * @param directory The directory the blob file is relative to
+	 * @return A blob that uses the resolved file. This blob if this blob isn't file based.
+	 */
+	public Blob resolveAgainst(Path directory)
+	{
+		if (!isFileBased())
+			return this;
+		else
+			return new Blob(directory.resolve(this.file), this.offset, this.length);
+	}
+}
@@ -0,0 +1,63 @@
+package utopia.arc.resource;
+
+import java.util.Collection;
+import java.util.Map;
+
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * Chunked bank recorders store banks in multiple separate chunks, which can be read 
+ * individually. Banks using a chunked recorder only read the chunks they need.
+ * @author Mikko Hilpinen
+ * @since 22.5.2016
+ */
+public interface ChunkedBankRecorder extends BankRecorder
+{
+	/**
+	 * Reads the chunk index of a bank
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @return The bank's chunk index. An empty index if the bank hasn't been recorded.
+	 * @throws RecordingFailedException If the index couldn't be read
+	 */
+	public BankChunkIndex readChunkIndex(String bankName, DataType bankType) 
+			throws RecordingFailedException;
+	
+	/**
+	 * Reads the contents of a single chunk
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @param chunk The index of the chunk
+	 * @return The resources in the chunk
+	 * @throws RecordingFailedException If the chunk couldn't be read
+	 */
+	public Collection<Variable> readChunk(String bankName, DataType bankType, int chunk) 
+			throws RecordingFailedException;
+	
+	/**
+	 * Writes the contents of some of a bank's chunks, as well as the bank's chunk index
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @param index The updated chunk index of the bank
+	 * @param chunks The written chunks (chunk index -> chunk contents)
+	 * @throws RecordingFailedException If the writing failed
+	 */
+	public void writeChunks(String bankName, DataType bankType, BankChunkIndex index, 
+			Map<Integer, ? extends Collection<? extends Variable>> chunks) 
+			throws RecordingFailedException;
+	
+	/**
+	 * @return The preferred amount of resources in a single chunk. Banks are split into 
+	 * more chunks when their chunks grow much larger than this.
+	 */
+	public int getChunkSize();
+	
+	/**
+	 * Determines which chunk a new resource should be stored in
+	 * @param resourceName The name of the resource
+	 * @param chunkCount The amount of chunks in the bank
+	 * @return The index of the chunk the resource should be stored in
+	 */
+	public int getChunkFor(String resourceName, int chunkCount);
+}
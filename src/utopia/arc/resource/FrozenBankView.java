@@ -0,0 +1,100 @@
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import utopia.flow.generics.Model.NoSuchAttributeException;
+import utopia.flow.generics.Value;
+import utopia.flow.generics.Variable;
+
+/**
+ * A frozen view presents the contents of a frozen bank. The resources are kept in a 
+ * {@link FrozenResourceTable}, so the view can be read from multiple threads without 
+ * synchronisation.
+ * @author Mikko Hilpinen
+ * @since 2.6.2016
+ * @param <ResourceType> The type of resources in the bank
+ * @see Bank#freeze()
+ */
+class FrozenBankView<ResourceType> implements ResourceStore<ResourceType>
+{
+	// ATTRIBUTES	------------------
+	
+	private final Bank<ResourceType> bank;
+	private final FrozenResourceTable table;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Freezes a set of resources
+	 * @param bank The bank that is frozen
+	 * @param names The names of the resources. The names must be unique (case-insensitive).
+	 * @param resources The resources, in the same order as the names
+	 * @throws IllegalArgumentException If the names are not unique
+	 */
+	public FrozenBankView(Bank<ResourceType> bank, List<String> names, 
+			List<ResourceType> resources) throws IllegalArgumentException
+	{
+		this.bank = bank;
+		this.table = new FrozenResourceTable(names, resources);
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public ResourceType get(String resourceName) throws NoSuchAttributeException
+	{
+		Object resource = this.table.get(resourceName);
+		if (resource == null)
+			throw new NoSuchAttributeException(resourceName, this.bank);
+		return (ResourceType) resource;
+	}
+	
+	@Override
+	public boolean contains(String resourceName)
+	{
+		return this.table.contains(resourceName);
+	}
+	
+	@Override
+	public List<String> getNames()
+	{
+		return this.table.getNames();
+	}
+	
+	@Override
+	public Variable getVariable(String resourceName)
+	{
+		Object resource = this.table.get(resourceName);
+		if (resource == null)
+			return null;
+		return new Variable(resourceName, new Value(resource, this.bank.getContentType()));
+	}
+	
+	@Override
+	public Collection<Variable> getContents()
+	{
+		List<Variable> contents = new ArrayList<>(this.table.size());
+		for (String resourceName : this.table.getNames())
+		{
+			contents.add(getVariable(resourceName));
+		}
+		return contents;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * @return The resources in the bank
+	 */
+	@SuppressWarnings("unchecked")
+	public List<ResourceType> getResources()
+	{
+		return (List<ResourceType>) (List<?>) this.table.getResources();
+	}
+}
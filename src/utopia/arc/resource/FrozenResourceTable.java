@@ -0,0 +1,238 @@
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A frozen resource table is an immutable, compact resource table. The resources are 
+ * placed using a minimal perfect hash (hash and displace) over the resource names, so each 
+ * lookup checks a single slot. Since the table never changes, it can be read from multiple 
+ * threads without synchronisation. Resource names are case-insensitive.
+ * @author Mikko Hilpinen
+ * @since 2.6.2016
+ * @see Bank#freeze()
+ */
+class FrozenResourceTable
+{
+	// ATTRIBUTES	------------------
+	
+	private static final int BUCKET_SIZE = 4;
+	private static final int MAX_DISPLACEMENT = 1 << 20;
+	
+	private final String[] names;
+	private final Object[] resources;
+	// Non-negative values are displacements for the second hash. Negative values point 
+	// directly to a slot (-slot - 1).
+	private final int[] displacements;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Builds a new table
+	 * @param names The names of the resources. The names must be unique (case-insensitive).
+	 * @param resources The resources, in the same order as the names
+	 * @throws IllegalArgumentException If the names are not unique
+	 */
+	public FrozenResourceTable(List<String> names, List<?> resources) throws IllegalArgumentException
+	{
+		Set<String> uniqueNames = new HashSet<>();
+		for (String name : names)
+		{
+			if (!uniqueNames.add(name.toLowerCase()))
+				throw new IllegalArgumentException("Resource name " + name + " is not unique");
+		}
+		
+		int size = names.size();
+		this.names = new String[size];
+		this.resources = new Object[size];
+		this.displacements = new int[Math.max(1, (size + BUCKET_SIZE - 1) / BUCKET_SIZE)];
+		
+		// Divides the names into buckets with the first hash
+		List<List<Integer>> buckets = new ArrayList<>(this.displacements.length);
+		for (int i = 0; i < this.displacements.length; i++)
+		{
+			buckets.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < size; i++)
+		{
+			buckets.get(bucketOf(names.get(i))).add(i);
+		}
+		
+		// The largest buckets are placed first, while there is most room
+		List<Integer> bucketOrder = new ArrayList<>();
+		for (int i = 0; i < buckets.size(); i++)
+		{
+			bucketOrder.add(i);
+		}
+		Collections.sort(bucketOrder, new Comparator<Integer>()
+		{
+			@Override
+			public int compare(Integer a, Integer b)
+			{
+				return buckets.get(b).size() - buckets.get(a).size();
+			}
+		});
+		
+		boolean[] occupied = new boolean[size];
+		int freeSlot = 0;
+		for (int bucketIndex : bucketOrder)
+		{
+			List<Integer> bucket = buckets.get(bucketIndex);
+			if (bucket.isEmpty())
+				break;
+			
+			// Single names may be placed directly to any free slot
+			if (bucket.size() == 1)
+			{
+				while (occupied[freeSlot])
+				{
+					freeSlot ++;
+				}
+				place(freeSlot, bucket.get(0), names, resources, occupied);
+				this.displacements[bucketIndex] = -freeSlot - 1;
+				continue;
+			}
+			
+			// Larger buckets search for a displacement that places each name to a free slot
+			int[] slots = new int[bucket.size()];
+			int displacement = 0;
+			while (!findSlots(bucket, names, displacement, occupied, slots))
+			{
+				displacement ++;
+				if (displacement >= MAX_DISPLACEMENT)
+					throw new IllegalArgumentException("Couldn't build a perfect hash for the resource names");
+			}
+			
+			for (int i = 0; i < slots.length; i++)
+			{
+				place(slots[i], bucket.get(i), names, resources, occupied);
+			}
+			this.displacements[bucketIndex] = displacement;
+		}
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return The number of resources in the table
+	 */
+	public int size()
+	{
+		return this.names.length;
+	}
+	
+	/**
+	 * @return The names of the resources in the table. The list is a copy.
+	 */
+	public List<String> getNames()
+	{
+		return new ArrayList<>(Arrays.asList(this.names));
+	}
+	
+	/**
+	 * @return The resources in the table. The list is a copy.
+	 */
+	public List<Object> getResources()
+	{
+		return new ArrayList<>(Arrays.asList(this.resources));
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Finds a resource from the table
+	 * @param name The name of the resource (case-insensitive)
+	 * @return The resource or null if the table doesn't contain the resource
+	 */
+	public Object get(String name)
+	{
+		int slot = slotOf(name);
+		if (slot >= 0)
+			return this.resources[slot];
+		else
+			return null;
+	}
+	
+	/**
+	 * Checks whether the table contains a resource
+	 * @param name The name of the resource (case-insensitive)
+	 * @return Whether the table contains a resource with the provided name
+	 */
+	public boolean contains(String name)
+	{
+		return slotOf(name) >= 0;
+	}
+	
+	private int slotOf(String name)
+	{
+		if (this.names.length == 0)
+			return -1;
+		
+		int displacement = this.displacements[bucketOf(name)];
+		int slot;
+		if (displacement < 0)
+			slot = -displacement - 1;
+		else
+			slot = Math.floorMod(hash(name, displacement + 1), this.names.length);
+		
+		// The hash only tells where the name would be, so the name still needs to be checked
+		if (this.names[slot].equalsIgnoreCase(name))
+			return slot;
+		else
+			return -1;
+	}
+	
+	private boolean findSlots(List<Integer> bucket, List<String> names, int displacement, 
+			boolean[] occupied, int[] slots)
+	{
+		for (int i = 0; i < slots.length; i++)
+		{
+			int slot = Math.floorMod(hash(names.get(bucket.get(i)), displacement + 1), 
+					this.names.length);
+			if (occupied[slot])
+				return false;
+			for (int j = 0; j < i; j++)
+			{
+				if (slots[j] == slot)
+					return false;
+			}
+			slots[i] = slot;
+		}
+		return true;
+	}
+	
+	private void place(int slot, int index, List<String> names, List<?> resources, boolean[] occupied)
+	{
+		this.names[slot] = names.get(index);
+		this.resources[slot] = resources.get(index);
+		occupied[slot] = true;
+	}
+	
+	private int bucketOf(String name)
+	{
+		return Math.floorMod(hash(name, 0), this.displacements.length);
+	}
+	
+	private static int hash(String name, int seed)
+	{
+		// FNV-1a over the lower case characters, followed by a final mix
+		int h = 0x811c9dc5 ^ (seed * 0x9e3779b9);
+		for (int i = 0; i < name.length(); i++)
+		{
+			h ^= Character.toLowerCase(name.charAt(i));
+			h *= 0x01000193;
+		}
+		h ^= h >>> 16;
+		h *= 0x85ebca6b;
+		h ^= h >>> 13;
+		return h;
+	}
+}
@@ -0,0 +1,28 @@
+package utopia.arc.resource;
+
+import java.util.Collection;
+
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * Incremental bank recorders can record changes made to a bank without rewriting the 
+ * whole bank. Banks using these recorders only write the resources that were changed or 
+ * removed since the previous save.
+ * @author Mikko Hilpinen
+ * @since 28.5.2016
+ */
+public interface IncrementalBankRecorder extends BankRecorder
+{
+	/**
+	 * Records changes made to a bank
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @param changed The resources that were added or replaced
+	 * @param removed The names of the resources that were removed
+	 * @throws RecordingFailedException If the writing failed
+	 */
+	public void writeChanges(String bankName, DataType bankType, 
+			Collection<? extends Variable> changed, Collection<String> removed) 
+			throws RecordingFailedException;
+}
@@ -0,0 +1,23 @@
+package utopia.arc.resource;
+
+import utopia.flow.generics.DataType;
+
+/**
+ * Memory budget listeners are informed when a phase change is accepted even though it 
+ * exceeds a memory budget
+ * @author Mikko Hilpinen
+ * @since 18.5.2016
+ * @see ResourceManager#setMemoryBudgetListener(MemoryBudgetListener)
+ */
+public interface MemoryBudgetListener
+{
+	/**
+	 * This method is called when a phase change exceeds a memory budget under the 
+	 * {@link ResourceManager.BudgetPolicy#WARN} policy, or when the 
+	 * {@link ResourceManager.BudgetPolicy#EVICT} policy couldn't evict enough banks
+	 * @param resourceType The type of resource which's budget was exceeded
+	 * @param projectedSize The estimated memory use after the phase change, in bytes
+	 * @param maxSize The memory budget, in bytes
+	 */
+	public void onBudgetExceeded(DataType resourceType, long projectedSize, long maxSize);
+}
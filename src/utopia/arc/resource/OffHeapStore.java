@@ -0,0 +1,243 @@
+package utopia.arc.resource;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This class stores large text and binary resources in direct byte buffers outside the 
+ * java heap. The data is allocated from larger buffer segments, which are all released 
+ * together.
+ * @author Mikko Hilpinen
+ * @since 19.5.2016
+ */
+class OffHeapStore
+{
+	// ATTRIBUTES	------------------
+	
+	private static final int SEGMENT_SIZE = 1 << 20;
+	
+	private List<ByteBuffer> segments = new ArrayList<>();
+	private ByteBuffer currentSegment = null;
+	private Map<String, Entry> entries = new HashMap<>();
+	private long size = 0;
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return The amount of memory allocated outside the heap, in bytes
+	 */
+	public long getSize()
+	{
+		return this.size;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * @return Whether the store is empty
+	 */
+	public boolean isEmpty()
+	{
+		return this.entries.isEmpty();
+	}
+	
+	/**
+	 * Checks whether a resource is stored off-heap. Can be stored if the resource is either 
+	 * a string or a byte array.
+	 * @param resource A resource
+	 * @return Whether the resource can be stored
+	 */
+	public static boolean canStore(Object resource)
+	{
+		return resource instanceof String || resource instanceof byte[];
+	}
+	
+	/**
+	 * Calculates the amount of bytes a resource would take in the store
+	 * @param resource A resource that {@link #canStore(Object) can be stored}
+	 * @return The amount of bytes the resource would take
+	 */
+	public static int getStoredSize(Object resource)
+	{
+		if (resource instanceof String)
+			return ((String) resource).length() * 2;
+		else
+			return ((byte[]) resource).length;
+	}
+	
+	/**
+	 * Stores a resource outside the heap
+	 * @param name The name of the resource
+	 * @param resource The resource. Must be either a string or a byte array.
+	 */
+	public void put(String name, Object resource)
+	{
+		ByteBuffer buffer = allocate(getStoredSize(resource));
+		boolean isText = resource instanceof String;
+		if (isText)
+			buffer.asCharBuffer().put((String) resource);
+		else
+			buffer.put((byte[]) resource);
+		buffer.clear();
+		
+		this.entries.put(name.toLowerCase(), new Entry(name, buffer.asReadOnlyBuffer(), isText));
+	}
+	
+	/**
+	 * Removes a resource from the store. The memory used by the resource is released 
+	 * along with the rest of the store.
+	 * @param name The name of the resource
+	 * @return Whether there was a resource to remove
+	 */
+	public boolean remove(String name)
+	{
+		return this.entries.remove(name.toLowerCase()) != null;
+	}
+	
+	/**
+	 * Checks whether a resource is stored here
+	 * @param name The name of the resource
+	 * @return Whether the resource is stored here
+	 */
+	public boolean contains(String name)
+	{
+		return this.entries.containsKey(name.toLowerCase());
+	}
+	
+	/**
+	 * Reads a resource from the store, copying it back to the heap
+	 * @param name The name of the resource
+	 * @return The resource (string or byte array) or null if no such resource is stored
+	 */
+	public Object get(String name)
+	{
+		Entry entry = this.entries.get(name.toLowerCase());
+		if (entry == null)
+			return null;
+		else
+			return entry.decode();
+	}
+	
+	/**
+	 * Finds a text resource without copying it
+	 * @param name The name of the resource
+	 * @return A read-only view to the text or null if there is no such text resource
+	 */
+	public CharSequence getText(String name)
+	{
+		Entry entry = this.entries.get(name.toLowerCase());
+		if (entry == null || !entry.isText)
+			return null;
+		else
+			return entry.data.duplicate().asCharBuffer();
+	}
+	
+	/**
+	 * Finds a resource's data without copying it
+	 * @param name The name of the resource
+	 * @return A read-only view to the resource's data or null if there is no such resource
+	 */
+	public ByteBuffer getData(String name)
+	{
+		Entry entry = this.entries.get(name.toLowerCase());
+		if (entry == null)
+			return null;
+		else
+			return entry.data.duplicate();
+	}
+	
+	/**
+	 * @return The names of the resources in this store
+	 */
+	public List<String> getNames()
+	{
+		List<String> names = new ArrayList<>(this.entries.size());
+		for (Entry entry : this.entries.values())
+		{
+			names.add(entry.name);
+		}
+		return names;
+	}
+	
+	/**
+	 * Releases all of the stored data. The store can still be used afterwards.
+	 */
+	public void release()
+	{
+		// Once the buffers are no longer referenced, their memory is freed
+		this.entries.clear();
+		this.segments.clear();
+		this.currentSegment = null;
+		this.size = 0;
+	}
+	
+	private ByteBuffer allocate(int bytes)
+	{
+		// Large resources get their own buffers, smaller ones are placed in shared segments
+		if (bytes > SEGMENT_SIZE / 4)
+		{
+			this.size += bytes;
+			return ByteBuffer.allocateDirect(bytes);
+		}
+		
+		if (this.currentSegment == null || this.currentSegment.remaining() < bytes)
+		{
+			this.currentSegment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+			this.segments.add(this.currentSegment);
+			this.size += SEGMENT_SIZE;
+		}
+		
+		ByteBuffer slice = this.currentSegment.duplicate();
+		slice.limit(slice.position() + bytes);
+		slice = slice.slice();
+		this.currentSegment.position(this.currentSegment.position() + bytes);
+		
+		return slice;
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	private static class Entry
+	{
+		// ATTRIBUTES	--------------
+		
+		private final String name;
+		private final ByteBuffer data;
+		private final boolean isText;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public Entry(String name, ByteBuffer data, boolean isText)
+		{
+			this.name = name;
+			this.data = data;
+			this.isText = isText;
+		}
+		
+		
+		// OTHER METHODS	----------
+		
+		public Object decode()
+		{
+			if (this.isText)
+			{
+				CharBuffer chars = this.data.duplicate().asCharBuffer();
+				return chars.toString();
+			}
+			else
+			{
+				byte[] bytes = new byte[this.data.remaining()];
+				this.data.duplicate().get(bytes);
+				return bytes;
+			}
+		}
+	}
+}
@@ -0,0 +1,36 @@
+package utopia.arc.resource;
+
+import java.util.Collection;
+
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+
+/**
+ * Phase sources provide phases on demand, so that the phases don't need to be read before 
+ * they are used
+ * @author Mikko Hilpinen
+ * @since 21.5.2016
+ * @see ResourceManager#introducePhaseSource(PhaseSource)
+ */
+public interface PhaseSource
+{
+	/**
+	 * @return The names of the phases available from this source
+	 */
+	public Collection<String> getPhaseNames();
+	
+	/**
+	 * Checks whether a phase is available from this source
+	 * @param phaseName The name of the phase (case-insensitive)
+	 * @return Whether the phase can be read from this source
+	 */
+	public boolean containsPhase(String phaseName);
+	
+	/**
+	 * Reads a phase
+	 * @param phaseName The name of the phase (case-insensitive)
+	 * @return The phase with the provided name or null if this source doesn't contain such 
+	 * a phase
+	 * @throws RecordingFailedException If the phase couldn't be read
+	 */
+	public Phase readPhase(String phaseName) throws RecordingFailedException;
+}
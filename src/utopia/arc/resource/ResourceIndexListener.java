@@ -0,0 +1,30 @@
+package utopia.arc.resource;
+
+/**
+ * Resource index listeners are informed when resource names are added to or removed from 
+ * a bank. The listeners are always called from the thread that uses the bank.
+ * @author Mikko Hilpinen
+ * @since 31.5.2016
+ */
+interface ResourceIndexListener
+{
+	/**
+	 * This method is called when a resource becomes available in a bank
+	 * @param bank The bank the resource was added to
+	 * @param resourceName The name of the resource
+	 */
+	public void onResourceAdded(Bank<?> bank, String resourceName);
+	
+	/**
+	 * This method is called when a resource is removed from a bank
+	 * @param bank The bank the resource was removed from
+	 * @param resourceName The name of the resource
+	 */
+	public void onResourceRemoved(Bank<?> bank, String resourceName);
+	
+	/**
+	 * This method is called when a bank is uninitialised and all of its resources are cleared
+	 * @param bank The bank that was cleared
+	 */
+	public void onBankCleared(Bank<?> bank);
+}
@@ -1,293 +1,1475 @@
-package utopia.arc.resource;
-
-import java.util.ArrayList;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
-import utopia.arc.resource.BankRecorder.RecordingFailedException;
-import utopia.flow.generics.DataType;
-
-/**
- * This class manages multiple resource types, activating and deactivating the banks when 
- * certain phases come into play. This class is not used for accessing the resource banks, though.
- * @author Mikko Hilpinen
- * @since 12.5.2016
- */
-public class ResourceManager
-{
-	// ATTRIBUTES	-------------------
-	
-	private Map<DataType, BankBank<?>> banks = new HashMap<>();
-	private List<Phase> currentPhases = new ArrayList<>();
-	private Map<String, Phase> knownPhases = new HashMap<>();
-	
-	
-	// CONSTRUCTOR	-------------------
-	
-	/**
-	 * Creates a new empty resource manager. The banks and phases need to be introduced separately
-	 */
-	public ResourceManager()
-	{
-		// Empty constructor
-	}
-
-	/**
-	 * Creates a new resource manager with set banks and phases
-	 * @param banks The banks managed by the resource manager
-	 * @param phases The phases known by the resource manager
-	 */
-	public ResourceManager(Collection<? extends BankBank<?>> banks, Collection<? extends Phase> phases)
-	{
-		introduceBanks(banks);
-		introducePhases(phases);
-	}
-	
-	
-	// OTHER METHODS	---------------
-	
-	/**
-	 * Adds a new bank to be managed by this resource manager. If there was a bank with the 
-	 * same data type, it gets replaced with this one.
-	 * @param bank The bank that will be managed by the manager
-	 */
-	public void introduceBank(BankBank<?> bank)
-	{
-		this.banks.put(bank.getContentType(), bank);
-	}
-	
-	/**
-	 * Adds multiple banks to be managed by this resource manager
-	 * @param banks The banks that will be managed by this manager
-	 */
-	public void introduceBanks(Collection<? extends BankBank<?>> banks)
-	{
-		for (BankBank<?> bank : banks)
-		{
-			introduceBank(bank);
-		}
-	}
-	
-	/**
-	 * Introduces a phase to this manager
-	 * @param phase The phase introduced to this manager
-	 */
-	public void introducePhase(Phase phase)
-	{
-		if (!this.knownPhases.containsKey(phase.getName().toLowerCase()))
-			this.knownPhases.put(phase.getName().toLowerCase(), phase);
-	}
-	
-	/**
-	 * Introduces multiple phases to this manager
-	 * @param phases The phases introduced to this manager
-	 */
-	public void introducePhases(Collection<? extends Phase> phases)
-	{
-		for (Phase phase : phases)
-		{
-			introducePhase(phase);
-		}
-	}
-	
-	/**
-	 * This method makes sure each bank introduced in the phases known by the manager exists 
-	 * in a bank bank known by the manager, where applicable. The banks and the phases need 
-	 * to be introduced at this point though.
-	 * @see #introduceBank(BankBank)
-	 * @see #introducePhase(Phase)
-	 */
-	public void generateBanksBasedOnPhases()
-	{
-		List<Phase> phases = getPhases();
-		for (BankBank<?> bank : getBanks())
-		{
-			for (Phase phase : phases)
-			{
-				bank.generateBanks(phase.getActiveBankNames(bank.getContentType()));
-			}
-		}
-	}
-	
-	/**
-	 * Finds a phase with the provided name. Only works with phases introduced to the manager
-	 * @param phaseName The name of the phase
-	 * @return The phase with the provided name (case-insensitive)
-	 * @throws PhaseNotIntroducedException If the phase hasn't been introduced to the manager
-	 */
-	public Phase getPhase(String phaseName) throws PhaseNotIntroducedException
-	{
-		if (!this.knownPhases.containsKey(phaseName.toLowerCase()))
-			throw new PhaseNotIntroducedException(phaseName);
-		return this.knownPhases.get(phaseName.toLowerCase());
-	}
-	
-	/**
-	 * @return All phases known by the manager. Altering this list won't affect the manager 
-	 * in any way.
-	 */
-	public List<Phase> getPhases()
-	{
-		return new ArrayList<>(this.knownPhases.values());
-	}
-	
-	/**
-	 * Finds an introduced bank of a certain resource type
-	 * @param resourceType The type of resource the bank holds
-	 * @return A bank for that resource type of null if one hasn't been introduced
-	 */
-	public BankBank<?> getBank(DataType resourceType)
-	{
-		return this.banks.get(resourceType);
-	}
-	
-	/**
-	 * @return The banks known by the manager. Changes made to the list won't affect the manager
-	 */
-	public List<BankBank<?>> getBanks()
-	{
-		return new ArrayList<>(this.banks.values());
-	}
-	
-	/**
-	 * Starts a certain phase, making sure the connected resources are available
-	 * @param phase The phase that is started
-	 * @param endOtherPhases Should the other, currently active, phases be ended (true) or kept active (false)
-	 * @throws RecordingFailedException If some of the banks couldn't be initialised
-	 */
-	public void startPhase(Phase phase, boolean endOtherPhases) throws RecordingFailedException
-	{
-		if (endOtherPhases)
-			this.currentPhases.clear();
-		this.currentPhases.add(phase);
-		updateBanks();
-	}
-	
-	/**
-	 * Starts a phase with the provided name, making the connected resources available
-	 * @param phaseName The name of the phase that is started
-	 * @param endOtherPhases Should the other, currently active, phases be ended (true) or kept active (false)
-	 * @throws PhaseNotIntroducedException If there was no phase with the provided name
-	 * @throws RecordingFailedException If some of the banks couldn't be initialised
-	 */
-	public void startPhase(String phaseName, boolean endOtherPhases) throws 
-			PhaseNotIntroducedException, RecordingFailedException
-	{
-		startPhase(getPhase(phaseName), endOtherPhases);
-	}
-	
-	/**
-	 * Switches a previous phase to a new phase
-	 * @param oldPhase The old phase that is ended
-	 * @param newPhase The new phase that is started
-	 * @throws RecordingFailedException If some of the banks couldn't be initialised
-	 */
-	public void switchPhase(Phase oldPhase, Phase newPhase) throws RecordingFailedException
-	{
-		this.currentPhases.remove(oldPhase);
-		if (!this.currentPhases.contains(newPhase))
-			this.currentPhases.add(newPhase);
-		updateBanks();
-	}
-	
-	/**
-	 * Switches a previous phase to a new phase
-	 * @param oldPhaseName The name of the old phase that is ended
-	 * @param newPhaseName The name of the new phase that is started
-	 * @throws PhaseNotIntroducedException If there wasn't a phase with a provided name
-	 * @throws RecordingFailedException If some of the banks couldn't be initialised
-	 */
-	public void switchPhase(String oldPhaseName, String newPhaseName) throws 
-			PhaseNotIntroducedException, RecordingFailedException
-	{
-		switchPhase(getPhase(oldPhaseName), getPhase(newPhaseName));
-	}
-	
-	/**
-	 * Ends a phase, which may release some allocated resources
-	 * @param phase The phase that is ended
-	 * @throws RecordingFailedException If some of the banks couldn't be uninitialised
-	 */
-	public void endPhase(Phase phase) throws RecordingFailedException
-	{
-		if (this.currentPhases.contains(phase))
-		{
-			this.currentPhases.remove(phase);
-			updateBanks();
-		}
-	}
-	
-	/**
-	 * Ends a phase, which may release some allocated resources
-	 * @param phaseName The name of the phase that is ended
-	 * @throws RecordingFailedException If some of the banks couldn't be uninitialised
-	 * @throws PhaseNotIntroducedException If there was not a phase with the provided name
-	 */
-	public void endPhase(String phaseName) throws RecordingFailedException, PhaseNotIntroducedException
-	{
-		endPhase(getPhase(phaseName));
-	}
-	
-	/**
-	 * Saves all banks known by the manager
-	 * @throws RecordingFailedException If bank writing failed
-	 */
-	public void saveBanks() throws RecordingFailedException
-	{
-		for (BankBank<?> bank : getBanks())
-		{
-			bank.save();
-		}
-	}
-	
-	private void updateBanks() throws RecordingFailedException
-	{
-		// Goes through each bank and activates / deactivates it based on the current phases
-		for (BankBank<?> bankbank : getBanks())
-		{
-			for (Bank<?> bank : bankbank.getBanks())
-			{
-				boolean shouldBeActive = false;
-				for (Phase phase : this.currentPhases)
-				{
-					if (phase.bankIsActive(bank))
-					{
-						shouldBeActive = true;
-						break;
-					}
-				}
-				
-				// Activates or deactivates the bank
-				if (shouldBeActive)
-					bank.initialise();
-				else
-					bank.uninitialise();
-			}
-		}
-	}
-	
-	
-	// NESTED CLASSES	-----------------
-	
-	/**
-	 * These exceptions are thrown when trying to use a non-existing phase or one that hasn't 
-	 * been introduced yet
-	 * @author Mikko Hilpinen
-	 * @since 12.5.2016
-	 */
-	public static class PhaseNotIntroducedException extends RuntimeException
-	{
-		private static final long serialVersionUID = 5003493962012116061L;
-		
-		/**
-		 * Creates a new exception
-		 * @param phaseName The name of the requested phase
-		 */
-		public PhaseNotIntroducedException(String phaseName)
-		{
-			super("Phase '" + phaseName + "' hasn't been introduced yet");
-		}
-	}
-}
+package utopia.arc.resource;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import utopia.arc.generics.ArcDataType;
+import utopia.arc.resource.ArcEvents.PhaseTransitionEvent;
+import utopia.arc.resource.ArcEvents.RecorderOperationEvent;
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.DataTypes;
+
+/**
+ * This class manages multiple resource types, activating and deactivating the banks when 
+ * certain phases come into play. This class is not used for accessing the resource banks, though.
+ * @author Mikko Hilpinen
+ * @since 12.5.2016
+ */
+public class ResourceManager
+{
+	// ATTRIBUTES	-------------------
+	
+	private Map<DataType, BankBank<?>> banks = new HashMap<>();
+	private List<Phase> currentPhases = new ArrayList<>();
+	private Map<String, Phase> knownPhases = new HashMap<>();
+	private List<PhaseSource> phaseSources = new ArrayList<>();
+	
+	private BankIndex bankIndex = new BankIndex();
+	private Map<Phase, CompiledPhase> compiledPhases = new HashMap<>();
+	private BitSet activeBanks = new BitSet();
+	private Map<DataType, MemoryBudget> budgets = new HashMap<>();
+	private MemoryBudgetListener budgetListener = null;
+	
+	private Executor loadExecutor = null;
+	private boolean compressInactive = false;
+	private ResourceTracer tracer = null;
+	private AccessStatistics statistics = null;
+	private Map<Integer, CompletableFuture<Void>> pendingLoads = new HashMap<>();
+	private Map<DataType, OverlayIndex> overlays = new HashMap<>();
+	private Map<Bank<?>, ReferenceDependencies> referenceDependencies = new IdentityHashMap<>();
+	
+	
+	// CONSTRUCTOR	-------------------
+	
+	/**
+	 * Creates a new empty resource manager. The banks and phases need to be introduced separately
+	 */
+	public ResourceManager()
+	{
+		// Empty constructor
+	}
+
+	/**
+	 * Creates a new resource manager with set banks and phases
+	 * @param banks The banks managed by the resource manager
+	 * @param phases The phases known by the resource manager
+	 */
+	public ResourceManager(Collection<? extends BankBank<?>> banks, Collection<? extends Phase> phases)
+	{
+		introduceBanks(banks);
+		introducePhases(phases);
+	}
+	
+	
+	// OTHER METHODS	---------------
+	
+	/**
+	 * Adds a new bank to be managed by this resource manager. If there was a bank with the 
+	 * same data type, it gets replaced with this one.
+	 * @param bank The bank that will be managed by the manager
+	 */
+	public void introduceBank(BankBank<?> bank)
+	{
+		ResourceTracer bankTracer = getBankTracer();
+		if (bankTracer != null)
+			bank.setTracer(bankTracer);
+		this.banks.put(bank.getContentType(), bank);
+		for (Bank<?> existingBank : bank.getBanks())
+		{
+			this.bankIndex.getId(existingBank.getContentType(), existingBank.getName());
+		}
+	}
+	
+	/**
+	 * Adds multiple banks to be managed by this resource manager
+	 * @param banks The banks that will be managed by this manager
+	 */
+	public void introduceBanks(Collection<? extends BankBank<?>> banks)
+	{
+		for (BankBank<?> bank : banks)
+		{
+			introduceBank(bank);
+		}
+	}
+	
+	/**
+	 * Introduces a phase to this manager
+	 * @param phase The phase introduced to this manager
+	 */
+	public void introducePhase(Phase phase)
+	{
+		if (!this.knownPhases.containsKey(phase.getName().toLowerCase()))
+		{
+			this.knownPhases.put(phase.getName().toLowerCase(), phase);
+			getCompiledBanks(phase);
+		}
+	}
+	
+	/**
+	 * Introduces multiple phases to this manager
+	 * @param phases The phases introduced to this manager
+	 */
+	public void introducePhases(Collection<? extends Phase> phases)
+	{
+		for (Phase phase : phases)
+		{
+			introducePhase(phase);
+		}
+	}
+	
+	/**
+	 * Introduces a source from which phases are read when they are first requested. This 
+	 * way only the phases that are actually used need to be parsed.
+	 * @param source The source of phases
+	 * @see #getPhase(String)
+	 */
+	public void introducePhaseSource(PhaseSource source)
+	{
+		this.phaseSources.add(source);
+	}
+	
+	/**
+	 * This method makes sure each bank introduced in the phases known by the manager exists 
+	 * in a bank bank known by the manager, where applicable. The banks and the phases need 
+	 * to be introduced at this point though.
+	 * @see #introduceBank(BankBank)
+	 * @see #introducePhase(Phase)
+	 */
+	public void generateBanksBasedOnPhases()
+	{
+		List<Phase> phases = getPhases();
+		for (BankBank<?> bank : getBanks())
+		{
+			for (Phase phase : phases)
+			{
+				bank.generateBanks(phase.getActiveBankNames(bank.getContentType()));
+			}
+		}
+	}
+	
+	/**
+	 * Finds a phase with the provided name. Only works with phases introduced to the manager 
+	 * or available from an introduced phase source. Phases read from a source are introduced 
+	 * to the manager on the first request.
+	 * @param phaseName The name of the phase
+	 * @return The phase with the provided name (case-insensitive)
+	 * @throws PhaseNotIntroducedException If the phase hasn't been introduced to the manager 
+	 * or it couldn't be read from a phase source
+	 * @see #introducePhaseSource(PhaseSource)
+	 */
+	public Phase getPhase(String phaseName) throws PhaseNotIntroducedException
+	{
+		Phase phase = this.knownPhases.get(phaseName.toLowerCase());
+		if (phase != null)
+			return phase;
+		
+		// Reads the phase from a phase source, if possible
+		for (PhaseSource source : this.phaseSources)
+		{
+			if (source.containsPhase(phaseName))
+			{
+				try
+				{
+					phase = source.readPhase(phaseName);
+				}
+				catch (RecordingFailedException e)
+				{
+					throw new PhaseNotIntroducedException(phaseName, e);
+				}
+				
+				if (phase != null)
+				{
+					introducePhase(phase);
+					return phase;
+				}
+			}
+		}
+		
+		throw new PhaseNotIntroducedException(phaseName);
+	}
+	
+	/**
+	 * @return All phases known by the manager. Phases available from phase sources are 
+	 * included only after they have been requested. Altering this list won't affect the 
+	 * manager in any way.
+	 */
+	public List<Phase> getPhases()
+	{
+		return new ArrayList<>(this.knownPhases.values());
+	}
+	
+	/**
+	 * Finds an introduced bank of a certain resource type
+	 * @param resourceType The type of resource the bank holds
+	 * @return A bank for that resource type of null if one hasn't been introduced
+	 */
+	public BankBank<?> getBank(DataType resourceType)
+	{
+		return this.banks.get(resourceType);
+	}
+	
+	/**
+	 * Finds a resource from the banks activated by this manager. The manager keeps an index 
+	 * of the resources in the active banks of each type, so the resource is found with 
+	 * a single lookup. If multiple active banks contain a resource with the same name, the 
+	 * most recently activated bank takes precedence.
+	 * @param resourceType The type of the resource
+	 * @param resourceName The name of the resource (case-insensitive)
+	 * @return The resource or null if none of the active banks contained the resource
+	 * @see #getBankFor(DataType, String)
+	 */
+	public Object get(DataType resourceType, String resourceName)
+	{
+		Bank<?> bank = getBankFor(resourceType, resourceName);
+		if (bank == null)
+			return null;
+		else
+			return bank.get(resourceName);
+	}
+	
+	/**
+	 * Finds the active bank that provides a resource
+	 * @param resourceType The type of the resource
+	 * @param resourceName The name of the resource (case-insensitive)
+	 * @return The bank that provides the resource or null if none of the active banks 
+	 * contained the resource
+	 * @see #get(DataType, String)
+	 */
+	public Bank<?> getBankFor(DataType resourceType, String resourceName)
+	{
+		OverlayIndex overlay = this.overlays.get(resourceType);
+		if (overlay == null)
+			return null;
+		else
+			return overlay.getBankFor(resourceName);
+	}
+	
+	/**
+	 * @return The banks known by the manager. Changes made to the list won't affect the manager
+	 */
+	public List<BankBank<?>> getBanks()
+	{
+		return new ArrayList<>(this.banks.values());
+	}
+	
+	/**
+	 * Makes the manager load the banks in the background. Phase changes then return 
+	 * immediately and only start the loads. Since each phase change only compares the new 
+	 * target state with the current one, rapid changes are coalesced: when a bank is not 
+	 * needed anymore, its load is cancelled and the reading stops at the next resource. 
+	 * Loads that haven't started yet are skipped altogether. A failed load is issued again 
+	 * on the next phase change that still requires the bank.
+	 * @param executor The executor that loads the banks. Null if the banks should be loaded 
+	 * synchronously during the phase changes (default).
+	 * @see Bank#initialiseAsync(Executor)
+	 * @see #getLoadCompletion()
+	 */
+	public void setLoadExecutor(Executor executor)
+	{
+		this.loadExecutor = executor;
+	}
+	
+	/**
+	 * Makes the manager keep the banks that leave the current phases in a compressed form 
+	 * in memory. Reactivating a compressed bank only decompresses the contents instead of 
+	 * reading them from the recorder again. Compressed banks count towards the memory 
+	 * budgets with their compressed size and are dropped first when evicting.
+	 * @param compress Should inactive banks be compressed (default false)
+	 * @see Bank#compress()
+	 */
+	public void setCompressInactiveBanks(boolean compress)
+	{
+		this.compressInactive = compress;
+	}
+	
+	/**
+	 * Sets the tracer that is informed of the phase transitions. The tracer is also set 
+	 * for each of the managed bank banks, so that the bank loads and resource requests are 
+	 * traced as well.
+	 * @param tracer The tracer that is informed. Null if nothing should be traced (default).
+	 * @see BankBank#setTracer(ResourceTracer)
+	 */
+	public void setTracer(ResourceTracer tracer)
+	{
+		this.tracer = tracer;
+		updateBankTracers();
+	}
+	
+	/**
+	 * Makes the manager count the resource requests made during each phase. When a bank 
+	 * is activated, its most requested resources in the target phases are prepared first. 
+	 * The statistics may be read from a previous run before the first phase is started, 
+	 * in which case the banks are warmed up from the start.
+	 * @param statistics The statistics that are kept and used. Null if no statistics 
+	 * should be used (default).
+	 * @see Bank#setWarmupOrder(List)
+	 * @see AccessStatistics#read(java.nio.file.Path)
+	 */
+	public void setAccessStatistics(AccessStatistics statistics)
+	{
+		this.statistics = statistics;
+		updateBankTracers();
+	}
+	
+	/**
+	 * @return A future that completes once all of the banks required by the current phases 
+	 * have been loaded. The future completes exceptionally if some of the loads fail.
+	 * @see #setLoadExecutor(Executor)
+	 */
+	public CompletableFuture<Void> getLoadCompletion()
+	{
+		// Forgets the loads that have already finished successfully
+		Iterator<CompletableFuture<Void>> iterator = this.pendingLoads.values().iterator();
+		while (iterator.hasNext())
+		{
+			CompletableFuture<Void> load = iterator.next();
+			if (load.isDone() && !load.isCompletedExceptionally())
+				iterator.remove();
+		}
+		
+		return CompletableFuture.allOf(this.pendingLoads.values().toArray(
+				new CompletableFuture<?>[this.pendingLoads.size()]));
+	}
+	
+	/**
+	 * Starts a certain phase, making sure the connected resources are available. Starting 
+	 * a phase that is already active doesn't start it a second time.
+	 * @param phase The phase that is started
+	 * @param endOtherPhases Should the other, currently active, phases be ended (true) or kept active (false)
+	 * @throws RecordingFailedException If some of the banks couldn't be initialised
+	 */
+	public void startPhase(Phase phase, boolean endOtherPhases) throws RecordingFailedException
+	{
+		List<Phase> phases = endOtherPhases ? new ArrayList<>() : new ArrayList<>(this.currentPhases);
+		if (!phases.contains(phase))
+			phases.add(phase);
+		updatePhases(phases, "start", phase.getName());
+	}
+	
+	/**
+	 * Starts a phase with the provided name, making the connected resources available
+	 * @param phaseName The name of the phase that is started
+	 * @param endOtherPhases Should the other, currently active, phases be ended (true) or kept active (false)
+	 * @throws PhaseNotIntroducedException If there was no phase with the provided name
+	 * @throws RecordingFailedException If some of the banks couldn't be initialised
+	 */
+	public void startPhase(String phaseName, boolean endOtherPhases) throws 
+			PhaseNotIntroducedException, RecordingFailedException
+	{
+		startPhase(getPhase(phaseName), endOtherPhases);
+	}
+	
+	/**
+	 * Switches a previous phase to a new phase
+	 * @param oldPhase The old phase that is ended
+	 * @param newPhase The new phase that is started
+	 * @throws RecordingFailedException If some of the banks couldn't be initialised
+	 */
+	public void switchPhase(Phase oldPhase, Phase newPhase) throws RecordingFailedException
+	{
+		List<Phase> phases = new ArrayList<>(this.currentPhases);
+		phases.remove(oldPhase);
+		if (!phases.contains(newPhase))
+			phases.add(newPhase);
+		updatePhases(phases, "switch", newPhase.getName());
+	}
+	
+	/**
+	 * Switches a previous phase to a new phase
+	 * @param oldPhaseName The name of the old phase that is ended
+	 * @param newPhaseName The name of the new phase that is started
+	 * @throws PhaseNotIntroducedException If there wasn't a phase with a provided name
+	 * @throws RecordingFailedException If some of the banks couldn't be initialised
+	 */
+	public void switchPhase(String oldPhaseName, String newPhaseName) throws 
+			PhaseNotIntroducedException, RecordingFailedException
+	{
+		switchPhase(getPhase(oldPhaseName), getPhase(newPhaseName));
+	}
+	
+	/**
+	 * Ends a phase, which may release some allocated resources
+	 * @param phase The phase that is ended
+	 * @throws RecordingFailedException If some of the banks couldn't be uninitialised
+	 */
+	public void endPhase(Phase phase) throws RecordingFailedException
+	{
+		if (this.currentPhases.contains(phase))
+		{
+			List<Phase> phases = new ArrayList<>(this.currentPhases);
+			phases.remove(phase);
+			updatePhases(phases, "end", phase.getName());
+		}
+	}
+	
+	/**
+	 * Ends a phase, which may release some allocated resources
+	 * @param phaseName The name of the phase that is ended
+	 * @throws RecordingFailedException If some of the banks couldn't be uninitialised
+	 * @throws PhaseNotIntroducedException If there was not a phase with the provided name
+	 */
+	public void endPhase(String phaseName) throws RecordingFailedException, PhaseNotIntroducedException
+	{
+		endPhase(getPhase(phaseName));
+	}
+	
+	/**
+	 * Starts a new phase transition. The phase commands recorded in the transition are 
+	 * applied together when the transition is committed, so that the banks are only updated 
+	 * once for the net change. A bank that would be unloaded by one command and loaded again 
+	 * by another is left as it is.
+	 * @return A new transition that needs to be committed
+	 * @see PhaseTransition#commit()
+	 */
+	public PhaseTransition beginTransition()
+	{
+		return new PhaseTransition();
+	}
+	
+	/**
+	 * Acquires a lease on a bank outside of the phases. The bank stays initialised until the 
+	 * lease is released, even if none of the active phases uses it. Likewise, releasing the 
+	 * lease doesn't uninitialise the bank while a phase is still using it.
+	 * @param resourceType The type of resource held by the bank
+	 * @param bankName The name of the bank
+	 * @return The acquired bank or null if there was no such bank
+	 * @throws RecordingFailedException If the bank couldn't be initialised
+	 * @see #releaseBank(DataType, String)
+	 */
+	public Bank<?> acquireBank(DataType resourceType, String bankName) throws RecordingFailedException
+	{
+		BankBank<?> bankBank = getBank(resourceType);
+		if (bankBank == null)
+			return null;
+		
+		Bank<?> bank = bankBank.acquire(bankName);
+		if (bank != null)
+		{
+			if (resourceType.equals(ArcDataType.REFERENCE))
+				resolveReferences(bank, Collections.newSetFromMap(new IdentityHashMap<Bank<?>, Boolean>()));
+			getOverlay(resourceType).add(bank);
+		}
+		return bank;
+	}
+	
+	/**
+	 * Releases a lease acquired with {@link #acquireBank(DataType, String)}
+	 * @param resourceType The type of resource held by the bank
+	 * @param bankName The name of the bank
+	 */
+	public void releaseBank(DataType resourceType, String bankName)
+	{
+		BankBank<?> bankBank = getBank(resourceType);
+		if (bankBank != null)
+			bankBank.release(bankName);
+	}
+	
+	/**
+	 * Saves all banks known by the manager. The banks that haven't been initialised or 
+	 * modified are skipped, since they have nothing to save.
+	 * @throws RecordingFailedException If bank writing failed
+	 * @see #saveBanks(boolean)
+	 */
+	public void saveBanks() throws RecordingFailedException
+	{
+		saveBanks(false);
+	}
+	
+	/**
+	 * Saves the banks known by the manager. The banks that use a {@link BatchBankRecorder} 
+	 * are written in a single batch for each recorder, so that either all or none of 
+	 * them are updated.
+	 * @param onlyModified Whether only the banks modified since they were last saved 
+	 * should be written. Only the changes made through {@link Bank#put(String, Object)} and 
+	 * {@link Bank#remove(String)} are tracked. If the banks are modified through the 
+	 * model methods, like addAttribute, all banks should be saved instead.
+	 * @throws RecordingFailedException If bank writing failed
+	 * @see Bank#hasUnsavedChanges()
+	 */
+	public void saveBanks(boolean onlyModified) throws RecordingFailedException
+	{
+		// Groups the saved banks by their recorders
+		Map<BankRecorder, List<Bank<?>>> batches = new IdentityHashMap<>();
+		for (BankBank<?> bankBank : getBanks())
+		{
+			for (Bank<?> bank : bankBank.getBanks())
+			{
+				if (!bank.hasUnsavedChanges() && (onlyModified || !bank.isInitialised()))
+					continue;
+				
+				// Chunked and incremental banks write only their changes, so they are 
+				// saved separately
+				if (bank.getRecorder() instanceof BatchBankRecorder && !bank.isChunked() && 
+						!(bank.getRecorder() instanceof IncrementalBankRecorder))
+				{
+					List<Bank<?>> batch = batches.get(bank.getRecorder());
+					if (batch == null)
+					{
+						batch = new ArrayList<>();
+						batches.put(bank.getRecorder(), batch);
+					}
+					batch.add(bank);
+				}
+				else
+					bank.save();
+			}
+		}
+		
+		for (Map.Entry<BankRecorder, List<Bank<?>>> batch : batches.entrySet())
+		{
+			List<BatchBankRecorder.BankData> data = new ArrayList<>();
+			for (Bank<?> bank : batch.getValue())
+			{
+				data.add(new BatchBankRecorder.BankData(bank.getName(), bank.getContentType(), 
+						bank.getSavedContents()));
+			}
+			
+			RecorderOperationEvent write = ArcEvents.beginRecorderOperation();
+			((BatchBankRecorder) batch.getKey()).writeBanks(data);
+			int resourceCount = 0;
+			for (BatchBankRecorder.BankData bankData : data)
+			{
+				resourceCount += bankData.getContents().size();
+			}
+			ArcEvents.endRecorderOperation(write, batch.getKey(), "write batch", null, null, 
+					data.size(), resourceCount);
+			for (Bank<?> bank : batch.getValue())
+			{
+				bank.markSaved();
+			}
+		}
+	}
+	
+	/**
+	 * Calculates the estimated memory used by the banks of a certain resource type
+	 * @param resourceType The type of resource
+	 * @return The estimated memory held by the banks of that type, in bytes
+	 * @see Bank#getResidentSize()
+	 */
+	public long getMemoryUsage(DataType resourceType)
+	{
+		BankBank<?> bankBank = getBank(resourceType);
+		if (bankBank == null)
+			return 0;
+		
+		long total = 0;
+		for (Bank<?> bank : bankBank.getBanks())
+		{
+			total += bank.getResidentSize();
+		}
+		return total;
+	}
+	
+	/**
+	 * Calculates the estimated memory used by the banks of a certain phase
+	 * @param phase The phase
+	 * @return The estimated memory held by the banks connected to that phase, in bytes
+	 * @see Bank#getResidentSize()
+	 */
+	public long getMemoryUsage(Phase phase)
+	{
+		long total = 0;
+		BitSet phaseBanks = getCompiledBanks(phase);
+		for (int id = phaseBanks.nextSetBit(0); id >= 0; id = phaseBanks.nextSetBit(id + 1))
+		{
+			Bank<?> bank = findBank(id);
+			if (bank != null)
+				total += bank.getResidentSize();
+		}
+		return total;
+	}
+	
+	/**
+	 * @return The estimated memory used by all banks known by the manager, in bytes
+	 */
+	public long getMemoryUsage()
+	{
+		long total = 0;
+		for (DataType resourceType : this.banks.keySet())
+		{
+			total += getMemoryUsage(resourceType);
+		}
+		return total;
+	}
+	
+	/**
+	 * Sets a memory budget for the banks of a certain resource type. The budget is checked 
+	 * each time the active phases change.
+	 * @param resourceType The type of resource
+	 * @param maxBytes The maximum amount of (estimated) memory the banks of that type may hold
+	 * @param policy What is done when a phase change would exceed the budget
+	 */
+	public void setMemoryBudget(DataType resourceType, long maxBytes, BudgetPolicy policy)
+	{
+		this.budgets.put(resourceType, new MemoryBudget(maxBytes, policy));
+	}
+	
+	/**
+	 * Sets the listener that is informed when a phase change is accepted even though it 
+	 * exceeds a memory budget
+	 * @param listener The listener that is informed. Null if the exceeded budgets should 
+	 * be ignored (default).
+	 * @see BudgetPolicy#WARN
+	 */
+	public void setMemoryBudgetListener(MemoryBudgetListener listener)
+	{
+		this.budgetListener = listener;
+	}
+	
+	/**
+	 * Removes a memory budget from a resource type
+	 * @param resourceType The type of resource
+	 */
+	public void removeMemoryBudget(DataType resourceType)
+	{
+		this.budgets.remove(resourceType);
+	}
+	
+	private void updatePhases(List<Phase> phases, String operation, String phaseName) 
+			throws RecordingFailedException
+	{
+		long started = System.nanoTime();
+		PhaseTransitionEvent event = new PhaseTransitionEvent();
+		event.begin();
+		
+		// Banks whose background load failed are treated as inactive, so that they are 
+		// loaded again if they are still needed
+		dropFailedLoads();
+		
+		// The banks that should be active are the union of the phases' banks
+		BitSet targetBanks = new BitSet(this.bankIndex.size());
+		for (Phase phase : phases)
+		{
+			targetBanks.or(getCompiledBanks(phase));
+		}
+		
+		// The budgets are checked before any changes are made. The banks are evicted only 
+		// after every budget has been checked, so that a rejected change evicts nothing.
+		List<BudgetCheck> budgetChecks = new ArrayList<>();
+		for (DataType resourceType : this.budgets.keySet())
+		{
+			BudgetCheck check = checkBudget(resourceType, targetBanks);
+			if (check != null)
+				budgetChecks.add(check);
+		}
+		for (BudgetCheck check : budgetChecks)
+		{
+			applyBudget(check);
+		}
+		
+		// Only the banks that change state need to be touched. Each bank's bit is updated 
+		// once its state has changed, so that a failed update can be retried later.
+		BitSet changedBanks = (BitSet) targetBanks.clone();
+		changedBanks.xor(this.activeBanks);
+		
+		for (int id = changedBanks.nextSetBit(0); id >= 0; id = changedBanks.nextSetBit(id + 1))
+		{
+			Bank<?> bank = findBank(id);
+			// Banks that don't exist yet are left inactive and checked again on the next update
+			if (bank == null)
+			{
+				this.activeBanks.clear(id);
+				continue;
+			}
+			
+			// Activates or deactivates the bank. The phases hold a single lease on each 
+			// active bank. Uninitialising a bank also cancels its load.
+			if (!targetBanks.get(id))
+			{
+				this.pendingLoads.remove(id);
+				bank.release(this.compressInactive);
+			}
+			else
+			{
+				if (this.statistics != null)
+					bank.setWarmupOrder(this.statistics.getHotResources(phases, 
+							bank.getContentType(), bank.getName()));
+				
+				// Reference banks are loaded right away, since their references are 
+				// resolved as part of the activation
+				if (bank.getContentType().equals(ArcDataType.REFERENCE))
+				{
+					bank.acquire();
+					try
+					{
+						resolveReferences(bank, Collections.newSetFromMap(
+								new IdentityHashMap<Bank<?>, Boolean>()));
+					}
+					catch (RecordingFailedException | RuntimeException e)
+					{
+						// The lease is returned, so that the bank is activated again on retry
+						bank.release();
+						throw e;
+					}
+				}
+				else if (this.loadExecutor == null)
+					bank.acquire();
+				else
+					this.pendingLoads.put(id, bank.acquireAsync(this.loadExecutor));
+				getOverlay(bank.getContentType()).add(bank);
+			}
+			this.activeBanks.set(id, targetBanks.get(id));
+		}
+		
+		// The phases change only once all of their banks are in place
+		this.currentPhases = phases;
+		
+		event.end();
+		if (event.shouldCommit())
+		{
+			event.operation = operation;
+			event.phaseName = phaseName;
+			StringBuilder activePhases = new StringBuilder();
+			for (Phase phase : phases)
+			{
+				if (activePhases.length() > 0)
+					activePhases.append(", ");
+				activePhases.append(phase.getName());
+			}
+			event.activePhases = activePhases.toString();
+			BitSet activated = (BitSet) this.activeBanks.clone();
+			activated.and(changedBanks);
+			event.activatedBanks = activated.cardinality();
+			event.deactivatedBanks = changedBanks.cardinality() - event.activatedBanks;
+			event.commit();
+		}
+		
+		long duration = System.nanoTime() - started;
+		if (this.statistics != null)
+			this.statistics.onPhaseTransition(phases, duration);
+		if (this.tracer != null)
+			this.tracer.onPhaseTransition(phases, duration);
+	}
+	
+	private void dropFailedLoads()
+	{
+		Iterator<Map.Entry<Integer, CompletableFuture<Void>>> iterator = 
+				this.pendingLoads.entrySet().iterator();
+		while (iterator.hasNext())
+		{
+			Map.Entry<Integer, CompletableFuture<Void>> load = iterator.next();
+			if (!load.getValue().isCompletedExceptionally())
+				continue;
+			
+			// The phases' lease on the bank is returned along with the failed load
+			iterator.remove();
+			int id = load.getKey();
+			this.activeBanks.clear(id);
+			Bank<?> bank = findBank(id);
+			if (bank != null)
+				bank.release();
+		}
+	}
+	
+	private ResourceTracer getBankTracer()
+	{
+		// The banks inform both the tracer and the statistics, when both are used
+		if (this.statistics == null)
+			return this.tracer;
+		else if (this.tracer == null)
+			return this.statistics;
+		else
+			return new TracerPair(this.tracer, this.statistics);
+	}
+	
+	private void updateBankTracers()
+	{
+		ResourceTracer bankTracer = getBankTracer();
+		for (BankBank<?> bank : this.banks.values())
+		{
+			bank.setTracer(bankTracer);
+		}
+	}
+	
+	private BudgetCheck checkBudget(DataType resourceType, BitSet targetBanks)
+	{
+		BankBank<?> bankBank = getBank(resourceType);
+		if (bankBank == null)
+			return null;
+		MemoryBudget budget = this.budgets.get(resourceType);
+		
+		// Estimates the memory usage after the phase change. Retained banks are the ones 
+		// that are initialised (or compressed) but not used by any phase or lease.
+		// Compressed banks are evicted before the initialised ones.
+		long projectedSize = 0;
+		List<Bank<?>> retainedBanks = new ArrayList<>();
+		for (Bank<?> bank : bankBank.getBanks())
+		{
+			int id = this.bankIndex.getId(resourceType, bank.getName());
+			if (targetBanks.get(id))
+				projectedSize += bank.getEstimatedSize();
+			// Banks leaving the phases stay only if they are leased
+			else if (this.activeBanks.get(id) ? bank.getHoldCount() > 1 : 
+					bank.isInitialised() || bank.isCompressed())
+			{
+				projectedSize += bank.getResidentSize();
+				if (bank.getHoldCount() == 0)
+					retainedBanks.add(bank);
+			}
+		}
+		
+		if (projectedSize <= budget.maxBytes)
+			return null;
+		
+		BudgetCheck check = new BudgetCheck(resourceType, projectedSize, budget.maxBytes);
+		switch (budget.policy)
+		{
+			case REJECT:
+				throw new MemoryBudgetExceededException(resourceType, projectedSize, budget.maxBytes);
+			case EVICT:
+				// Evicts the compressed banks first and then the largest retained banks
+				retainedBanks.sort((a, b) -> a.isCompressed() != b.isCompressed() ? 
+						(a.isCompressed() ? -1 : 1) : 
+						Long.compare(b.getResidentSize(), a.getResidentSize()));
+				for (Bank<?> bank : retainedBanks)
+				{
+					if (check.projectedSize <= check.maxBytes)
+						break;
+					check.projectedSize -= bank.getResidentSize();
+					check.evictedBanks.add(bank);
+				}
+				break;
+			case WARN:
+				break;
+		}
+		
+		return check;
+	}
+	
+	private void applyBudget(BudgetCheck check)
+	{
+		for (Bank<?> bank : check.evictedBanks)
+		{
+			bank.uninitialise();
+		}
+		
+		if (check.projectedSize > check.maxBytes && this.budgetListener != null)
+			this.budgetListener.onBudgetExceeded(check.resourceType, check.projectedSize, 
+					check.maxBytes);
+	}
+	
+	private BitSet getCompiledBanks(Phase phase)
+	{
+		// Phases are compiled into bank id sets. The compiled set is updated when the phase changes.
+		CompiledPhase compiled = this.compiledPhases.get(phase);
+		if (compiled == null || compiled.version != phase.getVersion())
+		{
+			compiled = new CompiledPhase(phase.getVersion(), this.bankIndex.compile(phase));
+			this.compiledPhases.put(phase, compiled);
+		}
+		
+		return compiled.banks;
+	}
+	
+	private void resolveReferences(Bank<?> bank, Set<Bank<?>> resolving) throws RecordingFailedException
+	{
+		// Each bank is resolved only once while it stays initialised. Cyclic references 
+		// are resolved when the cycle is first entered.
+		if (this.referenceDependencies.containsKey(bank) || !resolving.add(bank))
+			return;
+		
+		// The referenced banks are loaded (and resolved) before the references are linked. 
+		// The referring bank holds a lease on each bank it depends on.
+		ReferenceDependencies dependencies = new ReferenceDependencies();
+		this.referenceDependencies.put(bank, dependencies);
+		bank.addIndexListener(dependencies);
+		// The cached instances are resolved, since those are the ones the bank hands out
+		for (Object resource : bank.listResources())
+		{
+			ResourceReference reference = (ResourceReference) resource;
+			Bank<?> target = findReferencedBank(reference);
+			if (target == null)
+				continue;
+			
+			if (target != bank && dependencies.add(target))
+			{
+				try
+				{
+					target.acquire();
+				}
+				catch (RecordingFailedException e)
+				{
+					// Only the banks that were acquired are released later
+					dependencies.remove(target);
+					throw e;
+				}
+				if (target.getContentType().equals(ArcDataType.REFERENCE))
+					resolveReferences(target, resolving);
+			}
+			
+			// References to missing resources are left unresolved
+			if (target.containsResource(reference.getResourceName()))
+				reference.resolve(target);
+		}
+	}
+	
+	private Bank<?> findReferencedBank(ResourceReference reference)
+	{
+		if (reference.getTypeName() != null)
+		{
+			BankBank<?> bankBank = getBank(DataTypes.parseType(reference.getTypeName()));
+			if (bankBank == null)
+				return null;
+			else
+				return bankBank.get(reference.getBankName());
+		}
+		
+		// Without a type, the bank is searched from all non-reference banks
+		for (BankBank<?> bankBank : this.banks.values())
+		{
+			if (bankBank.getContentType().equals(ArcDataType.REFERENCE))
+				continue;
+			Bank<?> bank = bankBank.get(reference.getBankName());
+			if (bank != null)
+				return bank;
+		}
+		return null;
+	}
+	
+	private OverlayIndex getOverlay(DataType resourceType)
+	{
+		OverlayIndex overlay = this.overlays.get(resourceType);
+		if (overlay == null)
+		{
+			overlay = new OverlayIndex();
+			this.overlays.put(resourceType, overlay);
+		}
+		return overlay;
+	}
+	
+	private Bank<?> findBank(int bankId)
+	{
+		BankBank<?> bankBank = getBank(this.bankIndex.getType(bankId));
+		if (bankBank == null)
+			return null;
+		else
+			return bankBank.get(this.bankIndex.getBankName(bankId));
+	}
+	
+	
+	// NESTED CLASSES	-----------------
+	
+	/**
+	 * These are the different ways a resource manager may react when a phase change would 
+	 * exceed a memory budget
+	 * @author Mikko Hilpinen
+	 * @since 18.5.2016
+	 */
+	public static enum BudgetPolicy
+	{
+		/**
+		 * The phase change is rejected with a {@link MemoryBudgetExceededException}
+		 */
+		REJECT,
+		/**
+		 * The phase change is accepted and the memory budget listener is informed
+		 * @see ResourceManager#setMemoryBudgetListener(MemoryBudgetListener)
+		 */
+		WARN,
+		/**
+		 * Initialised banks that aren't used by any active phase are uninitialised until 
+		 * the budget is met. If that is not enough, the memory budget listener is informed.
+		 */
+		EVICT;
+	}
+	
+	/**
+	 * These exceptions are thrown when a phase change is rejected because it would exceed 
+	 * a memory budget
+	 * @author Mikko Hilpinen
+	 * @since 18.5.2016
+	 * @see BudgetPolicy#REJECT
+	 */
+	public static class MemoryBudgetExceededException extends RuntimeException
+	{
+		private static final long serialVersionUID = -3120489736452174501L;
+		
+		/**
+		 * Creates a new exception
+		 * @param resourceType The type of resource which's budget would have been exceeded
+		 * @param projectedSize The estimated memory use after the phase change
+		 * @param maxSize The memory budget
+		 */
+		public MemoryBudgetExceededException(DataType resourceType, long projectedSize, long maxSize)
+		{
+			super(resourceType.getName() + " banks would use an estimated " + projectedSize + 
+					" bytes, exceeding the budget of " + maxSize + " bytes");
+		}
+	}
+	
+	/**
+	 * These exceptions are thrown when trying to use a non-existing phase or one that hasn't 
+	 * been introduced yet
+	 * @author Mikko Hilpinen
+	 * @since 12.5.2016
+	 */
+	public static class PhaseNotIntroducedException extends RuntimeException
+	{
+		private static final long serialVersionUID = 5003493962012116061L;
+		
+		/**
+		 * Creates a new exception
+		 * @param phaseName The name of the requested phase
+		 */
+		public PhaseNotIntroducedException(String phaseName)
+		{
+			super("Phase '" + phaseName + "' hasn't been introduced yet");
+		}
+		
+		/**
+		 * Creates a new exception for a phase that couldn't be read
+		 * @param phaseName The name of the requested phase
+		 * @param cause The reason the phase couldn't be read
+		 */
+		public PhaseNotIntroducedException(String phaseName, Throwable cause)
+		{
+			super("Phase '" + phaseName + "' couldn't be read", cause);
+		}
+	}
+	
+	private static class MemoryBudget
+	{
+		// ATTRIBUTES	-------------
+		
+		private final long maxBytes;
+		private final BudgetPolicy policy;
+		
+		
+		// CONSTRUCTOR	-------------
+		
+		public MemoryBudget(long maxBytes, BudgetPolicy policy)
+		{
+			this.maxBytes = maxBytes;
+			this.policy = policy;
+		}
+	}
+	
+	private static class BudgetCheck
+	{
+		// ATTRIBUTES	-------------
+		
+		private final DataType resourceType;
+		private final long maxBytes;
+		private long projectedSize;
+		private final List<Bank<?>> evictedBanks = new ArrayList<>();
+		
+		
+		// CONSTRUCTOR	-------------
+		
+		public BudgetCheck(DataType resourceType, long projectedSize, long maxBytes)
+		{
+			this.resourceType = resourceType;
+			this.projectedSize = projectedSize;
+			this.maxBytes = maxBytes;
+		}
+	}
+	
+	private static class OverlayIndex implements ResourceIndexListener
+	{
+		// ATTRIBUTES	-------------
+		
+		private final Map<String, Bank<?>> owners = new HashMap<>();
+		// The banks in activation order. The last bank has the highest precedence.
+		private final List<Bank<?>> banks = new ArrayList<>();
+		
+		
+		// IMPLEMENTED METHODS	-----
+		
+		@Override
+		public void onResourceAdded(Bank<?> bank, String resourceName)
+		{
+			String key = resourceName.toLowerCase();
+			Bank<?> owner = this.owners.get(key);
+			if (owner == null || owner == bank || indexOf(bank) > indexOf(owner))
+				this.owners.put(key, bank);
+		}
+		
+		@Override
+		public void onResourceRemoved(Bank<?> bank, String resourceName)
+		{
+			String key = resourceName.toLowerCase();
+			if (this.owners.get(key) != bank)
+				return;
+			
+			// The resource may still be provided by another bank
+			this.owners.remove(key);
+			for (int i = this.banks.size() - 1; i >= 0; i--)
+			{
+				Bank<?> other = this.banks.get(i);
+				if (other != bank && other.containsResource(resourceName))
+				{
+					this.owners.put(key, other);
+					break;
+				}
+			}
+		}
+		
+		@Override
+		public void onBankCleared(Bank<?> bank)
+		{
+			int index = indexOf(bank);
+			if (index < 0)
+				return;
+			
+			bank.removeIndexListener(this);
+			this.banks.remove(index);
+			
+			// The resources provided by the cleared bank are looked up from the other banks, 
+			// in order of precedence
+			Set<String> orphaned = new HashSet<>();
+			Iterator<Map.Entry<String, Bank<?>>> iterator = this.owners.entrySet().iterator();
+			while (iterator.hasNext())
+			{
+				Map.Entry<String, Bank<?>> entry = iterator.next();
+				if (entry.getValue() == bank)
+				{
+					orphaned.add(entry.getKey());
+					iterator.remove();
+				}
+			}
+			for (Bank<?> other : this.banks)
+			{
+				if (orphaned.isEmpty())
+					break;
+				for (String resourceName : other.getResourceNames())
+				{
+					String key = resourceName.toLowerCase();
+					if (orphaned.contains(key))
+						this.owners.put(key, other);
+				}
+			}
+		}
+		
+		
+		// OTHER METHODS	---------
+		
+		public void add(Bank<?> bank)
+		{
+			if (indexOf(bank) >= 0)
+				return;
+			
+			this.banks.add(bank);
+			bank.addIndexListener(this);
+			
+			for (String resourceName : bank.getResourceNames())
+			{
+				this.owners.put(resourceName.toLowerCase(), bank);
+			}
+		}
+		
+		public Bank<?> getBankFor(String resourceName)
+		{
+			// Banks still loading in the background add their resources as they arrive
+			return this.owners.get(resourceName.toLowerCase());
+		}
+		
+		private int indexOf(Bank<?> bank)
+		{
+			// Banks are compared by identity
+			for (int i = 0; i < this.banks.size(); i++)
+			{
+				if (this.banks.get(i) == bank)
+					return i;
+			}
+			return -1;
+		}
+	}
+	
+	private class ReferenceDependencies implements ResourceIndexListener
+	{
+		// ATTRIBUTES	-------------
+		
+		private final List<Bank<?>> banks = new ArrayList<>();
+		
+		
+		// IMPLEMENTED METHODS	-----
+		
+		@Override
+		public void onResourceAdded(Bank<?> bank, String resourceName)
+		{
+			// Links to new resources are made on demand
+		}
+		
+		@Override
+		public void onResourceRemoved(Bank<?> bank, String resourceName)
+		{
+			// The removed references are not used anymore
+		}
+		
+		@Override
+		public void onBankCleared(Bank<?> bank)
+		{
+			// Once the referring bank is cleared, it doesn't need the other banks anymore
+			bank.removeIndexListener(this);
+			ResourceManager.this.referenceDependencies.remove(bank);
+			for (Bank<?> dependency : this.banks)
+			{
+				dependency.release();
+			}
+			this.banks.clear();
+		}
+		
+		
+		// OTHER METHODS	---------
+		
+		public boolean add(Bank<?> bank)
+		{
+			for (Bank<?> dependency : this.banks)
+			{
+				if (dependency == bank)
+					return false;
+			}
+			this.banks.add(bank);
+			return true;
+		}
+		
+		public void remove(Bank<?> bank)
+		{
+			this.banks.remove(bank);
+		}
+	}
+	
+	private static class CompiledPhase
+	{
+		// ATTRIBUTES	-------------
+		
+		private final int version;
+		private final BitSet banks;
+		
+		
+		// CONSTRUCTOR	-------------
+		
+		public CompiledPhase(int version, BitSet banks)
+		{
+			this.version = version;
+			this.banks = banks;
+		}
+	}
+	
+	private static class TracerPair implements ResourceTracer
+	{
+		// ATTRIBUTES	--------------
+		
+		private final ResourceTracer first, second;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public TracerPair(ResourceTracer first, ResourceTracer second)
+		{
+			this.first = first;
+			this.second = second;
+		}
+		
+		
+		// IMPLEMENTED METHODS	------
+		
+		@Override
+		public void onPhaseTransition(List<Phase> phases, long durationNanos)
+		{
+			this.first.onPhaseTransition(phases, durationNanos);
+			this.second.onPhaseTransition(phases, durationNanos);
+		}
+		
+		@Override
+		public void onBankLoaded(DataType resourceType, String bankName, long durationNanos)
+		{
+			this.first.onBankLoaded(resourceType, bankName, durationNanos);
+			this.second.onBankLoaded(resourceType, bankName, durationNanos);
+		}
+		
+		@Override
+		public void onResourceRequested(DataType resourceType, String bankName, 
+				String resourceName)
+		{
+			this.first.onResourceRequested(resourceType, bankName, resourceName);
+			this.second.onResourceRequested(resourceType, bankName, resourceName);
+		}
+	}
+	
+	/**
+	 * A phase transition records phase commands and applies them to the resource manager 
+	 * at once. The commands are applied to the phases that are active at the time of the 
+	 * commit, in the order they were recorded. A transition may only be committed once.
+	 * @author Mikko Hilpinen
+	 * @since 6.6.2016
+	 * @see ResourceManager#beginTransition()
+	 */
+	public class PhaseTransition
+	{
+		// ATTRIBUTES	--------------
+		
+		private List<PhaseCommand> commands = new ArrayList<>();
+		private boolean committed = false;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		private PhaseTransition()
+		{
+			// Created through the resource manager
+		}
+		
+		
+		// OTHER METHODS	----------
+		
+		/**
+		 * Records a phase start
+		 * @param phase The phase that is started
+		 * @param endOtherPhases Should the phases that are active at this point be ended
+		 * @return This transition
+		 */
+		public PhaseTransition startPhase(Phase phase, boolean endOtherPhases)
+		{
+			addCommand(new PhaseCommand(endOtherPhases, null, phase));
+			return this;
+		}
+		
+		/**
+		 * Records a phase start
+		 * @param phaseName The name of the phase that is started
+		 * @param endOtherPhases Should the phases that are active at this point be ended
+		 * @return This transition
+		 * @throws PhaseNotIntroducedException If there was no phase with the provided name
+		 */
+		public PhaseTransition startPhase(String phaseName, boolean endOtherPhases) throws 
+				PhaseNotIntroducedException
+		{
+			return startPhase(getPhase(phaseName), endOtherPhases);
+		}
+		
+		/**
+		 * Records a phase switch
+		 * @param oldPhase The phase that is ended
+		 * @param newPhase The phase that is started
+		 * @return This transition
+		 */
+		public PhaseTransition switchPhase(Phase oldPhase, Phase newPhase)
+		{
+			addCommand(new PhaseCommand(false, oldPhase, newPhase));
+			return this;
+		}
+		
+		/**
+		 * Records a phase switch
+		 * @param oldPhaseName The name of the phase that is ended
+		 * @param newPhaseName The name of the phase that is started
+		 * @return This transition
+		 * @throws PhaseNotIntroducedException If there wasn't a phase with a provided name
+		 */
+		public PhaseTransition switchPhase(String oldPhaseName, String newPhaseName) throws 
+				PhaseNotIntroducedException
+		{
+			return switchPhase(getPhase(oldPhaseName), getPhase(newPhaseName));
+		}
+		
+		/**
+		 * Records a phase end
+		 * @param phase The phase that is ended
+		 * @return This transition
+		 */
+		public PhaseTransition endPhase(Phase phase)
+		{
+			addCommand(new PhaseCommand(false, phase, null));
+			return this;
+		}
+		
+		/**
+		 * Records a phase end
+		 * @param phaseName The name of the phase that is ended
+		 * @return This transition
+		 * @throws PhaseNotIntroducedException If there was not a phase with the provided name
+		 */
+		public PhaseTransition endPhase(String phaseName) throws PhaseNotIntroducedException
+		{
+			return endPhase(getPhase(phaseName));
+		}
+		
+		/**
+		 * Applies the recorded commands and updates the banks for the net change. Committing 
+		 * a transition without commands does nothing. If the commit fails, the transition 
+		 * is not marked committed and may be committed again.
+		 * @throws RecordingFailedException If some of the banks couldn't be initialised
+		 * @throws IllegalStateException If the transition has already been committed
+		 */
+		public void commit() throws RecordingFailedException, IllegalStateException
+		{
+			checkNotCommitted();
+			if (!this.commands.isEmpty())
+			{
+				List<Phase> phases = new ArrayList<>(ResourceManager.this.currentPhases);
+				for (PhaseCommand command : this.commands)
+				{
+					command.apply(phases);
+				}
+				
+				updatePhases(phases, "transition", null);
+			}
+			this.committed = true;
+		}
+		
+		/**
+		 * @return Whether the transition has been committed
+		 */
+		public boolean isCommitted()
+		{
+			return this.committed;
+		}
+		
+		private void addCommand(PhaseCommand command)
+		{
+			checkNotCommitted();
+			this.commands.add(command);
+		}
+		
+		private void checkNotCommitted() throws IllegalStateException
+		{
+			if (this.committed)
+				throw new IllegalStateException("The transition has already been committed");
+		}
+	}
+	
+	private static class PhaseCommand
+	{
+		// ATTRIBUTES	--------------
+		
+		private final boolean endOthers;
+		private final Phase endedPhase, startedPhase;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public PhaseCommand(boolean endOthers, Phase endedPhase, Phase startedPhase)
+		{
+			this.endOthers = endOthers;
+			this.endedPhase = endedPhase;
+			this.startedPhase = startedPhase;
+		}
+		
+		
+		// OTHER METHODS	----------
+		
+		public void apply(List<Phase> phases)
+		{
+			if (this.endOthers)
+				phases.clear();
+			else if (this.endedPhase != null)
+				phases.remove(this.endedPhase);
+			
+			if (this.startedPhase != null && !phases.contains(this.startedPhase))
+				phases.add(this.startedPhase);
+		}
+	}
+}
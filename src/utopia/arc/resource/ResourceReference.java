@@ -0,0 +1,200 @@
+package utopia.arc.resource;
+
+import java.io.Serializable;
+
+import utopia.flow.generics.Model.NoSuchAttributeException;
+
+/**
+ * A resource reference points to a resource in another bank. References are written as 
+ * "bank:resource" or "TYPE:bank:resource". Once a reference has been resolved, the 
+ * referenced resource is used directly without searching the banks again. If the target 
+ * bank is modified or uninitialised, the reference is updated on the next use.
+ * @author Mikko Hilpinen
+ * @since 1.6.2016
+ * @see ResourceManager
+ */
+public class ResourceReference implements Serializable
+{
+	// ATTRIBUTES	------------------
+	
+	private static final long serialVersionUID = -4626151302758347019L;
+	
+	private final String typeName;
+	private final String bankName;
+	private final String resourceName;
+	
+	private transient Bank<?> target = null;
+	private transient int targetGeneration = -1;
+	private transient Object resource = null;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new reference
+	 * @param typeName The name of the referenced resource's data type. Null if the type 
+	 * is determined by the bank name alone.
+	 * @param bankName The name of the bank containing the resource
+	 * @param resourceName The name of the referenced resource
+	 */
+	public ResourceReference(String typeName, String bankName, String resourceName)
+	{
+		this.typeName = typeName;
+		this.bankName = bankName;
+		this.resourceName = resourceName;
+	}
+	
+	/**
+	 * Parses a reference from a string
+	 * @param s A string in the format "bank:resource" or "TYPE:bank:resource"
+	 * @return The reference parsed from the string
+	 * @throws IllegalArgumentException If the string is not a valid reference
+	 */
+	public static ResourceReference parse(String s) throws IllegalArgumentException
+	{
+		String[] parts = s.split(":");
+		if (parts.length == 2)
+			return new ResourceReference(null, parts[0].trim(), parts[1].trim());
+		else if (parts.length == 3)
+			return new ResourceReference(parts[0].trim(), parts[1].trim(), parts[2].trim());
+		else
+			throw new IllegalArgumentException("'" + s + "' is not a valid resource reference");
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+	
+	@Override
+	public String toString()
+	{
+		if (this.typeName == null)
+			return this.bankName + ":" + this.resourceName;
+		else
+			return this.typeName + ":" + this.bankName + ":" + this.resourceName;
+	}
+	
+	@Override
+	public int hashCode()
+	{
+		return toString().toLowerCase().hashCode();
+	}
+	
+	@Override
+	public boolean equals(Object obj)
+	{
+		if (!(obj instanceof ResourceReference))
+			return false;
+		return toString().equalsIgnoreCase(obj.toString());
+	}
+	
+	
+	// ACCESSORS	------------------
+	
+	/**
+	 * @return The name of the referenced resource's data type. Null if not specified.
+	 */
+	public String getTypeName()
+	{
+		return this.typeName;
+	}
+	
+	/**
+	 * @return The name of the bank containing the referenced resource
+	 */
+	public String getBankName()
+	{
+		return this.bankName;
+	}
+	
+	/**
+	 * @return The name of the referenced resource
+	 */
+	public String getResourceName()
+	{
+		return this.resourceName;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * @return Whether the reference is linked to an up-to-date resource
+	 */
+	public boolean isResolved()
+	{
+		return this.target != null && this.target.getGeneration() == this.targetGeneration;
+	}
+	
+	/**
+	 * @return The referenced resource
+	 * @throws UnresolvedReferenceException If the reference hasn't been resolved or its 
+	 * target bank is no longer initialised
+	 */
+	public Object get() throws UnresolvedReferenceException
+	{
+		if (this.target == null)
+			throw new UnresolvedReferenceException(this);
+		
+		// Stale links are updated as long as the target bank is available
+		if (this.target.getGeneration() != this.targetGeneration)
+		{
+			if (!this.target.isInitialised())
+				throw new UnresolvedReferenceException(this);
+			resolve(this.target);
+		}
+		
+		return this.resource;
+	}
+	
+	/**
+	 * Links the reference to its target bank. The lookup is not traced, since the resource 
+	 * is not requested by the user.
+	 * @param target The bank containing the referenced resource
+	 * @throws UnresolvedReferenceException If the bank doesn't contain the referenced resource
+	 */
+	void resolve(Bank<?> target) throws UnresolvedReferenceException
+	{
+		try
+		{
+			this.resource = target.getUntraced(this.resourceName);
+		}
+		catch (NoSuchAttributeException e)
+		{
+			throw new UnresolvedReferenceException(this, e);
+		}
+		this.target = target;
+		this.targetGeneration = target.getGeneration();
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	/**
+	 * These exceptions are thrown when an unresolved reference is used
+	 * @author Mikko Hilpinen
+	 * @since 1.6.2016
+	 */
+	public static class UnresolvedReferenceException extends RuntimeException
+	{
+		private static final long serialVersionUID = 2935781153326474409L;
+		
+		/**
+		 * Creates a new exception
+		 * @param reference The reference that couldn't be used
+		 */
+		public UnresolvedReferenceException(ResourceReference reference)
+		{
+			super("Reference " + reference + " hasn't been resolved");
+		}
+		
+		/**
+		 * Creates a new exception
+		 * @param reference The reference that couldn't be resolved
+		 * @param cause The reason the reference couldn't be resolved
+		 */
+		public UnresolvedReferenceException(ResourceReference reference, Throwable cause)
+		{
+			super("Reference " + reference + " couldn't be resolved", cause);
+		}
+	}
+}
@@ -0,0 +1,17 @@
+package utopia.arc.resource;
+
+/**
+ * Resource sizers estimate how much memory a resource takes while held in a bank
+ * @author Mikko Hilpinen
+ * @since 18.5.2016
+ * @see ResourceSizes
+ */
+public interface ResourceSizer
+{
+	/**
+	 * Estimates the memory used by a resource
+	 * @param resource The resource (may be null)
+	 * @return The estimated size of the resource in bytes
+	 */
+	public long estimateSize(Object resource);
+}
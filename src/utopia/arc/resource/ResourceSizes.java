@@ -0,0 +1,110 @@
+package utopia.arc.resource;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import utopia.flow.generics.DataType;
+
+/**
+ * This class keeps track of the resource sizers used for each resource type. The sizes are 
+ * used for estimating the memory held by the banks.
+ * @author Mikko Hilpinen
+ * @since 18.5.2016
+ */
+public class ResourceSizes
+{
+	// ATTRIBUTES	------------------
+	
+	/**
+	 * The estimated overhead of a single bank entry (variable, value and map entry), in bytes
+	 */
+	public static final long ENTRY_OVERHEAD = 64;
+	
+	private static ResourceSizes instance = null;
+	
+	private Map<DataType, ResourceSizer> sizers = new HashMap<>();
+	private ResourceSizer defaultSizer = new DefaultSizer();
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	private ResourceSizes()
+	{
+		// Singleton constructor
+	}
+	
+	/**
+	 * @return The singular resource sizes instance
+	 */
+	public static ResourceSizes getInstance()
+	{
+		if (instance == null)
+			instance = new ResourceSizes();
+		return instance;
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Changes the sizer used for a certain resource type
+	 * @param resourceType The type of resource
+	 * @param sizer The sizer used for the resources of that type. Null if the default 
+	 * sizer should be used.
+	 */
+	public void setSizer(DataType resourceType, ResourceSizer sizer)
+	{
+		if (sizer == null)
+			this.sizers.remove(resourceType);
+		else
+			this.sizers.put(resourceType, sizer);
+	}
+	
+	/**
+	 * Finds the sizer used for a certain resource type
+	 * @param resourceType The type of resource
+	 * @return The sizer used for the resources of that type
+	 */
+	public ResourceSizer getSizer(DataType resourceType)
+	{
+		ResourceSizer sizer = this.sizers.get(resourceType);
+		if (sizer == null)
+			return this.defaultSizer;
+		else
+			return sizer;
+	}
+	
+	/**
+	 * Estimates the memory used by a single bank entry
+	 * @param resourceType The type of the resource
+	 * @param resource The resource
+	 * @return The estimated size of the entry in bytes
+	 */
+	public long estimateEntrySize(DataType resourceType, Object resource)
+	{
+		return ENTRY_OVERHEAD + getSizer(resourceType).estimateSize(resource);
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	private static class DefaultSizer implements ResourceSizer
+	{
+		@Override
+		public long estimateSize(Object resource)
+		{
+			// Object header and reference fields are estimated at 16 bytes
+			if (resource == null)
+				return 0;
+			else if (resource instanceof CharSequence)
+				return 40 + 2 * ((CharSequence) resource).length();
+			else if (resource instanceof byte[])
+				return 16 + ((byte[]) resource).length;
+			// Blob data is kept outside the heap
+			else if (resource instanceof Blob)
+				return 48;
+			else
+				return 16;
+		}
+	}
+}
@@ -0,0 +1,50 @@
+package utopia.arc.resource;
+
+import java.util.Collection;
+
+import utopia.flow.generics.Model.NoSuchAttributeException;
+import utopia.flow.generics.Variable;
+
+/**
+ * A resource store holds some of a bank's resources in a specific form, for example in the 
+ * heap, outside the heap or in a frozen table. A bank checks its stores in order, so that 
+ * each form of storage is handled in a single place.
+ * @author Mikko Hilpinen
+ * @since 30.5.2016
+ * @param <ResourceType> The type of resources in the store
+ */
+interface ResourceStore<ResourceType>
+{
+	/**
+	 * Checks whether the store holds a resource
+	 * @param resourceName The name of the resource (case-insensitive)
+	 * @return Whether the store holds the resource
+	 */
+	public boolean contains(String resourceName);
+	
+	/**
+	 * Finds a resource
+	 * @param resourceName The name of the resource (case-insensitive)
+	 * @return The resource
+	 * @throws NoSuchAttributeException If the store doesn't hold the resource
+	 */
+	public ResourceType get(String resourceName) throws NoSuchAttributeException;
+	
+	/**
+	 * Finds the stored form of a resource
+	 * @param resourceName The name of the resource (case-insensitive)
+	 * @return The resource wrapped into a variable. Null if the store doesn't hold the 
+	 * resource.
+	 */
+	public Variable getVariable(String resourceName);
+	
+	/**
+	 * @return The names of the resources in the store
+	 */
+	public Collection<String> getNames();
+	
+	/**
+	 * @return The resources in the store wrapped into variables
+	 */
+	public Collection<Variable> getContents();
+}
@@ -0,0 +1,41 @@
+package utopia.arc.resource;
+
+import java.util.List;
+
+import utopia.flow.generics.DataType;
+
+/**
+ * Resource tracers are informed of the phase transitions, bank loads and resource requests 
+ * made through the resource manager and the banks. A tracer may be called from multiple 
+ * threads, since frozen banks are read and asynchronous loads are completed outside the 
+ * thread that uses the manager.
+ * @author Mikko Hilpinen
+ * @since 3.6.2016
+ * @see ResourceManager#setTracer(ResourceTracer)
+ * @see BankBank#setTracer(ResourceTracer)
+ */
+public interface ResourceTracer
+{
+	/**
+	 * This method is called after the manager's active phases have changed
+	 * @param phases The phases that are active after the transition
+	 * @param durationNanos How long the transition took, in nanoseconds
+	 */
+	public void onPhaseTransition(List<Phase> phases, long durationNanos);
+	
+	/**
+	 * This method is called after a bank has been initialised
+	 * @param resourceType The type of the bank's contents
+	 * @param bankName The name of the bank
+	 * @param durationNanos How long reading the bank took, in nanoseconds
+	 */
+	public void onBankLoaded(DataType resourceType, String bankName, long durationNanos);
+	
+	/**
+	 * This method is called each time a resource is requested from a bank
+	 * @param resourceType The type of the bank's contents
+	 * @param bankName The name of the bank
+	 * @param resourceName The name of the requested resource
+	 */
+	public void onResourceRequested(DataType resourceType, String bankName, String resourceName);
+}
@@ -0,0 +1,246 @@
+package utopia.arc.resource;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * A resource view is a lazy, read-only map view to some of a bank's resources. The resources 
+ * are only fetched from the bank when they are accessed.
+ * @author Mikko Hilpinen
+ * @since 23.5.2016
+ * @param <ResourceType> The type of resource in the bank
+ */
+class ResourceView<ResourceType> extends AbstractMap<String, ResourceType>
+{
+	// ATTRIBUTES	------------------
+	
+	private Bank<ResourceType> bank;
+	private Collection<String> resourceNames;
+	
+	
+	// CONSTRUCTOR	------------------
+	
+	/**
+	 * Creates a new view
+	 * @param bank The bank the resources are read from
+	 * @param resourceNames The names of the resources included in this view. The collection 
+	 * may be a view itself.
+	 */
+	public ResourceView(Bank<ResourceType> bank, Collection<String> resourceNames)
+	{
+		this.bank = bank;
+		this.resourceNames = resourceNames;
+	}
+	
+	
+	// IMPLEMENTED METHODS	----------
+
+	@Override
+	public Set<Entry<String, ResourceType>> entrySet()
+	{
+		return new AbstractSet<Entry<String, ResourceType>>()
+		{
+			@Override
+			public Iterator<Entry<String, ResourceType>> iterator()
+			{
+				final Iterator<String> names = ResourceView.this.resourceNames.iterator();
+				return new Iterator<Entry<String, ResourceType>>()
+				{
+					@Override
+					public boolean hasNext()
+					{
+						return names.hasNext();
+					}
+
+					@Override
+					public Entry<String, ResourceType> next()
+					{
+						String name = names.next();
+						return new SimpleImmutableEntry<>(name, ResourceView.this.bank.get(name));
+					}
+				};
+			}
+
+			@Override
+			public int size()
+			{
+				return ResourceView.this.resourceNames.size();
+			}
+		};
+	}
+	
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return this.resourceNames.contains(key);
+	}
+	
+	@Override
+	public ResourceType get(Object key)
+	{
+		if (containsKey(key))
+			return this.bank.get((String) key);
+		else
+			return null;
+	}
+	
+	@Override
+	public Set<String> keySet()
+	{
+		return new AbstractSet<String>()
+		{
+			@Override
+			public Iterator<String> iterator()
+			{
+				return ResourceView.this.resourceNames.iterator();
+			}
+
+			@Override
+			public int size()
+			{
+				return ResourceView.this.resourceNames.size();
+			}
+		};
+	}
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Converts a glob pattern into a regular expression. '*' matches any amount of 
+	 * characters and '?' matches a single character.
+	 * @param glob A glob pattern
+	 * @return A case-insensitive regular expression matching the glob pattern
+	 */
+	static Pattern globToPattern(String glob)
+	{
+		StringBuilder regex = new StringBuilder();
+		StringBuilder literal = new StringBuilder();
+		for (char c : glob.toCharArray())
+		{
+			if (c == '*' || c == '?')
+			{
+				if (literal.length() > 0)
+				{
+					regex.append(Pattern.quote(literal.toString()));
+					literal.setLength(0);
+				}
+				regex.append(c == '*' ? ".*" : ".");
+			}
+			else
+				literal.append(c);
+		}
+		if (literal.length() > 0)
+			regex.append(Pattern.quote(literal.toString()));
+		
+		return Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE | 
+				Pattern.UNICODE_CASE | Pattern.DOTALL);
+	}
+	
+	/**
+	 * Finds the part of a glob pattern before the first wildcard
+	 * @param glob A glob pattern
+	 * @return The literal prefix of the pattern
+	 */
+	static String getGlobPrefix(String glob)
+	{
+		for (int i = 0; i < glob.length(); i++)
+		{
+			char c = glob.charAt(i);
+			if (c == '*' || c == '?')
+				return glob.substring(0, i);
+		}
+		return glob;
+	}
+	
+	
+	// NESTED CLASSES	--------------
+	
+	/**
+	 * A lazy view to the names in another collection that match a pattern
+	 * @author Mikko Hilpinen
+	 * @since 23.5.2016
+	 */
+	static class MatchingNames extends AbstractCollection<String>
+	{
+		// ATTRIBUTES	--------------
+		
+		private Collection<String> names;
+		private Pattern pattern;
+		
+		
+		// CONSTRUCTOR	--------------
+		
+		public MatchingNames(Collection<String> names, Pattern pattern)
+		{
+			this.names = names;
+			this.pattern = pattern;
+		}
+		
+		
+		// IMPLEMENTED METHODS	------
+		
+		@Override
+		public boolean contains(Object o)
+		{
+			return o instanceof String && this.pattern.matcher((String) o).matches() && 
+					this.names.contains(o);
+		}
+		
+		@Override
+		public Iterator<String> iterator()
+		{
+			final Iterator<String> source = this.names.iterator();
+			return new Iterator<String>()
+			{
+				private String next = findNext();
+				
+				@Override
+				public boolean hasNext()
+				{
+					return this.next != null;
+				}
+
+				@Override
+				public String next()
+				{
+					if (this.next == null)
+						throw new NoSuchElementException();
+					String current = this.next;
+					this.next = findNext();
+					return current;
+				}
+				
+				private String findNext()
+				{
+					while (source.hasNext())
+					{
+						String name = source.next();
+						if (MatchingNames.this.pattern.matcher(name).matches())
+							return name;
+					}
+					return null;
+				}
+			};
+		}
+
+		@Override
+		public int size()
+		{
+			int size = 0;
+			Iterator<String> iterator = iterator();
+			while (iterator.hasNext())
+			{
+				iterator.next();
+				size ++;
+			}
+			return size;
+		}
+	}
+}
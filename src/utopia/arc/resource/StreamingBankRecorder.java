@@ -0,0 +1,43 @@
+package utopia.arc.resource;
+
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Variable;
+
+/**
+ * Streaming bank recorders can pass the bank resources on one at a time, as they are read. 
+ * This allows the banks to make their resources available before the whole bank has been read.
+ * @author Mikko Hilpinen
+ * @since 24.5.2016
+ */
+public interface StreamingBankRecorder extends BankRecorder
+{
+	/**
+	 * Reads the bank contents, passing each resource to the handler as soon as it is read. 
+	 * The read is stopped if the handler doesn't want any more resources.
+	 * @param bankName The name of the read bank
+	 * @param bankType The type of the read content
+	 * @param handler The handler that receives the resources
+	 * @throws RecordingFailedException If the read failed
+	 */
+	public void readBank(String bankName, DataType bankType, ResourceHandler handler) 
+			throws RecordingFailedException;
+	
+	
+	// NESTED CLASSES	-----------------
+	
+	/**
+	 * Resource handlers receive the resources read by a streaming recorder
+	 * @author Mikko Hilpinen
+	 * @since 24.5.2016
+	 */
+	public static interface ResourceHandler
+	{
+		/**
+		 * This method is called for each resource, in the order they are read
+		 * @param resource The resource that was read
+		 * @return Should the reading continue. False if the rest of the resources are not 
+		 * needed anymore.
+		 */
+		public boolean onResourceRead(Variable resource);
+	}
+}
@@ -0,0 +1,23 @@
+package utopia.arc.resource;
+
+import utopia.flow.generics.DataType;
+
+/**
+ * Versioned bank recorders can tell when a bank's recorded data has changed. The versions 
+ * can be used for keeping cached copies of the bank data up to date.
+ * @author Mikko Hilpinen
+ * @since 16.5.2016
+ */
+public interface VersionedBankRecorder extends BankRecorder
+{
+	/**
+	 * Finds the current version of a bank's recorded data. The version changes each time 
+	 * the bank data is written.
+	 * @param bankName The name of the bank
+	 * @param bankType The type of the bank's contents
+	 * @return The version of the bank's data (for example, a modification time). 0 if no 
+	 * data has been recorded for the bank.
+	 * @throws RecordingFailedException If the version couldn't be read
+	 */
+	public long getBankVersion(String bankName, DataType bankType) throws RecordingFailedException;
+}
@@ -1,164 +1,1214 @@
-package utopia.arc.test;
-
-import java.io.File;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-
-import utopia.arc.generics.ArcDataType;
-import utopia.arc.io.PhaseRecorder;
-import utopia.arc.io.XmlFileBankRecorder;
-import utopia.arc.resource.Bank;
-import utopia.arc.resource.BankBank;
-import utopia.arc.resource.BankRecorder;
-import utopia.arc.resource.Phase;
-import utopia.arc.resource.ResourceManager;
-import utopia.flow.generics.BasicDataType;
-import utopia.flow.generics.DataType;
-
-/**
- * This class is used for testing the resource and io functions of the Arc project
- * @author Mikko Hilpinen
- * @since 15.5.2015
- */
-class ResourceTest
-{
-	/**
-	 * Runs the test
-	 * @param args not used
-	 */
-	public static void main(String[] args)
-	{
-		try
-		{
-			ArcDataType.initialise();
-			
-			// Creates the phases
-			System.out.println("\nCREATING PHASES");
-			ResourceManager manager1 = new ResourceManager();
-			
-			Phase phase1 = new Phase("phase1");
-			phase1.addActiveBank(BasicDataType.STRING, "stringForAll");
-			phase1.addActiveBank(BasicDataType.STRING, "stringFor1Only");
-			phase1.addActiveBank(BasicDataType.INTEGER, "sharedInteger12");
-			manager1.introducePhase(phase1);
-			
-			Phase phase2 = new Phase("phase2");
-			phase2.addActiveBank(BasicDataType.STRING, "stringForAll");
-			phase2.addActiveBank(BasicDataType.INTEGER, "integerFor2Only");
-			phase2.addActiveBank(BasicDataType.INTEGER, "sharedInteger12");
-			manager1.introducePhase(phase2);
-			
-			Phase phase3 = new Phase("phase3");
-			phase3.addActiveBank(BasicDataType.STRING, "stringForAll");
-			manager1.introducePhase(phase3);
-			
-			printPhases(manager1);
-			
-			// Adds the banks
-			System.out.println("\nCREATING BANKS");
-			Path bankPath = Paths.get("test", "resources");
-			BankRecorder recorder = new XmlFileBankRecorder(bankPath);
-			
-			BankBank<String> strings = new BankBank<>(BasicDataType.STRING, recorder, false);
-			BankBank<Integer> ints = new BankBank<>(BasicDataType.INTEGER, recorder, false);
-			
-			manager1.introduceBank(strings);
-			manager1.introduceBank(ints);
-			manager1.generateBanksBasedOnPhases();
-			
-			// Adds some resources to the banks
-			strings.put("stringForAll", "string1", "Tm on string1");
-			strings.put("stringForAll", "xml", "<root><asd/></root>");
-			strings.put("stringFor1Only", "secret", "Secret string for phase 1 only");
-			
-			ints.put("sharedInteger12", "width", 1920);
-			ints.put("sharedInteger12", "height", 1080);
-			ints.put("integerFor2Only", "secret", 70 * 7);
-			
-			printBanks(manager1);
-			
-			// Saves the banks and phases into a local folder
-			System.out.println("\nWRITING BANKS");
-			manager1.saveBanks();
-			File phaseFile = bankPath.resolve("phases.xml").toFile();
-			PhaseRecorder.writePhasesWithXml(manager1.getPhases(), phaseFile, true);
-			
-			// Reads the phases
-			System.out.println("\nREADING PHASES");
-			ResourceManager manager2 = new ResourceManager();
-			manager2.introducePhases(PhaseRecorder.readPhasesFromXml(phaseFile, true));
-			printPhases(manager2);
-			
-			// Reads the banks
-			System.out.println("\nREADING BANKS (no phase active)");
-			manager2.introduceBank(new BankBank<>(BasicDataType.STRING, recorder, true));
-			manager2.introduceBank(new BankBank<>(BasicDataType.INTEGER, recorder, true));
-			printBanks(manager2);
-			
-			// Starting phases
-			System.out.println("\nSTARTING PHASE 1");
-			manager2.startPhase("phase1", false);
-			printBanks(manager2);
-			
-			System.out.println("\nSWITCHING TO PHASE 2");
-			manager2.switchPhase("phase1", "phase2");
-			printBanks(manager2);
-			
-			System.out.println("\nSTARTING PHASE 3");
-			manager2.startPhase("phase3", false);
-			printBanks(manager2);
-			
-			System.out.println("\nENDING PHASE 2");
-			manager2.endPhase("phase2");
-			printBanks(manager2);
-		}
-		catch (Exception e)
-		{
-			System.err.println("Failed");
-			e.printStackTrace();
-		}
-	}
-	
-	private static void printPhases(ResourceManager manager)
-	{
-		for (Phase phase : manager.getPhases())
-		{
-			printPhase(phase);
-		}
-	}
-	
-	private static void printPhase(Phase phase)
-	{
-		System.out.println(phase.getName());
-		for (DataType resourceType : phase.getResourceTypes())
-		{
-			StringBuilder s = new StringBuilder("\t");
-			s.append(resourceType.getName());
-			s.append(":");
-			for (String bankName : phase.getActiveBankNames(resourceType))
-			{
-				s.append(" ");
-				s.append(bankName);
-			}
-			System.out.println(s);
-		}
-	}
-	
-	private static void printBanks(ResourceManager manager)
-	{
-		for (BankBank<?> bank : manager.getBanks())
-		{
-			System.out.println("\n" + bank.getContentType());
-			printBank(bank);
-		}
-	}
-	
-	private static void printBank(BankBank<?> bankbank)
-	{
-		for (Bank<?> bank : bankbank.getBanks())
-		{
-			System.out.println("Bank " + bank.getName());
-			System.out.println(bank.toString());
-		}
-	}
-}
+package utopia.arc.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import javax.xml.stream.XMLStreamException;
+
+import utopia.arc.generics.ArcDataType;
+import utopia.arc.io.BinaryFileBankRecorder;
+import utopia.arc.io.ChunkedXmlFileBankRecorder;
+import utopia.arc.io.LayeredBankRecorder;
+import utopia.arc.io.LogFileBankRecorder;
+import utopia.arc.io.PhaseCatalog;
+import utopia.arc.io.PhaseRecorder;
+import utopia.arc.io.ResourceSnapshot;
+import utopia.arc.io.TraceReader;
+import utopia.arc.io.TraceReader.EventType;
+import utopia.arc.io.TraceReader.TraceEvent;
+import utopia.arc.io.TraceRecorder;
+import utopia.arc.io.TraceReplayer;
+import utopia.arc.io.TraceReplayer.ReplayReport;
+import utopia.arc.io.XmlFileBankRecorder;
+import utopia.arc.resource.AccessStatistics;
+import utopia.arc.resource.Bank;
+import utopia.arc.resource.Bank.ResourceLoadFailedException;
+import utopia.arc.resource.BankBank;
+import utopia.arc.resource.BankPool;
+import utopia.arc.resource.BankRecorder;
+import utopia.arc.resource.BankRecorder.RecordingFailedException;
+import utopia.arc.resource.BatchBankRecorder.BankData;
+import utopia.arc.resource.Blob;
+import utopia.arc.resource.Phase;
+import utopia.arc.resource.ResourceManager;
+import utopia.arc.resource.ResourceManager.BudgetPolicy;
+import utopia.arc.resource.ResourceManager.MemoryBudgetExceededException;
+import utopia.arc.resource.ResourceManager.PhaseNotIntroducedException;
+import utopia.arc.resource.ResourceManager.PhaseTransition;
+import utopia.arc.resource.ResourceReference;
+import utopia.arc.resource.ResourceReference.UnresolvedReferenceException;
+import utopia.arc.resource.ResourceTracer;
+import utopia.flow.generics.BasicDataType;
+import utopia.flow.generics.DataType;
+import utopia.flow.generics.Model.NoSuchAttributeException;
+import utopia.flow.generics.Variable;
+
+/**
+ * This class is used for testing the resource and io functions of the Arc project
+ * @author Mikko Hilpinen
+ * @since 15.5.2015
+ */
+class ResourceTest
+{
+	// ATTRIBUTES	------------------
+	
+	private static int failedChecks = 0;
+	
+	
+	// OTHER METHODS	--------------
+	
+	/**
+	 * Runs the test
+	 * @param args not used
+	 */
+	public static void main(String[] args)
+	{
+		try
+		{
+			ArcDataType.initialise();
+			
+			// Creates the phases
+			System.out.println("\nCREATING PHASES");
+			ResourceManager manager1 = new ResourceManager();
+			
+			Phase phase1 = new Phase("phase1");
+			phase1.addActiveBank(BasicDataType.STRING, "stringForAll");
+			phase1.addActiveBank(BasicDataType.STRING, "stringFor1Only");
+			phase1.addActiveBank(BasicDataType.INTEGER, "sharedInteger12");
+			manager1.introducePhase(phase1);
+			
+			Phase phase2 = new Phase("phase2");
+			phase2.addActiveBank(BasicDataType.STRING, "stringForAll");
+			phase2.addActiveBank(BasicDataType.INTEGER, "integerFor2Only");
+			phase2.addActiveBank(BasicDataType.INTEGER, "sharedInteger12");
+			manager1.introducePhase(phase2);
+			
+			Phase phase3 = new Phase("phase3");
+			phase3.addActiveBank(BasicDataType.STRING, "stringForAll");
+			manager1.introducePhase(phase3);
+			
+			printPhases(manager1);
+			
+			// Adds the banks
+			System.out.println("\nCREATING BANKS");
+			Path bankPath = Paths.get("test", "resources");
+			BankRecorder recorder = new XmlFileBankRecorder(bankPath);
+			
+			BankBank<String> strings = new BankBank<>(BasicDataType.STRING, recorder, false);
+			BankBank<Integer> ints = new BankBank<>(BasicDataType.INTEGER, recorder, false);
+			
+			manager1.introduceBank(strings);
+			manager1.introduceBank(ints);
+			manager1.generateBanksBasedOnPhases();
+			
+			// Adds some resources to the banks
+			strings.put("stringForAll", "string1", "Tm on string1");
+			strings.put("stringForAll", "xml", "<root><asd/></root>");
+			strings.put("stringFor1Only", "secret", "Secret string for phase 1 only");
+			
+			ints.put("sharedInteger12", "width", 1920);
+			ints.put("sharedInteger12", "height", 1080);
+			ints.put("integerFor2Only", "secret", 70 * 7);
+			
+			printBanks(manager1);
+			
+			// Saves the banks and phases into a local folder
+			System.out.println("\nWRITING BANKS");
+			manager1.saveBanks();
+			File phaseFile = bankPath.resolve("phases.xml").toFile();
+			PhaseRecorder.writePhasesWithXml(manager1.getPhases(), phaseFile, true);
+			
+			// Reads the phases
+			System.out.println("\nREADING PHASES");
+			ResourceManager manager2 = new ResourceManager();
+			manager2.introducePhases(PhaseRecorder.readPhasesFromXml(phaseFile, true));
+			printPhases(manager2);
+			
+			// Reads the banks
+			System.out.println("\nREADING BANKS (no phase active)");
+			manager2.introduceBank(new BankBank<>(BasicDataType.STRING, recorder, true));
+			manager2.introduceBank(new BankBank<>(BasicDataType.INTEGER, recorder, true));
+			printBanks(manager2);
+			
+			// Starting phases
+			System.out.println("\nSTARTING PHASE 1");
+			manager2.startPhase("phase1", false);
+			printBanks(manager2);
+			
+			System.out.println("\nSWITCHING TO PHASE 2");
+			manager2.switchPhase("phase1", "phase2");
+			printBanks(manager2);
+			
+			System.out.println("\nSTARTING PHASE 3");
+			manager2.startPhase("phase3", false);
+			printBanks(manager2);
+			
+			System.out.println("\nENDING PHASE 2");
+			manager2.endPhase("phase2");
+			printBanks(manager2);
+			
+			System.out.println("\nPHASE CATALOG");
+			testCatalog(phaseFile);
+			
+			System.out.println("\nPHASE CHANGES");
+			testPhaseChanges(recorder);
+			
+			System.out.println("\nRETRIED PHASE CHANGES");
+			testPhaseRetry(recorder);
+			
+			System.out.println("\nLEASES");
+			testLeases(recorder);
+			
+			System.out.println("\nSHARED BANKS");
+			testPool(recorder);
+			
+			System.out.println("\nMERGED INDEX");
+			testOverlay(recorder);
+			
+			System.out.println("\nCOMPRESSED BANKS");
+			testCompression(recorder);
+			
+			System.out.println("\nREFERENCES");
+			testReferences(recorder);
+			
+			System.out.println("\nLAYERED RECORDING");
+			testLayered();
+			
+			System.out.println("\nOFF-HEAP STORAGE");
+			testOffHeap(recorder);
+			
+			System.out.println("\nBLOB BANKS");
+			testBlobs();
+			
+			System.out.println("\nCHUNKED BANKS");
+			testChunks();
+			
+			System.out.println("\nBACKGROUND LOADING");
+			testAsyncLoading(recorder);
+			
+			System.out.println("\nLOGGED BANKS");
+			testLog();
+			
+			System.out.println("\nBATCH COMMITS");
+			testBatchCommit();
+			
+			System.out.println("\nFROZEN BANKS");
+			testFrozen(recorder);
+			
+			System.out.println("\nCOPIED BANKS");
+			testCopy(recorder);
+			
+			System.out.println("\nACCESS STATISTICS");
+			testStatistics();
+			
+			System.out.println("\nTRACES");
+			testTrace(manager2);
+			
+			System.out.println("\nSNAPSHOTS");
+			testSnapshot(manager2);
+			
+			System.out.println("\n" + (failedChecks == 0 ? "All checks passed" : 
+					failedChecks + " checks failed"));
+		}
+		catch (Exception e)
+		{
+			System.err.println("Failed");
+			e.printStackTrace();
+		}
+	}
+	
+	private static void testCatalog(File phaseFile) throws RecordingFailedException, 
+			IOException, XMLStreamException
+	{
+		// The phases are indexed without parsing them
+		PhaseCatalog catalog = new PhaseCatalog(phaseFile);
+		check(catalog.getPhaseNames().size() == 3 && catalog.containsPhase("PHASE2"), 
+				"Phases indexed");
+		Phase phase2 = catalog.readPhase("phase2");
+		check(phase2 != null && phase2.getActiveBankNames(BasicDataType.INTEGER).contains(
+				"integerFor2Only"), "Phase read from its position");
+		check(catalog.readPhase("missing") == null, "Missing phase not read");
+		
+		// The manager reads the phases from the catalog when they are first requested
+		ResourceManager manager = new ResourceManager();
+		manager.introducePhaseSource(catalog);
+		check(manager.getPhases().isEmpty(), "Phases not read before requested");
+		Phase phase1 = manager.getPhase("phase1");
+		check(manager.getPhase("PHASE1") == phase1 && manager.getPhases().size() == 1, 
+				"Requested phase cached");
+		checkFails("Unknown phase reported", PhaseNotIntroducedException.class, 
+				() -> manager.getPhase("missing"));
+		
+		// A phase file changed after indexing is searched as a whole
+		File changedFile = createOutputDirectory("catalog").resolve("phases.xml").toFile();
+		Files.copy(phaseFile.toPath(), changedFile.toPath());
+		PhaseCatalog changedCatalog = new PhaseCatalog(changedFile);
+		PhaseRecorder.writePhasesWithXml(Arrays.asList(catalog.readPhase("phase3"), phase2, 
+				phase1), changedFile, true);
+		Phase moved = changedCatalog.readPhase("phase1");
+		check(moved != null && "phase1".equalsIgnoreCase(moved.getName()), 
+				"Moved phase found");
+		
+		// A damaged phase file can't be read
+		Files.write(changedFile.toPath(), "Not xml".getBytes(StandardCharsets.UTF_8));
+		checkFails("Damaged phase file reported", RecordingFailedException.class, 
+				() -> changedCatalog.readPhase("phase2"));
+	}
+	
+	private static void testPhaseChanges(BankRecorder recorder) throws RecordingFailedException
+	{
+		ResourceManager manager = new ResourceManager();
+		Phase menu = new Phase("menu");
+		menu.addActiveBank(BasicDataType.STRING, "stringForAll");
+		menu.addActiveBank(BasicDataType.STRING, "stringFor1Only");
+		Phase game = new Phase("game");
+		game.addActiveBank(BasicDataType.STRING, "stringForAll");
+		manager.introducePhase(menu);
+		manager.introducePhase(game);
+		BankBank<String> strings = new BankBank<>(BasicDataType.STRING, recorder, true);
+		manager.introduceBank(strings);
+		Bank<String> shared = strings.get("stringForAll");
+		Bank<String> menuOnly = strings.get("stringFor1Only");
+		
+		// Only the banks that differ between the phases change state
+		manager.startPhase("menu", false);
+		check(shared.isInitialised() && menuOnly.isInitialised(), "Phase banks loaded");
+		manager.switchPhase("menu", "game");
+		check(shared.isInitialised() && shared.getHoldCount() == 1 && !menuOnly.isInitialised(), 
+				"Only the banks left behind unloaded");
+		
+		// A phase modified after it was compiled is compiled again
+		game.addActiveBank(BasicDataType.STRING, "stringFor1Only");
+		manager.startPhase("menu", false);
+		manager.endPhase("menu");
+		check(menuOnly.isInitialised(), "Modified phase compiled again");
+		
+		// A rejected change leaves the banks as they were
+		manager.endPhase("game");
+		manager.setMemoryBudget(BasicDataType.STRING, 1, BudgetPolicy.REJECT);
+		checkFails("Phase over budget rejected", MemoryBudgetExceededException.class, 
+				() -> manager.startPhase("menu", false));
+		check(!shared.isInitialised() && !menuOnly.isInitialised(), 
+				"Rejected phase loaded nothing");
+	}
+	
+	private static void testPhaseRetry(BankRecorder recorder) throws RecordingFailedException
+	{
+		FailingRecorder failingRecorder = new FailingRecorder(recorder);
+		ResourceManager manager = new ResourceManager();
+		BankBank<String> strings = new BankBank<>(BasicDataType.STRING, failingRecorder, true);
+		manager.introduceBank(strings);
+		Phase phase = new Phase("retried");
+		phase.addActiveBank(BasicDataType.STRING, "stringForAll");
+		manager.introducePhase(phase);
+		Bank<String> bank = strings.get("stringForAll");
+		
+		// A phase whose banks couldn't be loaded is not active, so starting it is retried
+		checkFails("Failed phase start reported", RecordingFailedException.class, 
+				() -> manager.startPhase("retried", false));
+		failingRecorder.setFailing(false);
+		manager.startPhase("retried", false);
+		check(bank.isInitialised() && bank.getHoldCount() == 1, "Phase start retried");
+		manager.endPhase("retried");
+		
+		// The same applies to transitions
+		failingRecorder.setFailing(true);
+		PhaseTransition transition = manager.beginTransition().startPhase("retried", false);
+		checkFails("Failed transition reported", RecordingFailedException.class, 
+				() -> transition.commit());
+		check(!transition.isCommitted() && bank.getHoldCount() == 0, 
+				"Failed transition not committed");
+		failingRecorder.setFailing(false);
+		transition.commit();
+		check(transition.isCommitted() && bank.isInitialised() && bank.getHoldCount() == 1, 
+				"Transition retried");
+	}
+	
+	private static void testLeases(BankRecorder recorder) throws RecordingFailedException
+	{
+		// The bank stays initialised until each lease has been released
+		Bank<String> bank = new Bank<>("stringForAll", BasicDataType.STRING, recorder);
+		bank.acquire();
+		bank.acquire();
+		check(!bank.release() && bank.isInitialised() && bank.getHoldCount() == 1, 
+				"Leased bank kept initialised");
+		check(bank.release() && !bank.isInitialised(), "Released bank uninitialised");
+		
+		// Uninitialising the bank directly discards the leases
+		bank.acquire();
+		bank.acquire();
+		bank.uninitialise();
+		check(!bank.isInitialised() && bank.getHoldCount() == 0, "Leases discarded");
+		bank.acquire();
+		check(bank.release() && !bank.isInitialised(), "New lease released");
+		
+		BankBank<String> strings = new BankBank<>(BasicDataType.STRING, recorder, true);
+		Bank<String> leased = strings.get("stringForAll");
+		leased.acquire();
+		strings.unInitialiseAll();
+		check(!leased.isInitialised() && leased.getHoldCount() == 0, 
+				"Leases discarded with the bank bank");
+	}
+	
+	private static void testPool(BankRecorder recorder) throws RecordingFailedException
+	{
+		BankPool pool = BankPool.getInstance();
+		FailingRecorder source = new FailingRecorder(recorder);
+		source.setFailing(false);
+		
+		// Banks of separate sessions read the shared contents only once
+		BankBank<String> session1 = new BankBank<>(BasicDataType.STRING, source, true);
+		BankBank<String> session2 = new BankBank<>(BasicDataType.STRING, source, true);
+		session1.setPool(pool);
+		session2.setPool(pool);
+		Bank<String> bank1 = session1.get("stringForAll");
+		Bank<String> bank2 = session2.get("stringForAll");
+		bank1.initialise();
+		source.setFailing(true);
+		bank2.initialise();
+		check(pool.getReferenceCount(source, "stringForAll", BasicDataType.STRING) == 2 && 
+				"<root><asd/></root>".equals(bank2.get("xml")), "Bank contents shared");
+		
+		// The changes are only seen by the bank that made them
+		bank1.put("xml", "<session1/>");
+		bank2.remove("string1");
+		check("<session1/>".equals(bank1.get("xml")) && 
+				"<root><asd/></root>".equals(bank2.get("xml")) && bank1.get("string1") != null, 
+				"Changes kept separate");
+		checkFails("Removed shared resource hidden", NoSuchAttributeException.class, 
+				() -> bank2.get("string1"));
+		
+		// The contents are released once the last bank stops using them
+		bank1.uninitialise();
+		check(pool.getReferenceCount(source, "stringForAll", BasicDataType.STRING) == 1, 
+				"Shared contents kept while used");
+		bank2.uninitialise();
+		check(pool.getReferenceCount(source, "stringForAll", BasicDataType.STRING) == 0, 
+				"Shared contents released");
+		
+		// A failed read doesn't leave the contents in the pool
+		checkFails("Failed shared read reported", RecordingFailedException.class, 
+				() -> bank1.initialise());
+		check(pool.getReferenceCount(source, "stringForAll", BasicDataType.STRING) == 0 && 
+				!bank1.isInitialised(), "Failed shared read released");
+	}
+	
+	private static void testOverlay(BankRecorder recorder) throws RecordingFailedException
+	{
+		ResourceManager manager = new ResourceManager();
+		BankBank<String> strings = new BankBank<>(BasicDataType.STRING, recorder, true);
+		manager.introduceBank(strings);
+		Phase common = new Phase("overlayCommon");
+		common.addActiveBank(BasicDataType.STRING, "stringForAll");
+		manager.introducePhase(common);
+		Phase secret = new Phase("overlaySecret");
+		secret.addActiveBank(BasicDataType.STRING, "stringFor1Only");
+		manager.introducePhase(secret);
+		
+		// Only the resources in the active banks are found
+		check(manager.get(BasicDataType.STRING, "xml") == null && 
+				manager.get(BasicDataType.INTEGER, "width") == null, "Nothing found while inactive");
+		manager.startPhase("overlayCommon", false);
+		manager.startPhase("overlaySecret", false);
+		Bank<String> secretBank = strings.get("stringFor1Only");
+		check("<root><asd/></root>".equals(manager.get(BasicDataType.STRING, "XML")) && 
+				manager.getBankFor(BasicDataType.STRING, "secret") == secretBank, 
+				"Resources found from the active banks");
+		
+		// The most recently activated bank takes precedence
+		secretBank.put("xml", "<secret/>");
+		check("<secret/>".equals(manager.get(BasicDataType.STRING, "xml")), 
+				"Most recently activated bank preferred");
+		secretBank.remove("xml");
+		check("<root><asd/></root>".equals(manager.get(BasicDataType.STRING, "xml")), 
+				"Removed resource found from the other bank");
+		
+		// The resources of a deactivated bank are dropped from the index
+		manager.endPhase("overlaySecret");
+		check(manager.get(BasicDataType.STRING, "secret") == null && 
+				manager.get(BasicDataType.STRING, "xml") != null, "Deactivated bank dropped");
+		manager.endPhase("overlayCommon");
+		check(manager.get(BasicDataType.STRING, "xml") == null, "All banks dropped");
+	}
+	
+	private static void testCompression(BankRecorder recorder) throws RecordingFailedException
+	{
+		FailingRecorder source = new FailingRecorder(recorder);
+		source.setFailing(false);
+		ResourceManager manager = new ResourceManager();
+		BankBank<String> strings = new BankBank<>(BasicDataType.STRING, source, true);
+		manager.introduceBank(strings);
+		manager.setCompressInactiveBanks(true);
+		Phase phase = new Phase("compressed");
+		phase.addActiveBank(BasicDataType.STRING, "stringForAll");
+		manager.introducePhase(phase);
+		Bank<String> bank = strings.get("stringForAll");
+		
+		// The bank is compressed when it leaves the phase and restored without the recorder
+		manager.startPhase("compressed", false);
+		manager.endPhase("compressed");
+		check(bank.isCompressed() && !bank.isInitialised() && bank.getResidentSize() > 0, 
+				"Inactive bank compressed");
+		source.setFailing(true);
+		manager.startPhase("compressed", false);
+		check(bank.isInitialised() && !bank.isCompressed() && 
+				"<root><asd/></root>".equals(bank.get("xml")), "Compressed bank restored");
+		
+		// Banks with unsaved changes are not compressed
+		bank.put("xml", "<modified/>");
+		manager.endPhase("compressed");
+		check(!bank.isCompressed() && !bank.isInitialised(), "Modified bank not compressed");
+		
+		// Neither are pooled banks
+		Bank<String> pooled = new Bank<>("stringForAll", BasicDataType.STRING, recorder);
+		pooled.setPool(BankPool.getInstance());
+		pooled.initialise();
+		check(!pooled.compress() && pooled.isInitialised(), "Pooled bank not compressed");
+		pooled.uninitialise();
+		
+		// Uninitialising a compressed bank discards the compressed contents
+		Bank<String> direct = new Bank<>("stringForAll", BasicDataType.STRING, recorder);
+		direct.initialise();
+		check(direct.compress(), "Bank compressed directly");
+		direct.uninitialise();
+		check(!direct.isCompressed() && direct.getResidentSize() == 0, 
+				"Compressed contents discarded");
+	}
+	
+	private static void testReferences(BankRecorder recorder) throws RecordingFailedException
+	{
+		BankRecorder referenceRecorder = new XmlFileBankRecorder(
+				createOutputDirectory("references"));
+		Bank<ResourceReference> written = new Bank<>("links", ArcDataType.REFERENCE, 
+				referenceRecorder);
+		written.put("xml", ResourceReference.parse("stringForAll:xml"));
+		written.put("missing", ResourceReference.parse("stringForAll:missing"));
+		written.save();
+		
+		ResourceManager manager = new ResourceManager();
+		BankBank<String> strings = new BankBank<>(BasicDataType.STRING, recorder, true);
+		BankBank<ResourceReference> references = new BankBank<>(ArcDataType.REFERENCE, 
+				referenceRecorder, true);
+		manager.introduceBank(strings);
+		manager.introduceBank(references);
+		Phase phase = new Phase("linked");
+		phase.addActiveBank(ArcDataType.REFERENCE, "links");
+		manager.introducePhase(phase);
+		CountingTracer tracer = new CountingTracer();
+		manager.setTracer(tracer);
+		
+		// The references handed out by the bank are the ones that were resolved
+		manager.startPhase("linked", false);
+		check(tracer.requestCount == 0, "References resolved without tracing");
+		ResourceReference xml = references.get("links", "xml");
+		check(xml.isResolved() && "<root><asd/></root>".equals(xml.get()), "Reference resolved");
+		
+		// Changes in the target bank are picked up on the next use
+		Bank<String> target = strings.get("stringForAll");
+		target.put("xml", "<changed/>");
+		check("<changed/>".equals(xml.get()), "Reference resolved again");
+		target.remove("xml");
+		checkFails("Removed target reported", UnresolvedReferenceException.class, () -> xml.get());
+		
+		ResourceReference missing = references.get("links", "missing");
+		checkFails("Missing target reported", UnresolvedReferenceException.class, 
+				() -> missing.get());
+	}
+	
+	private static void testLayered() throws RecordingFailedException, IOException
+	{
+		Path layeredPath = createOutputDirectory("layered");
+		Path cachePath = layeredPath.resolve("cache");
+		XmlFileBankRecorder source = new XmlFileBankRecorder(layeredPath.resolve("source"));
+		LayeredBankRecorder recorder = new LayeredBankRecorder(source, 
+				new BinaryFileBankRecorder(cachePath), true);
+		
+		// References are stored in the binary cache as text
+		Bank<ResourceReference> references = new Bank<>("cachedLinks", ArcDataType.REFERENCE, 
+				recorder);
+		references.put("xml", ResourceReference.parse("stringForAll:xml"));
+		references.save();
+		LayeredBankRecorder reader = new LayeredBankRecorder(source, 
+				new BinaryFileBankRecorder(cachePath), false);
+		Bank<ResourceReference> cachedReferences = new Bank<>("cachedLinks", 
+				ArcDataType.REFERENCE, reader);
+		cachedReferences.initialise();
+		check(ResourceReference.parse("stringForAll:xml").equals(cachedReferences.get("xml")), 
+				"Reference read from the binary cache");
+		
+		// Blob banks are only stored in the source
+		Bank<Blob> blobs = new Bank<>("cachedBlobs", ArcDataType.BLOB, recorder);
+		blobs.put("data", new Blob(new byte[] {1, 2, 3}));
+		blobs.save();
+		Bank<Blob> readBlobs = new Bank<>("cachedBlobs", ArcDataType.BLOB, reader);
+		readBlobs.initialise();
+		check(!Files.exists(cachePath.resolve(ArcDataType.BLOB.getName())) && 
+				readBlobs.get("data").length() == 3, "Blob bank kept out of the binary cache");
+		
+		// A damaged cache is compiled again from the source
+		Files.write(cachePath.resolve(ArcDataType.REFERENCE.getName()).resolve(
+				"cachedLinks.bin"), "Not a cache".getBytes(StandardCharsets.UTF_8));
+		Bank<ResourceReference> recompiled = new Bank<>("cachedLinks", ArcDataType.REFERENCE, 
+				reader);
+		recompiled.initialise();
+		check(recompiled.listContents().size() == 1, "Damaged cache recompiled");
+	}
+	
+	private static void testOffHeap(BankRecorder recorder) throws RecordingFailedException, 
+			IOException
+	{
+		// Strings of at least 32 characters are stored outside the heap
+		Bank<String> bank = new Bank<>("stringForAll", BasicDataType.STRING, recorder);
+		bank.setOffHeapThreshold(64);
+		bank.initialise();
+		check(bank.getOffHeapSize() == 0, "Short resources kept in the heap");
+		
+		StringBuilder dialogue = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+		{
+			dialogue.append("Line ").append(i).append('\n');
+		}
+		String text = dialogue.toString();
+		bank.put("dialogue", text);
+		check(bank.getOffHeapSize() >= text.length() * 2, "Long resource stored off-heap");
+		check(text.equals(bank.get("dialogue")) && 
+				text.contentEquals(bank.getText("DIALOGUE")), "Off-heap resource read back");
+		check(bank.getData("dialogue").remaining() == text.length() * 2, 
+				"Off-heap data viewed without copying");
+		check("<root><asd/></root>".equals(bank.getText("xml").toString()), 
+				"Heap resource read as text");
+		checkFails("Missing resource reported", NoSuchAttributeException.class, 
+				() -> bank.getText("missing"));
+		
+		// Replacing a resource with a short one moves it back to the heap
+		bank.put("dialogue", "Short");
+		check("Short".equals(bank.get("dialogue")) && bank.listContents().contains("Short"), 
+				"Off-heap resource replaced");
+		
+		// The off-heap memory is released with the bank
+		bank.uninitialise();
+		check(bank.getOffHeapSize() == 0, "Off-heap memory released");
+	}
+	
+	private static void testBlobs() throws RecordingFailedException, IOException
+	{
+		Path blobPath = createOutputDirectory("blobs");
+		XmlFileBankRecorder recorder = new XmlFileBankRecorder(blobPath);
+		
+		// The blob data is written next to the bank xml instead of inside it
+		Bank<Blob> bank = new Bank<>("textures", ArcDataType.BLOB, recorder);
+		bank.put("grass", new Blob(new byte[] {1, 2, 3, 4}));
+		bank.put("stone", new Blob(new byte[] {5, 6}));
+		bank.save();
+		check(Files.exists(blobPath.resolve(ArcDataType.BLOB.getName()).resolve(
+				"textures.1.blob")), "Blob data written into a sidecar file");
+		
+		// Initialising the bank only reads the index, the data is read on first use
+		Bank<Blob> reread = new Bank<>("textures", ArcDataType.BLOB, recorder);
+		reread.initialise();
+		Blob grass = reread.get("grass");
+		check(grass.isFileBased() && !grass.isLoaded(), "Blob data not read with the index");
+		check(Arrays.equals(new byte[] {1, 2, 3, 4}, grass.toByteArray()) && grass.isLoaded(), 
+				"Blob data read on first use");
+		
+		// The blobs read earlier stay readable after the bank has been written again
+		Blob stone = reread.get("stone");
+		reread.put("stone", new Blob(new byte[] {7}));
+		reread.save();
+		check(Arrays.equals(new byte[] {5, 6}, stone.toByteArray()), "Earlier blob data kept");
+		
+		Bank<Blob> latest = new Bank<>("textures", ArcDataType.BLOB, recorder);
+		latest.initialise();
+		Blob newStone = latest.get("stone");
+		check(Arrays.equals(new byte[] {7}, newStone.toByteArray()), "Rewritten blob data read");
+		
+		// Blob data missing from the sidecar file is reported when read
+		Blob newGrass = latest.get("grass");
+		Files.write(newGrass.getFile(), new byte[0]);
+		checkFails("Truncated blob data reported", IOException.class, 
+				() -> newGrass.toByteArray());
+	}
+	
+	private static void testChunks() throws RecordingFailedException, IOException
+	{
+		Path chunkPath = createOutputDirectory("chunks");
+		ChunkedXmlFileBankRecorder recorder = new ChunkedXmlFileBankRecorder(chunkPath, 4);
+		
+		// The bank grows too large for a single chunk, so it is split when saved
+		Bank<String> bank = new Bank<>("chunked", BasicDataType.STRING, recorder);
+		bank.initialise();
+		for (int i = 0; i < 20; i++)
+		{
+			bank.put("resource" + i, "Chunked string " + i);
+		}
+		bank.save();
+		
+		Bank<String> reread = new Bank<>("chunked", BasicDataType.STRING, recorder);
+		reread.initialise();
+		check(reread.isChunked(), "Bank is chunked");
+		check("Chunked string 7".equals(reread.get("resource7")), "Chunk read on demand");
+		check(reread.listContents().size() == 20, "All chunks read");
+		
+		// A modified chunk is written without the others
+		reread.put("resource7", "Modified string");
+		reread.save();
+		Bank<String> modified = new Bank<>("chunked", BasicDataType.STRING, recorder);
+		modified.initialise();
+		check("Modified string".equals(modified.get("resource7")), "Modified chunk saved");
+		check("Chunked string 3".equals(modified.get("resource3")), "Other chunks kept");
+		
+		// A damaged chunk can't be read
+		Files.write(chunkPath.resolve(BasicDataType.STRING.getName()).resolve("chunked").resolve(
+				"chunk0.xml"), "Not xml".getBytes(StandardCharsets.UTF_8));
+		Bank<String> damaged = new Bank<>("chunked", BasicDataType.STRING, recorder);
+		damaged.initialise();
+		checkFails("Damaged chunk rejected", ResourceLoadFailedException.class, 
+				() -> damaged.listContents());
+	}
+	
+	private static void testAsyncLoading(BankRecorder recorder) throws RecordingFailedException
+	{
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try
+		{
+			Bank<String> bank = new Bank<>("stringForAll", BasicDataType.STRING, recorder);
+			CompletableFuture<Void> completion = bank.initialiseAsync(executor);
+			CompletableFuture<String> xml = bank.getAsync("xml");
+			check("<root><asd/></root>".equals(xml.join()), "Resource received while loading");
+			completion.join();
+			check(bank.isInitialised() && !bank.isLoading(), "Load completed");
+			
+			// A failed load leaves the bank uninitialised and is reported on use
+			Bank<String> failing = new Bank<>("failing", BasicDataType.STRING, 
+					new FailingRecorder(recorder));
+			checkFails("Failed load completes exceptionally", CompletionException.class, 
+					() -> failing.initialiseAsync(executor).join());
+			checkFails("Failed load reported on use", ResourceLoadFailedException.class, 
+					() -> failing.get("anything"));
+			check(!failing.isInitialised(), "Failed bank left uninitialised");
+			checkFails("Load retried", RecordingFailedException.class, () -> failing.initialise());
+			
+			// The manager drops a failed load and issues it again on the next phase change
+			FailingRecorder failingRecorder = new FailingRecorder(recorder);
+			ResourceManager manager = new ResourceManager();
+			BankBank<String> strings = new BankBank<>(BasicDataType.STRING, failingRecorder, true);
+			manager.introduceBank(strings);
+			manager.setLoadExecutor(executor);
+			Phase loaded = new Phase("loaded");
+			loaded.addActiveBank(BasicDataType.STRING, "stringForAll");
+			manager.introducePhase(loaded);
+			manager.introducePhase(new Phase("empty"));
+			Bank<String> managed = strings.get("stringForAll");
+			
+			manager.startPhase("loaded", false);
+			checkFails("Failed background load reported", CompletionException.class, 
+					() -> manager.getLoadCompletion().join());
+			failingRecorder.setFailing(false);
+			manager.startPhase("empty", false);
+			manager.getLoadCompletion().join();
+			check(managed.isInitialised() && managed.getHoldCount() == 1, 
+					"Failed background load issued again");
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+	}
+	
+	private static void testLog() throws RecordingFailedException, IOException
+	{
+		Path logPath = createOutputDirectory("log");
+		LogFileBankRecorder recorder = new LogFileBankRecorder(logPath);
+		Path bankPath = logPath.resolve(BasicDataType.STRING.getName());
+		
+		// Each save appends the changes to the log
+		Bank<String> bank = new Bank<>("logged", BasicDataType.STRING, recorder);
+		bank.initialise();
+		bank.put("first", "First string");
+		bank.put("second", "Second string");
+		bank.save();
+		bank.remove("first");
+		bank.put("second", "Replaced string");
+		bank.save();
+		
+		Bank<String> replayed = new Bank<>("logged", BasicDataType.STRING, recorder);
+		replayed.initialise();
+		check(replayed.listContents().size() == 1 && 
+				"Replaced string".equals(replayed.get("second")), "Log replayed");
+		
+		// Compaction writes the log into a checkpoint
+		recorder.compact("logged", BasicDataType.STRING);
+		Bank<String> compacted = new Bank<>("logged", BasicDataType.STRING, recorder);
+		compacted.initialise();
+		check(!Files.exists(bankPath.resolve("logged.log")) && 
+				"Replaced string".equals(compacted.get("second")), "Log compacted");
+		
+		// A partially written record is ignored
+		compacted.put("third", "Third string");
+		compacted.save();
+		Files.write(bankPath.resolve("logged.log"), new byte[] {0, 0, 0, 100, 1, 2, 3}, 
+				StandardOpenOption.APPEND);
+		Bank<String> repaired = new Bank<>("logged", BasicDataType.STRING, recorder);
+		repaired.initialise();
+		check(repaired.listContents().size() == 2 && 
+				"Third string".equals(repaired.get("third")), "Partial record ignored");
+		
+		// So are the records with an impossible length or a wrong checksum, after which 
+		// new records are appended to the repaired log
+		Files.write(bankPath.resolve("logged.log"), new byte[] {0, 0, 0, 0, 0, 0, 0, 0}, 
+				StandardOpenOption.APPEND);
+		Bank<String> zeroLength = new Bank<>("logged", BasicDataType.STRING, recorder);
+		zeroLength.initialise();
+		check(zeroLength.listContents().size() == 2, "Empty record ignored");
+		Files.write(bankPath.resolve("logged.log"), 
+				new byte[] {0, 0, 0, 4, 0, 0, 0, 0, 0, 0, 0, 1}, StandardOpenOption.APPEND);
+		Bank<String> damaged = new Bank<>("logged", BasicDataType.STRING, recorder);
+		damaged.initialise();
+		damaged.put("fourth", "Fourth string");
+		damaged.save();
+		Bank<String> appended = new Bank<>("logged", BasicDataType.STRING, recorder);
+		appended.initialise();
+		check(appended.listContents().size() == 3 && 
+				"Fourth string".equals(appended.get("fourth")), "Damaged record ignored");
+		
+		// A damaged checkpoint can't be read
+		Files.write(bankPath.resolve("logged.checkpoint"), 
+				"Not a checkpoint".getBytes(StandardCharsets.UTF_8));
+		checkFails("Damaged checkpoint rejected", RecordingFailedException.class, 
+				() -> new Bank<>("logged", BasicDataType.STRING, recorder).initialise());
+	}
+	
+	private static void testBatchCommit() throws RecordingFailedException, IOException
+	{
+		Path batchPath = createOutputDirectory("batch");
+		Path stagedPath = createOutputDirectory("batch-staged");
+		XmlFileBankRecorder recorder = new XmlFileBankRecorder(batchPath);
+		
+		// The banks are committed together
+		Bank<String> bank1 = new Bank<>("batch1", BasicDataType.STRING, recorder);
+		Bank<String> bank2 = new Bank<>("batch2", BasicDataType.STRING, recorder);
+		bank1.put("text", "Batch string 1");
+		bank2.put("text", "Batch string 2");
+		recorder.writeBanks(Arrays.asList(
+				new BankData("batch1", BasicDataType.STRING, bank1.getSavedContents()), 
+				new BankData("batch2", BasicDataType.STRING, bank2.getSavedContents())));
+		check(recorder.readBank("batch1", BasicDataType.STRING).size() == 1 && 
+				recorder.readBank("batch2", BasicDataType.STRING).size() == 1, 
+				"Batch committed");
+		
+		// A commit interrupted after its manifest was written is completed on the next use. 
+		// The manifest paths are relative to the bank directory.
+		Path stagedFile = stagedPath.resolve(BasicDataType.STRING.getName()).resolve(
+				"batch1.xml");
+		Path targetFile = batchPath.resolve(BasicDataType.STRING.getName()).resolve(
+				"batch1.xml");
+		bank1.put("extra", "Committed after recovery");
+		new XmlFileBankRecorder(stagedPath).writeBank("batch1", BasicDataType.STRING, 
+				bank1.getSavedContents());
+		Files.write(batchPath.resolve("commit.manifest"), Arrays.asList(
+				batchPath.relativize(stagedFile) + "\t" + batchPath.relativize(targetFile)), 
+				StandardCharsets.UTF_8);
+		XmlFileBankRecorder recovering = new XmlFileBankRecorder(batchPath);
+		check(recovering.readBank("batch1", BasicDataType.STRING).size() == 2 && 
+				!Files.exists(batchPath.resolve("commit.manifest")), "Interrupted commit completed");
+		
+		// Nothing is committed if a write can't be started
+		recovering.setWriteExecutor(command -> 
+		{
+			throw new RejectedExecutionException("No writes are accepted");
+		});
+		bank2.put("extra", "Never committed");
+		checkFails("Failed batch rejected", RecordingFailedException.class, 
+				() -> recovering.writeBanks(Arrays.asList(new BankData("batch2", 
+				BasicDataType.STRING, bank2.getSavedContents()))));
+		check(recovering.readBank("batch2", BasicDataType.STRING).size() == 1, 
+				"Failed batch left the old contents");
+	}
+	
+	private static void testFrozen(BankRecorder recorder) throws RecordingFailedException
+	{
+		Bank<String> bank = new Bank<>("stringForAll", BasicDataType.STRING, recorder);
+		bank.initialise();
+		bank.freeze();
+		check(bank.isFrozen() && "<root><asd/></root>".equals(bank.get("XML")), 
+				"Frozen lookup ignores case");
+		
+		// Each name must find its own slot in the perfect hash table
+		Bank<Integer> numbers = new Bank<>("frozenNumbers", BasicDataType.INTEGER, recorder);
+		checkFails("Uninitialised bank can't be frozen", IllegalStateException.class, 
+				() -> numbers.freeze());
+		numbers.initialise();
+		for (int i = 0; i < 500; i++)
+		{
+			numbers.put("number" + i, i);
+		}
+		numbers.freeze();
+		boolean allFound = true;
+		for (int i = 0; i < 500; i++)
+		{
+			if (numbers.get("number" + i) != i)
+				allFound = false;
+		}
+		check(allFound && numbers.listContents().size() == 500, "All frozen resources found");
+		
+		// Frozen banks report missing resources and can't be modified
+		checkFails("Missing frozen resource reported", NoSuchAttributeException.class, 
+				() -> numbers.get("number500"));
+		checkFails("Frozen bank can't be modified", UnsupportedOperationException.class, 
+				() -> numbers.put("number500", 500));
+		
+		// Uninitialising unfreezes the bank
+		bank.uninitialise();
+		check(!bank.isFrozen(), "Bank unfrozen");
+	}
+	
+	private static void testCopy(BankRecorder recorder) throws RecordingFailedException
+	{
+		// All of the strings are stored off-heap
+		Bank<String> original = new Bank<>("stringForAll", BasicDataType.STRING, recorder);
+		original.setOffHeapThreshold(0);
+		original.acquire();
+		original.put("added", "Added before copying");
+		
+		Bank<String> copy = new Bank<>(original);
+		check("stringForAll".equals(copy.getName()) && copy.isInitialised() && 
+				copy.getOffHeapSize() > 0, "Copy keeps the name and the off-heap storage");
+		check("<root><asd/></root>".equals(copy.get("xml")) && 
+				"Added before copying".equals(copy.get("added")), "Copy contains the resources");
+		check(copy.hasUnsavedChanges() && copy.getHoldCount() == 0, 
+				"Copy keeps the unsaved changes but not the holds");
+		
+		// Changing the copy doesn't affect the original
+		copy.put("xml", "<copy/>");
+		copy.remove("added");
+		check("<root><asd/></root>".equals(original.get("xml")) && 
+				"Added before copying".equals(original.get("added")), "Copy is independent");
+		
+		// Frozen banks are copied frozen
+		original.freeze();
+		Bank<String> frozenCopy = new Bank<>(original);
+		check(frozenCopy.isFrozen() && "Added before copying".equals(frozenCopy.get("ADDED")) && 
+				frozenCopy.listContents().size() == original.listContents().size(), 
+				"Frozen bank copied");
+		
+		// Uninitialised banks are copied uninitialised and read their own contents
+		original.release();
+		Bank<String> uninitialisedCopy = new Bank<>(original);
+		check(!uninitialisedCopy.isInitialised(), "Uninitialised bank copied");
+		uninitialisedCopy.initialise();
+		check("<root><asd/></root>".equals(uninitialisedCopy.get("xml")), 
+				"Uninitialised copy reads its contents");
+	}
+	
+	private static void testStatistics()
+	{
+		Phase menu = new Phase("menu");
+		menu.addActiveBank(BasicDataType.STRING, "stringForAll");
+		Phase game = new Phase("game");
+		game.addActiveBank(BasicDataType.STRING, "stringForAll");
+		game.addActiveBank(BasicDataType.INTEGER, "sharedInteger12");
+		AccessStatistics statistics = new AccessStatistics(1);
+		
+		// Each request is counted for the active phases that use the bank
+		statistics.onPhaseTransition(Arrays.asList(menu, game), 1000);
+		statistics.onResourceRequested(BasicDataType.STRING, "StringForAll", "XML");
+		statistics.onResourceRequested(BasicDataType.INTEGER, "sharedInteger12", "width");
+		statistics.onResourceRequested(BasicDataType.STRING, "stringFor1Only", "secret");
+		check(statistics.getRequestCount("menu", BasicDataType.STRING, "stringForAll", "xml") == 1 && 
+				statistics.getRequestCount("game", BasicDataType.STRING, "stringForAll", "xml") == 1, 
+				"Request counted for each phase");
+		check(statistics.getRequestCount("menu", BasicDataType.INTEGER, "sharedInteger12", 
+				"width") == 0 && statistics.getRequestCount("game", BasicDataType.INTEGER, 
+				"sharedInteger12", "width") == 1, "Request counted only for the using phases");
+		check(statistics.getRequestCount("menu", BasicDataType.STRING, "stringFor1Only", 
+				"secret") == 0, "Inactive bank not counted");
+		
+		// The counts follow the phase changes
+		statistics.onPhaseTransition(Arrays.asList(game), 1000);
+		statistics.onResourceRequested(BasicDataType.STRING, "stringForAll", "xml");
+		check(statistics.getRequestCount("menu", BasicDataType.STRING, "stringForAll", "xml") == 1 && 
+				statistics.getRequestCount("game", BasicDataType.STRING, "stringForAll", "xml") == 2, 
+				"Counts follow the phases");
+	}
+	
+	private static void testTrace(ResourceManager manager) throws IOException, 
+			RecordingFailedException, InterruptedException
+	{
+		Path tracePath = createOutputDirectory("trace");
+		Path traceFile = tracePath.resolve("trace.bin");
+		List<Phase> phases = manager.getPhases();
+		try (TraceRecorder trace = new TraceRecorder(traceFile))
+		{
+			trace.onPhaseTransition(phases, 1000);
+			trace.onBankLoaded(BasicDataType.STRING, "stringForAll", 2000);
+			trace.onResourceRequested(BasicDataType.STRING, "stringForAll", "xml");
+		}
+		
+		try (TraceReader reader = new TraceReader(traceFile))
+		{
+			TraceEvent transition = reader.next();
+			check(transition != null && transition.getType() == EventType.TRANSITION && 
+					transition.getDuration() == 1000 && 
+					transition.getPhases().size() == phases.size(), "Transition read");
+			TraceEvent load = reader.next();
+			check(load != null && load.getType() == EventType.LOAD && 
+					"stringForAll".equals(load.getBankName()), "Load read");
+			TraceEvent request = reader.next();
+			check(request != null && request.getType() == EventType.REQUEST && 
+					"xml".equals(request.getResourceName()), "Request read");
+			check(reader.next() == null, "Trace ended");
+		}
+		
+		// A trace cut in the middle of an event ends at the last complete event
+		byte[] data = Files.readAllBytes(traceFile);
+		Path cutFile = tracePath.resolve("trace-cut.bin");
+		Files.write(cutFile, Arrays.copyOf(data, data.length - 1));
+		try (TraceReader reader = new TraceReader(cutFile))
+		{
+			int eventCount = 0;
+			while (reader.next() != null)
+			{
+				eventCount ++;
+			}
+			check(eventCount == 2, "Cut trace read");
+		}
+		
+		// Other files are not read as traces
+		checkFails("Other file rejected", IOException.class, 
+				() -> new TraceReader(Paths.get("test", "resources", "phases.xml")).close());
+		
+		// The replayed requests are made once the banks have been loaded in the background
+		BankRecorder recorder = new XmlFileBankRecorder(Paths.get("test", "resources"));
+		TraceReplayer replayer = new TraceReplayer(recorder);
+		replayer.setLoadThreads(2);
+		ReplayReport report = replayer.replay(traceFile);
+		check(report.getTransitionCount() == 1 && report.getRequestCount() == 1 && 
+				report.getFailedTransitionCount() == 0, "Trace replayed");
+		
+		// Failed loads are counted and the replay continues
+		TraceReplayer failingReplayer = new TraceReplayer(new FailingRecorder(recorder));
+		failingReplayer.setLoadThreads(2);
+		ReplayReport failedReport = failingReplayer.replay(traceFile);
+		check(failedReport.getFailedTransitionCount() == 1 && 
+				failedReport.getFailedRequestCount() == 1, "Failed loads counted");
+	}
+	
+	private static void testSnapshot(ResourceManager manager) throws RecordingFailedException, 
+			IOException
+	{
+		Path snapshotPath = createOutputDirectory("snapshot");
+		XmlFileBankRecorder source = new XmlFileBankRecorder(snapshotPath);
+		Bank<String> bank = new Bank<>("snapshotted", BasicDataType.STRING, source);
+		bank.put("text", "Snapshot string");
+		bank.save();
+		Bank<Blob> blobs = new Bank<>("snapshottedBlobs", ArcDataType.BLOB, source);
+		blobs.put("data", new Blob(new byte[] {1, 2, 3}));
+		blobs.save();
+		
+		Path snapshotFile = snapshotPath.resolve("snapshot.bin");
+		ResourceSnapshot.write(snapshotFile, manager, source, Arrays.asList(bank, blobs));
+		ResourceSnapshot snapshot = new ResourceSnapshot(snapshotFile, source);
+		check(snapshot.containsPhase("phase1") && 
+				snapshot.getPhaseNames().size() == manager.getPhases().size(), 
+				"Phases read from snapshot");
+		check(snapshot.isUpToDate("snapshotted", BasicDataType.STRING) && 
+				snapshot.readBank("snapshotted", BasicDataType.STRING).size() == 1, 
+				"Bank read from snapshot");
+		check(!snapshot.isUpToDate("snapshottedBlobs", ArcDataType.BLOB) && 
+				snapshot.readBank("snapshottedBlobs", ArcDataType.BLOB).size() == 1, 
+				"Blob bank read from source");
+		
+		// Banks changed after the snapshot are read from the source
+		bank.put("extra", "Changed after the snapshot");
+		bank.save();
+		check(!snapshot.isUpToDate("snapshotted", BasicDataType.STRING) && 
+				snapshot.readBank("snapshotted", BasicDataType.STRING).size() == 2, 
+				"Changed bank read from source");
+		
+		// The snapshot may be rewritten while it is open
+		ResourceSnapshot.write(snapshotFile, manager, source, Arrays.asList(bank));
+		check(new ResourceSnapshot(snapshotFile, source).isUpToDate("snapshotted", 
+				BasicDataType.STRING) && snapshot.containsPhase("phase1"), "Open snapshot rewritten");
+		
+		// An incomplete snapshot is not used
+		byte[] data = Files.readAllBytes(snapshotFile);
+		Path cutFile = snapshotPath.resolve("snapshot-cut.bin");
+		Files.write(cutFile, Arrays.copyOf(data, data.length / 2));
+		checkFails("Incomplete snapshot rejected", RecordingFailedException.class, 
+				() -> new ResourceSnapshot(cutFile, source));
+	}
+	
+	private static void check(boolean condition, String description)
+	{
+		if (!condition)
+			failedChecks ++;
+		System.out.println(description + ": " + (condition ? "OK" : "FAILED"));
+	}
+	
+	private static void checkFails(String description, Class<? extends Exception> expected, 
+			TestAction action)
+	{
+		try
+		{
+			action.run();
+			check(false, description);
+		}
+		catch (Exception e)
+		{
+			check(expected.isInstance(e), description);
+		}
+	}
+	
+	private static Path createOutputDirectory(String name)
+	{
+		// Each test writes into its own directory, which is cleared first
+		Path directory = Paths.get("test", "output", name);
+		delete(directory.toFile());
+		directory.toFile().mkdirs();
+		return directory;
+	}
+	
+	private static void delete(File file)
+	{
+		File[] children = file.listFiles();
+		if (children != null)
+		{
+			for (File child : children)
+			{
+				delete(child);
+			}
+		}
+		file.delete();
+	}
+	
+	private static void printPhases(ResourceManager manager)
+	{
+		for (Phase phase : manager.getPhases())
+		{
+			printPhase(phase);
+		}
+	}
+	
+	private static void printPhase(Phase phase)
+	{
+		System.out.println(phase.getName());
+		for (DataType resourceType : phase.getResourceTypes())
+		{
+			StringBuilder s = new StringBuilder("\t");
+			s.append(resourceType.getName());
+			s.append(":");
+			for (String bankName : phase.getActiveBankNames(resourceType))
+			{
+				s.append(" ");
+				s.append(bankName);
+			}
+			System.out.println(s);
+		}
+	}
+	
+	private static void printBanks(ResourceManager manager)
+	{
+		for (BankBank<?> bank : manager.getBanks())
+		{
+			System.out.println("\n" + bank.getContentType());
+			printBank(bank);
+		}
+	}
+	
+	private static void printBank(BankBank<?> bankbank)
+	{
+		for (Bank<?> bank : bankbank.getBanks())
+		{
+			System.out.println("Bank " + bank.getName());
+			System.out.println(bank.toString());
+		}
+	}
+	
+	
+	// NESTED CLASSES	------------------
+	
+	@FunctionalInterface
+	private static interface TestAction
+	{
+		public void run() throws Exception;
+	}
+	
+	private static class CountingTracer implements ResourceTracer
+	{
+		private int requestCount = 0;
+		
+		@Override
+		public void onPhaseTransition(List<Phase> phases, long durationNanos)
+		{
+			// Only the requests are counted
+		}
+		
+		@Override
+		public void onBankLoaded(DataType resourceType, String bankName, long durationNanos)
+		{
+			// Only the requests are counted
+		}
+		
+		@Override
+		public void onResourceRequested(DataType resourceType, String bankName, 
+				String resourceName)
+		{
+			this.requestCount ++;
+		}
+	}
+	
+	private static class FailingRecorder implements BankRecorder
+	{
+		private final BankRecorder source;
+		private boolean failing = true;
+		
+		public FailingRecorder(BankRecorder source)
+		{
+			this.source = source;
+		}
+		
+		@Override
+		public void writeBank(String bankName, DataType bankType, 
+				Collection<? extends Variable> contents) throws RecordingFailedException
+		{
+			if (this.failing)
+				throw new RecordingFailedException("Failed to write bank " + bankName);
+			this.source.writeBank(bankName, bankType, contents);
+		}
+		
+		@Override
+		public Collection<Variable> readBank(String bankName, DataType bankType) 
+				throws RecordingFailedException
+		{
+			if (this.failing)
+				throw new RecordingFailedException("Failed to read bank " + bankName);
+			return this.source.readBank(bankName, bankType);
+		}
+		
+		@Override
+		public List<String> readBankNames(DataType resourceType) throws RecordingFailedException
+		{
+			// The bank names are always available, so that the banks can be generated
+			return this.source.readBankNames(resourceType);
+		}
+		
+		public void setFailing(boolean failing)
+		{
+			this.failing = failing;
+		}
+	}
+}